@@ -0,0 +1,89 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.Folder;
+import javax.mail.Message;
+
+import org.camunda.bpm.extension.mail.benchmark.BenchmarkMailServer.MessageShape;
+import org.camunda.bpm.extension.mail.dto.Mail;
+import org.camunda.bpm.extension.mail.service.MailService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of downloading the two attachments of a mail over IMAP into the
+ * configured attachment store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AttachmentDownloadBenchmark {
+
+  private static final String ATTACHMENT_PATH = "target/benchmark-attachments";
+
+  /** size of an attachment in bytes */
+  @Param({ "10240", "1048576" })
+  public int attachmentSize;
+
+  private final BenchmarkMailServer server = new BenchmarkMailServer();
+
+  private MailService mailService;
+  private Message message;
+
+  @Setup(Level.Trial)
+  public void deliverMail() throws Exception {
+    server.start();
+    server.deliver(MessageShape.ATTACHMENTS.create(server.getSession(), "attachments", attachmentSize));
+
+    mailService = server.getMailService();
+
+    Folder folder = mailService.ensureOpenFolder("INBOX");
+    message = folder.getMessage(1);
+  }
+
+  @TearDown(Level.Iteration)
+  public void deleteAttachments() throws Exception {
+    BenchmarkMailServer.deleteDirectory(ATTACHMENT_PATH);
+  }
+
+  @TearDown(Level.Trial)
+  public void stopServer() throws Exception {
+    mailService.flush();
+    server.stop();
+  }
+
+  @Benchmark
+  public Mail downloadAttachments() throws Exception {
+    Mail mail = Mail.lazyFrom(message, mailService);
+    mail.downloadAttachments(ATTACHMENT_PATH, mailService.getAttachmentStore());
+    return mail;
+  }
+
+}
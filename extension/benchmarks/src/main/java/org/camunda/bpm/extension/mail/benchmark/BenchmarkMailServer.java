@@ -0,0 +1,196 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import javax.activation.DataHandler;
+import javax.mail.Message.RecipientType;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+import javax.mail.util.ByteArrayDataSource;
+
+import org.camunda.bpm.extension.mail.config.MailConfigurationFactory;
+import org.camunda.bpm.extension.mail.service.MailService;
+import org.camunda.bpm.extension.mail.service.MailServiceFactory;
+
+import com.icegreen.greenmail.user.GreenMailUser;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetupTest;
+
+/**
+ * Embedded GreenMail server (SMTP and IMAP) which is used by the benchmarks,
+ * see 'mail-config.properties' for the connection settings.
+ */
+public class BenchmarkMailServer {
+
+  public static final String USER = "test@camunda.com";
+  public static final String PASSWORD = "bpmn";
+
+  protected final GreenMail greenMail = new GreenMail(ServerSetupTest.SMTP_IMAP);
+  protected GreenMailUser user;
+
+  public void start() {
+    greenMail.start();
+    user = greenMail.setUser(USER, PASSWORD);
+  }
+
+  public void stop() throws Exception {
+    getMailService().close();
+    greenMail.stop();
+  }
+
+  /**
+   * Delivers the given number of text mails directly into the inbox, without
+   * sending them over SMTP.
+   */
+  public void deliverTextMails(int count) throws MessagingException {
+    Session session = getSession();
+
+    for (int i = 0; i < count; i++) {
+      user.deliver(MessageShape.TEXT.create(session, "mail " + i));
+    }
+  }
+
+  /**
+   * Delivers the given mail directly into the inbox.
+   */
+  public void deliver(MimeMessage message) {
+    user.deliver(message);
+  }
+
+  public MailService getMailService() {
+    return MailServiceFactory.getService(MailConfigurationFactory.getConfiguration());
+  }
+
+  public Session getSession() {
+    return greenMail.getSmtp().createSession();
+  }
+
+  public GreenMail getGreenMail() {
+    return greenMail;
+  }
+
+  /**
+   * Shapes of messages which are parsed differently.
+   */
+  public enum MessageShape {
+    /** a plain text message */
+    TEXT,
+    /** a html message */
+    HTML,
+    /** a multipart/alternative message with text and html */
+    ALTERNATIVE,
+    /** a multipart/mixed message with text and two attachments */
+    ATTACHMENTS;
+
+    public MimeMessage create(Session session, String subject) throws MessagingException {
+      return create(session, subject, 4 * 1024);
+    }
+
+    /**
+     * @param attachmentSize
+     *          size of an attachment in bytes
+     */
+    public MimeMessage create(Session session, String subject, int attachmentSize) throws MessagingException {
+      MimeMessage message = new MimeMessage(session);
+      message.setFrom(new InternetAddress("from@camunda.com"));
+      message.setRecipient(RecipientType.TO, new InternetAddress(USER));
+      message.setSubject(subject);
+
+      String text = "This is the text of the mail '" + subject + "'.";
+      String html = "<html><body><p>" + text + "</p></body></html>";
+
+      switch (this) {
+      case TEXT:
+        message.setText(text);
+        break;
+
+      case HTML:
+        message.setContent(html, "text/html; charset=utf-8");
+        break;
+
+      case ALTERNATIVE:
+        MimeMultipart alternative = new MimeMultipart("alternative");
+        alternative.addBodyPart(textPart(text));
+        alternative.addBodyPart(htmlPart(html));
+        message.setContent(alternative);
+        break;
+
+      case ATTACHMENTS:
+        Multipart mixed = new MimeMultipart();
+        mixed.addBodyPart(textPart(text));
+        mixed.addBodyPart(attachmentPart("data.bin", attachmentSize));
+        mixed.addBodyPart(attachmentPart("report.bin", attachmentSize));
+        message.setContent(mixed);
+        break;
+      }
+
+      message.saveChanges();
+      return message;
+    }
+
+    protected MimeBodyPart textPart(String text) throws MessagingException {
+      MimeBodyPart part = new MimeBodyPart();
+      part.setText(text);
+      return part;
+    }
+
+    protected MimeBodyPart htmlPart(String html) throws MessagingException {
+      MimeBodyPart part = new MimeBodyPart();
+      part.setContent(html, "text/html; charset=utf-8");
+      return part;
+    }
+
+    protected MimeBodyPart attachmentPart(String fileName, int size) throws MessagingException {
+      byte[] content = new byte[size];
+      for (int i = 0; i < size; i++) {
+        content[i] = (byte) (i % 251);
+      }
+
+      MimeBodyPart part = new MimeBodyPart();
+      part.setDataHandler(new DataHandler(new ByteArrayDataSource(content, "application/octet-stream")));
+      part.setFileName(fileName);
+      part.setDisposition(MimeBodyPart.ATTACHMENT);
+      return part;
+    }
+  }
+
+  /**
+   * Deletes the given directory with its content.
+   */
+  public static void deleteDirectory(String path) throws IOException {
+    Path directory = Paths.get(path);
+    if (!Files.exists(directory)) {
+      return;
+    }
+
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder())
+        .map(Path::toFile)
+        .forEach(File::delete);
+    }
+  }
+
+}
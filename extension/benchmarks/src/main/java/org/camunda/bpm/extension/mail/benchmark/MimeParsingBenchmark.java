@@ -0,0 +1,70 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+import org.camunda.bpm.extension.mail.benchmark.BenchmarkMailServer.MessageShape;
+import org.camunda.bpm.extension.mail.dto.Mail;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of parsing raw messages of different shapes into mails, without
+ * a mail server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MimeParsingBenchmark {
+
+  @Param({ "TEXT", "HTML", "ALTERNATIVE", "ATTACHMENTS" })
+  public MessageShape shape;
+
+  private Session session;
+  private byte[] rawMessage;
+
+  @Setup
+  public void createMessage() throws Exception {
+    session = Session.getInstance(new Properties());
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    shape.create(session, "benchmark").writeTo(outputStream);
+    rawMessage = outputStream.toByteArray();
+  }
+
+  @Benchmark
+  public Mail parseMail() throws Exception {
+    MimeMessage message = new MimeMessage(session, new ByteArrayInputStream(rawMessage));
+    return Mail.from(message);
+  }
+
+}
@@ -0,0 +1,99 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.UIDFolder;
+
+import org.camunda.bpm.extension.mail.MailConnectors;
+import org.camunda.bpm.extension.mail.dto.Mail;
+import org.camunda.bpm.extension.mail.poll.PollState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of polling a folder which contains many mails - the first page of
+ * mails and an incremental poll which finds no new mails.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class PollMailBenchmark {
+
+  @Param({ "1000", "10000", "100000" })
+  public int mailCount;
+
+  @Param({ "100" })
+  public int pageSize;
+
+  private final BenchmarkMailServer server = new BenchmarkMailServer();
+
+  private PollState pollState;
+
+  @Setup(Level.Trial)
+  public void fillFolder() throws Exception {
+    server.start();
+    server.deliverTextMails(mailCount);
+
+    UIDFolder folder = (UIDFolder) server.getMailService().ensureOpenFolder("INBOX");
+    pollState = new PollState("INBOX", folder.getUIDValidity(), mailCount);
+    server.getMailService().flush();
+  }
+
+  @TearDown(Level.Trial)
+  public void stopServer() throws Exception {
+    server.stop();
+  }
+
+  @Benchmark
+  public List<Mail> pollFirstPage() {
+    return MailConnectors.pollMails()
+        .createRequest()
+          .folder("INBOX")
+          .maxResults(pageSize)
+          .downloadAttachments(false)
+          .lazyContent(true)
+        .execute()
+        .getMails();
+  }
+
+  @Benchmark
+  public List<Mail> pollNoNewMails() {
+    return MailConnectors.pollMails()
+        .createRequest()
+          .folder("INBOX")
+          .incremental(true)
+          .pollState(pollState)
+          .downloadAttachments(false)
+          .lazyContent(true)
+        .execute()
+        .getMails();
+  }
+
+}
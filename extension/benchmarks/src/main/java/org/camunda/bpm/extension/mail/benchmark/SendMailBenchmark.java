@@ -0,0 +1,88 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.Message;
+import javax.mail.Session;
+
+import org.camunda.bpm.extension.mail.MailConnectors;
+import org.camunda.bpm.extension.mail.send.MessageFactory;
+import org.camunda.bpm.extension.mail.send.SendMailRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of creating and sending a mail with the send connector.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SendMailBenchmark {
+
+  private final BenchmarkMailServer server = new BenchmarkMailServer();
+
+  private final MessageFactory messageFactory = new MessageFactory();
+  private Session session;
+
+  @Setup(Level.Trial)
+  public void startServer() {
+    server.start();
+    session = server.getMailService().getSession();
+  }
+
+  @Setup(Level.Iteration)
+  public void clearMails() throws Exception {
+    // the received mails are kept in memory
+    server.getGreenMail().purgeEmailFromAllMailboxes();
+  }
+
+  @TearDown(Level.Trial)
+  public void stopServer() throws Exception {
+    server.stop();
+  }
+
+  @Benchmark
+  public Message createMessage() throws Exception {
+    return messageFactory.createMessage(request(), session);
+  }
+
+  @Benchmark
+  public Object sendMail() {
+    return request().execute();
+  }
+
+  protected SendMailRequest request() {
+    return MailConnectors.sendMail()
+        .createRequest()
+          .to(BenchmarkMailServer.USER)
+          .subject("benchmark")
+          .text("This is the text of the mail.")
+          .html("<b>This is the text of the mail.</b>");
+  }
+
+}
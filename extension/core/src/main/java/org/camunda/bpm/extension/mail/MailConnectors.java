@@ -15,6 +15,7 @@ package org.camunda.bpm.extension.mail;
 import org.camunda.bpm.extension.mail.copy.CopyMailConnector;
 import org.camunda.bpm.extension.mail.delete.DeleteMailConnector;
 import org.camunda.bpm.extension.mail.poll.PollMailConnector;
+import org.camunda.bpm.extension.mail.send.BatchSendMailConnector;
 import org.camunda.bpm.extension.mail.send.SendMailConnector;
 import org.camunda.connect.Connectors;
 
@@ -24,6 +25,10 @@ public class MailConnectors {
     return Connectors.getConnector(SendMailConnector.CONNECTOR_ID);
   }
 
+  public static BatchSendMailConnector sendMails() {
+    return Connectors.getConnector(BatchSendMailConnector.CONNECTOR_ID);
+  }
+
   public static PollMailConnector pollMails() {
     return Connectors.getConnector(PollMailConnector.CONNECTOR_ID);
   }
@@ -0,0 +1,41 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.attachment;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import javax.mail.MessagingException;
+import javax.mail.Part;
+
+/**
+ * Stores the downloaded attachments of mails.
+ */
+public interface AttachmentStore {
+
+  /**
+   * Stores the content of the attachment as file with the given name in the
+   * directory.
+   *
+   * @return the stored file, or <code>null</code> if the attachment is
+   *         skipped (e.g. because it is too large)
+   */
+  Path store(Path directory, String fileName, Part part) throws IOException, MessagingException;
+
+  /**
+   * Releases the resources of the store.
+   */
+  default void close() {
+  }
+
+}
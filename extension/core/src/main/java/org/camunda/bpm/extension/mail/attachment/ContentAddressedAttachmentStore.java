@@ -0,0 +1,222 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.attachment;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.mail.MessagingException;
+import javax.mail.Part;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores the content of each attachment only once, identified by its SHA-256
+ * hash. The file of an attachment is a hard link to the stored content (or a
+ * copy if the file system doesn't support links), so the file must not be
+ * modified.
+ *
+ * <p>
+ * The content is removed by {@link #cleanup()} when no attachment file links
+ * to it anymore and it was not used for longer than the retention time.
+ */
+public class ContentAddressedAttachmentStore extends FileAttachmentStore {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ContentAddressedAttachmentStore.class);
+
+  protected static final String TEMP_FILE_SUFFIX = ".tmp";
+
+  protected final Path contentPath;
+  protected final Duration retention;
+
+  protected ScheduledExecutorService cleanupExecutor;
+
+  /**
+   * @param contentPath
+   *          directory of the stored content, must be on the same file system
+   *          as the attachments to link them
+   * @param retention
+   *          duration after unreferenced content is removed
+   */
+  public ContentAddressedAttachmentStore(Path contentPath, long maxSize, int bufferSize, Duration retention) {
+    super(maxSize, bufferSize);
+    this.contentPath = contentPath;
+    this.retention = retention;
+  }
+
+  @Override
+  public Path store(Path directory, String fileName, Part part) throws IOException, MessagingException {
+    if (exceedsMaxSize(fileName, part)) {
+      return null;
+    }
+
+    Files.createDirectories(contentPath);
+    Path tempFile = contentPath.resolve(UUID.randomUUID() + TEMP_FILE_SUFFIX);
+
+    MessageDigest digest = createDigest();
+    if (copy(fileName, part, tempFile, digest) < 0) {
+      return null;
+    }
+
+    Path content = getContentPath(toHex(digest.digest()));
+    if (Files.exists(content)) {
+      LOGGER.debug("attachment '{}' is already stored as '{}'", fileName, content);
+
+      Files.delete(tempFile);
+      // extend the retention of the content
+      Files.setLastModifiedTime(content, FileTime.fromMillis(System.currentTimeMillis()));
+
+    } else {
+      Files.createDirectories(content.getParent());
+      try {
+        Files.move(tempFile, content, StandardCopyOption.ATOMIC_MOVE);
+      } catch (FileAlreadyExistsException e) {
+        // stored by another thread in the meantime
+        Files.deleteIfExists(tempFile);
+      }
+    }
+
+    Path file = directory.resolve(fileName);
+    link(content, file);
+
+    return file;
+  }
+
+  protected Path getContentPath(String hash) {
+    return contentPath.resolve(hash.substring(0, 2)).resolve(hash);
+  }
+
+  protected void link(Path content, Path file) throws IOException {
+    try {
+      Files.createLink(file, content);
+    } catch (UnsupportedOperationException | FileSystemException e) {
+      LOGGER.debug("unable to link '{}' to '{}', copy it instead", file, content, e);
+
+      Files.copy(content, file);
+    }
+  }
+
+  /**
+   * Removes the stored content which is not linked by any attachment file and
+   * was not used for longer than the retention time. Also removes left over
+   * temporary files.
+   */
+  public void cleanup() {
+    if (!Files.exists(contentPath)) {
+      return;
+    }
+
+    long expiration = System.currentTimeMillis() - retention.toMillis();
+
+    try (Stream<Path> files = Files.walk(contentPath, 2)) {
+      files
+        .filter(Files::isRegularFile)
+        .filter(file -> isExpired(file, expiration))
+        .filter(this::isUnreferenced)
+        .forEach(file -> {
+          try {
+            Files.delete(file);
+
+            LOGGER.debug("removed unreferenced attachment content '{}'", file);
+          } catch (IOException e) {
+            LOGGER.warn("failed to remove attachment content '{}'", file, e);
+          }
+        });
+
+    } catch (IOException e) {
+      LOGGER.warn("failed to cleanup the attachment store at '{}'", contentPath, e);
+    }
+  }
+
+  protected boolean isExpired(Path file, long expiration) {
+    try {
+      return Files.getLastModifiedTime(file).toMillis() < expiration;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  protected boolean isUnreferenced(Path file) {
+    if (file.getFileName().toString().endsWith(TEMP_FILE_SUFFIX)) {
+      return true;
+    }
+
+    try {
+      Integer links = (Integer) Files.getAttribute(file, "unix:nlink");
+      return links <= 1;
+
+    } catch (UnsupportedOperationException | IllegalArgumentException | IOException e) {
+      // the attachment files are copies if links are not supported
+      return true;
+    }
+  }
+
+  /**
+   * Runs the cleanup periodically in the background.
+   */
+  public synchronized void startCleanup(Duration interval) {
+    if (cleanupExecutor == null) {
+      cleanupExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mail-attachment-cleanup");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+      cleanupExecutor.scheduleWithFixedDelay(this::cleanup, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    if (cleanupExecutor != null) {
+      cleanupExecutor.shutdownNow();
+      cleanupExecutor = null;
+    }
+  }
+
+  protected MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported", e);
+    }
+  }
+
+  protected static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  @Override
+  public String toString() {
+    return "ContentAddressedAttachmentStore [contentPath=" + contentPath + ", retention=" + retention + ", maxSize=" + maxSize + "]";
+  }
+
+}
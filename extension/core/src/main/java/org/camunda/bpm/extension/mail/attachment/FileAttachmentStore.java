@@ -0,0 +1,152 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.attachment;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+import javax.mail.MessagingException;
+import javax.mail.Part;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams each attachment into its own file, so that only a buffer of the
+ * attachment is held in memory.
+ */
+public class FileAttachmentStore implements AttachmentStore {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FileAttachmentStore.class);
+
+  public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  protected final long maxSize;
+  protected final int bufferSize;
+
+  public FileAttachmentStore() {
+    this(0, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * @param maxSize
+   *          maximum size of an attachment in bytes, <code>0</code> for
+   *          unlimited size. Larger attachments are skipped.
+   * @param bufferSize
+   *          size of the buffer in bytes which is used for writing to the
+   *          file
+   */
+  public FileAttachmentStore(long maxSize, int bufferSize) {
+    this.maxSize = maxSize;
+    this.bufferSize = bufferSize;
+  }
+
+  @Override
+  public Path store(Path directory, String fileName, Part part) throws IOException, MessagingException {
+    if (exceedsMaxSize(fileName, part)) {
+      return null;
+    }
+
+    Path file = directory.resolve(fileName);
+
+    if (copy(fileName, part, file, null) < 0) {
+      return null;
+    }
+    return file;
+  }
+
+  /**
+   * The size of the encoded part is an estimation only, but it avoids a
+   * useless transfer.
+   */
+  protected boolean exceedsMaxSize(String fileName, Part part) throws MessagingException {
+    if (maxSize > 0 && part.getSize() > maxSize) {
+      LOGGER.warn("skip attachment '{}' since it exceeds the maximum size of {} bytes", fileName, maxSize);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Streams the decoded content of the part into the given file.
+   *
+   * @param digest
+   *          is updated with the content, can be <code>null</code>
+   *
+   * @return the number of written bytes, or <code>-1</code> if the content
+   *         exceeds the maximum size
+   */
+  protected long copy(String fileName, Part part, Path file, MessageDigest digest) throws IOException, MessagingException {
+    long startTime = System.nanoTime();
+    long bytes = 0;
+
+    try (InputStream inputStream = part.getInputStream();
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+
+      ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+
+      int read;
+      while ((read = inputStream.read(buffer.array(), 0, buffer.capacity())) != -1) {
+        bytes += read;
+
+        if (maxSize > 0 && bytes > maxSize) {
+          break;
+        }
+
+        if (digest != null) {
+          digest.update(buffer.array(), 0, read);
+        }
+
+        buffer.limit(read);
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+        buffer.clear();
+      }
+
+    } catch (FileAlreadyExistsException e) {
+      throw e;
+
+    } catch (IOException | MessagingException | RuntimeException e) {
+      // don't leave a partial file, e.g. if the download is interrupted
+      Files.deleteIfExists(file);
+      throw e;
+    }
+
+    if (maxSize > 0 && bytes > maxSize) {
+      LOGGER.warn("skip attachment '{}' since it exceeds the maximum size of {} bytes", fileName, maxSize);
+
+      Files.deleteIfExists(file);
+      return -1;
+    }
+
+    long duration = Math.max(1, System.nanoTime() - startTime);
+    LOGGER.debug("downloaded attachment '{}' with {} bytes in {} ms ({} bytes/s)", fileName, bytes,
+        duration / 1_000_000, bytes * 1_000_000_000L / duration);
+
+    return bytes;
+  }
+
+  @Override
+  public String toString() {
+    return "FileAttachmentStore [maxSize=" + maxSize + ", bufferSize=" + bufferSize + "]";
+  }
+
+}
@@ -13,11 +13,17 @@
 package org.camunda.bpm.extension.mail.config;
 
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 
 /**
  * Configuration of the mail extension.
  *
+ * <p>
+ * The settings which were added later return their default value, so that
+ * existing implementations keep working.
  */
 public interface MailConfiguration {
 
@@ -44,6 +50,83 @@ public interface MailConfiguration {
    */
   String getPollFolder();
 
+  /**
+   * @return <code>true</code> if polling should only fetch the mails which
+   *         arrived since the last poll of the folder
+   */
+  default boolean pollIncremental() {
+    return false;
+  }
+
+  /**
+   * @return path to the file where the state of incremental polls is stored
+   *         in, or <code>null</code> to keep the state in memory
+   */
+  default String getPollStatePath() {
+    return null;
+  }
+
+  /**
+   * @return <code>true</code> if an incremental poll should also return the
+   *         changed and expunged mails, using CONDSTORE / QRESYNC
+   */
+  default boolean pollTrackChanges() {
+    return false;
+  }
+
+  /**
+   * @return maximum number of mails which are returned by a poll, or
+   *         <code>0</code> for all mails
+   */
+  default int getPollMaxResults() {
+    return 0;
+  }
+
+  /**
+   * @return if deleted mails are expunged: 'none', 'uid' or 'folder'
+   */
+  default String getDeleteExpungePolicy() {
+    return "none";
+  }
+
+  /**
+   * @return maximum number of mails which are deleted by one command, or
+   *         <code>0</code> for all mails at once
+   */
+  default int getDeleteBatchSize() {
+    return 1000;
+  }
+
+  /**
+   * @return maximum number of Message-IDs which are searched at once
+   */
+  default int getLookupChunkSize() {
+    return 100;
+  }
+
+  /**
+   * @return maximum number of cached UIDs of Message-IDs
+   */
+  default int getLookupCacheSize() {
+    return 10000;
+  }
+
+  /**
+   * @return items which are prefetched for all polled mails at once (e.g.
+   *         envelope, flags, content-info), can be empty
+   */
+  default List<String> getFetchItems() {
+    return Arrays.asList("envelope", "flags", "content-info", "uid");
+  }
+
+  /**
+   * @return names of additional headers which are prefetched for all polled
+   *         mails at once, can be empty
+   */
+  default List<String> getFetchHeaders() {
+    return Collections.emptyList();
+  }
+
   /**
    * @return default sender (i.e. from) for sending mails, can be <code>null</code>
    */
@@ -59,16 +142,149 @@ public interface MailConfiguration {
    */
   boolean downloadAttachments();
 
+  /**
+   * @return <code>true</code> if the content (i.e. text, html and attachments)
+   *         of polled mails should be loaded on first access instead of
+   *         polling
+   */
+  default boolean lazyContent() {
+    return false;
+  }
+
   /**
    * @return path to directory where the attachments should be stored in
    */
   String getAttachmentPath();
 
+  /**
+   * @return maximum size of an attachment in bytes which is downloaded,
+   *         <code>0</code> for unlimited size
+   */
+  default long getAttachmentMaxSize() {
+    return 0;
+  }
+
+  /**
+   * @return size of the buffer in bytes which is used for downloading an
+   *         attachment
+   */
+  default int getAttachmentBufferSize() {
+    return 8192;
+  }
+
+  /**
+   * @return <code>true</code> if the content of identical attachments should
+   *         be stored only once
+   */
+  default boolean deduplicateAttachments() {
+    return false;
+  }
+
+  /**
+   * @return duration after the stored content of deduplicated attachments is
+   *         removed when no attachment refers to it anymore
+   */
+  default Duration getAttachmentRetention() {
+    return Duration.ofHours(1);
+  }
+
+  /**
+   * @return duration between two cleanups of the deduplicated attachments
+   */
+  default Duration getAttachmentCleanupInterval() {
+    return Duration.ofHours(1);
+  }
+
+  /**
+   * @return number of threads which download the attachments of polled mails
+   *         in parallel, <code>0</code> to download them in the polling thread
+   */
+  default int getAttachmentDownloadThreads() {
+    return 0;
+  }
+
+  /**
+   * @return maximum number of mails which are waiting for the download of
+   *         their attachments, before the polling thread downloads them itself
+   */
+  default int getAttachmentDownloadQueueSize() {
+    return 100;
+  }
+
+  /**
+   * @return maximum duration to wait for the parallel download of the
+   *         attachments of one poll
+   */
+  default Duration getAttachmentDownloadTimeout() {
+    return Duration.ofMinutes(5);
+  }
+
   /**
    * @return default duration between two polling requests from notification service
    */
   Duration getNotificationLookupTime();
 
+  /**
+   * @return maximum interval between two polls of a folder if no new mails are
+   *         received
+   */
+  default Duration getNotificationLookupMaxTime() {
+    return Duration.ofMinutes(5);
+  }
+
+  /**
+   * @return number of threads which are shared by the subscriptions of a
+   *         notification service
+   */
+  default int getNotificationThreads() {
+    return 4;
+  }
+
+  /**
+   * @return duration after the IDLE command is re-issued, must be less than
+   *         the server timeout (usually 29 minutes)
+   */
+  default Duration getNotificationIdleKeepAlive() {
+    return Duration.ofMinutes(25);
+  }
+
+  /**
+   * @return delay before the first attempt to reconnect after a failure
+   */
+  default Duration getNotificationReconnectInitialDelay() {
+    return Duration.ofSeconds(1);
+  }
+
+  /**
+   * @return maximum delay between two attempts to reconnect
+   */
+  default Duration getNotificationReconnectMaxDelay() {
+    return Duration.ofMinutes(5);
+  }
+
+  /**
+   * @return number of threads which pass received mails to the handlers
+   */
+  default int getNotificationDispatchThreads() {
+    return 1;
+  }
+
+  /**
+   * @return maximum number of notifications per dispatch thread which are
+   *         waiting to be passed to the handlers
+   */
+  default int getNotificationDispatchQueueSize() {
+    return 100;
+  }
+
+  /**
+   * @return policy if the dispatch queue is full: "block", "drop-oldest" or
+   *         "caller-runs"
+   */
+  default String getNotificationDispatchPolicy() {
+    return "block";
+  }
+
   /**
    * @return the copy mode of "copy" or "move"
    */
@@ -90,4 +306,108 @@ public interface MailConfiguration {
    */
   String getSuppportUid();
 
-}
\ No newline at end of file
+  /**
+   * @return maximum number of mails which are copied or moved with one command
+   */
+  default int getCopyBatchSize() {
+    return 1000;
+  }
+
+  /**
+   * @return the metrics which are recorded: "none", "jmx", "micrometer" or the
+   *         class name of a custom implementation
+   */
+  default String getMetrics() {
+    return "none";
+  }
+
+  /**
+   * @return maximum number of connected stores which are used in parallel
+   */
+  default int getStorePoolSize() {
+    return 5;
+  }
+
+  /**
+   * @return minimum number of idle stores which are kept connected
+   */
+  default int getStorePoolMinIdle() {
+    return 1;
+  }
+
+  /**
+   * @return duration after an idle store is closed
+   */
+  default Duration getStorePoolIdleTime() {
+    return Duration.ofMinutes(5);
+  }
+
+  /**
+   * @return maximum duration to wait for a free store if all are in use
+   */
+  default Duration getStorePoolBorrowTimeout() {
+    return Duration.ofSeconds(30);
+  }
+
+  /**
+   * @return maximum number of connected transports which are used in parallel
+   */
+  default int getTransportPoolSize() {
+    return 3;
+  }
+
+  /**
+   * @return maximum number of messages which are sent over one transport
+   *         before it is closed, <code>0</code> for unlimited messages
+   */
+  default int getTransportPoolMaxMessages() {
+    return 100;
+  }
+
+  /**
+   * @return duration after an idle transport is closed
+   */
+  default Duration getTransportPoolIdleTime() {
+    return Duration.ofMinutes(1);
+  }
+
+  /**
+   * @return maximum duration to wait for a free transport if all are in use
+   */
+  default Duration getTransportPoolBorrowTimeout() {
+    return Duration.ofSeconds(30);
+  }
+
+  /**
+   * @return maximum number of messages which are sent per second,
+   *         <code>0</code> for an unlimited rate
+   */
+  default double getSendRate() {
+    return 0;
+  }
+
+  /**
+   * @return maximum number of messages which are sent at once if the rate
+   *         limit was not reached before
+   */
+  default int getSendBurst() {
+    return 10;
+  }
+
+  /**
+   * @return number of retries if the mail server rejects a message
+   *         temporarily (e.g. 421 or 451)
+   */
+  default int getSendRetries() {
+    return 3;
+  }
+
+  /**
+   * @return delay before the first retry of a temporarily rejected message,
+   *         doubled for each further retry
+   */
+  default Duration getSendRetryDelay() {
+    return Duration.ofSeconds(1);
+  }
+
+}
@@ -20,8 +20,11 @@ import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,16 +44,94 @@ public class PropertiesMailConfiguration implements MailConfiguration {
   public static final String PROPERTY_SRC_FOLDER = "mail.copy.srcFolder";
   public static final String PROPERTY_COPY_MODE = "mail.copy.mode";
   public static final String PROPERTY_SUPPORT_UID = "mail.copy.supportUid";
+  public static final String PROPERTY_COPY_BATCH_SIZE = "mail.copy.batch.size";
+  public static final String DEFAULT_COPY_BATCH_SIZE = "1000";
+  public static final String PROPERTY_METRICS = "mail.metrics";
+  public static final String DEFAULT_METRICS = "none";
   public static final String PROPERTY_POLL_FOLDER = "mail.poll.folder";
+  public static final String PROPERTY_POLL_INCREMENTAL = "mail.poll.incremental";
+  public static final String PROPERTY_POLL_STATE_PATH = "mail.poll.state.path";
+  public static final String PROPERTY_POLL_TRACK_CHANGES = "mail.poll.track.changes";
+  public static final String PROPERTY_POLL_MAX_RESULTS = "mail.poll.max.results";
+  public static final String DEFAULT_POLL_MAX_RESULTS = "0";
+  public static final String PROPERTY_DELETE_EXPUNGE = "mail.delete.expunge";
+  public static final String DEFAULT_DELETE_EXPUNGE = "none";
+  public static final String PROPERTY_DELETE_BATCH_SIZE = "mail.delete.batch.size";
+  public static final String DEFAULT_DELETE_BATCH_SIZE = "1000";
+  public static final String PROPERTY_LOOKUP_CHUNK_SIZE = "mail.lookup.chunk.size";
+  public static final String DEFAULT_LOOKUP_CHUNK_SIZE = "100";
+  public static final String PROPERTY_LOOKUP_CACHE_SIZE = "mail.lookup.cache.size";
+  public static final String DEFAULT_LOOKUP_CACHE_SIZE = "10000";
+  public static final String PROPERTY_FETCH_ITEMS = "mail.fetch.items";
+  public static final String DEFAULT_FETCH_ITEMS = "envelope,flags,content-info,uid";
+  public static final String PROPERTY_FETCH_HEADERS = "mail.fetch.headers";
   public static final String PROPERTY_SENDER = "mail.sender";
   public static final String PROPERTY_SENDER_ALIAS = "mail.sender.alias";
 
   public static final String PROPERTY_ATTACHMENT_DOWNLOAD = "mail.attachment.download";
+  public static final String PROPERTY_LAZY_CONTENT = "mail.content.lazy";
   public static final String PROPERTY_ATTACHMENT_PATH = "mail.attachment.path";
   public static final String DEFAULT_ATTACHMENT_PATH = "attachments";
+  public static final String PROPERTY_ATTACHMENT_MAX_SIZE = "mail.attachment.max.size";
+  public static final String DEFAULT_ATTACHMENT_MAX_SIZE = "0";
+  public static final String PROPERTY_ATTACHMENT_BUFFER_SIZE = "mail.attachment.buffer.size";
+  public static final String DEFAULT_ATTACHMENT_BUFFER_SIZE = "8192";
+  public static final String PROPERTY_ATTACHMENT_DEDUPLICATE = "mail.attachment.deduplicate";
+  public static final String PROPERTY_ATTACHMENT_RETENTION = "mail.attachment.retention";
+  public static final String DEFAULT_ATTACHMENT_RETENTION = Duration.ofHours(1).toString();
+  public static final String PROPERTY_ATTACHMENT_CLEANUP_INTERVAL = "mail.attachment.cleanup.interval";
+  public static final String DEFAULT_ATTACHMENT_CLEANUP_INTERVAL = Duration.ofHours(1).toString();
+  public static final String PROPERTY_ATTACHMENT_DOWNLOAD_THREADS = "mail.attachment.download.threads";
+  public static final String DEFAULT_ATTACHMENT_DOWNLOAD_THREADS = "0";
+  public static final String PROPERTY_ATTACHMENT_DOWNLOAD_QUEUE_SIZE = "mail.attachment.download.queue.size";
+  public static final String DEFAULT_ATTACHMENT_DOWNLOAD_QUEUE_SIZE = "100";
+  public static final String PROPERTY_ATTACHMENT_DOWNLOAD_TIMEOUT = "mail.attachment.download.timeout";
+  public static final String DEFAULT_ATTACHMENT_DOWNLOAD_TIMEOUT = Duration.ofMinutes(5).toString();
 
   public static final String PROPERTY_NOTIFICATION_LOOKUP_TIME = "mail.notification.lookup.time";
   public static final String DEFAULT_NOTIFICATION_LOOKUP_TIME = Duration.ofSeconds(60).toString();
+  public static final String PROPERTY_NOTIFICATION_LOOKUP_MAX_TIME = "mail.notification.lookup.max.time";
+  public static final String DEFAULT_NOTIFICATION_LOOKUP_MAX_TIME = Duration.ofMinutes(5).toString();
+  public static final String PROPERTY_NOTIFICATION_THREADS = "mail.notification.threads";
+  public static final String DEFAULT_NOTIFICATION_THREADS = "4";
+  public static final String PROPERTY_NOTIFICATION_IDLE_KEEP_ALIVE = "mail.notification.idle.keepalive";
+  public static final String DEFAULT_NOTIFICATION_IDLE_KEEP_ALIVE = Duration.ofMinutes(25).toString();
+  public static final String PROPERTY_NOTIFICATION_RECONNECT_INITIAL_DELAY = "mail.notification.reconnect.initial.delay";
+  public static final String DEFAULT_NOTIFICATION_RECONNECT_INITIAL_DELAY = Duration.ofSeconds(1).toString();
+  public static final String PROPERTY_NOTIFICATION_RECONNECT_MAX_DELAY = "mail.notification.reconnect.max.delay";
+  public static final String DEFAULT_NOTIFICATION_RECONNECT_MAX_DELAY = Duration.ofMinutes(5).toString();
+  public static final String PROPERTY_NOTIFICATION_DISPATCH_THREADS = "mail.notification.dispatch.threads";
+  public static final String DEFAULT_NOTIFICATION_DISPATCH_THREADS = "1";
+  public static final String PROPERTY_NOTIFICATION_DISPATCH_QUEUE_SIZE = "mail.notification.dispatch.queue.size";
+  public static final String DEFAULT_NOTIFICATION_DISPATCH_QUEUE_SIZE = "100";
+  public static final String PROPERTY_NOTIFICATION_DISPATCH_POLICY = "mail.notification.dispatch.policy";
+  public static final String DEFAULT_NOTIFICATION_DISPATCH_POLICY = "block";
+
+  public static final String PROPERTY_STORE_POOL_SIZE = "mail.store.pool.size";
+  public static final String DEFAULT_STORE_POOL_SIZE = "5";
+  public static final String PROPERTY_STORE_POOL_MIN_IDLE = "mail.store.pool.min.idle";
+  public static final String DEFAULT_STORE_POOL_MIN_IDLE = "1";
+  public static final String PROPERTY_STORE_POOL_IDLE_TIME = "mail.store.pool.idle.time";
+  public static final String DEFAULT_STORE_POOL_IDLE_TIME = Duration.ofMinutes(5).toString();
+  public static final String PROPERTY_STORE_POOL_BORROW_TIMEOUT = "mail.store.pool.borrow.timeout";
+  public static final String DEFAULT_STORE_POOL_BORROW_TIMEOUT = Duration.ofSeconds(30).toString();
+
+  public static final String PROPERTY_TRANSPORT_POOL_SIZE = "mail.transport.pool.size";
+  public static final String DEFAULT_TRANSPORT_POOL_SIZE = "3";
+  public static final String PROPERTY_TRANSPORT_POOL_MAX_MESSAGES = "mail.transport.pool.max.messages";
+  public static final String DEFAULT_TRANSPORT_POOL_MAX_MESSAGES = "100";
+  public static final String PROPERTY_TRANSPORT_POOL_IDLE_TIME = "mail.transport.pool.idle.time";
+  public static final String DEFAULT_TRANSPORT_POOL_IDLE_TIME = Duration.ofMinutes(1).toString();
+  public static final String PROPERTY_TRANSPORT_POOL_BORROW_TIMEOUT = "mail.transport.pool.borrow.timeout";
+  public static final String DEFAULT_TRANSPORT_POOL_BORROW_TIMEOUT = Duration.ofSeconds(30).toString();
+  public static final String PROPERTY_SEND_RATE = "mail.send.rate";
+  public static final String DEFAULT_SEND_RATE = "0";
+  public static final String PROPERTY_SEND_BURST = "mail.send.burst";
+  public static final String DEFAULT_SEND_BURST = "10";
+  public static final String PROPERTY_SEND_RETRIES = "mail.send.retries";
+  public static final String DEFAULT_SEND_RETRIES = "3";
+  public static final String PROPERTY_SEND_RETRY_DELAY = "mail.send.retry.delay";
+  public static final String DEFAULT_SEND_RETRY_DELAY = Duration.ofSeconds(1).toString();
 
   protected Properties properties = null;
   protected String path = null;
@@ -92,11 +173,80 @@ public class PropertiesMailConfiguration implements MailConfiguration {
 	  return getProperties().getProperty(PROPERTY_SUPPORT_UID);
   }
 
+  @Override
+  public int getCopyBatchSize() {
+    String batchSize = getProperties().getProperty(PROPERTY_COPY_BATCH_SIZE, DEFAULT_COPY_BATCH_SIZE);
+    return Integer.parseInt(batchSize);
+  }
+
+  @Override
+  public String getMetrics() {
+    return getProperties().getProperty(PROPERTY_METRICS, DEFAULT_METRICS);
+  }
+
   @Override
   public String getPollFolder() {
     return getProperties().getProperty(PROPERTY_POLL_FOLDER);
   }
 
+  @Override
+  public boolean pollIncremental() {
+    String incremental = getProperties().getProperty(PROPERTY_POLL_INCREMENTAL);
+    return Boolean.parseBoolean(incremental);
+  }
+
+  @Override
+  public String getPollStatePath() {
+    return getProperties().getProperty(PROPERTY_POLL_STATE_PATH);
+  }
+
+  @Override
+  public boolean pollTrackChanges() {
+    String trackChanges = getProperties().getProperty(PROPERTY_POLL_TRACK_CHANGES);
+    return Boolean.parseBoolean(trackChanges);
+  }
+
+  @Override
+  public int getPollMaxResults() {
+    String maxResults = getProperties().getProperty(PROPERTY_POLL_MAX_RESULTS, DEFAULT_POLL_MAX_RESULTS);
+    return Integer.parseInt(maxResults);
+  }
+
+  @Override
+  public String getDeleteExpungePolicy() {
+    return getProperties().getProperty(PROPERTY_DELETE_EXPUNGE, DEFAULT_DELETE_EXPUNGE);
+  }
+
+  @Override
+  public int getDeleteBatchSize() {
+    String batchSize = getProperties().getProperty(PROPERTY_DELETE_BATCH_SIZE, DEFAULT_DELETE_BATCH_SIZE);
+    return Integer.parseInt(batchSize);
+  }
+
+  @Override
+  public int getLookupChunkSize() {
+    String chunkSize = getProperties().getProperty(PROPERTY_LOOKUP_CHUNK_SIZE, DEFAULT_LOOKUP_CHUNK_SIZE);
+    return Integer.parseInt(chunkSize);
+  }
+
+  @Override
+  public int getLookupCacheSize() {
+    String cacheSize = getProperties().getProperty(PROPERTY_LOOKUP_CACHE_SIZE, DEFAULT_LOOKUP_CACHE_SIZE);
+    return Integer.parseInt(cacheSize);
+  }
+
+  @Override
+  public List<String> getFetchItems() {
+    String items = getProperties().getProperty(PROPERTY_FETCH_ITEMS, DEFAULT_FETCH_ITEMS);
+    return splitList(items);
+  }
+
+  @Override
+  public List<String> getFetchHeaders() {
+    String headers = getProperties().getProperty(PROPERTY_FETCH_HEADERS, "");
+    return splitList(headers);
+  }
+
   @Override
   public String getSender() {
     return getProperties().getProperty(PROPERTY_SENDER);
@@ -113,17 +263,190 @@ public class PropertiesMailConfiguration implements MailConfiguration {
     return Boolean.parseBoolean(downloadAttachments);
   }
 
+  @Override
+  public boolean lazyContent() {
+    String lazyContent = getProperties().getProperty(PROPERTY_LAZY_CONTENT);
+    return Boolean.parseBoolean(lazyContent);
+  }
+
   @Override
   public String getAttachmentPath() {
     return getProperties().getProperty(PROPERTY_ATTACHMENT_PATH, DEFAULT_ATTACHMENT_PATH);
   }
 
+  @Override
+  public long getAttachmentMaxSize() {
+    String maxSize = getProperties().getProperty(PROPERTY_ATTACHMENT_MAX_SIZE, DEFAULT_ATTACHMENT_MAX_SIZE);
+    return Long.parseLong(maxSize);
+  }
+
+  @Override
+  public int getAttachmentBufferSize() {
+    String bufferSize = getProperties().getProperty(PROPERTY_ATTACHMENT_BUFFER_SIZE, DEFAULT_ATTACHMENT_BUFFER_SIZE);
+    return Integer.parseInt(bufferSize);
+  }
+
+  @Override
+  public boolean deduplicateAttachments() {
+    String deduplicate = getProperties().getProperty(PROPERTY_ATTACHMENT_DEDUPLICATE);
+    return Boolean.parseBoolean(deduplicate);
+  }
+
+  @Override
+  public Duration getAttachmentRetention() {
+    String retention = getProperties().getProperty(PROPERTY_ATTACHMENT_RETENTION, DEFAULT_ATTACHMENT_RETENTION);
+    return Duration.parse(retention);
+  }
+
+  @Override
+  public Duration getAttachmentCleanupInterval() {
+    String interval = getProperties().getProperty(PROPERTY_ATTACHMENT_CLEANUP_INTERVAL, DEFAULT_ATTACHMENT_CLEANUP_INTERVAL);
+    return Duration.parse(interval);
+  }
+
+  @Override
+  public int getAttachmentDownloadThreads() {
+    String threads = getProperties().getProperty(PROPERTY_ATTACHMENT_DOWNLOAD_THREADS, DEFAULT_ATTACHMENT_DOWNLOAD_THREADS);
+    return Integer.parseInt(threads);
+  }
+
+  @Override
+  public int getAttachmentDownloadQueueSize() {
+    String queueSize = getProperties().getProperty(PROPERTY_ATTACHMENT_DOWNLOAD_QUEUE_SIZE, DEFAULT_ATTACHMENT_DOWNLOAD_QUEUE_SIZE);
+    return Integer.parseInt(queueSize);
+  }
+
+  @Override
+  public Duration getAttachmentDownloadTimeout() {
+    String timeout = getProperties().getProperty(PROPERTY_ATTACHMENT_DOWNLOAD_TIMEOUT, DEFAULT_ATTACHMENT_DOWNLOAD_TIMEOUT);
+    return Duration.parse(timeout);
+  }
+
   @Override
   public Duration getNotificationLookupTime() {
     String looukupTime = getProperties().getProperty(PROPERTY_NOTIFICATION_LOOKUP_TIME, DEFAULT_NOTIFICATION_LOOKUP_TIME);
     return Duration.parse(looukupTime);
   }
 
+  @Override
+  public Duration getNotificationLookupMaxTime() {
+    String lookupTime = getProperties().getProperty(PROPERTY_NOTIFICATION_LOOKUP_MAX_TIME, DEFAULT_NOTIFICATION_LOOKUP_MAX_TIME);
+    return Duration.parse(lookupTime);
+  }
+
+  @Override
+  public int getNotificationThreads() {
+    String threads = getProperties().getProperty(PROPERTY_NOTIFICATION_THREADS, DEFAULT_NOTIFICATION_THREADS);
+    return Integer.parseInt(threads);
+  }
+
+  @Override
+  public Duration getNotificationIdleKeepAlive() {
+    String keepAlive = getProperties().getProperty(PROPERTY_NOTIFICATION_IDLE_KEEP_ALIVE, DEFAULT_NOTIFICATION_IDLE_KEEP_ALIVE);
+    return Duration.parse(keepAlive);
+  }
+
+  @Override
+  public Duration getNotificationReconnectInitialDelay() {
+    String delay = getProperties().getProperty(PROPERTY_NOTIFICATION_RECONNECT_INITIAL_DELAY, DEFAULT_NOTIFICATION_RECONNECT_INITIAL_DELAY);
+    return Duration.parse(delay);
+  }
+
+  @Override
+  public Duration getNotificationReconnectMaxDelay() {
+    String delay = getProperties().getProperty(PROPERTY_NOTIFICATION_RECONNECT_MAX_DELAY, DEFAULT_NOTIFICATION_RECONNECT_MAX_DELAY);
+    return Duration.parse(delay);
+  }
+
+  @Override
+  public int getNotificationDispatchThreads() {
+    String threads = getProperties().getProperty(PROPERTY_NOTIFICATION_DISPATCH_THREADS, DEFAULT_NOTIFICATION_DISPATCH_THREADS);
+    return Integer.parseInt(threads);
+  }
+
+  @Override
+  public int getNotificationDispatchQueueSize() {
+    String queueSize = getProperties().getProperty(PROPERTY_NOTIFICATION_DISPATCH_QUEUE_SIZE, DEFAULT_NOTIFICATION_DISPATCH_QUEUE_SIZE);
+    return Integer.parseInt(queueSize);
+  }
+
+  @Override
+  public String getNotificationDispatchPolicy() {
+    return getProperties().getProperty(PROPERTY_NOTIFICATION_DISPATCH_POLICY, DEFAULT_NOTIFICATION_DISPATCH_POLICY);
+  }
+
+  @Override
+  public int getStorePoolSize() {
+    String size = getProperties().getProperty(PROPERTY_STORE_POOL_SIZE, DEFAULT_STORE_POOL_SIZE);
+    return Integer.parseInt(size);
+  }
+
+  @Override
+  public int getStorePoolMinIdle() {
+    String minIdle = getProperties().getProperty(PROPERTY_STORE_POOL_MIN_IDLE, DEFAULT_STORE_POOL_MIN_IDLE);
+    return Integer.parseInt(minIdle);
+  }
+
+  @Override
+  public Duration getStorePoolIdleTime() {
+    String idleTime = getProperties().getProperty(PROPERTY_STORE_POOL_IDLE_TIME, DEFAULT_STORE_POOL_IDLE_TIME);
+    return Duration.parse(idleTime);
+  }
+
+  @Override
+  public Duration getStorePoolBorrowTimeout() {
+    String borrowTimeout = getProperties().getProperty(PROPERTY_STORE_POOL_BORROW_TIMEOUT, DEFAULT_STORE_POOL_BORROW_TIMEOUT);
+    return Duration.parse(borrowTimeout);
+  }
+
+  @Override
+  public int getTransportPoolSize() {
+    String size = getProperties().getProperty(PROPERTY_TRANSPORT_POOL_SIZE, DEFAULT_TRANSPORT_POOL_SIZE);
+    return Integer.parseInt(size);
+  }
+
+  @Override
+  public int getTransportPoolMaxMessages() {
+    String maxMessages = getProperties().getProperty(PROPERTY_TRANSPORT_POOL_MAX_MESSAGES, DEFAULT_TRANSPORT_POOL_MAX_MESSAGES);
+    return Integer.parseInt(maxMessages);
+  }
+
+  @Override
+  public Duration getTransportPoolIdleTime() {
+    String idleTime = getProperties().getProperty(PROPERTY_TRANSPORT_POOL_IDLE_TIME, DEFAULT_TRANSPORT_POOL_IDLE_TIME);
+    return Duration.parse(idleTime);
+  }
+
+  @Override
+  public Duration getTransportPoolBorrowTimeout() {
+    String borrowTimeout = getProperties().getProperty(PROPERTY_TRANSPORT_POOL_BORROW_TIMEOUT, DEFAULT_TRANSPORT_POOL_BORROW_TIMEOUT);
+    return Duration.parse(borrowTimeout);
+  }
+
+  @Override
+  public double getSendRate() {
+    String rate = getProperties().getProperty(PROPERTY_SEND_RATE, DEFAULT_SEND_RATE);
+    return Double.parseDouble(rate);
+  }
+
+  @Override
+  public int getSendBurst() {
+    String burst = getProperties().getProperty(PROPERTY_SEND_BURST, DEFAULT_SEND_BURST);
+    return Integer.parseInt(burst);
+  }
+
+  @Override
+  public int getSendRetries() {
+    String retries = getProperties().getProperty(PROPERTY_SEND_RETRIES, DEFAULT_SEND_RETRIES);
+    return Integer.parseInt(retries);
+  }
+
+  @Override
+  public Duration getSendRetryDelay() {
+    String retryDelay = getProperties().getProperty(PROPERTY_SEND_RETRY_DELAY, DEFAULT_SEND_RETRY_DELAY);
+    return Duration.parse(retryDelay);
+  }
+
   @Override
   public Properties getProperties() {
     if (properties == null) {
@@ -132,6 +455,13 @@ public class PropertiesMailConfiguration implements MailConfiguration {
     return properties;
   }
 
+  protected List<String> splitList(String value) {
+    return Arrays.stream(value.split(","))
+        .map(String::trim)
+        .filter(s -> !s.isEmpty())
+        .collect(Collectors.toList());
+  }
+
   protected Properties loadProperties() {
     Properties properties = new Properties();
     String path = getPropertiesPath();
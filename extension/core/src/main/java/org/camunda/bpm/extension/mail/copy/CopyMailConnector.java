@@ -14,14 +14,10 @@ package org.camunda.bpm.extension.mail.copy;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
 
 import javax.mail.Folder;
 import javax.mail.Message;
 import javax.mail.MessagingException;
-import javax.mail.search.MessageIDTerm;
-import javax.mail.search.OrTerm;
 
 import org.camunda.bpm.extension.mail.EmptyResponse;
 import org.camunda.bpm.extension.mail.MailConnectorException;
@@ -29,7 +25,10 @@ import org.camunda.bpm.extension.mail.config.MailConfiguration;
 import org.camunda.bpm.extension.mail.config.MailConfigurationFactory;
 import org.camunda.bpm.extension.mail.dto.Mail;
 import org.camunda.bpm.extension.mail.service.MailService;
+import org.camunda.bpm.extension.mail.service.MessageLookup;
 import org.camunda.bpm.extension.mail.service.MailServiceFactory;
+import org.camunda.bpm.extension.mail.trace.MailTracer;
+import org.camunda.bpm.extension.mail.trace.Span;
 import org.camunda.connect.impl.AbstractConnector;
 import org.camunda.connect.spi.ConnectorResponse;
 import org.slf4j.Logger;
@@ -56,39 +55,59 @@ public class CopyMailConnector extends AbstractConnector<CopyMailRequest, EmptyR
   public ConnectorResponse execute(CopyMailRequest request) {
     MailService mailService = MailServiceFactory.getService(getConfiguration());
 
+    long start = System.nanoTime();
+    boolean success = false;
+    Span trace = MailTracer.startTrace(CONNECTOR_ID, requestInterceptors);
     try {
 
       Folder srcFolder = mailService.ensureOpenFolder(request.getSrcFolder());
-      List<Message> messages = Arrays.asList(getMessages(srcFolder, request));
+      List<Message> messages = Arrays.asList(getMessages(srcFolder, request, mailService.getMessageLookup()));
 
       if (messages.size() > 0) {
           CopyMailInvocation invocation = new CopyMailInvocation(messages, request, requestInterceptors, mailService);
 
           @SuppressWarnings("unchecked")
-		  List<Message> newMessages = (List<Message>) invocation.proceed();
+          List<Mail> copiedMails = (List<Mail>) invocation.proceed();
 
-          return new CopyMailResponse(newMessages, mailService);
+          success = true;
+          mailService.getMetrics().countMessages(CONNECTOR_ID, messages.size());
+
+          // the store is released after the response is collected
+          return new CopyMailResponse(mailService, copiedMails);
       }
 
+      mailService.flush();
+
+      success = true;
       return new EmptyResponse();
       
     } catch (Exception e) {
+      mailService.flush();
+
       throw new MailConnectorException("failed to copy mails", e);
+
+    } finally {
+      mailService.getMetrics().recordInvocation(CONNECTOR_ID, System.nanoTime() - start, success);
+      trace.close();
     }
   }
 
-  protected Message[] getMessages(Folder folder, CopyMailRequest request) throws MessagingException {
+  protected Message[] getMessages(Folder folder, CopyMailRequest request, MessageLookup lookup) throws MessagingException {
 
     if (request.getMails() != null) {
       LOGGER.debug("copy mails: {}", request.getMails());
 
-      List<String> messageIds = collectMessageIds(request.getMails());
-      return getMessagesByIds(folder, messageIds);
+      return lookup.getMessagesByMails(folder, request.getMails());
+
+    } else if (request.getUids() != null) {
+      LOGGER.debug("copy mails with uids: {}", request.getUids());
+
+      return lookup.getMessagesByUids(folder, request.getUidValidity(), request.getUids());
 
     } else if (request.getMessageIds() != null) {
       LOGGER.debug("copy mails with message ids: {}", request.getMessageIds());
 
-      return getMessagesByIds(folder, request.getMessageIds());
+      return lookup.getMessagesByIds(folder, request.getMessageIds());
 
     } else {
       LOGGER.debug("copy mails with message numbers: {}", request.getMessageNumbers());
@@ -98,25 +117,6 @@ public class CopyMailConnector extends AbstractConnector<CopyMailRequest, EmptyR
     }
   }
 
-  protected List<String> collectMessageIds(List<Mail> mails) {
-
-    return mails.stream()
-        .map(m -> Optional.ofNullable(m.getMessageId()).orElse(""))
-        .filter(id -> !id.isEmpty())
-        .collect(Collectors.toList());
-  }
-
-  protected Message[] getMessagesByIds(Folder folder, List<String> messageIds) throws MessagingException {
-
-    List<MessageIDTerm> idTerms = messageIds.stream()
-        .map(MessageIDTerm::new)
-        .collect(Collectors.toList());
-
-    OrTerm searchTerm = new OrTerm(idTerms.toArray(new MessageIDTerm[idTerms.size()]));
-
-    return folder.search(searchTerm);
-  }
-
   protected MailConfiguration getConfiguration() {
     if (configuration == null) {
       configuration = MailConfigurationFactory.getConfiguration();
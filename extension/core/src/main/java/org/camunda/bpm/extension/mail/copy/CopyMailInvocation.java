@@ -12,82 +12,230 @@
  */
 package org.camunda.bpm.extension.mail.copy;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import javax.mail.Flags;
 import javax.mail.Flags.Flag;
 import javax.mail.Folder;
 import javax.mail.Message;
 import javax.mail.MessagingException;
+import javax.mail.Store;
 
+import org.camunda.bpm.extension.mail.dto.Mail;
 import org.camunda.bpm.extension.mail.service.MailService;
+import org.camunda.bpm.extension.mail.trace.MailTracer;
+import org.camunda.bpm.extension.mail.trace.Span;
 import org.camunda.connect.impl.AbstractRequestInvocation;
 import org.camunda.connect.spi.ConnectorRequestInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import com.sun.mail.imap.AppendUID;
+import com.sun.mail.iap.Argument;
+import com.sun.mail.iap.Response;
+import com.sun.mail.imap.CopyUID;
 import com.sun.mail.imap.IMAPFolder;
-
+import com.sun.mail.imap.IMAPStore;
+import com.sun.mail.imap.protocol.BASE64MailboxEncoder;
+import com.sun.mail.imap.protocol.UIDSet;
+
+/**
+ * Copies or moves the messages with one UID COPY or UID MOVE command per batch
+ * (the UIDs are compressed into ranges). If the server supports MOVE then the
+ * messages are moved natively, otherwise they are copied and marked as
+ * deleted. If the server supports UIDPLUS then the copied mails are built from
+ * the COPYUID response without fetching them from the destination folder.
+ */
 public class CopyMailInvocation extends AbstractRequestInvocation<List<Message>> {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(CopyMailInvocation.class);
+
+  private static final Pattern COPYUID_PATTERN = Pattern.compile("\\[COPYUID (\\d+) ([0-9:,]+) ([0-9:,]+)\\]", Pattern.CASE_INSENSITIVE);
+
   protected final MailService mailService;
+  protected final int batchSize;
 
   public CopyMailInvocation(List<Message> messages, CopyMailRequest request, List<ConnectorRequestInterceptor> requestInterceptors, MailService mailService) {
+    this(messages, request, requestInterceptors, mailService, mailService.getConfiguration().getCopyBatchSize());
+  }
+
+  /**
+   * @param batchSize
+   *          maximum number of messages per command, or <code>0</code> for
+   *          all messages at once
+   */
+  public CopyMailInvocation(List<Message> messages, CopyMailRequest request, List<ConnectorRequestInterceptor> requestInterceptors, MailService mailService,
+      int batchSize) {
     super(messages, request, requestInterceptors);
     this.mailService = mailService;
+    this.batchSize = batchSize;
   }
 
+  /**
+   * @return the copied mails, or the given mails if they are copied but the
+   *         server doesn't support UIDPLUS
+   */
   @Override
   public Object invokeTarget() throws Exception {
 
     CopyMailRequest request = (CopyMailRequest) getRequest();
-	String srcFolderName  = request.getSrcFolder();
-	String destFolderName = request.getDestFolder();
-
-	Message[] newMessages = null;
-	if ("copy".equalsIgnoreCase(request.getSupportUid()) ) {
-		IMAPFolder srcFolder  = (IMAPFolder)mailService.ensureOpenFolder(srcFolderName);
-		IMAPFolder destFolder = (IMAPFolder)mailService.ensureOpenFolder(destFolderName);
-
-		AppendUID[] newMsgUID = srcFolder.copyUIDMessages(target.toArray(new Message[0]), destFolder);
-		newMessages = getNewMessages(newMsgUID, destFolder);
-
-		if ("move".equalsIgnoreCase(request.getMode())) {
-			for (Message message : target) {
-				message.setFlag(Flag.DELETED, true);
-			}
-		}
-		
-	} else if ("move".equalsIgnoreCase(request.getSupportUid()) ) {
-		IMAPFolder srcFolder  = (IMAPFolder)mailService.ensureOpenFolder(srcFolderName);
-		IMAPFolder destFolder = (IMAPFolder)mailService.ensureOpenFolder(destFolderName);
-
-		AppendUID[] newMsgUID = srcFolder.moveUIDMessages(target.toArray(new Message[0]), destFolder);
-		newMessages = getNewMessages(newMsgUID, destFolder);
-		
-	} else {
-		Folder srcFolder  = mailService.ensureOpenFolder(srcFolderName);
-		Folder destFolder = mailService.ensureOpenFolder(destFolderName);
-		srcFolder.copyMessages(target.toArray(new Message[0]), destFolder);
-
-		newMessages = target.toArray(new Message[0]);
-		if ("move".equalsIgnoreCase(request.getMode())) {
-			for (Message message : target) {
-				message.setFlag(Flag.DELETED, true);
-			}
-			newMessages = new Message[0];
-		}
-	}
-	
-    return Arrays.asList(newMessages);
+    String destFolderName = request.getDestFolder();
+
+    Folder srcFolder = mailService.ensureOpenFolder(request.getSrcFolder());
+    Message[] messages = target.toArray(new Message[target.size()]);
+
+    // 'supportUid' enforces the UID commands, even if the server doesn't announce the capabilities
+    String supportUid = request.getSupportUid();
+    boolean move = "move".equalsIgnoreCase(request.getMode()) || "move".equalsIgnoreCase(supportUid);
+    boolean nativeMove = move && ("move".equalsIgnoreCase(supportUid) || supportsCapability(srcFolder, "MOVE"));
+    boolean uidPlus = "copy".equalsIgnoreCase(supportUid) || "move".equalsIgnoreCase(supportUid) || supportsCapability(srcFolder, "UIDPLUS");
+
+    if (!(srcFolder instanceof IMAPFolder)) {
+      Folder destFolder = mailService.ensureOpenFolder(destFolderName);
+      try (Span span = MailTracer.startSpan("imap.copy").attribute("folder", srcFolder.getFullName()).attribute("messages", messages.length)) {
+        srcFolder.copyMessages(messages, destFolder);
+      }
+
+      if (move) {
+        setDeleted(srcFolder, messages);
+        return new ArrayList<Mail>();
+      }
+      return toMails(target);
+    }
+
+    IMAPFolder imapFolder = (IMAPFolder) srcFolder;
+
+    // fetch the UIDs and the envelopes at once, the moved messages are expunged afterwards
+    mailService.prefetch(target);
+
+    Map<Long, Mail> mailsByUid = new LinkedHashMap<>();
+    if (uidPlus || !move) {
+      for (Mail mail : toMails(target)) {
+        mailsByUid.put(mail.getUid(), mail);
+      }
+    }
+
+    long[] uids = new long[messages.length];
+    for (int i = 0; i < messages.length; i++) {
+      uids[i] = imapFolder.getUID(messages[i]);
+    }
+    Arrays.sort(uids);
+
+    List<Mail> copiedMails = new ArrayList<>();
+    boolean copyUidReturned = false;
+
+    int size = batchSize > 0 ? batchSize : uids.length;
+    for (int i = 0; i < uids.length; i += size) {
+      long[] batch = Arrays.copyOfRange(uids, i, Math.min(i + size, uids.length));
+
+      CopyUID copyUid = copy(imapFolder, batch, destFolderName, nativeMove);
+      if (copyUid != null) {
+        copyUidReturned = true;
+        copiedMails.addAll(toCopiedMails(copyUid, mailsByUid, destFolderName));
+      }
+    }
+
+    if (move && !nativeMove) {
+      setDeleted(srcFolder, messages);
+    }
+
+    if (copyUidReturned) {
+      return copiedMails;
+    } else if (move) {
+      // the moved mails can't be referenced without COPYUID
+      return new ArrayList<Mail>();
+    } else {
+      return new ArrayList<>(mailsByUid.values());
+    }
+  }
+
+  /**
+   * Copies or moves the messages with the given UIDs by one command.
+   *
+   * @return the UIDs of the copied messages, or <code>null</code> if the
+   *         server doesn't return them (i.e. doesn't support UIDPLUS)
+   */
+  protected CopyUID copy(IMAPFolder folder, long[] uids, String destFolderName, boolean move) throws MessagingException {
+    String command = move ? "UID MOVE" : "UID COPY";
+    String uidSet = UIDSet.toString(UIDSet.createUIDSets(uids));
+
+    LOGGER.debug("{} {} mails from folder '{}' to '{}'", command, uids.length, folder.getFullName(), destFolderName);
+
+    try (Span span = MailTracer.startSpan(move ? "imap.move" : "imap.copy").attribute("folder", folder.getFullName()).attribute("messages", uids.length)) {
+      return doCopy(folder, command, uidSet, destFolderName);
+    }
   }
 
-  private Message[] getNewMessages(AppendUID[] newMsgUID, IMAPFolder destFolder) throws MessagingException {
-		long[] uids = new long[newMsgUID.length];
-		for (int i = 0; i < newMsgUID.length; i++) {
-			uids[i] = newMsgUID[i].uid;
-		}
+  protected CopyUID doCopy(IMAPFolder folder, String command, String uidSet, String destFolderName) throws MessagingException {
+    return (CopyUID) folder.doCommand(protocol -> {
+      Argument args = new Argument();
+      args.writeAtom(uidSet);
+      args.writeString(BASE64MailboxEncoder.encode(destFolderName));
+
+      Response[] responses = protocol.command(command, args);
+
+      // a MOVE returns the COPYUID as untagged response before the EXPUNGE responses
+      CopyUID copyUid = null;
+      for (Response response : responses) {
+        if (response.isOK()) {
+          Matcher matcher = COPYUID_PATTERN.matcher(response.getRest());
+          if (matcher.find()) {
+            copyUid = new CopyUID(Long.parseLong(matcher.group(1)), UIDSet.parseUIDSets(matcher.group(2)),
+                UIDSet.parseUIDSets(matcher.group(3)));
+          }
+        }
+      }
+
+      protocol.notifyResponseHandlers(responses);
+      protocol.handleResult(responses[responses.length - 1]);
+
+      return copyUid;
+    });
+  }
+
+  protected void setDeleted(Folder folder, Message[] messages) throws MessagingException {
+    try (Span span = MailTracer.startSpan("imap.store").attribute("folder", folder.getFullName()).attribute("messages", messages.length)) {
+      folder.setFlags(messages, new Flags(Flag.DELETED), true);
+    }
+  }
+
+  protected List<Mail> toCopiedMails(CopyUID copyUid, Map<Long, Mail> mailsByUid, String destFolderName) {
+    long[] srcUids = UIDSet.toArray(copyUid.src);
+    long[] destUids = UIDSet.toArray(copyUid.dst);
+
+    List<Mail> copiedMails = new ArrayList<>();
+    for (int i = 0; i < srcUids.length && i < destUids.length; i++) {
+      Mail mail = mailsByUid.get(srcUids[i]);
+      if (mail != null) {
+        copiedMails.add(mail.copyTo(destFolderName, destUids[i], copyUid.uidvalidity));
+      }
+    }
+    return copiedMails;
+  }
+
+  protected List<Mail> toMails(List<Message> messages) {
+    boolean lazyContent = mailService.getConfiguration().lazyContent();
+
+    List<Mail> mails = new ArrayList<Mail>();
+    for (Message message : messages) {
+      try {
+        Mail mail = lazyContent ? Mail.lazyFrom(message, mailService) : Mail.from(message);
+        mails.add(mail);
+      } catch (Exception e) {
+        LOGGER.error("exception while transforming message to dto", e);
+      }
+    }
+    return mails;
+  }
 
-		return destFolder.getMessagesByUID(uids);
+  protected boolean supportsCapability(Folder folder, String capability) throws MessagingException {
+    Store store = folder.getStore();
+    return folder instanceof IMAPFolder && store instanceof IMAPStore && ((IMAPStore) store).hasCapability(capability);
   }
+
 }
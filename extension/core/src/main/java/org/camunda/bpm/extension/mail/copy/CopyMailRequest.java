@@ -35,6 +35,8 @@ public class CopyMailRequest extends AbstractConnectorRequest<EmptyResponse> {
   protected static final String PARAM_MAILS           = "mails";
   protected static final String PARAM_MESSAGE_IDS     = "messageIds";
   protected static final String PARAM_MESSAGE_NUMBERS = "messageNumbers";
+  protected static final String PARAM_UIDS            = "uids";
+  protected static final String PARAM_UID_VALIDITY    = "uidValidity";
 
   protected final MailConfiguration configuration;
 
@@ -131,6 +133,35 @@ public class CopyMailRequest extends AbstractConnectorRequest<EmptyResponse> {
     return this;
   }
 
+  public List<Long> getUids() {
+    return getRequestParameter(PARAM_UIDS);
+  }
+
+  public CopyMailRequest uids(Long... uids) {
+    setRequestParameter(PARAM_UIDS, Arrays.asList(uids));
+    return this;
+  }
+
+  /**
+   * @return the UIDVALIDITY of the folder which the UIDs belong to, or
+   *         <code>-1</code> if it is not checked
+   */
+  public long getUidValidity() {
+    Object uidValidity = getRequestParameter(PARAM_UID_VALIDITY);
+    if (uidValidity == null) {
+      return -1;
+    } else if (uidValidity instanceof Number) {
+      return ((Number) uidValidity).longValue();
+    } else {
+      return Long.parseLong(uidValidity.toString());
+    }
+  }
+
+  public CopyMailRequest uidValidity(long uidValidity) {
+    setRequestParameter(PARAM_UID_VALIDITY, uidValidity);
+    return this;
+  }
+
   @Override
   protected boolean isRequestValid() {
 
@@ -149,8 +180,8 @@ public class CopyMailRequest extends AbstractConnectorRequest<EmptyResponse> {
       return false;
     }
 
-    if (!hasMails() && !hasMessageIds() && !hasMessageNumbers()) {
-      LOGGER.warn("invalid request: either parameter 'mails', 'messageIds' or 'messageNumbers' must be set in {}", this);
+    if (!hasMails() && !hasMessageIds() && !hasMessageNumbers() && !hasUids()) {
+      LOGGER.warn("invalid request: either parameter 'mails', 'messageIds', 'messageNumbers' or 'uids' must be set in {}", this);
       return false;
     }
 
@@ -169,10 +200,14 @@ public class CopyMailRequest extends AbstractConnectorRequest<EmptyResponse> {
     return getMessageNumbers() != null && !getMessageNumbers().isEmpty();
   }
 
+  protected boolean hasUids() {
+    return getUids() != null && !getUids().isEmpty();
+  }
+
   @Override
   public String toString() {
     return "MoveMailRequest [srcfolder=" + getSrcFolder() + ", destfolder=" + getDestFolder() + ", mails=" + getMails() + ", message-ids=" + getMessageIds() + ", message-numbers="
-        + getMessageNumbers() + "]";
+        + getMessageNumbers() + ", uids=" + getUids() + "]";
   }
 
 }
@@ -30,28 +30,47 @@ public class CopyMailResponse extends AbstractConnectorResponse {
 
   public static final String PARAM_MAILS = "mails";
 
-  protected final List<Message> messages;
+  protected final List<Mail> mails;
   protected final MailService mailService;
 
-  public CopyMailResponse(List<Message> messages, MailService mailService) {
-    this.messages = messages;
+  /**
+   * @param mails
+   *          the copied mails, which are built by the invocation from the
+   *          COPYUID response of the server
+   */
+  public CopyMailResponse(MailService mailService, List<Mail> mails) {
+    this.mails = mails;
     this.mailService = mailService;
   }
 
-  @Override
-  protected void collectResponseParameters(Map<String, Object> responseParameters) {
+  /**
+   * @deprecated pass the mails which refer to the copies (i.e. their UIDs in
+   *             the destination folder) to
+   *             {@link #CopyMailResponse(MailService, List)} instead
+   */
+  @Deprecated
+  public CopyMailResponse(List<Message> messages, MailService mailService) {
+    this(mailService, toMails(messages));
+  }
 
-    List<Mail> mails = new ArrayList<Mail>();
+  protected static List<Mail> toMails(List<Message> messages) {
+    List<Mail> mails = new ArrayList<>();
     for (Message message : messages) {
       try {
-        Mail mail = Mail.from(message);
-        mails.add(mail);
+        mails.add(Mail.from(message));
       } catch (Exception e) {
         LOGGER.error("exception while transforming message to dto", e);
       }
     }
+    return mails;
+  }
+
+  @Override
+  protected void collectResponseParameters(Map<String, Object> responseParameters) {
 
     responseParameters.put(PARAM_MAILS, mails);
+
+    mailService.flush();
   }
 
   public List<Mail> getMails() {
@@ -60,7 +79,7 @@ public class CopyMailResponse extends AbstractConnectorResponse {
 
   @Override
   public String toString() {
-    return "CopyMailResponse [messages=" + messages + "]";
+    return "CopyMailResponse [mails=" + mails + "]";
   }
 
 }
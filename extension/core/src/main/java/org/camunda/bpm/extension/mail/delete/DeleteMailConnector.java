@@ -14,22 +14,20 @@ package org.camunda.bpm.extension.mail.delete;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
 
 import javax.mail.Folder;
 import javax.mail.Message;
 import javax.mail.MessagingException;
-import javax.mail.search.MessageIDTerm;
-import javax.mail.search.OrTerm;
 
 import org.camunda.bpm.extension.mail.EmptyResponse;
 import org.camunda.bpm.extension.mail.MailConnectorException;
 import org.camunda.bpm.extension.mail.config.MailConfiguration;
 import org.camunda.bpm.extension.mail.config.MailConfigurationFactory;
-import org.camunda.bpm.extension.mail.dto.Mail;
 import org.camunda.bpm.extension.mail.service.MailService;
+import org.camunda.bpm.extension.mail.service.MessageLookup;
 import org.camunda.bpm.extension.mail.service.MailServiceFactory;
+import org.camunda.bpm.extension.mail.trace.MailTracer;
+import org.camunda.bpm.extension.mail.trace.Span;
 import org.camunda.connect.impl.AbstractConnector;
 import org.camunda.connect.spi.ConnectorResponse;
 import org.slf4j.Logger;
@@ -56,34 +54,49 @@ public class DeleteMailConnector extends AbstractConnector<DeleteMailRequest, Em
   public ConnectorResponse execute(DeleteMailRequest request) {
     MailService mailService = MailServiceFactory.getService(getConfiguration());
 
+    long start = System.nanoTime();
+    boolean success = false;
+    Span trace = MailTracer.startTrace(CONNECTOR_ID, requestInterceptors);
     try {
 
       Folder folder = mailService.ensureOpenFolder(request.getFolder());
-      List<Message> messages = Arrays.asList(getMessages(folder, request));
+      List<Message> messages = Arrays.asList(getMessages(folder, request, mailService.getMessageLookup()));
 
       DeleteMailInvocation invocation = new DeleteMailInvocation(messages, request, requestInterceptors, mailService);
 
       invocation.proceed();
 
+      success = true;
+      mailService.getMetrics().countMessages(CONNECTOR_ID, messages.size());
+
       return new EmptyResponse();
 
     } catch (Exception e) {
       throw new MailConnectorException("Failed to delete mails: " + e.getMessage(), e);
+
+    } finally {
+      mailService.getMetrics().recordInvocation(CONNECTOR_ID, System.nanoTime() - start, success);
+      mailService.flush();
+      trace.close();
     }
   }
 
-  protected Message[] getMessages(Folder folder, DeleteMailRequest request) throws MessagingException {
+  protected Message[] getMessages(Folder folder, DeleteMailRequest request, MessageLookup lookup) throws MessagingException {
 
     if (request.getMails() != null) {
       LOGGER.debug("delete mails: {}", request.getMails());
 
-      List<String> messageIds = collectMessageIds(request.getMails());
-      return getMessagesByIds(folder, messageIds);
+      return lookup.getMessagesByMails(folder, request.getMails());
+
+    } else if (request.getUids() != null) {
+      LOGGER.debug("delete mails with uids: {}", request.getUids());
+
+      return lookup.getMessagesByUids(folder, request.getUidValidity(), request.getUids());
 
     } else if (request.getMessageIds() != null) {
       LOGGER.debug("delete mails with message ids: {}", request.getMessageIds());
 
-      return getMessagesByIds(folder, request.getMessageIds());
+      return lookup.getMessagesByIds(folder, request.getMessageIds());
 
     } else {
       LOGGER.debug("delete mails with message numbers: {}", request.getMessageNumbers());
@@ -93,25 +106,6 @@ public class DeleteMailConnector extends AbstractConnector<DeleteMailRequest, Em
     }
   }
 
-  protected List<String> collectMessageIds(List<Mail> mails) {
-
-    return mails.stream()
-        .map(m -> Optional.ofNullable(m.getMessageId()).orElse(""))
-        .filter(id -> !id.isEmpty())
-        .collect(Collectors.toList());
-  }
-
-  protected Message[] getMessagesByIds(Folder folder, List<String> messageIds) throws MessagingException {
-
-    List<MessageIDTerm> idTerms = messageIds.stream()
-        .map(MessageIDTerm::new)
-        .collect(Collectors.toList());
-
-    OrTerm searchTerm = new OrTerm(idTerms.toArray(new MessageIDTerm[idTerms.size()]));
-
-    return folder.search(searchTerm);
-  }
-
   protected MailConfiguration getConfiguration() {
     if (configuration == null) {
       configuration = MailConfigurationFactory.getConfiguration();
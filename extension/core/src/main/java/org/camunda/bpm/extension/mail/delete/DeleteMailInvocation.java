@@ -12,31 +12,127 @@
  */
 package org.camunda.bpm.extension.mail.delete;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+
+import javax.mail.Flags;
 import javax.mail.Flags.Flag;
+import javax.mail.Folder;
 import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Store;
+
+import org.camunda.bpm.extension.mail.delete.DeleteMailRequest.ExpungePolicy;
 import org.camunda.bpm.extension.mail.service.MailService;
+import org.camunda.bpm.extension.mail.trace.MailTracer;
+import org.camunda.bpm.extension.mail.trace.Span;
 import org.camunda.connect.impl.AbstractRequestInvocation;
 import org.camunda.connect.spi.ConnectorRequestInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+
+/**
+ * Marks the messages as deleted with one STORE command per batch (the message
+ * numbers are compressed into ranges) and expunges them depending on the
+ * expunge policy.
+ */
 public class DeleteMailInvocation extends AbstractRequestInvocation<List<Message>> {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(DeleteMailInvocation.class);
+
   protected final MailService mailService;
+  protected final ExpungePolicy expungePolicy;
+  protected final int batchSize;
 
   public DeleteMailInvocation(List<Message> messages, DeleteMailRequest request,
       List<ConnectorRequestInterceptor> requestInterceptors, MailService mailService) {
+    this(messages, request, requestInterceptors, mailService, request.getExpungePolicy(), mailService.getConfiguration().getDeleteBatchSize());
+  }
+
+  /**
+   * @param batchSize
+   *          maximum number of messages per command, or <code>0</code> for
+   *          all messages at once
+   */
+  public DeleteMailInvocation(List<Message> messages, DeleteMailRequest request,
+      List<ConnectorRequestInterceptor> requestInterceptors, MailService mailService,
+      ExpungePolicy expungePolicy, int batchSize) {
     super(messages, request, requestInterceptors);
     this.mailService = mailService;
+    this.expungePolicy = expungePolicy;
+    this.batchSize = batchSize;
   }
 
   @Override
   public Object invokeTarget() throws Exception {
 
-    for (Message message : target) {
-      message.setFlag(Flag.DELETED, true);
+    for (Map.Entry<Folder, List<Message>> folderMessages : groupByFolder(target).entrySet()) {
+      Folder folder = folderMessages.getKey();
+      List<Message> messages = folderMessages.getValue();
+
+      int size = batchSize > 0 ? batchSize : messages.size();
+      for (int i = 0; i < messages.size(); i += size) {
+        List<Message> batch = messages.subList(i, Math.min(i + size, messages.size()));
+
+        delete(folder, batch.toArray(new Message[batch.size()]));
+      }
+
+      if (expungePolicy == ExpungePolicy.FOLDER) {
+        LOGGER.debug("expunge folder '{}'", folder.getFullName());
+
+        try (Span span = MailTracer.startSpan("imap.expunge").attribute("folder", folder.getFullName())) {
+          folder.expunge();
+        }
+      }
     }
 
     return null;
   }
 
+  protected void delete(Folder folder, Message[] messages) throws MessagingException {
+    LOGGER.debug("delete {} mails of folder '{}'", messages.length, folder.getFullName());
+
+    try (Span span = MailTracer.startSpan("imap.store").attribute("folder", folder.getFullName()).attribute("messages", messages.length)) {
+      folder.setFlags(messages, new Flags(Flag.DELETED), true);
+    }
+
+    if (expungePolicy == ExpungePolicy.UID) {
+      if (supportsUidExpunge(folder)) {
+        // removes only the given messages (UID EXPUNGE)
+        try (Span span = MailTracer.startSpan("imap.expunge").attribute("folder", folder.getFullName()).attribute("messages", messages.length)) {
+          ((IMAPFolder) folder).expunge(messages);
+        }
+
+      } else {
+        LOGGER.warn("can't expunge the deleted mails because the server doesn't support UIDPLUS (folder '{}')", folder.getFullName());
+      }
+    }
+  }
+
+  protected boolean supportsUidExpunge(Folder folder) throws MessagingException {
+    Store store = folder.getStore();
+    return folder instanceof IMAPFolder && store instanceof IMAPStore && ((IMAPStore) store).hasCapability("UIDPLUS");
+  }
+
+  protected Map<Folder, List<Message>> groupByFolder(List<Message> messages) {
+    Map<Folder, List<Message>> messagesByFolder = new LinkedHashMap<>();
+
+    for (Message message : messages) {
+      Folder folder = message.getFolder();
+
+      List<Message> folderMessages = messagesByFolder.get(folder);
+      if (folderMessages == null) {
+        folderMessages = new ArrayList<>();
+        messagesByFolder.put(folder, folderMessages);
+      }
+      folderMessages.add(message);
+    }
+    return messagesByFolder;
+  }
+
 }
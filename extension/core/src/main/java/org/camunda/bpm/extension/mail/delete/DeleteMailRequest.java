@@ -27,11 +27,30 @@ public class DeleteMailRequest extends AbstractConnectorRequest<EmptyResponse> {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(DeleteMailRequest.class);
 
+  /**
+   * Defines if the deleted mails are removed from the folder.
+   */
+  public enum ExpungePolicy {
+    /** only mark the mails as deleted */
+    NONE,
+    /** remove only the deleted mails, requires UIDPLUS (UID EXPUNGE) */
+    UID,
+    /** remove all mails of the folder which are marked as deleted */
+    FOLDER;
+
+    public static ExpungePolicy parse(String policy) {
+      return valueOf(policy.trim().toUpperCase());
+    }
+  }
+
   protected static final String PARAM_FOLDER = "folder";
 
   protected static final String PARAM_MAILS = "mails";
   protected static final String PARAM_MESSAGE_IDS = "messageIds";
   protected static final String PARAM_MESSAGE_NUMBERS = "messageNumbers";
+  protected static final String PARAM_UIDS = "uids";
+  protected static final String PARAM_UID_VALIDITY = "uidValidity";
+  protected static final String PARAM_EXPUNGE = "expunge";
 
   protected final MailConfiguration configuration;
 
@@ -80,6 +99,55 @@ public class DeleteMailRequest extends AbstractConnectorRequest<EmptyResponse> {
     return this;
   }
 
+  public List<Long> getUids() {
+    return getRequestParameter(PARAM_UIDS);
+  }
+
+  public DeleteMailRequest uids(Long... uids) {
+    setRequestParameter(PARAM_UIDS, Arrays.asList(uids));
+    return this;
+  }
+
+  /**
+   * @return the UIDVALIDITY of the folder which the UIDs belong to, or
+   *         <code>-1</code> if it is not checked
+   */
+  public long getUidValidity() {
+    Object uidValidity = getRequestParameter(PARAM_UID_VALIDITY);
+    if (uidValidity == null) {
+      return -1;
+    } else if (uidValidity instanceof Number) {
+      return ((Number) uidValidity).longValue();
+    } else {
+      return Long.parseLong(uidValidity.toString());
+    }
+  }
+
+  public DeleteMailRequest uidValidity(long uidValidity) {
+    setRequestParameter(PARAM_UID_VALIDITY, uidValidity);
+    return this;
+  }
+
+  public ExpungePolicy getExpungePolicy() {
+    Object expunge = getRequestParameter(PARAM_EXPUNGE);
+    if (expunge == null) {
+      expunge = configuration.getDeleteExpungePolicy();
+    }
+
+    if (expunge == null) {
+      return ExpungePolicy.NONE;
+    } else if (expunge instanceof ExpungePolicy) {
+      return (ExpungePolicy) expunge;
+    } else {
+      return ExpungePolicy.parse(expunge.toString());
+    }
+  }
+
+  public DeleteMailRequest expunge(ExpungePolicy expungePolicy) {
+    setRequestParameter(PARAM_EXPUNGE, expungePolicy);
+    return this;
+  }
+
   @Override
   protected boolean isRequestValid() {
 
@@ -88,8 +156,8 @@ public class DeleteMailRequest extends AbstractConnectorRequest<EmptyResponse> {
       return false;
     }
 
-    if (!hasMails() && !hasMessageIds() && !hasMessageNumbers()) {
-      LOGGER.warn("invalid request: either parameter 'mails', 'messageIds' or 'messageNumbers' must be set in {}", this);
+    if (!hasMails() && !hasMessageIds() && !hasMessageNumbers() && !hasUids()) {
+      LOGGER.warn("invalid request: either parameter 'mails', 'messageIds', 'messageNumbers' or 'uids' must be set in {}", this);
       return false;
     }
 
@@ -108,10 +176,14 @@ public class DeleteMailRequest extends AbstractConnectorRequest<EmptyResponse> {
     return getMessageNumbers() != null && !getMessageNumbers().isEmpty();
   }
 
+  protected boolean hasUids() {
+    return getUids() != null && !getUids().isEmpty();
+  }
+
   @Override
   public String toString() {
     return "DeleteMailRequest [folder=" + getFolder() + ", mails=" + getMails() + ", message-ids=" + getMessageIds() + ", message-numbers="
-        + getMessageNumbers() + "]";
+        + getMessageNumbers() + ", uids=" + getUids() + ", expunge=" + getRequestParameter(PARAM_EXPUNGE) + "]";
   }
 
 }
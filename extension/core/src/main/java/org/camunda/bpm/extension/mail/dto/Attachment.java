@@ -17,16 +17,19 @@ import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
-import javax.activation.DataHandler;
 import javax.mail.MessagingException;
 import javax.mail.Part;
 
+import org.camunda.bpm.extension.mail.attachment.AttachmentStore;
+import org.camunda.bpm.extension.mail.attachment.FileAttachmentStore;
+
 public class Attachment implements Serializable {
 
   private static final long serialVersionUID = 1L;
 
   private String fileName;
   private String path;
+  private long size = -1;
 
   // transient object for download the attachment
   private transient Part part;
@@ -39,20 +42,55 @@ public class Attachment implements Serializable {
     return path;
   }
 
+  /**
+   * @return number of downloaded bytes, or <code>-1</code> if the attachment
+   *         is not downloaded
+   */
+  public long getSize() {
+    return size;
+  }
+
   public Path download(Path downloadPath) throws MessagingException, IOException {
-    Path newFile = downloadPath.resolve(fileName);
+    return download(downloadPath, new FileAttachmentStore());
+  }
+
+  /**
+   * Streams the attachment to a file in the given directory.
+   *
+   * @param maxSize
+   *          maximum size of the attachment in bytes, <code>0</code> for
+   *          unlimited size. A larger attachment is skipped.
+   * @param bufferSize
+   *          size of the buffer in bytes which is used for writing to the
+   *          file
+   *
+   * @return the downloaded file, or <code>null</code> if the attachment is
+   *         skipped because it exceeds the maximum size
+   */
+  public Path download(Path downloadPath, long maxSize, int bufferSize) throws MessagingException, IOException {
+    return download(downloadPath, new FileAttachmentStore(maxSize, bufferSize));
+  }
 
-    DataHandler dataHandler = part.getDataHandler();
-    Files.copy(dataHandler.getInputStream(), newFile);
+  /**
+   * Stores the attachment as file in the given directory.
+   *
+   * @return the downloaded file, or <code>null</code> if the attachment is
+   *         skipped by the store
+   */
+  public Path download(Path downloadPath, AttachmentStore attachmentStore) throws MessagingException, IOException {
+    Path newFile = attachmentStore.store(downloadPath, fileName, part);
 
-    path = newFile.toAbsolutePath().toString();
+    if (newFile != null) {
+      path = newFile.toAbsolutePath().toString();
+      size = Files.size(newFile);
+    }
 
     return newFile;
   }
 
   @Override
   public String toString() {
-    return "Attachment [fileName=" + fileName + ", path=" + path + "]";
+    return "Attachment [fileName=" + fileName + ", path=" + path + ", size=" + size + "]";
   }
 
   public static Attachment from(Part part) throws MessagingException {
@@ -18,22 +18,35 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
 import javax.mail.BodyPart;
+import javax.mail.Flags;
+import javax.mail.Folder;
 import javax.mail.Message;
 import javax.mail.Message.RecipientType;
 import javax.mail.MessagingException;
 import javax.mail.Multipart;
 import javax.mail.Part;
+import javax.mail.UIDFolder;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 
+import org.camunda.bpm.extension.mail.MailConnectorException;
+import org.camunda.bpm.extension.mail.attachment.AttachmentStore;
+import org.camunda.bpm.extension.mail.attachment.FileAttachmentStore;
+import org.camunda.bpm.extension.mail.service.MailService;
+import org.camunda.bpm.extension.mail.service.MailServiceFactory;
+import org.camunda.bpm.extension.mail.trace.MailTracer;
+import org.camunda.bpm.extension.mail.trace.Span;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sun.mail.imap.IMAPMessage;
+
 public class Mail implements Serializable {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(Mail.class);
@@ -51,11 +64,26 @@ public class Mail implements Serializable {
   private int messageNumber;
   private String messageId;
 
+  private String folder;
+  private long uid = -1;
+  private long uidValidity = -1;
+
+  private List<String> flags = new ArrayList<String>();
+
   private String text;
   private String html;
 
   private List<Attachment> attachments = new ArrayList<Attachment>();
 
+  // the content (i.e. text, html and attachments) is loaded on first access if the mail is lazy
+  private boolean contentLoaded = true;
+
+  // the user name of the account, to find its mail service again if the mail is deserialized
+  private String account;
+
+  private transient Message message;
+  private transient MailService mailService;
+
   public String getFrom() {
     return from;
   }
@@ -65,10 +93,12 @@ public class Mail implements Serializable {
   }
 
   public String getText() {
+    ensureContentLoaded();
     return text;
   }
 
   public String getHtml() {
+    ensureContentLoaded();
     return html;
   }
 
@@ -96,11 +126,115 @@ public class Mail implements Serializable {
     return messageId;
   }
 
+  /**
+   * @return full name of the folder which contains the mail, can be
+   *         <code>null</code>
+   */
+  public String getFolder() {
+    return folder;
+  }
+
+  /**
+   * @return UID of the mail in its folder, or <code>-1</code> if the folder
+   *         doesn't support UIDs
+   */
+  public long getUid() {
+    return uid;
+  }
+
+  /**
+   * @return UIDVALIDITY of the folder when the mail was read, or
+   *         <code>-1</code> if the folder doesn't support UIDs
+   */
+  public long getUidValidity() {
+    return uidValidity;
+  }
+
+  /**
+   * @return the user name of the account which the lazy content is loaded
+   *         from, or <code>null</code> for the default configuration
+   */
+  public String getAccount() {
+    return account;
+  }
+
+  /**
+   * @return the system flags (e.g. 'SEEN', 'DELETED') and user flags of the
+   *         mail
+   */
+  public List<String> getFlags() {
+    return flags;
+  }
+
   public List<Attachment> getAttachments() {
+    ensureContentLoaded();
     return attachments;
   }
 
   public static Mail from(Message message) throws MessagingException, IOException {
+    Mail mail = fromEnvelope(message);
+
+    processMessageContent(message, mail);
+
+    return mail;
+  }
+
+  /**
+   * Creates a mail which contains only the envelope data (e.g. subject,
+   * sender). The content is loaded on first access - from the given message
+   * while its folder is open, or else by the UID of the mail.
+   *
+   * @param mailService
+   *          used to load the content if the folder of the message is closed,
+   *          can be <code>null</code> to use the default configuration
+   */
+  public static Mail lazyFrom(Message message, MailService mailService) throws MessagingException {
+    Mail mail = fromEnvelope(message);
+
+    mail.contentLoaded = false;
+    mail.message = message;
+    mail.mailService = mailService;
+    if (mailService != null) {
+      mail.account = mailService.getConfiguration().getUserName();
+    }
+
+    return mail;
+  }
+
+  /**
+   * Creates a mail which refers to the copy of this mail with the given UID in
+   * another folder. The envelope and a loaded content are taken over, a lazy
+   * content is loaded from the copy on first access.
+   */
+  public Mail copyTo(String folder, long uid, long uidValidity) {
+    Mail mail = new Mail();
+
+    mail.from = from;
+    mail.to = to;
+    mail.cc = cc;
+    mail.subject = subject;
+    mail.sentDate = sentDate;
+    mail.receivedDate = receivedDate;
+    mail.messageId = messageId;
+    mail.flags = new ArrayList<>(flags);
+
+    // the message number in the other folder is unknown
+    mail.messageNumber = 0;
+    mail.folder = folder;
+    mail.uid = uid;
+    mail.uidValidity = uidValidity;
+
+    mail.contentLoaded = contentLoaded;
+    mail.text = text;
+    mail.html = html;
+    mail.attachments = new ArrayList<>(attachments);
+    mail.account = account;
+    mail.mailService = mailService;
+
+    return mail;
+  }
+
+  protected static Mail fromEnvelope(Message message) throws MessagingException {
     Mail mail = new Mail();
 
     mail.from = InternetAddress.toString(message.getFrom());
@@ -119,11 +253,125 @@ public class Mail implements Serializable {
       mail.messageId = mimeMessage.getMessageID();
     }
 
-    processMessageContent(message, mail);
+    Flags messageFlags = message.getFlags();
+    if (messageFlags != null) {
+      mail.flags = getFlagNames(messageFlags);
+    }
+
+    Folder folder = message.getFolder();
+    if (folder != null) {
+      mail.folder = folder.getFullName();
+
+      if (folder instanceof UIDFolder) {
+        mail.uid = ((UIDFolder) folder).getUID(message);
+        mail.uidValidity = ((UIDFolder) folder).getUIDValidity();
+      }
+    }
 
     return mail;
   }
 
+  protected static List<String> getFlagNames(Flags messageFlags) {
+    List<String> flagNames = new ArrayList<String>();
+
+    for (Flags.Flag flag : messageFlags.getSystemFlags()) {
+      if (flag == Flags.Flag.ANSWERED) {
+        flagNames.add("ANSWERED");
+      } else if (flag == Flags.Flag.DELETED) {
+        flagNames.add("DELETED");
+      } else if (flag == Flags.Flag.DRAFT) {
+        flagNames.add("DRAFT");
+      } else if (flag == Flags.Flag.FLAGGED) {
+        flagNames.add("FLAGGED");
+      } else if (flag == Flags.Flag.RECENT) {
+        flagNames.add("RECENT");
+      } else if (flag == Flags.Flag.SEEN) {
+        flagNames.add("SEEN");
+      }
+    }
+    flagNames.addAll(Arrays.asList(messageFlags.getUserFlags()));
+
+    return flagNames;
+  }
+
+  protected void ensureContentLoaded() {
+    if (!contentLoaded) {
+      LOGGER.debug("load content of mail: {}", this);
+
+      try {
+        withMessage(message -> processMessageContent(message, this));
+
+        contentLoaded = true;
+
+      } catch (MessagingException | IOException e) {
+        throw new MailConnectorException("Failed to load content of mail: " + e.getMessage(), e);
+      }
+    }
+  }
+
+  protected interface MessageCallback {
+    void execute(Message message) throws MessagingException, IOException;
+  }
+
+  /**
+   * Invokes the callback with the message of the mail, which is fetched again
+   * by its UID if the folder of the message is not open anymore.
+   */
+  protected void withMessage(MessageCallback callback) throws MessagingException, IOException {
+    if (message != null && message.getFolder() != null && message.getFolder().isOpen()) {
+      callback.execute(message);
+      return;
+    }
+
+    if (folder == null || uid < 0) {
+      throw new MessagingException("cannot load mail without folder and UID: " + this);
+    }
+
+    MailService service = getMailService();
+
+    // read-only, so that loading the content doesn't set the \Seen flag of the mail
+    Folder uidFolder = service.openReadOnlyFolder(folder);
+    try {
+
+      // the UID refers to another mail if the folder was recreated in the meantime
+      long currentUidValidity = ((UIDFolder) uidFolder).getUIDValidity();
+      if (uidValidity >= 0 && currentUidValidity != uidValidity) {
+        throw new MessagingException("UIDVALIDITY of folder '" + folder + "' changed from " + uidValidity + " to "
+            + currentUidValidity + ", cannot load mail with UID " + uid);
+      }
+
+      Message reloadedMessage = ((UIDFolder) uidFolder).getMessageByUID(uid);
+      if (reloadedMessage == null) {
+        throw new MessagingException("mail with UID " + uid + " doesn't exist in folder '" + folder + "'");
+      }
+      if (reloadedMessage instanceof IMAPMessage) {
+        // also for servers which set the flag in a read-only folder
+        ((IMAPMessage) reloadedMessage).setPeek(true);
+      }
+
+      callback.execute(reloadedMessage);
+
+    } finally {
+      service.closeReadOnlyFolder(uidFolder);
+    }
+  }
+
+  /**
+   * @return the service which the mail was read with - or, if the mail was
+   *         deserialized, the service of its account
+   */
+  protected MailService getMailService() throws MessagingException {
+    if (mailService != null) {
+      return mailService;
+    }
+
+    MailService service = MailServiceFactory.findService(account);
+    if (service == null) {
+      throw new MessagingException("no mail service found for account '" + account + "', cannot load mail: " + this);
+    }
+    return service;
+  }
+
   protected static void processMessageContent(Message message, Mail mail) throws MessagingException, IOException {
 
     if (isMultipartMessage(message)) {
@@ -165,6 +413,61 @@ public class Mail implements Serializable {
   }
 
   public void downloadAttachments(final String attachmentPath) throws IOException, MessagingException {
+    downloadAttachments(attachmentPath, new FileAttachmentStore());
+  }
+
+  /**
+   * Streams the attachments to a new directory in the given path.
+   *
+   * @param maxSize
+   *          maximum size of an attachment in bytes, <code>0</code> for
+   *          unlimited size. Larger attachments are skipped.
+   * @param bufferSize
+   *          size of the buffer in bytes which is used for writing an
+   *          attachment
+   */
+  public void downloadAttachments(final String attachmentPath, long maxSize, int bufferSize) throws IOException, MessagingException {
+    downloadAttachments(attachmentPath, new FileAttachmentStore(maxSize, bufferSize));
+  }
+
+  /**
+   * Stores the attachments in a new directory in the given path.
+   */
+  public void downloadAttachments(final String attachmentPath, AttachmentStore attachmentStore) throws IOException, MessagingException {
+    if (!contentLoaded) {
+      // download while the message is available, the folder may be closed after loading the content
+      withMessage(message -> downloadAttachments(message, attachmentPath, attachmentStore));
+
+    } else {
+      downloadLoadedAttachments(attachmentPath, attachmentStore);
+    }
+  }
+
+  /**
+   * Reads the content again from the given message (e.g. which is fetched by
+   * the UID of the mail over another connection) and downloads the
+   * attachments from it.
+   */
+  public void downloadAttachments(Message message, final String attachmentPath, AttachmentStore attachmentStore) throws IOException, MessagingException {
+    attachments.clear();
+    processMessageContent(message, this);
+    contentLoaded = true;
+
+    downloadLoadedAttachments(attachmentPath, attachmentStore);
+  }
+
+  /**
+   * Takes over the content (i.e. text, html and attachments) of the given
+   * mail, which is read from the same message over another connection.
+   */
+  public void takeContentFrom(Mail mail) {
+    text = mail.text;
+    html = mail.html;
+    attachments = new ArrayList<>(mail.attachments);
+    contentLoaded = true;
+  }
+
+  protected void downloadLoadedAttachments(final String attachmentPath, AttachmentStore attachmentStore) throws IOException, MessagingException {
     if (!attachments.isEmpty()) {
 
       LOGGER.debug("download attachments of mail: {}", this);
@@ -176,9 +479,10 @@ public class Mail implements Serializable {
       Files.createDirectories(downloadPath);
 
       for (Attachment attachment : attachments) {
-        attachment.download(downloadPath);
-
-        LOGGER.debug("downloaded '{}'", attachment);
+        try (Span span = MailTracer.startSpan("attachment.write").attribute("name", attachment.getFileName())) {
+          attachment.download(downloadPath, attachmentStore);
+          span.attribute("size", attachment.getSize());
+        }
       }
     }
   }
@@ -186,7 +490,7 @@ public class Mail implements Serializable {
   @Override
   public String toString() {
     return "Mail [from=" + from + ", to=" + to + ", cc=" + cc + ", subject=" + subject + ", sentDate=" + sentDate + ", receivedDate=" + receivedDate
-        + ", messageNumber=" + messageNumber + ", messageId=" + messageId + ", attachments=" + attachments + " ]";
+        + ", messageNumber=" + messageNumber + ", messageId=" + messageId + ", folder=" + folder + ", uid=" + uid + ", attachments=" + attachments + " ]";
   }
 
 }
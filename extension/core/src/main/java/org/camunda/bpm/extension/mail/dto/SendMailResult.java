@@ -0,0 +1,82 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.dto;
+
+import java.io.Serializable;
+
+/**
+ * Result of sending a single mail of a batch.
+ */
+public class SendMailResult implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private int index;
+  private String to;
+  private String subject;
+  private String messageId;
+
+  private boolean success;
+  private String error;
+
+  public int getIndex() {
+    return index;
+  }
+
+  public String getTo() {
+    return to;
+  }
+
+  public String getSubject() {
+    return subject;
+  }
+
+  public String getMessageId() {
+    return messageId;
+  }
+
+  public boolean isSuccess() {
+    return success;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  public static SendMailResult success(int index, String to, String subject, String messageId) {
+    SendMailResult result = new SendMailResult();
+    result.index = index;
+    result.to = to;
+    result.subject = subject;
+    result.messageId = messageId;
+    result.success = true;
+    return result;
+  }
+
+  public static SendMailResult failure(int index, String to, String subject, String error) {
+    SendMailResult result = new SendMailResult();
+    result.index = index;
+    result.to = to;
+    result.subject = subject;
+    result.success = false;
+    result.error = error;
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "SendMailResult [index=" + index + ", to=" + to + ", subject=" + subject + ", messageId=" + messageId + ", success=" + success
+        + ", error=" + error + "]";
+  }
+
+}
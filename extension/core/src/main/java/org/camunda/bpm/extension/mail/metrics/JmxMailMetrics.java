@@ -0,0 +1,216 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exposes the metrics as attributes of an MBean in the platform MBean server,
+ * e.g. 'mail.connector.invocations.mail-poll.count' or
+ * 'mail.pool.active.store'.
+ */
+public class JmxMailMetrics implements MailMetrics, DynamicMBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(JmxMailMetrics.class);
+
+  public static final String DOMAIN = "org.camunda.bpm.extension.mail";
+
+  protected final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+  protected final Map<String, LongAccumulator> maxValues = new ConcurrentHashMap<>();
+  protected final Map<String, Supplier<Number>> gauges = new ConcurrentHashMap<>();
+
+  protected final MBeanServer server;
+  protected ObjectName objectName;
+
+  /**
+   * Registers the MBean in the platform MBean server.
+   *
+   * @param account
+   *          name of the account (e.g. the user name) which is part of the
+   *          object name, can be <code>null</code>
+   */
+  public JmxMailMetrics(String account) {
+    this(ManagementFactory.getPlatformMBeanServer(), account);
+  }
+
+  public JmxMailMetrics(MBeanServer server, String account) {
+    this.server = server;
+
+    String name = account != null ? account : "default";
+    try {
+      ObjectName candidate = objectName(name, 1);
+      for (int i = 2; server.isRegistered(candidate); i++) {
+        candidate = objectName(name, i);
+      }
+
+      server.registerMBean(this, candidate);
+      objectName = candidate;
+
+      LOGGER.debug("registered mail metrics as MBean '{}'", objectName);
+
+    } catch (JMException e) {
+      LOGGER.warn("failed to register the mail metrics as MBean", e);
+    }
+  }
+
+  protected ObjectName objectName(String account, int index) throws JMException {
+    String name = index > 1 ? account + "-" + index : account;
+    return new ObjectName(DOMAIN + ":type=MailMetrics,name=" + ObjectName.quote(name));
+  }
+
+  @Override
+  public void recordInvocation(String connector, long durationNanos, boolean success) {
+    String prefix = METRIC_INVOCATIONS + "." + connector;
+    long durationMillis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+
+    increment(prefix + ".count", 1);
+    increment(prefix + ".totalTimeMillis", durationMillis);
+    maxValues.computeIfAbsent(prefix + ".maxTimeMillis", key -> new LongAccumulator(Math::max, 0)).accumulate(durationMillis);
+
+    if (!success) {
+      increment(prefix + ".errors", 1);
+    }
+  }
+
+  @Override
+  public void countMessages(String connector, long count) {
+    increment(METRIC_MESSAGES + "." + connector, count);
+  }
+
+  @Override
+  public void countBytes(String connector, long bytes) {
+    increment(METRIC_BYTES + "." + connector, bytes);
+  }
+
+  @Override
+  public void countReconnect(String source) {
+    increment(METRIC_RECONNECTS + "." + source, 1);
+  }
+
+  @Override
+  public void countError(String source) {
+    increment(METRIC_ERRORS + "." + source, 1);
+  }
+
+  @Override
+  public void countRejection(String source) {
+    increment(METRIC_REJECTIONS + "." + source, 1);
+  }
+
+  @Override
+  public void gauge(String name, String source, Supplier<Number> value) {
+    gauges.put(name + "." + source, value);
+  }
+
+  protected void increment(String name, long value) {
+    counters.computeIfAbsent(name, key -> new LongAdder()).add(value);
+  }
+
+  /**
+   * @return the current values of all metrics by their attribute name
+   */
+  public Map<String, Number> getValues() {
+    Map<String, Number> values = new TreeMap<>();
+    counters.forEach((name, counter) -> values.put(name, counter.sum()));
+    maxValues.forEach((name, max) -> values.put(name, max.get()));
+    gauges.forEach((name, gauge) -> values.put(name, gauge.get()));
+    return values;
+  }
+
+  @Override
+  public void close() {
+    if (objectName != null) {
+      try {
+        server.unregisterMBean(objectName);
+      } catch (JMException e) {
+        LOGGER.debug("failed to unregister the mail metrics MBean", e);
+      }
+      objectName = null;
+    }
+  }
+
+  public ObjectName getObjectName() {
+    return objectName;
+  }
+
+  // DynamicMBean
+
+  @Override
+  public Object getAttribute(String attribute) throws AttributeNotFoundException {
+    Number value = getValues().get(attribute);
+    if (value == null) {
+      throw new AttributeNotFoundException("no mail metric with name '" + attribute + "'");
+    }
+    return value.longValue();
+  }
+
+  @Override
+  public AttributeList getAttributes(String[] attributes) {
+    Map<String, Number> values = getValues();
+
+    AttributeList list = new AttributeList();
+    for (String attribute : attributes) {
+      Number value = values.get(attribute);
+      if (value != null) {
+        list.add(new Attribute(attribute, value.longValue()));
+      }
+    }
+    return list;
+  }
+
+  @Override
+  public void setAttribute(Attribute attribute) {
+    throw new UnsupportedOperationException("the mail metrics are read-only");
+  }
+
+  @Override
+  public AttributeList setAttributes(AttributeList attributes) {
+    return new AttributeList();
+  }
+
+  @Override
+  public Object invoke(String actionName, Object[] params, String[] signature) {
+    throw new UnsupportedOperationException("the mail metrics have no operations");
+  }
+
+  @Override
+  public MBeanInfo getMBeanInfo() {
+    // the attributes are created on the first record of a metric
+    MBeanAttributeInfo[] attributes = getValues().keySet().stream()
+        .map(name -> new MBeanAttributeInfo(name, Long.class.getName(), name, true, false, false))
+        .toArray(MBeanAttributeInfo[]::new);
+
+    return new MBeanInfo(getClass().getName(), "metrics of the mail connectors and services", attributes, null, null, null);
+  }
+
+}
@@ -0,0 +1,104 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.metrics;
+
+import java.util.function.Supplier;
+
+/**
+ * Records metrics of the connectors and services, e.g. the duration of the
+ * invocations or the number of reconnects. The implementation is chosen by
+ * the configuration (see {@link MailMetricsFactory}).
+ */
+public interface MailMetrics {
+
+  /** timer of the connector invocations, tagged by connector and outcome */
+  String METRIC_INVOCATIONS = "mail.connector.invocations";
+  /** counter of the messages which are handled by the connectors */
+  String METRIC_MESSAGES = "mail.connector.messages";
+  /** counter of the bytes of the messages which are handled by the connectors */
+  String METRIC_BYTES = "mail.connector.bytes";
+  /** counter of the reconnects, tagged by source */
+  String METRIC_RECONNECTS = "mail.reconnects";
+  /** counter of the errors, tagged by source */
+  String METRIC_ERRORS = "mail.errors";
+  /** counter of the messages which are rejected temporarily by the server, tagged by source */
+  String METRIC_REJECTIONS = "mail.rejections";
+
+  /** gauge of the open folders */
+  String METRIC_OPEN_FOLDERS = "mail.folders.open";
+  /** gauge of the borrowed connections of a pool, tagged by pool */
+  String METRIC_POOL_ACTIVE = "mail.pool.active";
+  /** gauge of the idle connections of a pool, tagged by pool */
+  String METRIC_POOL_IDLE = "mail.pool.idle";
+  /** gauge of the notifications which are waiting to be dispatched */
+  String METRIC_NOTIFICATION_QUEUE = "mail.notification.queue";
+  /** gauge of the current send rate in messages per second */
+  String METRIC_SEND_RATE = "mail.send.rate";
+
+  String TAG_CONNECTOR = "connector";
+  String TAG_SOURCE = "source";
+  String TAG_OUTCOME = "outcome";
+
+  String SOURCE_STORE = "store";
+  String SOURCE_TRANSPORT = "transport";
+  String SOURCE_NOTIFICATION = "notification";
+
+  /**
+   * Records an invocation of a connector.
+   *
+   * @param durationNanos
+   *          duration of the invocation in nanoseconds
+   * @param success
+   *          <code>false</code> if the invocation failed
+   */
+  void recordInvocation(String connector, long durationNanos, boolean success);
+
+  /**
+   * Counts the messages which are handled by a connector (e.g. sent or
+   * polled).
+   */
+  void countMessages(String connector, long count);
+
+  /**
+   * Counts the size of the messages which are handled by a connector.
+   */
+  void countBytes(String connector, long bytes);
+
+  /**
+   * Counts a reconnect to the mail server, e.g. of a broken store.
+   */
+  void countReconnect(String source);
+
+  /**
+   * Counts an error which is not reported by a connector invocation, e.g. of
+   * the notification service.
+   */
+  void countError(String source);
+
+  /**
+   * Counts a message which is rejected temporarily by the mail server, e.g.
+   * with 421 if the client sends too fast.
+   */
+  void countRejection(String source);
+
+  /**
+   * Registers a gauge whose value is read on demand.
+   */
+  void gauge(String name, String source, Supplier<Number> value);
+
+  /**
+   * Removes the registered metrics.
+   */
+  void close();
+
+}
@@ -0,0 +1,83 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.metrics;
+
+import org.camunda.bpm.extension.mail.config.MailConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the metrics which are configured by 'mail.metrics': 'none', 'jmx',
+ * 'micrometer' (using the global registry) or the class name of a custom
+ * {@link MailMetrics} implementation with a default constructor.
+ */
+public class MailMetricsFactory {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MailMetricsFactory.class);
+
+  protected static final String MICROMETER_CLASS = "io.micrometer.core.instrument.Metrics";
+
+  public static final String TYPE_NONE = "none";
+  public static final String TYPE_JMX = "jmx";
+  public static final String TYPE_MICROMETER = "micrometer";
+
+  public static MailMetrics create(MailConfiguration configuration) {
+    String type = configuration.getMetrics().trim();
+    String account = configuration.getUserName();
+
+    switch (type.toLowerCase()) {
+    case TYPE_NONE:
+      return new NoopMailMetrics();
+
+    case TYPE_JMX:
+      return new JmxMailMetrics(account);
+
+    case TYPE_MICROMETER:
+      return createMicrometerMetrics(account);
+
+    default:
+      return createCustomMetrics(type);
+    }
+  }
+
+  protected static MailMetrics createMicrometerMetrics(String account) {
+    if (!isMicrometerAvailable()) {
+      LOGGER.warn("metrics '{}' are configured but Micrometer is not on the classpath - record no metrics", TYPE_MICROMETER);
+      return new NoopMailMetrics();
+    }
+    // Micrometer is an optional dependency, so its classes must not be referenced by this class
+    return MicrometerMetricsHolder.create(account);
+  }
+
+  protected static boolean isMicrometerAvailable() {
+    try {
+      Class.forName(MICROMETER_CLASS, false, MailMetricsFactory.class.getClassLoader());
+      return true;
+
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  protected static MailMetrics createCustomMetrics(String className) {
+    try {
+      Class<?> metricsClass = Class.forName(className);
+      return (MailMetrics) metricsClass.newInstance();
+
+    } catch (ReflectiveOperationException | ClassCastException e) {
+      throw new IllegalArgumentException("unknown metrics '" + className
+          + "', expected one of: none, jmx, micrometer or the class name of a MailMetrics implementation", e);
+    }
+  }
+
+}
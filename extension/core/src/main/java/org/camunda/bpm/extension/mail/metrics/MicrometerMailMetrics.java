@@ -0,0 +1,126 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Records the metrics in a Micrometer registry (an optional dependency). The
+ * metrics are tagged by the account, so that the metrics of different
+ * accounts can be distinguished.
+ */
+public class MicrometerMailMetrics implements MailMetrics {
+
+  public static final String TAG_ACCOUNT = "account";
+
+  protected final MeterRegistry registry;
+  protected final Tags tags;
+
+  protected final List<Meter> meters = new CopyOnWriteArrayList<>();
+
+  /**
+   * @param account
+   *          name of the account (e.g. the user name), can be
+   *          <code>null</code>
+   */
+  public MicrometerMailMetrics(MeterRegistry registry, String account) {
+    this.registry = registry;
+    this.tags = account != null ? Tags.of(TAG_ACCOUNT, account) : Tags.empty();
+  }
+
+  @Override
+  public void recordInvocation(String connector, long durationNanos, boolean success) {
+    Timer timer = Timer.builder(METRIC_INVOCATIONS)
+        .tags(tags)
+        .tag(TAG_CONNECTOR, connector)
+        .tag(TAG_OUTCOME, success ? "success" : "error")
+        .register(registry);
+
+    track(timer).record(durationNanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void countMessages(String connector, long count) {
+    counter(METRIC_MESSAGES, TAG_CONNECTOR, connector, "messages").increment(count);
+  }
+
+  @Override
+  public void countBytes(String connector, long bytes) {
+    counter(METRIC_BYTES, TAG_CONNECTOR, connector, "bytes").increment(bytes);
+  }
+
+  @Override
+  public void countReconnect(String source) {
+    counter(METRIC_RECONNECTS, TAG_SOURCE, source, null).increment();
+  }
+
+  @Override
+  public void countError(String source) {
+    counter(METRIC_ERRORS, TAG_SOURCE, source, null).increment();
+  }
+
+  @Override
+  public void countRejection(String source) {
+    counter(METRIC_REJECTIONS, TAG_SOURCE, source, null).increment();
+  }
+
+  @Override
+  public void gauge(String name, String source, Supplier<Number> value) {
+    Gauge gauge = Gauge.builder(name, value)
+        .tags(tags)
+        .tag(TAG_SOURCE, source)
+        .strongReference(true)
+        .register(registry);
+
+    track(gauge);
+  }
+
+  protected Counter counter(String name, String tag, String tagValue, String baseUnit) {
+    Counter counter = Counter.builder(name)
+        .tags(tags)
+        .tag(tag, tagValue)
+        .baseUnit(baseUnit)
+        .register(registry);
+
+    return track(counter);
+  }
+
+  protected <T extends Meter> T track(T meter) {
+    // the registry returns the same meter for the same id
+    if (!meters.contains(meter)) {
+      meters.add(meter);
+    }
+    return meter;
+  }
+
+  @Override
+  public void close() {
+    meters.forEach(registry::remove);
+    meters.clear();
+  }
+
+  public MeterRegistry getRegistry() {
+    return registry;
+  }
+
+}
@@ -0,0 +1,27 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.metrics;
+
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * Refers to the global registry of Micrometer. The class is only loaded if
+ * Micrometer is on the classpath (see {@link MailMetricsFactory}).
+ */
+class MicrometerMetricsHolder {
+
+  static MailMetrics create(String account) {
+    return new MicrometerMailMetrics(Metrics.globalRegistry, account);
+  }
+
+}
@@ -0,0 +1,54 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.metrics;
+
+import java.util.function.Supplier;
+
+/**
+ * Doesn't record any metrics.
+ */
+public class NoopMailMetrics implements MailMetrics {
+
+  @Override
+  public void recordInvocation(String connector, long durationNanos, boolean success) {
+  }
+
+  @Override
+  public void countMessages(String connector, long count) {
+  }
+
+  @Override
+  public void countBytes(String connector, long bytes) {
+  }
+
+  @Override
+  public void countReconnect(String source) {
+  }
+
+  @Override
+  public void countError(String source) {
+  }
+
+  @Override
+  public void countRejection(String source) {
+  }
+
+  @Override
+  public void gauge(String name, String source, Supplier<Number> value) {
+  }
+
+  @Override
+  public void close() {
+  }
+
+}
@@ -12,8 +12,17 @@
  */
 package org.camunda.bpm.extension.mail.notification;
 
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import javax.mail.MessagingException;
 
+import org.camunda.bpm.extension.mail.metrics.MailMetrics;
 import org.camunda.bpm.extension.mail.service.MailService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,6 +31,14 @@ import com.sun.mail.iap.ProtocolException;
 import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.protocol.IMAPProtocol;
 
+/**
+ * Waits for new mails using IMAP IDLE.
+ *
+ * <p>
+ * The IDLE command is re-issued after the keep-alive time, before the server
+ * terminates it (RFC 2177 recommends at most 29 minutes). If the connection
+ * fails then the worker reconnects with an exponential backoff and jitter.
+ */
 public class IdleNotificationWorker implements NotificationWorker {
 
   private final static Logger LOGGER = LoggerFactory.getLogger(IdleNotificationWorker.class);
@@ -29,11 +46,59 @@ public class IdleNotificationWorker implements NotificationWorker {
   protected final MailService mailService;
   protected final IMAPFolder folder;
 
-  protected boolean runnning = true;
+  protected final Duration keepAlive;
+  protected final Duration initialReconnectDelay;
+  protected final Duration maxReconnectDelay;
+
+  protected final ScheduledExecutorService scheduler;
+  protected final boolean ownScheduler;
+
+  protected volatile boolean runnning = true;
+  protected volatile ConnectionState connectionState = ConnectionState.CONNECTING;
+
+  protected final AtomicLong reconnects = new AtomicLong();
+  protected volatile int failures = 0;
+  protected boolean connected = false;
+
+  protected final Object backoffMonitor = new Object();
+
+  protected Runnable reconnectHandler;
 
   public IdleNotificationWorker(MailService mailService, IMAPFolder folder) {
+    this(mailService, folder, null);
+  }
+
+  /**
+   * @param scheduler
+   *          used to re-issue the IDLE command, can be <code>null</code> to
+   *          use an own thread
+   */
+  public IdleNotificationWorker(MailService mailService, IMAPFolder folder, ScheduledExecutorService scheduler) {
+    this(mailService, folder, scheduler,
+        mailService.getConfiguration().getNotificationIdleKeepAlive(),
+        mailService.getConfiguration().getNotificationReconnectInitialDelay(),
+        mailService.getConfiguration().getNotificationReconnectMaxDelay());
+  }
+
+  public IdleNotificationWorker(MailService mailService, IMAPFolder folder, ScheduledExecutorService scheduler,
+      Duration keepAlive, Duration initialReconnectDelay, Duration maxReconnectDelay) {
     this.mailService = mailService;
     this.folder = folder;
+    this.keepAlive = keepAlive;
+    this.initialReconnectDelay = initialReconnectDelay;
+    this.maxReconnectDelay = maxReconnectDelay;
+
+    if (scheduler != null) {
+      this.scheduler = scheduler;
+      this.ownScheduler = false;
+    } else {
+      this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mail-idle-keep-alive");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.ownScheduler = true;
+    }
   }
 
   @Override
@@ -42,26 +107,100 @@ public class IdleNotificationWorker implements NotificationWorker {
 
       waitingForMails();
     }
+
+    connectionState = ConnectionState.STOPPED;
+
+    if (ownScheduler) {
+      scheduler.shutdownNow();
+    }
   }
 
   protected void waitingForMails() {
     try {
+      boolean reconnect = connected && !folder.isOpen();
+      if (!folder.isOpen()) {
+        connectionState = ConnectionState.CONNECTING;
+      }
+
       mailService.ensureOpenFolder(folder);
 
+      if (reconnect) {
+        long reconnectCount = reconnects.incrementAndGet();
+        LOGGER.info("reconnected to folder '{}' ({} reconnects)", folder.getFullName(), reconnectCount);
+
+        mailService.getMetrics().countReconnect(MailMetrics.SOURCE_NOTIFICATION);
+      }
+      connected = true;
+
+      if (reconnect && reconnectHandler != null) {
+        reconnectHandler.run();
+      }
+
       LOGGER.debug("waiting for mails");
 
-      folder.idle();
+      connectionState = ConnectionState.IDLE;
+
+      ScheduledFuture<?> keepAliveTask = scheduler.schedule(this::interruptIdle, keepAlive.toMillis(), TimeUnit.MILLISECONDS);
+      try {
+        folder.idle();
+      } finally {
+        keepAliveTask.cancel(false);
+      }
+
+      failures = 0;
 
     } catch (Exception e) {
-      LOGGER.debug("exception while waiting for mails", e);
+      if (runnning) {
+        failures += 1;
+        mailService.getMetrics().countError(MailMetrics.SOURCE_NOTIFICATION);
+
+        Duration delay = getReconnectDelay(failures);
+
+        LOGGER.warn("exception while waiting for mails in folder '{}' ({} failures), reconnect in {}: {}",
+            folder.getFullName(), failures, delay, e.getMessage());
+        LOGGER.debug("exception while waiting for mails", e);
+
+        backoff(delay);
+      }
     }
   }
 
-  @Override
-  public void stop() {
-    runnning = false;
+  /**
+   * @return the delay before the next attempt to connect, which grows
+   *         exponentially with the number of failures up to the maximum delay,
+   *         with a random jitter of up to the half of the delay
+   */
+  protected Duration getReconnectDelay(int failures) {
+    long maxDelay = maxReconnectDelay.toMillis();
+    long delay = initialReconnectDelay.toMillis() << Math.min(failures - 1, 30);
+
+    if (delay <= 0 || delay > maxDelay) {
+      delay = maxDelay;
+    }
+
+    long jitter = ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    return Duration.ofMillis(delay - jitter);
+  }
+
+  protected void backoff(Duration delay) {
+    connectionState = ConnectionState.BACKOFF;
 
-    // perform a NOOP to interrupt IDLE
+    synchronized (backoffMonitor) {
+      try {
+        if (runnning) {
+          backoffMonitor.wait(Math.max(1, delay.toMillis()));
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        runnning = false;
+      }
+    }
+  }
+
+  /**
+   * Performs a NOOP to interrupt IDLE.
+   */
+  protected void interruptIdle() {
     try {
       folder.doCommand(new IMAPFolder.ProtocolCommand() {
         public Object doCommand(IMAPProtocol p) throws ProtocolException {
@@ -74,9 +213,44 @@ public class IdleNotificationWorker implements NotificationWorker {
     }
   }
 
+  @Override
+  public void stop() {
+    runnning = false;
+
+    synchronized (backoffMonitor) {
+      backoffMonitor.notifyAll();
+    }
+
+    interruptIdle();
+  }
+
+  @Override
+  public void setReconnectHandler(Runnable reconnectHandler) {
+    this.reconnectHandler = reconnectHandler;
+  }
+
+  public ConnectionState getConnectionState() {
+    return connectionState;
+  }
+
+  /**
+   * @return number of reconnects after the connection failed
+   */
+  public long getReconnectCount() {
+    return reconnects.get();
+  }
+
+  /**
+   * @return number of consecutive failures since the last successful IDLE
+   */
+  public int getFailureCount() {
+    return failures;
+  }
+
   @Override
   public String toString() {
-    return "IdleNotificationWorker [folder=" + folder.getName() + ", runnning=" + runnning + "]";
+    return "IdleNotificationWorker [folder=" + folder.getName() + ", runnning=" + runnning + ", state=" + connectionState
+        + ", reconnects=" + reconnects + "]";
   }
 
 }
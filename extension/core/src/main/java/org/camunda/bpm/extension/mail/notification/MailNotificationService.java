@@ -12,30 +12,35 @@
  */
 package org.camunda.bpm.extension.mail.notification;
 
-import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import javax.mail.Folder;
 import javax.mail.Message;
-import javax.mail.MessagingException;
-import javax.mail.Store;
-import javax.mail.event.MessageCountAdapter;
-import javax.mail.event.MessageCountEvent;
+import javax.mail.URLName;
 
 import org.camunda.bpm.extension.mail.config.MailConfiguration;
 import org.camunda.bpm.extension.mail.dto.Mail;
+import org.camunda.bpm.extension.mail.metrics.MailMetrics;
 import org.camunda.bpm.extension.mail.service.MailService;
 import org.camunda.bpm.extension.mail.service.MailServiceFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.sun.mail.imap.IMAPFolder;
-import com.sun.mail.imap.IMAPStore;
-
+/**
+ * Notifies the registered handlers about new mails in the subscribed folders.
+ *
+ * <p>
+ * The subscriptions can watch folders of different accounts. They share a
+ * bounded pool of threads. Each subscription which waits for mails using IMAP
+ * IDLE occupies one thread, while one thread is kept for the subscriptions
+ * which poll their folder. If no thread is free for IDLE then the folder is
+ * polled instead.
+ */
 public class MailNotificationService {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(MailNotificationService.class);
@@ -43,15 +48,18 @@ public class MailNotificationService {
 	protected final MailService mailService;
 	protected final MailConfiguration configuration;
 
-	protected final List<MessageHandler> handlers = new LinkedList<>();
+	protected final List<MessageHandler> handlers = new CopyOnWriteArrayList<>();
 
-	protected ExecutorService executorService = null;
+	protected final List<NotificationSubscription> subscriptions = new CopyOnWriteArrayList<>();
 
-	protected NotificationWorker notificationWorker;
+	protected ScheduledThreadPoolExecutor scheduler = null;
+	protected NotificationDispatcher dispatcher = null;
 
 	public MailNotificationService(MailConfiguration configuration) {
 		this.configuration = configuration;
 		this.mailService = MailServiceFactory.getService(configuration);
+
+		mailService.getMetrics().gauge(MailMetrics.METRIC_NOTIFICATION_QUEUE, MailMetrics.SOURCE_NOTIFICATION, this::getQueueDepth);
 	}
 
 	public void start() throws Exception {
@@ -59,51 +67,143 @@ public class MailNotificationService {
 	}
 
 	public void start(String folderName) throws Exception {
-		executorService = Executors.newSingleThreadExecutor();
-
-		Folder folder = mailService.ensureOpenFolder(folderName);
+		subscribe(folderName);
+	}
 
-		folder.addMessageCountListener(new MessageCountAdapter() {
-			@Override
-			public void messagesAdded(MessageCountEvent event) {
-				List<Message> messages = Arrays.asList(event.getMessages());
+	/**
+	 * Watches the given folder of the configured account for new mails.
+	 */
+	public NotificationSubscription subscribe(String folderName) throws Exception {
+		return subscribe(configuration, folderName);
+	}
 
-				handlers.forEach(handler -> handler.accept(messages));
+	/**
+	 * Watches the given folder of the account for new mails.
+	 *
+	 * @param account
+	 *          configuration of the account (e.g. user name, password, mail
+	 *          server)
+	 */
+	public synchronized NotificationSubscription subscribe(MailConfiguration account, String folderName) throws Exception {
+		NotificationSubscription subscription = new NotificationSubscription(getMailService(account), folderName, this::dispatch);
+		subscription.open();
+
+		boolean useIdle = false;
+		if (subscription.supportsIdle()) {
+			// keep one thread for the subscriptions which poll their folder
+			useIdle = getIdleSubscriptionCount() < getScheduler().getCorePoolSize() - 1;
+
+			if (!useIdle) {
+				LOGGER.warn("no free thread for IDLE, poll folder '{}' of '{}' instead", folderName, account.getUserName());
 			}
-		});
-
-		if (supportsIdle(folder)) {
-			notificationWorker = new IdleNotificationWorker(mailService, (IMAPFolder) folder);
-		} else {
-			notificationWorker = new PollNotificationWorker(mailService, folder,
-					configuration.getNotificationLookupTime());
 		}
 
-		LOGGER.debug("start notification service: {}", notificationWorker);
+		subscription.start(getScheduler(), useIdle, account.getNotificationLookupTime());
+		subscriptions.add(subscription);
+
+		return subscription;
+	}
 
-		executorService.submit(notificationWorker);
+	public synchronized void unsubscribe(NotificationSubscription subscription) {
+		if (subscriptions.remove(subscription)) {
+			subscription.stop();
+		}
 	}
 
-	public void stop() {
-		if (notificationWorker != null) {
+	public synchronized void stop() {
+		if (!subscriptions.isEmpty()) {
 			LOGGER.debug("stop notification service");
 
-			notificationWorker.stop();
+			subscriptions.forEach(NotificationSubscription::stop);
+			subscriptions.clear();
+		}
+
+		if (scheduler != null) {
+			scheduler.shutdown();
+			scheduler = null;
+		}
 
-			executorService.shutdown();
-			executorService = null;
+		if (dispatcher != null) {
+			dispatcher.shutdown();
+			dispatcher = null;
 		}
 	}
 
-	protected boolean supportsIdle(Folder folder) throws MessagingException {
-		Store store = folder.getStore();
+	public List<NotificationSubscription> getSubscriptions() {
+		return new ArrayList<>(subscriptions);
+	}
+
+	protected long getIdleSubscriptionCount() {
+		return subscriptions.stream().filter(NotificationSubscription::isIdle).count();
+	}
 
-		if (store instanceof IMAPStore) {
-			IMAPStore imapStore = (IMAPStore) store;
-			return imapStore.hasCapability("IDLE") && folder instanceof IMAPFolder;
-		} else {
-			return false;
+	/**
+	 * @return the service of the account, which is shared with the connectors
+	 *         of the same configuration
+	 */
+	protected MailService getMailService(MailConfiguration account) {
+		return MailServiceFactory.getService(account);
+	}
+
+	/**
+	 * @return the service of the account which the messages were received from,
+	 *         to prefetch them and to load their lazy content with the same
+	 *         account
+	 */
+	protected MailService getMailService(List<Message> messages) {
+		Folder folder = messages.isEmpty() ? null : messages.get(0).getFolder();
+		if (folder == null) {
+			return mailService;
+		}
+
+		for (NotificationSubscription subscription : subscriptions) {
+			if (subscription.folder == folder) {
+				return subscription.getMailService();
+			}
+		}
+
+		// the subscription is stopped or reconnected meanwhile - find the service by the user of the store
+		URLName urlName = folder.getStore().getURLName();
+		MailService service = urlName != null ? MailServiceFactory.findService(urlName.getUsername()) : null;
+		return service != null ? service : mailService;
+	}
+
+	protected ScheduledThreadPoolExecutor getScheduler() {
+		if (scheduler == null) {
+			AtomicInteger threadNumber = new AtomicInteger();
+
+			scheduler = new ScheduledThreadPoolExecutor(configuration.getNotificationThreads(), runnable -> {
+				Thread thread = new Thread(runnable, "mail-notification-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
 		}
+		return scheduler;
+	}
+
+	protected synchronized NotificationDispatcher getDispatcher() {
+		if (dispatcher == null) {
+			dispatcher = new NotificationDispatcher(
+					configuration.getNotificationDispatchThreads(),
+					configuration.getNotificationDispatchQueueSize(),
+					NotificationDispatcher.DispatchPolicy.parse(configuration.getNotificationDispatchPolicy()));
+		}
+		return dispatcher;
+	}
+
+	protected void dispatch(List<Message> messages) {
+		getMailService(messages).getMetrics().countMessages(MailMetrics.SOURCE_NOTIFICATION, messages.size());
+
+		getDispatcher().dispatch(messages, handlers);
+	}
+
+	/**
+	 * @return number of notifications which are waiting to be passed to the
+	 *         handlers
+	 */
+	public int getQueueDepth() {
+		NotificationDispatcher currentDispatcher = dispatcher;
+		return currentDispatcher != null ? currentDispatcher.getQueueDepth() : 0;
 	}
 
 	public void registerMessageHandler(MessageHandler handler) {
@@ -112,7 +212,7 @@ public class MailNotificationService {
 
 	public void registerMailHandler(Consumer<Mail> consumer) {
 		MessageTransformationHandler handler = new MessageTransformationHandler(consumer,
-				configuration.downloadAttachments(), configuration.getAttachmentPath());
+				configuration.downloadAttachments(), configuration.getAttachmentPath(), this::getMailService);
 		registerMessageHandler(handler);
 	}
 
@@ -15,10 +15,12 @@ package org.camunda.bpm.extension.mail.notification;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 import javax.mail.Message;
 
 import org.camunda.bpm.extension.mail.dto.Mail;
+import org.camunda.bpm.extension.mail.service.MailService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,26 +33,63 @@ public class MessageTransformationHandler implements MessageHandler {
 	protected final boolean downloadAttachments;
 	protected final String attachementPath;
 
+	protected final Function<List<Message>, MailService> mailServiceResolver;
+
 	public MessageTransformationHandler(Consumer<Mail> consumer) {
 		this(consumer, false, null);
 	}
 
 	public MessageTransformationHandler(Consumer<Mail> consumer, boolean downloadAttachments, String attachementPath) {
+		this(consumer, downloadAttachments, attachementPath, (MailService) null);
+	}
+
+	/**
+	 * @param mailService
+	 *          used to prefetch the received messages before transforming
+	 *          them, can be <code>null</code>
+	 */
+	public MessageTransformationHandler(Consumer<Mail> consumer, boolean downloadAttachments, String attachementPath,
+			MailService mailService) {
+		this(consumer, downloadAttachments, attachementPath, messages -> mailService);
+	}
+
+	/**
+	 * @param mailServiceResolver
+	 *          returns the service of the account which the messages were
+	 *          received from, used to prefetch the messages and to load their
+	 *          lazy content - the returned service can be <code>null</code>
+	 */
+	public MessageTransformationHandler(Consumer<Mail> consumer, boolean downloadAttachments, String attachementPath,
+			Function<List<Message>, MailService> mailServiceResolver) {
 		this.consumer = consumer;
 		this.downloadAttachments = downloadAttachments;
 		this.attachementPath = attachementPath;
+		this.mailServiceResolver = mailServiceResolver;
 	}
 
 	@Override
 	public void accept(List<Message> messages) {
+		MailService mailService = mailServiceResolver.apply(messages);
+
+		boolean lazyContent = false;
+		if (mailService != null) {
+			mailService.prefetch(messages);
+
+			lazyContent = mailService.getConfiguration().lazyContent();
+		}
+
 		List<Mail> mails = new ArrayList<>();
 
 		for (Message message : messages) {
 
 			try {
-				Mail mail = Mail.from(message);
+				Mail mail = lazyContent ? Mail.lazyFrom(message, mailService) : Mail.from(message);
 				if (downloadAttachments) {
-					mail.downloadAttachments(attachementPath);
+					if (mailService != null) {
+						mail.downloadAttachments(attachementPath, mailService.getAttachmentStore());
+					} else {
+						mail.downloadAttachments(attachementPath);
+					}
 				}
 
 				mails.add(mail);
@@ -0,0 +1,177 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.notification;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.Folder;
+import javax.mail.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Passes received messages to the handlers asynchronously, so that a slow
+ * handler doesn't block the connection which waits for new mails.
+ *
+ * <p>
+ * The messages are dispatched by a configurable number of lanes. All messages
+ * of one folder are dispatched by the same lane, in the order they are
+ * received. If the queue of a lane is full then the policy decides whether
+ * the receiving thread waits, the oldest messages are dropped or the
+ * receiving thread invokes the handlers itself.
+ */
+public class NotificationDispatcher {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+  public enum DispatchPolicy {
+    /** wait until the queue has space (i.e. delay new notifications) */
+    BLOCK,
+    /** drop the oldest queued messages */
+    DROP_OLDEST,
+    /** invoke the handlers by the receiving thread, may break the ordering */
+    CALLER_RUNS;
+
+    public static DispatchPolicy parse(String policy) {
+      return valueOf(policy.trim().toUpperCase().replace('-', '_'));
+    }
+  }
+
+  protected final ThreadPoolExecutor[] lanes;
+  protected final DispatchPolicy policy;
+
+  protected final AtomicLong dispatched = new AtomicLong();
+  protected final AtomicLong dropped = new AtomicLong();
+
+  public NotificationDispatcher(int parallelism, int queueSize, DispatchPolicy policy) {
+    this.policy = policy;
+    this.lanes = new ThreadPoolExecutor[Math.max(1, parallelism)];
+
+    for (int i = 0; i < lanes.length; i++) {
+      String threadName = "mail-notification-dispatch-" + (i + 1);
+
+      lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+          runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+          },
+          createRejectedExecutionHandler());
+    }
+  }
+
+  public void dispatch(List<Message> messages, List<? extends MessageHandler> handlers) {
+    if (messages.isEmpty()) {
+      return;
+    }
+
+    ThreadPoolExecutor lane = getLane(messages.get(0).getFolder());
+
+    lane.execute(() -> invokeHandlers(messages, handlers));
+  }
+
+  protected ThreadPoolExecutor getLane(Folder folder) {
+    int hash = folder != null ? System.identityHashCode(folder) : 0;
+    return lanes[Math.abs(hash % lanes.length)];
+  }
+
+  protected void invokeHandlers(List<Message> messages, List<? extends MessageHandler> handlers) {
+    for (MessageHandler handler : handlers) {
+      try {
+        handler.accept(messages);
+      } catch (Exception e) {
+        LOGGER.warn("exception while handling {} received messages", messages.size(), e);
+      }
+    }
+    dispatched.addAndGet(messages.size());
+  }
+
+  protected RejectedExecutionHandler createRejectedExecutionHandler() {
+    switch (policy) {
+    case DROP_OLDEST:
+      return (runnable, executor) -> {
+        if (!executor.isShutdown()) {
+          LOGGER.warn("dispatch queue is full, drop the oldest received messages");
+
+          executor.getQueue().poll();
+          dropped.incrementAndGet();
+
+          executor.execute(runnable);
+        }
+      };
+
+    case CALLER_RUNS:
+      return new ThreadPoolExecutor.CallerRunsPolicy();
+
+    default:
+      return (runnable, executor) -> {
+        if (executor.isShutdown()) {
+          throw new RejectedExecutionException("dispatcher is shut down");
+        }
+        try {
+          executor.getQueue().put(runnable);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new RejectedExecutionException("interrupted while waiting for the dispatch queue", e);
+        }
+      };
+    }
+  }
+
+  /**
+   * @return number of notifications (i.e. received messages of a folder)
+   *         which are waiting to be dispatched
+   */
+  public int getQueueDepth() {
+    int depth = 0;
+    for (ThreadPoolExecutor lane : lanes) {
+      depth += lane.getQueue().size();
+    }
+    return depth;
+  }
+
+  /**
+   * @return number of messages which are passed to the handlers
+   */
+  public long getDispatchedCount() {
+    return dispatched.get();
+  }
+
+  /**
+   * @return number of notifications which are dropped because the queue was
+   *         full
+   */
+  public long getDroppedCount() {
+    return dropped.get();
+  }
+
+  public void shutdown() {
+    for (ThreadPoolExecutor lane : lanes) {
+      lane.shutdown();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "NotificationDispatcher [lanes=" + lanes.length + ", policy=" + policy + ", queueDepth=" + getQueueDepth() + "]";
+  }
+
+}
@@ -0,0 +1,264 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.notification;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Store;
+import javax.mail.UIDFolder;
+import javax.mail.event.MessageCountAdapter;
+import javax.mail.event.MessageCountEvent;
+
+import org.camunda.bpm.extension.mail.poll.PollState;
+import org.camunda.bpm.extension.mail.service.MailService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+
+/**
+ * Watches one folder of an account for new mails, using an own connection to
+ * the mail server.
+ *
+ * <p>
+ * The subscription records the UID of the last mail which is passed to the
+ * handlers. Mails which are received while the connection was lost don't
+ * raise an event, so they are fetched after the folder is reopened.
+ */
+public class NotificationSubscription {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(NotificationSubscription.class);
+
+  protected final MailService mailService;
+  protected final String folderName;
+  protected final Consumer<List<Message>> messageConsumer;
+
+  protected Store store;
+  protected Folder folder;
+
+  protected NotificationWorker worker;
+  protected Future<?> future;
+  protected boolean idle = false;
+
+  protected volatile PollState deliveredState;
+
+  public NotificationSubscription(MailService mailService, String folderName, Consumer<List<Message>> messageConsumer) {
+    this.mailService = mailService;
+    this.folderName = folderName;
+    this.messageConsumer = messageConsumer;
+  }
+
+  /**
+   * Connects an own store, to not block one of the pool, and opens the folder.
+   */
+  protected void open() throws MessagingException {
+    store = mailService.connectStore();
+    folder = mailService.ensureOpenFolder(store.getFolder(folderName));
+
+    deliveredState = getCurrentState();
+
+    folder.addMessageCountListener(new MessageCountAdapter() {
+      @Override
+      public void messagesAdded(MessageCountEvent event) {
+        deliver(Arrays.asList(event.getMessages()));
+      }
+    });
+  }
+
+  /**
+   * @return the UID of the last mail in the folder, or <code>null</code> if the
+   *         folder doesn't support UIDs
+   */
+  protected PollState getCurrentState() throws MessagingException {
+    if (!(folder instanceof UIDFolder)) {
+      return null;
+    }
+    UIDFolder uidFolder = (UIDFolder) folder;
+
+    long lastUid = 0;
+    int messageCount = folder.getMessageCount();
+    if (messageCount > 0) {
+      lastUid = uidFolder.getUID(folder.getMessage(messageCount));
+    }
+
+    return new PollState(folderName, uidFolder.getUIDValidity(), lastUid);
+  }
+
+  /**
+   * Passes the mails to the handlers, except the ones which are already
+   * delivered.
+   */
+  protected synchronized void deliver(List<Message> messages) {
+    PollState state = deliveredState;
+
+    if (state == null) {
+      messageConsumer.accept(messages);
+      return;
+    }
+
+    try {
+      UIDFolder uidFolder = (UIDFolder) folder;
+
+      List<Message> newMessages = new ArrayList<>();
+      long lastUid = state.getLastUid();
+
+      for (Message message : messages) {
+        long uid = uidFolder.getUID(message);
+
+        if (uid > state.getLastUid()) {
+          newMessages.add(message);
+          lastUid = Math.max(lastUid, uid);
+        }
+      }
+
+      deliveredState = new PollState(folderName, state.getUidValidity(), lastUid);
+
+      if (!newMessages.isEmpty()) {
+        messageConsumer.accept(newMessages);
+      }
+
+    } catch (MessagingException e) {
+      LOGGER.warn("failed to get the UIDs of new mails in folder '{}'", folderName, e);
+
+      messageConsumer.accept(messages);
+    }
+  }
+
+  /**
+   * Fetches the mails which are received since the last delivered mail, i.e.
+   * while the connection was lost, and passes them to the handlers.
+   */
+  protected void catchUp() {
+    PollState state = deliveredState;
+    if (state == null) {
+      return;
+    }
+
+    try {
+      UIDFolder uidFolder = (UIDFolder) folder;
+
+      if (uidFolder.getUIDValidity() != state.getUidValidity()) {
+        LOGGER.warn("UIDVALIDITY of folder '{}' has changed - can't catch up missed mails", folderName);
+
+        deliveredState = getCurrentState();
+        return;
+      }
+
+      // the range 'n:*' contains at least the last message, even if its UID is lower than n
+      Message[] messages = uidFolder.getMessagesByUID(state.getLastUid() + 1, UIDFolder.LASTUID);
+
+      LOGGER.debug("catch up mails of folder '{}' after UID {}", folderName, state.getLastUid());
+
+      deliver(Arrays.asList(messages));
+
+    } catch (MessagingException e) {
+      LOGGER.warn("failed to catch up missed mails of folder '{}'", folderName, e);
+    }
+  }
+
+  /**
+   * Starts waiting for new mails. An IDLE worker occupies a thread of the
+   * scheduler until it is stopped, while a poll worker schedules its polls
+   * itself.
+   */
+  protected void start(ScheduledExecutorService scheduler, boolean useIdle, Duration lookupTime) {
+    idle = useIdle;
+
+    if (useIdle) {
+      worker = new IdleNotificationWorker(mailService, (IMAPFolder) folder, scheduler);
+      worker.setReconnectHandler(this::catchUp);
+      future = scheduler.submit(worker);
+
+    } else {
+      PollNotificationWorker pollWorker = new PollNotificationWorker(mailService, folder, lookupTime);
+      pollWorker.setReconnectHandler(this::catchUp);
+      pollWorker.schedule(scheduler);
+      worker = pollWorker;
+    }
+
+    LOGGER.debug("start subscription: {}", this);
+  }
+
+  public void stop() {
+    LOGGER.debug("stop subscription: {}", this);
+
+    if (worker != null) {
+      worker.stop();
+    }
+    if (future != null) {
+      future.cancel(false);
+    }
+
+    if (store != null) {
+      try {
+        store.close();
+      } catch (MessagingException e) {
+        LOGGER.debug("exception while closing the store", e);
+      }
+      store = null;
+    }
+  }
+
+  public boolean supportsIdle() throws MessagingException {
+    if (store instanceof IMAPStore) {
+      IMAPStore imapStore = (IMAPStore) store;
+      return imapStore.hasCapability("IDLE") && folder instanceof IMAPFolder;
+    } else {
+      return false;
+    }
+  }
+
+  /**
+   * @return <code>true</code> if the subscription waits for new mails using
+   *         IMAP IDLE, <code>false</code> if it polls the folder
+   */
+  public boolean isIdle() {
+    return idle;
+  }
+
+  public MailService getMailService() {
+    return mailService;
+  }
+
+  public String getFolderName() {
+    return folderName;
+  }
+
+  public NotificationWorker getWorker() {
+    return worker;
+  }
+
+  /**
+   * @return the UID of the last mail which is passed to the handlers, or
+   *         <code>null</code> if the folder doesn't support UIDs
+   */
+  public PollState getDeliveredState() {
+    return deliveredState;
+  }
+
+  @Override
+  public String toString() {
+    return "NotificationSubscription [user=" + mailService.getConfiguration().getUserName() + ", folder=" + folderName + ", worker=" + worker + "]";
+  }
+
+}
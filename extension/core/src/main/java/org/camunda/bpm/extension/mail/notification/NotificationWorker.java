@@ -16,4 +16,11 @@ public interface NotificationWorker extends Runnable {
 
   void stop();
 
+  /**
+   * @param reconnectHandler
+   *          invoked after the folder is reopened because the connection was
+   *          lost
+   */
+  void setReconnectHandler(Runnable reconnectHandler);
+
 }
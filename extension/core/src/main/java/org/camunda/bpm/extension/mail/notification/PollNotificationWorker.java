@@ -13,11 +13,24 @@
 package org.camunda.bpm.extension.mail.notification;
 
 import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
 import javax.mail.Folder;
+import org.camunda.bpm.extension.mail.metrics.MailMetrics;
 import org.camunda.bpm.extension.mail.service.MailService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Polls a folder periodically as task of a scheduler.
+ *
+ * <p>
+ * The interval adapts to the incoming mails: it is reset to the lookup time
+ * when new mails are received and doubled when the folder is idle, up to the
+ * maximum lookup time.
+ */
 public class PollNotificationWorker implements NotificationWorker {
 
   private final static Logger LOGGER = LoggerFactory.getLogger(PollNotificationWorker.class);
@@ -25,58 +38,133 @@ public class PollNotificationWorker implements NotificationWorker {
   protected final MailService mailService;
   protected final Folder folder;
   protected final Duration lookupTime;
+  protected final Duration maxLookupTime;
+
+  protected volatile boolean running = true;
+  protected boolean connected = false;
 
-  protected boolean running = true;
+  protected Runnable reconnectHandler;
+
+  protected ScheduledExecutorService scheduler;
+  protected ScheduledFuture<?> future;
+
+  protected volatile Duration interval;
+  protected int messageCount = -1;
 
   public PollNotificationWorker(MailService mailService, Folder folder, Duration lookupTime) {
+    this(mailService, folder, lookupTime, mailService.getConfiguration().getNotificationLookupMaxTime());
+  }
+
+  public PollNotificationWorker(MailService mailService, Folder folder, Duration lookupTime, Duration maxLookupTime) {
     this.mailService = mailService;
     this.folder = folder;
     this.lookupTime = lookupTime;
+    this.maxLookupTime = maxLookupTime.compareTo(lookupTime) > 0 ? maxLookupTime : lookupTime;
+    this.interval = lookupTime;
   }
 
+  /**
+   * Polls the folder now and schedules the following polls.
+   */
+  public synchronized void schedule(ScheduledExecutorService scheduler) {
+    this.scheduler = scheduler;
+
+    future = scheduler.schedule(this, 0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Polls the folder once and schedules the next poll, if the worker is
+   * scheduled.
+   */
   @Override
   public void run() {
-    while (running) {
+    if (!running) {
+      return;
+    }
 
-      triggerMailServer();
-      waitTillNextLookup();
+    boolean receivedMails = triggerMailServer();
+    interval = getNextInterval(receivedMails);
+
+    synchronized (this) {
+      if (running && scheduler != null) {
+        future = scheduler.schedule(this, interval.toMillis(), TimeUnit.MILLISECONDS);
+      }
     }
   }
 
-  protected void triggerMailServer() {
+  /**
+   * @return <code>true</code> if new mails are received since the last poll
+   */
+  protected boolean triggerMailServer() {
     try {
       LOGGER.debug("trigger the mail server");
 
+      boolean reconnect = connected && !folder.isOpen();
+
       mailService.ensureOpenFolder(folder);
+      connected = true;
+
+      if (reconnect) {
+        LOGGER.debug("reconnected to folder '{}'", folder.getFullName());
+
+        mailService.getMetrics().countReconnect(MailMetrics.SOURCE_NOTIFICATION);
+
+        if (reconnectHandler != null) {
+          reconnectHandler.run();
+        }
+      }
+
       // This is to force the server to send us EXISTS notifications.
-      folder.getMessageCount();
+      int currentMessageCount = folder.getMessageCount();
+
+      boolean receivedMails = messageCount >= 0 && currentMessageCount > messageCount;
+      messageCount = currentMessageCount;
+
+      return receivedMails;
 
     } catch (Exception e) {
       LOGGER.debug("exception while triggering mail server", e);
+
+      mailService.getMetrics().countError(MailMetrics.SOURCE_NOTIFICATION);
+
+      return false;
     }
   }
 
-  protected void waitTillNextLookup() {
-    try {
-      Thread.sleep(lookupTime.toMillis());
-    } catch (InterruptedException e) {
-      // ignore
+  protected Duration getNextInterval(boolean receivedMails) {
+    if (receivedMails) {
+      return lookupTime;
     }
+
+    Duration nextInterval = interval.multipliedBy(2);
+    return nextInterval.compareTo(maxLookupTime) < 0 ? nextInterval : maxLookupTime;
   }
 
   @Override
-  public void stop() {
+  public synchronized void stop() {
     running = false;
 
-    synchronized (this) {
-      this.notifyAll();
+    if (future != null) {
+      future.cancel(false);
     }
   }
 
+  @Override
+  public void setReconnectHandler(Runnable reconnectHandler) {
+    this.reconnectHandler = reconnectHandler;
+  }
+
+  /**
+   * @return the current interval between two polls
+   */
+  public Duration getInterval() {
+    return interval;
+  }
+
   @Override
   public String toString() {
     return "PollNotificationWorker [folder=" + folder.getName() + ", lookupTime=" + lookupTime
-        + ", running=" + running + "]";
+        + ", interval=" + interval + ", running=" + running + "]";
   }
 
 }
@@ -0,0 +1,110 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.poll;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import org.camunda.bpm.extension.mail.MailConnectorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores the state of incremental polls in a properties file, so that the
+ * polls continue after a restart.
+ */
+public class FilePollStateStore implements PollStateStore {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FilePollStateStore.class);
+
+  protected static final String SUFFIX_UID_VALIDITY = ".uidValidity";
+  protected static final String SUFFIX_LAST_UID = ".lastUid";
+  protected static final String SUFFIX_HIGHEST_MOD_SEQ = ".highestModSeq";
+
+  protected final Path path;
+
+  public FilePollStateStore(Path path) {
+    this.path = path;
+  }
+
+  @Override
+  public synchronized PollState load(String account, String folder) {
+    Properties properties = readProperties();
+    String key = getKey(account, folder);
+
+    String uidValidity = properties.getProperty(key + SUFFIX_UID_VALIDITY);
+    String lastUid = properties.getProperty(key + SUFFIX_LAST_UID);
+    String highestModSeq = properties.getProperty(key + SUFFIX_HIGHEST_MOD_SEQ, "-1");
+
+    if (uidValidity == null || lastUid == null) {
+      return null;
+    } else {
+      return new PollState(folder, Long.parseLong(uidValidity), Long.parseLong(lastUid), Long.parseLong(highestModSeq));
+    }
+  }
+
+  @Override
+  public synchronized void save(String account, PollState state) {
+    Properties properties = readProperties();
+    String key = getKey(account, state.getFolder());
+
+    properties.setProperty(key + SUFFIX_UID_VALIDITY, String.valueOf(state.getUidValidity()));
+    properties.setProperty(key + SUFFIX_LAST_UID, String.valueOf(state.getLastUid()));
+    properties.setProperty(key + SUFFIX_HIGHEST_MOD_SEQ, String.valueOf(state.getHighestModSeq()));
+
+    writeProperties(properties);
+  }
+
+  protected String getKey(String account, String folder) {
+    return account != null ? account + "/" + folder : folder;
+  }
+
+  protected Properties readProperties() {
+    Properties properties = new Properties();
+
+    if (Files.exists(path)) {
+      try (InputStream inputStream = Files.newInputStream(path)) {
+        properties.load(inputStream);
+
+      } catch (IOException e) {
+        throw new MailConnectorException("Unable to read poll state from: " + path, e);
+      }
+    }
+    return properties;
+  }
+
+  protected void writeProperties(Properties properties) {
+    try {
+      Path directory = path.toAbsolutePath().getParent();
+      Files.createDirectories(directory);
+
+      // replace the file at once to not lose the state on a failure
+      Path tempFile = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+      try (OutputStream outputStream = Files.newOutputStream(tempFile)) {
+        properties.store(outputStream, "state of incremental mail polls");
+      }
+      Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+      LOGGER.debug("stored poll state at '{}'", path);
+
+    } catch (IOException e) {
+      throw new MailConnectorException("Unable to write poll state to: " + path, e);
+    }
+  }
+
+}
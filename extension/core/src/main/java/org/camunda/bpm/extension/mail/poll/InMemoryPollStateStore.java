@@ -0,0 +1,40 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.poll;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the state of incremental polls in memory, i.e. each folder is
+ * polled completely once after a restart.
+ */
+public class InMemoryPollStateStore implements PollStateStore {
+
+  protected final Map<String, PollState> states = new ConcurrentHashMap<>();
+
+  @Override
+  public PollState load(String account, String folder) {
+    return states.get(getKey(account, folder));
+  }
+
+  @Override
+  public void save(String account, PollState state) {
+    states.put(getKey(account, state.getFolder()), state);
+  }
+
+  protected String getKey(String account, String folder) {
+    return account != null ? account + "/" + folder : folder;
+  }
+
+}
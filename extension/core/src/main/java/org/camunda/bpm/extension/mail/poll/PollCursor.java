@@ -0,0 +1,68 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.poll;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position of a paged poll: the UID of the last polled mail of a folder,
+ * which is passed to the next poll as opaque string.
+ */
+public class PollCursor {
+
+  private static final String SEPARATOR = ":";
+
+  private final long uidValidity;
+  private final long lastUid;
+
+  public PollCursor(long uidValidity, long lastUid) {
+    this.uidValidity = uidValidity;
+    this.lastUid = lastUid;
+  }
+
+  public long getUidValidity() {
+    return uidValidity;
+  }
+
+  public long getLastUid() {
+    return lastUid;
+  }
+
+  public String encode() {
+    String cursor = uidValidity + SEPARATOR + lastUid;
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  /**
+   * @throws IllegalArgumentException
+   *           if the given string is not a cursor
+   */
+  public static PollCursor decode(String cursor) {
+    try {
+      String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+      String[] parts = decoded.split(SEPARATOR);
+
+      return new PollCursor(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+
+    } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("invalid cursor: " + cursor, e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "PollCursor [uidValidity=" + uidValidity + ", lastUid=" + lastUid + "]";
+  }
+
+}
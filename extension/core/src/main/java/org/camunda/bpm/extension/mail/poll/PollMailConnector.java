@@ -12,21 +12,27 @@
  */
 package org.camunda.bpm.extension.mail.poll;
 
+import java.nio.file.Paths;
 import java.util.List;
 
 import javax.mail.Folder;
 import javax.mail.Message;
+import javax.mail.event.MailEvent;
 
 import org.camunda.bpm.extension.mail.MailConnectorException;
 import org.camunda.bpm.extension.mail.config.MailConfiguration;
 import org.camunda.bpm.extension.mail.config.MailConfigurationFactory;
 import org.camunda.bpm.extension.mail.service.MailService;
 import org.camunda.bpm.extension.mail.service.MailServiceFactory;
+import org.camunda.bpm.extension.mail.trace.MailTracer;
+import org.camunda.bpm.extension.mail.trace.Span;
 import org.camunda.connect.impl.AbstractConnector;
 import org.camunda.connect.spi.ConnectorResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sun.mail.imap.ResyncData;
+
 public class PollMailConnector extends AbstractConnector<PollMailRequest, PollMailResponse> {
 
   private final static Logger LOGGER = LoggerFactory.getLogger(PollMailConnector.class);
@@ -34,6 +40,7 @@ public class PollMailConnector extends AbstractConnector<PollMailRequest, PollMa
   public static final String CONNECTOR_ID = "mail-poll";
 
   protected MailConfiguration configuration;
+  protected PollStateStore pollStateStore;
 
   public PollMailConnector() {
     super(CONNECTOR_ID);
@@ -48,21 +55,71 @@ public class PollMailConnector extends AbstractConnector<PollMailRequest, PollMa
   public ConnectorResponse execute(PollMailRequest request) {
     MailService mailService = MailServiceFactory.getService(getConfiguration());
 
+    long start = System.nanoTime();
+    boolean success = false;
+    Span trace = MailTracer.startTrace(CONNECTOR_ID, requestInterceptors);
     try {
 
-      Folder folder = mailService.ensureOpenFolder(request.getFolder());
+      Folder folder = mailService.getFolder(request.getFolder());
+
+      boolean incremental = request.isIncremental();
+      PollState lastPollState = null;
+      if (incremental) {
+        lastPollState = request.getPollState();
+        if (lastPollState == null) {
+          lastPollState = getPollStateStore().load(getConfiguration().getUserName(), folder.getFullName());
+        }
+      }
+
+      boolean trackChanges = incremental && request.isTrackChanges();
+      List<MailEvent> resyncEvents = null;
+
+      if (trackChanges && lastPollState != null && lastPollState.getLastUid() > 0 && lastPollState.getHighestModSeq() > 0) {
+        // QRESYNC reports the expunged messages since the last poll when the folder is selected
+        ResyncData resyncData = new ResyncData(lastPollState.getUidValidity(), lastPollState.getHighestModSeq(), 1, lastPollState.getLastUid());
+        resyncEvents = mailService.resyncFolder(folder, resyncData);
+      } else {
+        mailService.ensureOpenFolder(folder);
+      }
 
-      PollMailInvocation invocation = new PollMailInvocation(folder, request, requestInterceptors, mailService);
+      PollMailInvocation invocation = new PollMailInvocation(folder, request, requestInterceptors, mailService, incremental, lastPollState,
+          trackChanges, resyncEvents);
 
       @SuppressWarnings("unchecked")
       List<Message> messages = (List<Message>) invocation.proceed();
 
       LOGGER.debug("poll {} mails from folder '{}'", messages.size(), folder.getName());
 
-      return new PollMailResponse(messages, mailService, request.downloadAttachments(), getConfiguration().getAttachmentPath());
+      success = true;
+      mailService.getMetrics().countMessages(CONNECTOR_ID, messages.size());
+
+      // the poll state is saved and the trace is ended after the response is collected
+      PollStateStore pollStateStore = incremental && request.getPollState() == null ? getPollStateStore() : null;
+
+      return new PollMailResponse(messages, mailService, new PollMailResponse.Parameters()
+          .downloadAttachments(request.downloadAttachments())
+          .attachmentPath(getConfiguration().getAttachmentPath())
+          .pollState(invocation.getPollState())
+          .lazyContent(request.isLazyContent())
+          .changedMessages(invocation.getChangedMessages())
+          .vanishedUids(invocation.getVanishedUids())
+          .cursor(invocation.getNextCursor())
+          .trace(trace)
+          .pollStateStore(pollStateStore, getConfiguration().getUserName()));
 
     } catch (Exception e) {
+      mailService.flush();
+
       throw new MailConnectorException("Failed to poll mails: " + e.getMessage(), e);
+
+    } finally {
+      mailService.getMetrics().recordInvocation(CONNECTOR_ID, System.nanoTime() - start, success);
+
+      if (success) {
+        MailTracer.suspend(trace);
+      } else {
+        trace.close();
+      }
     }
   }
 
@@ -77,4 +134,20 @@ public class PollMailConnector extends AbstractConnector<PollMailRequest, PollMa
     this.configuration = configuration;
   }
 
+  protected synchronized PollStateStore getPollStateStore() {
+    if (pollStateStore == null) {
+      String path = getConfiguration().getPollStatePath();
+      if (path == null) {
+        pollStateStore = new InMemoryPollStateStore();
+      } else {
+        pollStateStore = new FilePollStateStore(Paths.get(path));
+      }
+    }
+    return pollStateStore;
+  }
+
+  public void setPollStateStore(PollStateStore pollStateStore) {
+    this.pollStateStore = pollStateStore;
+  }
+
 }
@@ -12,34 +12,583 @@
  */
 package org.camunda.bpm.extension.mail.poll;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import javax.mail.FetchProfile;
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
 import javax.mail.Folder;
 import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Store;
+import javax.mail.UIDFolder;
+import javax.mail.event.MailEvent;
+import javax.mail.search.AndTerm;
 import javax.mail.search.FlagTerm;
+import javax.mail.search.SearchException;
+import javax.mail.search.SearchTerm;
 import org.camunda.bpm.extension.mail.service.MailService;
+import org.camunda.bpm.extension.mail.trace.MailTracer;
+import org.camunda.bpm.extension.mail.trace.Span;
 import org.camunda.connect.impl.AbstractRequestInvocation;
 import org.camunda.connect.spi.ConnectorRequestInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.mail.iap.Argument;
+import com.sun.mail.iap.BadCommandException;
+import com.sun.mail.iap.CommandFailedException;
+import com.sun.mail.iap.Response;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPMessage;
+import com.sun.mail.imap.IMAPStore;
+import com.sun.mail.imap.MessageVanishedEvent;
+import com.sun.mail.imap.protocol.IMAPResponse;
+import com.sun.mail.imap.protocol.SearchSequence;
 
 public class PollMailInvocation extends AbstractRequestInvocation<Folder> {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(PollMailInvocation.class);
+
   protected final MailService mailService;
+  protected final boolean incremental;
+  protected final boolean trackChanges;
+  protected final List<MailEvent> resyncEvents;
+
+  protected PollState pollState;
+
+  protected List<Message> changedMessages = Collections.emptyList();
+  protected List<Long> vanishedUids = Collections.emptyList();
+
+  protected PollCursor nextCursor;
+
+  // set by polling the new messages: the UID to continue after, and if more messages are left
+  protected long lastNewUid;
+  protected boolean moreNewMessages;
 
   public PollMailInvocation(Folder folder, PollMailRequest request,
       List<ConnectorRequestInterceptor> requestInterceptors, MailService mailService) {
+    this(folder, request, requestInterceptors, mailService, false, null);
+  }
+
+  public PollMailInvocation(Folder folder, PollMailRequest request,
+      List<ConnectorRequestInterceptor> requestInterceptors, MailService mailService,
+      boolean incremental, PollState pollState) {
+    this(folder, request, requestInterceptors, mailService, incremental, pollState, false);
+  }
+
+  /**
+   * @param incremental
+   *          <code>true</code> if only the messages which arrived after the
+   *          given poll state should be polled
+   * @param pollState
+   *          the state of the last poll, can be <code>null</code> if the
+   *          folder is polled the first time
+   * @param trackChanges
+   *          <code>true</code> if the changed and expunged messages since the
+   *          given poll state should be polled too, if the server supports
+   *          CONDSTORE
+   */
+  public PollMailInvocation(Folder folder, PollMailRequest request,
+      List<ConnectorRequestInterceptor> requestInterceptors, MailService mailService,
+      boolean incremental, PollState pollState, boolean trackChanges) {
+    this(folder, request, requestInterceptors, mailService, incremental, pollState, trackChanges, null);
+  }
+
+  /**
+   * @param resyncEvents
+   *          the events of the expunged and changed messages since the given
+   *          poll state, which are reported by the server when the folder is
+   *          opened by QRESYNC (see
+   *          {@link MailService#resyncFolder(Folder, com.sun.mail.imap.ResyncData)}),
+   *          or <code>null</code> if the folder is not opened by QRESYNC
+   */
+  public PollMailInvocation(Folder folder, PollMailRequest request,
+      List<ConnectorRequestInterceptor> requestInterceptors, MailService mailService,
+      boolean incremental, PollState pollState, boolean trackChanges, List<MailEvent> resyncEvents) {
     super(folder, request, requestInterceptors);
 
     this.mailService = mailService;
+    this.incremental = incremental;
+    this.pollState = pollState;
+    this.trackChanges = trackChanges;
+    this.resyncEvents = resyncEvents;
   }
 
   @Override
   public Object invokeTarget() throws Exception {
-    // poll only messages which are not deleted
-    Message[] messages = target.search(new FlagTerm(new Flags(Flag.DELETED), false));
+    if (incremental) {
+      return pollIncremental();
+    }
+
+    SearchTerm term = getNotDeletedSearchTerm();
+
+    if (getMaxResults() > 0 || getCursor() != null) {
+      return pollPage(term);
+    }
+
+    Message[] messages = search(term);
 
     return Arrays.asList(messages);
   }
 
+  /**
+   * Polls the messages after the cursor, up to the maximum number of results.
+   * The UIDs of the matching messages are searched by the server and only the
+   * messages of the page are loaded.
+   */
+  protected List<Message> pollPage(SearchTerm term) throws MessagingException {
+    if (!(target instanceof UIDFolder)) {
+      throw new MessagingException("folder '" + target.getFullName() + "' doesn't support UIDs for paged polling");
+    }
+    UIDFolder uidFolder = (UIDFolder) target;
+
+    long uidValidity = uidFolder.getUIDValidity();
+    boolean descending = getSortOrder() == PollMailRequest.SortOrder.DESC;
+
+    long firstUid = 1;
+    long lastUid = UIDFolder.LASTUID;
+
+    String cursorParameter = getCursor();
+    if (cursorParameter != null) {
+      PollCursor cursor = PollCursor.decode(cursorParameter);
+      if (cursor.getUidValidity() != uidValidity) {
+        throw new MessagingException("cursor is invalid because the UIDVALIDITY of folder '" + target.getFullName() + "' has changed");
+      }
+
+      if (descending) {
+        lastUid = cursor.getLastUid() - 1;
+      } else {
+        firstUid = cursor.getLastUid() + 1;
+      }
+    }
+
+    List<Long> uids = lastUid >= firstUid || lastUid == UIDFolder.LASTUID ? searchUids(term, firstUid, lastUid) : new ArrayList<>();
+
+    if (descending) {
+      Collections.reverse(uids);
+    }
+
+    int maxResults = getMaxResults();
+    if (maxResults > 0 && uids.size() > maxResults) {
+      uids = uids.subList(0, maxResults);
+
+      nextCursor = new PollCursor(uidValidity, uids.get(maxResults - 1));
+    }
+
+    return getMessagesByUids(uidFolder, uids);
+  }
+
+  /**
+   * @return the ascending UIDs of the messages in the given range which
+   *         match the search term
+   */
+  protected List<Long> searchUids(SearchTerm term, long firstUid, long lastUid) throws MessagingException {
+    String uidRange = firstUid + ":" + (lastUid == UIDFolder.LASTUID ? "*" : String.valueOf(lastUid));
+
+    List<Long> uids = null;
+    if (target instanceof IMAPFolder) {
+      uids = searchUidsOnServer((IMAPFolder) target, term, uidRange);
+    }
+
+    if (uids == null) {
+      // the server can't evaluate the search term, so the messages of the range are searched by JavaMail
+      Message[] range = ((UIDFolder) target).getMessagesByUID(firstUid, lastUid);
+
+      FetchProfile fetchProfile = new FetchProfile();
+      fetchProfile.add(UIDFolder.FetchProfileItem.UID);
+      fetchProfile.add(FetchProfile.Item.FLAGS);
+      fetch(range, fetchProfile);
+
+      uids = new ArrayList<>();
+      for (Message message : search(term, range)) {
+        uids.add(((UIDFolder) target).getUID(message));
+      }
+    }
+
+    // the range 'n:*' contains at least the last message, even if its UID is lower than n
+    List<Long> uidsInRange = new ArrayList<>();
+    for (long uid : uids) {
+      if (uid >= firstUid && (lastUid == UIDFolder.LASTUID || uid <= lastUid)) {
+        uidsInRange.add(uid);
+      }
+    }
+    uidsInRange.sort(null);
+
+    return uidsInRange;
+  }
+
+  /**
+   * Searches the UIDs by 'UID SEARCH UID n:m ...', so the messages are not
+   * loaded.
+   *
+   * @return the UIDs of the matching messages, or <code>null</code> if the
+   *         server can't evaluate the search term
+   */
+  @SuppressWarnings("unchecked")
+  protected List<Long> searchUidsOnServer(IMAPFolder imapFolder, SearchTerm term, String uidRange) throws MessagingException {
+    try (Span span = MailTracer.startSpan("imap.search").attribute("folder", target.getFullName()).attribute("uids", uidRange)) {
+      List<Long> uids = (List<Long>) imapFolder.doCommand(protocol -> {
+        String charset = SearchSequence.isAscii(term) ? null : "UTF-8";
+
+        Argument args = new Argument();
+        if (charset != null) {
+          args.writeAtom("CHARSET");
+          args.writeAtom(charset);
+        }
+        args.writeAtom("UID");
+        args.writeAtom(uidRange);
+
+        try {
+          args.append(new SearchSequence().generateSequence(term, charset));
+
+        } catch (SearchException | IOException e) {
+          LOGGER.debug("unable to search on the server", e);
+          return null;
+        }
+
+        Response[] responses = protocol.command("UID SEARCH", args);
+        Response response = responses[responses.length - 1];
+
+        List<Long> searchedUids = new ArrayList<>();
+        if (response.isOK()) {
+          for (Response r : responses) {
+            if (r instanceof IMAPResponse && ((IMAPResponse) r).keyEquals("SEARCH")) {
+              long uid;
+              while ((uid = r.readLong()) != -1) {
+                searchedUids.add(uid);
+              }
+            }
+          }
+        }
+
+        protocol.notifyResponseHandlers(responses);
+        try {
+          protocol.handleResult(response);
+
+        } catch (CommandFailedException | BadCommandException e) {
+          LOGGER.debug("unable to search on the server", e);
+          return null;
+        }
+
+        return searchedUids;
+      });
+
+      if (uids != null) {
+        span.attribute("messages", uids.size());
+      }
+      return uids;
+    }
+  }
+
+  protected int getMaxResults() {
+    return request instanceof PollMailRequest ? ((PollMailRequest) request).getMaxResults() : 0;
+  }
+
+  protected PollMailRequest.SortOrder getSortOrder() {
+    return request instanceof PollMailRequest ? ((PollMailRequest) request).getSortOrder() : PollMailRequest.SortOrder.ASC;
+  }
+
+  protected String getCursor() {
+    return request instanceof PollMailRequest ? ((PollMailRequest) request).getCursor() : null;
+  }
+
+  /**
+   * @return the search criteria of the request, or <code>null</code> if all
+   *         messages should be polled
+   */
+  protected SearchTerm getSearchTerm() {
+    if (request instanceof PollMailRequest) {
+      return ((PollMailRequest) request).getSearchTerm();
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * @return the search criteria of the request for the messages which are not
+   *         deleted
+   */
+  protected SearchTerm getNotDeletedSearchTerm() {
+    SearchTerm term = new FlagTerm(new Flags(Flag.DELETED), false);
+
+    SearchTerm searchTerm = getSearchTerm();
+    if (searchTerm != null) {
+      term = new AndTerm(term, searchTerm);
+    }
+    return term;
+  }
+
+  protected Message[] search(SearchTerm term) throws MessagingException {
+    try (Span span = MailTracer.startSpan("imap.search").attribute("folder", target.getFullName())) {
+      Message[] messages = target.search(term);
+      span.attribute("messages", messages.length);
+      return messages;
+    }
+  }
+
+  protected Message[] search(SearchTerm term, Message[] messages) throws MessagingException {
+    try (Span span = MailTracer.startSpan("imap.search").attribute("folder", target.getFullName())) {
+      Message[] matchingMessages = target.search(term, messages);
+      span.attribute("messages", matchingMessages.length);
+      return matchingMessages;
+    }
+  }
+
+  protected void fetch(Message[] messages, FetchProfile fetchProfile) throws MessagingException {
+    try (Span span = MailTracer.startSpan("imap.fetch").attribute("folder", target.getFullName()).attribute("messages", messages.length)) {
+      target.fetch(messages, fetchProfile);
+    }
+  }
+
+  protected List<Message> pollIncremental() throws MessagingException {
+    if (!(target instanceof UIDFolder)) {
+      throw new MessagingException("folder '" + target.getFullName() + "' doesn't support UIDs for incremental polling");
+    }
+    UIDFolder uidFolder = (UIDFolder) target;
+
+    long uidValidity = uidFolder.getUIDValidity();
+    long lastUid = 0;
+
+    // read before polling to not miss a change while polling
+    long highestModSeq = trackChanges && supportsCapability("CONDSTORE") ? ((IMAPFolder) target).getHighestModSeq() : -1;
+
+    if (pollState != null && pollState.getUidValidity() == uidValidity) {
+      lastUid = pollState.getLastUid();
+
+      if (highestModSeq > 0 && pollState.getHighestModSeq() > 0) {
+        return pollChanges(uidValidity, highestModSeq);
+      }
+
+    } else if (pollState != null) {
+      LOGGER.info("UIDVALIDITY of folder '{}' has changed - poll all mails", target.getFullName());
+    }
+
+    List<Message> newMessages = pollNewMessages(uidFolder, lastUid);
+
+    if (moreNewMessages) {
+      // the mod-sequence would skip the remaining messages
+      highestModSeq = -1;
+    }
+
+    pollState = new PollState(target.getFullName(), uidValidity, lastNewUid, highestModSeq);
+
+    return newMessages;
+  }
+
+  /**
+   * Polls the messages after the given UID which are not deleted and match the
+   * search criteria of the request, up to the maximum number of results. The
+   * UIDs are searched by the server, so only the messages of the page are
+   * loaded - also if many messages arrived since the last poll.
+   *
+   * <p>
+   * Sets the UID which the next poll continues after: the last returned
+   * message if more messages are left, or else the last message of the folder.
+   */
+  protected List<Message> pollNewMessages(UIDFolder uidFolder, long lastUid) throws MessagingException {
+    List<Long> uids = searchUids(getNotDeletedSearchTerm(), lastUid + 1, UIDFolder.LASTUID);
+
+    lastNewUid = lastUid;
+    if (!uids.isEmpty()) {
+      lastNewUid = uids.get(uids.size() - 1);
+    }
+    // skip the messages which don't match on the next poll
+    if (target instanceof IMAPFolder) {
+      lastNewUid = Math.max(lastNewUid, ((IMAPFolder) target).getUIDNext() - 1);
+    }
+
+    int maxResults = getMaxResults();
+    moreNewMessages = maxResults > 0 && uids.size() > maxResults;
+    if (moreNewMessages) {
+      // continue after the last returned message on the next poll
+      uids = uids.subList(0, maxResults);
+      lastNewUid = uids.get(maxResults - 1);
+    }
+
+    return getMessagesByUids(uidFolder, uids);
+  }
+
+  /**
+   * @return the messages in the order of the given UIDs, without the ones
+   *         which are expunged meanwhile
+   */
+  protected List<Message> getMessagesByUids(UIDFolder uidFolder, List<Long> uids) throws MessagingException {
+    List<Message> messages = new ArrayList<>();
+    if (uids.isEmpty()) {
+      return messages;
+    }
+
+    long[] uidArray = new long[uids.size()];
+    for (int i = 0; i < uidArray.length; i++) {
+      uidArray[i] = uids.get(i);
+    }
+
+    for (Message message : uidFolder.getMessagesByUID(uidArray)) {
+      if (message != null) {
+        messages.add(message);
+      }
+    }
+    return messages;
+  }
+
+  /**
+   * Polls only the messages which are changed since the HIGHESTMODSEQ of the
+   * last poll (RFC 7162), so the work depends on the number of changes and not
+   * on the size of the folder.
+   *
+   * <p>
+   * If the maximum number of results is set then the changed messages are
+   * polled first, in pages ordered by their mod-sequence. The new messages are
+   * polled after all changes, in pages ordered by their UID. So the next poll
+   * continues after the returned messages. The vanished UIDs can be reported
+   * again with the next page of changes.
+   */
+  protected List<Message> pollChanges(long uidValidity, long highestModSeq) throws MessagingException {
+    IMAPFolder imapFolder = (IMAPFolder) target;
+    long lastUid = pollState.getLastUid();
+    long lastModSeq = pollState.getHighestModSeq();
+
+    // the UIDNEXT is known after the folder is selected, the remaining new messages of a page are not changed
+    if (highestModSeq == lastModSeq && imapFolder.getUIDNext() <= lastUid + 1) {
+      LOGGER.debug("folder '{}' is not changed since mod-sequence {}", target.getFullName(), lastModSeq);
+
+      return Collections.emptyList();
+    }
+
+    List<Message> changed = new ArrayList<>();
+    if (lastUid > 0 && highestModSeq != lastModSeq) {
+      // fetches UID, FLAGS and MODSEQ of the changed messages
+      changed.addAll(Arrays.asList(imapFolder.getMessagesByUIDChangedSince(1, lastUid, lastModSeq)));
+    }
+
+    if (lastUid > 0 && resyncEvents != null) {
+      vanishedUids = getVanishedUids(resyncEvents, lastUid);
+    }
+
+    int maxResults = getMaxResults();
+    int changesPageSize = maxResults > 0 ? getChangesPageSize(changed, maxResults) : changed.size();
+
+    if (changesPageSize < changed.size()) {
+      // poll the remaining changes and then the new messages on the next poll
+      changedMessages = new ArrayList<>(changed.subList(0, changesPageSize));
+      long pageModSeq = getModSeq(changed.get(changesPageSize - 1));
+
+      LOGGER.debug("poll {} changed and {} vanished mails from folder '{}' since mod-sequence {} up to {}",
+          changedMessages.size(), vanishedUids.size(), target.getFullName(), lastModSeq, pageModSeq);
+
+      pollState = new PollState(target.getFullName(), uidValidity, lastUid, pageModSeq);
+
+      return Collections.emptyList();
+    }
+
+    changedMessages = changed;
+
+    // the new messages are polled by their UIDs, so the next page doesn't depend on the mod-sequence
+    List<Message> newMessages = pollNewMessages(imapFolder, lastUid);
+
+    LOGGER.debug("poll {} new, {} changed and {} vanished mails from folder '{}' since mod-sequence {}",
+        newMessages.size(), changedMessages.size(), vanishedUids.size(), target.getFullName(), lastModSeq);
+
+    pollState = new PollState(target.getFullName(), uidValidity, lastNewUid, highestModSeq);
+
+    return newMessages;
+  }
+
+  /**
+   * Orders the changed messages by their mod-sequence.
+   *
+   * @return the number of changed messages of the first page, which doesn't
+   *         split the messages of a mod-sequence
+   */
+  protected int getChangesPageSize(List<Message> changed, int maxResults) {
+    if (changed.size() <= maxResults) {
+      return changed.size();
+    }
+
+    changed.sort(Comparator.comparingLong(this::getModSeq));
+
+    long pageModSeq = getModSeq(changed.get(maxResults - 1));
+    if (pageModSeq <= 0) {
+      // the mod-sequences are unknown, so the changes can't be paged
+      return changed.size();
+    }
+
+    int pageSize = maxResults;
+    while (pageSize < changed.size() && getModSeq(changed.get(pageSize)) == pageModSeq) {
+      pageSize += 1;
+    }
+    return pageSize;
+  }
+
+  protected long getModSeq(Message message) {
+    try {
+      return message instanceof IMAPMessage ? ((IMAPMessage) message).getModSeq() : -1;
+
+    } catch (MessagingException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * @return the UIDs up to the given UID which are expunged since the last
+   *         poll, reported by the VANISHED response of QRESYNC when the folder
+   *         was opened
+   */
+  protected List<Long> getVanishedUids(List<MailEvent> resyncEvents, long lastUid) {
+    List<Long> uids = new ArrayList<>();
+    for (MailEvent event : resyncEvents) {
+      if (event instanceof MessageVanishedEvent) {
+        for (long uid : ((MessageVanishedEvent) event).getUIDs()) {
+          if (uid <= lastUid) {
+            uids.add(uid);
+          }
+        }
+      }
+    }
+    return uids;
+  }
+
+  protected boolean supportsCapability(String capability) throws MessagingException {
+    Store store = target.getStore();
+    return target instanceof IMAPFolder && store instanceof IMAPStore && ((IMAPStore) store).hasCapability(capability);
+  }
+
+  /**
+   * @return the state after an incremental poll, or <code>null</code> if the
+   *         poll was not incremental
+   */
+  public PollState getPollState() {
+    return incremental ? pollState : null;
+  }
+
+  /**
+   * @return the cursor of the next page, or <code>null</code> if this is the
+   *         last page
+   */
+  public String getNextCursor() {
+    return nextCursor != null ? nextCursor.encode() : null;
+  }
+
+  /**
+   * @return the already polled messages whose flags are changed since the last
+   *         poll, if changes are tracked
+   */
+  public List<Message> getChangedMessages() {
+    return changedMessages;
+  }
+
+  /**
+   * @return the UIDs of the already polled messages which are expunged since
+   *         the last poll, if changes are tracked and the server supports
+   *         QRESYNC
+   */
+  public List<Long> getVanishedUids() {
+    return vanishedUids;
+  }
+
 }
@@ -12,6 +12,30 @@
  */
 package org.camunda.bpm.extension.mail.poll;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.mail.Flags;
+import javax.mail.Message.RecipientType;
+import javax.mail.search.AndTerm;
+import javax.mail.search.ComparisonTerm;
+import javax.mail.search.FlagTerm;
+import javax.mail.search.FromStringTerm;
+import javax.mail.search.HeaderTerm;
+import javax.mail.search.ReceivedDateTerm;
+import javax.mail.search.RecipientStringTerm;
+import javax.mail.search.SearchTerm;
+import javax.mail.search.SizeTerm;
+import javax.mail.search.SubjectTerm;
+
 import org.camunda.bpm.extension.mail.config.MailConfiguration;
 import org.camunda.connect.impl.AbstractConnectorRequest;
 import org.camunda.connect.spi.Connector;
@@ -22,8 +46,37 @@ public class PollMailRequest extends AbstractConnectorRequest<PollMailResponse>
 
   private static final Logger LOGGER = LoggerFactory.getLogger(PollMailRequest.class);
 
+  /**
+   * Order of the polled mails by their arrival in the folder (i.e. UID).
+   */
+  public enum SortOrder {
+    ASC, DESC;
+
+    public static SortOrder parse(String sortOrder) {
+      return valueOf(sortOrder.trim().toUpperCase());
+    }
+  }
+
   protected static final String PARAM_FOLDER = "folder";
   protected static final String PARAM_DOWNLOAD_ATTACHMENTS = "download-attachements";
+  protected static final String PARAM_LAZY_CONTENT = "lazy-content";
+  protected static final String PARAM_INCREMENTAL = "incremental";
+  protected static final String PARAM_POLL_STATE = "poll-state";
+  protected static final String PARAM_TRACK_CHANGES = "track-changes";
+
+  protected static final String PARAM_FROM = "from";
+  protected static final String PARAM_TO = "to";
+  protected static final String PARAM_SUBJECT = "subject";
+  protected static final String PARAM_SINCE = "since";
+  protected static final String PARAM_BEFORE = "before";
+  protected static final String PARAM_UNSEEN = "unseen";
+  protected static final String PARAM_HEADERS = "headers";
+  protected static final String PARAM_MIN_SIZE = "min-size";
+  protected static final String PARAM_MAX_SIZE = "max-size";
+
+  protected static final String PARAM_MAX_RESULTS = "max-results";
+  protected static final String PARAM_SORT_ORDER = "sort-order";
+  protected static final String PARAM_CURSOR = "cursor";
 
   protected final MailConfiguration configuration;
 
@@ -58,6 +111,267 @@ public class PollMailRequest extends AbstractConnectorRequest<PollMailResponse>
     return this;
   }
 
+  public boolean isLazyContent() {
+    Boolean lazyContent = getRequestParameter(PARAM_LAZY_CONTENT);
+    if (lazyContent == null) {
+      lazyContent = configuration.lazyContent();
+    }
+    return lazyContent;
+  }
+
+  public PollMailRequest lazyContent(boolean lazyContent) {
+    setRequestParameter(PARAM_LAZY_CONTENT, lazyContent);
+    return this;
+  }
+
+  public boolean isIncremental() {
+    Boolean incremental = getRequestParameter(PARAM_INCREMENTAL);
+    if (incremental == null) {
+      incremental = configuration.pollIncremental();
+    }
+    return incremental;
+  }
+
+  public PollMailRequest incremental(boolean incremental) {
+    setRequestParameter(PARAM_INCREMENTAL, incremental);
+    return this;
+  }
+
+  public boolean isTrackChanges() {
+    Boolean trackChanges = getRequestParameter(PARAM_TRACK_CHANGES);
+    if (trackChanges == null) {
+      trackChanges = configuration.pollTrackChanges();
+    }
+    return trackChanges;
+  }
+
+  /**
+   * Poll also the mails which are changed (e.g. flags) or expunged since the
+   * last incremental poll, if the server supports CONDSTORE.
+   */
+  public PollMailRequest trackChanges(boolean trackChanges) {
+    setRequestParameter(PARAM_TRACK_CHANGES, trackChanges);
+    return this;
+  }
+
+  /**
+   * @return the state of the last poll which is passed by the caller (e.g. as
+   *         process variable), can be <code>null</code>
+   */
+  public PollState getPollState() {
+    return getRequestParameter(PARAM_POLL_STATE);
+  }
+
+  /**
+   * Poll incrementally from the given state instead of the state which is
+   * kept by the connector.
+   */
+  public PollMailRequest pollState(PollState pollState) {
+    setRequestParameter(PARAM_POLL_STATE, pollState);
+    return this;
+  }
+
+  public PollMailRequest from(String from) {
+    setRequestParameter(PARAM_FROM, from);
+    return this;
+  }
+
+  public PollMailRequest to(String to) {
+    setRequestParameter(PARAM_TO, to);
+    return this;
+  }
+
+  /**
+   * Poll only mails whose subject contains the given string (ignoring the
+   * case).
+   */
+  public PollMailRequest subject(String subject) {
+    setRequestParameter(PARAM_SUBJECT, subject);
+    return this;
+  }
+
+  /**
+   * Poll only mails which are received on or after the given date.
+   */
+  public PollMailRequest since(Date since) {
+    setRequestParameter(PARAM_SINCE, since);
+    return this;
+  }
+
+  /**
+   * Poll only mails which are received before the given date.
+   */
+  public PollMailRequest before(Date before) {
+    setRequestParameter(PARAM_BEFORE, before);
+    return this;
+  }
+
+  public PollMailRequest unseen(boolean unseen) {
+    setRequestParameter(PARAM_UNSEEN, unseen);
+    return this;
+  }
+
+  /**
+   * Poll only mails which contain the given string in the given header.
+   */
+  public PollMailRequest header(String name, String pattern) {
+    Map<String, String> headers = getRequestParameter(PARAM_HEADERS);
+    if (headers == null) {
+      headers = new HashMap<>();
+      setRequestParameter(PARAM_HEADERS, headers);
+    }
+    headers.put(name, pattern);
+    return this;
+  }
+
+  /**
+   * @param minSize
+   *          minimum size of the mails in bytes
+   */
+  public PollMailRequest minSize(int minSize) {
+    setRequestParameter(PARAM_MIN_SIZE, minSize);
+    return this;
+  }
+
+  /**
+   * @param maxSize
+   *          maximum size of the mails in bytes
+   */
+  public PollMailRequest maxSize(int maxSize) {
+    setRequestParameter(PARAM_MAX_SIZE, maxSize);
+    return this;
+  }
+
+  /**
+   * @return the maximum number of mails of a page, or <code>0</code> for all
+   *         mails
+   */
+  public int getMaxResults() {
+    Number maxResults = getRequestParameter(PARAM_MAX_RESULTS);
+    if (maxResults == null) {
+      return configuration.getPollMaxResults();
+    }
+    return maxResults.intValue();
+  }
+
+  public PollMailRequest maxResults(int maxResults) {
+    setRequestParameter(PARAM_MAX_RESULTS, maxResults);
+    return this;
+  }
+
+  public SortOrder getSortOrder() {
+    Object sortOrder = getRequestParameter(PARAM_SORT_ORDER);
+    if (sortOrder == null) {
+      return SortOrder.ASC;
+    } else if (sortOrder instanceof SortOrder) {
+      return (SortOrder) sortOrder;
+    } else {
+      return SortOrder.parse(sortOrder.toString());
+    }
+  }
+
+  public PollMailRequest sortOrder(SortOrder sortOrder) {
+    setRequestParameter(PARAM_SORT_ORDER, sortOrder);
+    return this;
+  }
+
+  /**
+   * @return the cursor of the previous page, or <code>null</code> for the first
+   *         page
+   */
+  public String getCursor() {
+    return getRequestParameter(PARAM_CURSOR);
+  }
+
+  /**
+   * Poll the page after the given cursor of the previous page.
+   */
+  public PollMailRequest cursor(String cursor) {
+    setRequestParameter(PARAM_CURSOR, cursor);
+    return this;
+  }
+
+  /**
+   * @return the search criteria of the request as one term which is evaluated
+   *         by the server, or <code>null</code> if no criteria is set
+   */
+  public SearchTerm getSearchTerm() {
+    List<SearchTerm> terms = new ArrayList<>();
+
+    String from = getRequestParameter(PARAM_FROM);
+    if (from != null) {
+      terms.add(new FromStringTerm(from));
+    }
+
+    String to = getRequestParameter(PARAM_TO);
+    if (to != null) {
+      terms.add(new RecipientStringTerm(RecipientType.TO, to));
+    }
+
+    String subject = getRequestParameter(PARAM_SUBJECT);
+    if (subject != null) {
+      terms.add(new SubjectTerm(subject));
+    }
+
+    Date since = getDateParameter(PARAM_SINCE);
+    if (since != null) {
+      terms.add(new ReceivedDateTerm(ComparisonTerm.GE, since));
+    }
+
+    Date before = getDateParameter(PARAM_BEFORE);
+    if (before != null) {
+      terms.add(new ReceivedDateTerm(ComparisonTerm.LT, before));
+    }
+
+    Boolean unseen = getRequestParameter(PARAM_UNSEEN);
+    if (unseen != null && unseen) {
+      terms.add(new FlagTerm(new Flags(Flags.Flag.SEEN), false));
+    }
+
+    Map<String, String> headers = getRequestParameter(PARAM_HEADERS);
+    if (headers != null) {
+      headers.forEach((name, pattern) -> terms.add(new HeaderTerm(name, pattern)));
+    }
+
+    Number minSize = getRequestParameter(PARAM_MIN_SIZE);
+    if (minSize != null) {
+      terms.add(new SizeTerm(ComparisonTerm.GE, minSize.intValue()));
+    }
+
+    Number maxSize = getRequestParameter(PARAM_MAX_SIZE);
+    if (maxSize != null) {
+      terms.add(new SizeTerm(ComparisonTerm.LE, maxSize.intValue()));
+    }
+
+    if (terms.isEmpty()) {
+      return null;
+    } else if (terms.size() == 1) {
+      return terms.get(0);
+    } else {
+      return new AndTerm(terms.toArray(new SearchTerm[terms.size()]));
+    }
+  }
+
+  /**
+   * Accepts a date or an ISO-8601 string of a date (e.g. '2016-12-31') or an
+   * instant (e.g. '2016-12-31T10:15:30Z').
+   */
+  protected Date getDateParameter(String name) {
+    Object value = getRequestParameter(name);
+
+    if (value == null || value instanceof Date) {
+      return (Date) value;
+
+    } else {
+      String date = value.toString();
+      if (date.contains("T")) {
+        return Date.from(Instant.parse(date));
+      } else {
+        return Date.from(LocalDate.parse(date).atStartOfDay(ZoneId.systemDefault()).toInstant());
+      }
+    }
+  }
+
   @Override
   protected boolean isRequestValid() {
 
@@ -66,12 +380,45 @@ public class PollMailRequest extends AbstractConnectorRequest<PollMailResponse>
       return false;
     }
 
+    for (String param : new String[] { PARAM_SINCE, PARAM_BEFORE }) {
+      try {
+        getDateParameter(param);
+      } catch (DateTimeParseException e) {
+        LOGGER.warn("invalid request: malformed date of parameter '{}' in {}", param, this);
+        return false;
+      }
+    }
+
+    try {
+      getSortOrder();
+    } catch (IllegalArgumentException e) {
+      LOGGER.warn("invalid request: unknown value of parameter 'sort-order' in {}", this);
+      return false;
+    }
+
     return true;
   }
 
+  /**
+   * @return the search parameters which are set, as given - i.e. without
+   *         parsing them
+   */
+  protected Map<String, Object> getSearchParameters() {
+    Map<String, Object> searchParameters = new LinkedHashMap<>();
+    for (String param : new String[] { PARAM_FROM, PARAM_TO, PARAM_SUBJECT, PARAM_SINCE, PARAM_BEFORE, PARAM_UNSEEN, PARAM_HEADERS,
+        PARAM_MIN_SIZE, PARAM_MAX_SIZE }) {
+      Object value = getRequestParameter(param);
+      if (value != null) {
+        searchParameters.put(param, value);
+      }
+    }
+    return searchParameters;
+  }
+
   @Override
   public String toString() {
-    return "PollMailRequest [folder=" + getFolder() + ", download-attachments=" + downloadAttachments() + "]";
+    return "PollMailRequest [folder=" + getFolder() + ", download-attachments=" + downloadAttachments() + ", lazy-content=" + isLazyContent() + ", incremental=" + isIncremental() + ", track-changes=" + isTrackChanges()
+        + ", search=" + getSearchParameters() + ", max-results=" + getMaxResults() + ", sort-order=" + getRequestParameter(PARAM_SORT_ORDER) + ", cursor=" + getCursor() + "]";
   }
 
 }
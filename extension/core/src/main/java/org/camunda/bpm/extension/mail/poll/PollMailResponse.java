@@ -13,63 +13,337 @@
 package org.camunda.bpm.extension.mail.poll;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+import javax.mail.Folder;
 import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.UIDFolder;
 
+import org.camunda.bpm.extension.mail.MailConnectorException;
 import org.camunda.bpm.extension.mail.dto.Mail;
+import org.camunda.bpm.extension.mail.service.AfterCommitExecutor;
+import org.camunda.bpm.extension.mail.service.AttachmentDownloadExecutor;
 import org.camunda.bpm.extension.mail.service.MailService;
+import org.camunda.bpm.extension.mail.trace.MailTracer;
+import org.camunda.bpm.extension.mail.trace.Span;
 import org.camunda.connect.impl.AbstractConnectorResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sun.mail.imap.IMAPFolder;
+
 public class PollMailResponse extends AbstractConnectorResponse {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(PollMailResponse.class);
 
   public static final String PARAM_MAILS = "mails";
+  public static final String PARAM_POLL_STATE = "poll-state";
+  public static final String PARAM_CHANGED_MAILS = "changed-mails";
+  public static final String PARAM_VANISHED_UIDS = "vanished-uids";
+  public static final String PARAM_CURSOR = "cursor";
 
   protected final List<Message> messages;
   protected final MailService mailService;
   protected final boolean downloadAttachments;
   protected final String attachmentPath;
+  protected final PollState pollState;
+  protected final boolean lazyContent;
+  protected final List<Message> changedMessages;
+  protected final List<Long> vanishedUids;
+  protected final String cursor;
+  protected final Span trace;
+  protected final PollStateStore pollStateStore;
+  protected final String account;
 
   public PollMailResponse(List<Message> messages, MailService mailService, boolean downloadAttachments, final String attachmentPath) {
+    this(messages, mailService, new Parameters().downloadAttachments(downloadAttachments).attachmentPath(attachmentPath));
+  }
+
+  public PollMailResponse(List<Message> messages, MailService mailService, Parameters parameters) {
     this.messages = messages;
     this.mailService = mailService;
-    this.downloadAttachments = downloadAttachments;
-    this.attachmentPath = attachmentPath;
+    this.downloadAttachments = parameters.downloadAttachments;
+    this.attachmentPath = parameters.attachmentPath;
+    this.pollState = parameters.pollState;
+    this.lazyContent = parameters.lazyContent;
+    this.changedMessages = parameters.changedMessages;
+    this.vanishedUids = parameters.vanishedUids;
+    this.cursor = parameters.cursor;
+    this.trace = parameters.trace;
+    this.pollStateStore = parameters.pollStateStore;
+    this.account = parameters.account;
+  }
+
+  /**
+   * The optional parameters of a response, which are passed on from the
+   * request and the poll.
+   */
+  public static class Parameters {
+
+    protected boolean downloadAttachments = false;
+    protected String attachmentPath = null;
+    protected PollState pollState = null;
+    protected boolean lazyContent = false;
+    protected List<Message> changedMessages = Collections.emptyList();
+    protected List<Long> vanishedUids = Collections.emptyList();
+    protected String cursor = null;
+    protected Span trace = Span.NOOP;
+    protected PollStateStore pollStateStore = null;
+    protected String account = null;
+
+    public Parameters downloadAttachments(boolean downloadAttachments) {
+      this.downloadAttachments = downloadAttachments;
+      return this;
+    }
+
+    public Parameters attachmentPath(String attachmentPath) {
+      this.attachmentPath = attachmentPath;
+      return this;
+    }
+
+    /**
+     * @param pollState
+     *          the state after an incremental poll, or <code>null</code> if
+     *          the poll is not incremental
+     */
+    public Parameters pollState(PollState pollState) {
+      this.pollState = pollState;
+      return this;
+    }
+
+    public Parameters lazyContent(boolean lazyContent) {
+      this.lazyContent = lazyContent;
+      return this;
+    }
+
+    public Parameters changedMessages(List<Message> changedMessages) {
+      this.changedMessages = changedMessages;
+      return this;
+    }
+
+    public Parameters vanishedUids(List<Long> vanishedUids) {
+      this.vanishedUids = vanishedUids;
+      return this;
+    }
+
+    public Parameters cursor(String cursor) {
+      this.cursor = cursor;
+      return this;
+    }
+
+    /**
+     * @param trace
+     *          the suspended trace of the poll, which is ended after the
+     *          response is collected
+     */
+    public Parameters trace(Span trace) {
+      this.trace = trace;
+      return this;
+    }
+
+    /**
+     * @param pollStateStore
+     *          the store which saves the poll state of the account after the
+     *          response is collected, or <code>null</code> if the poll state
+     *          is not saved
+     */
+    public Parameters pollStateStore(PollStateStore pollStateStore, String account) {
+      this.pollStateStore = pollStateStore;
+      this.account = account;
+      return this;
+    }
   }
 
   @Override
   protected void collectResponseParameters(Map<String, Object> responseParameters) {
+    Span previousSpan = MailTracer.resume(trace);
+    try {
+      collectMails(responseParameters);
+
+    } finally {
+      trace.close();
+      MailTracer.restore(previousSpan);
+    }
+  }
+
+  protected void collectMails(Map<String, Object> responseParameters) {
+
+    mailService.prefetch(messages);
+
+    AttachmentDownloadExecutor attachmentDownloadExecutor = downloadAttachments ? mailService.getAttachmentDownloadExecutor() : null;
 
+    long bytes = 0;
     List<Mail> mails = new ArrayList<Mail>();
+    List<Long> failedUids = new ArrayList<>();
+    Span conversionSpan = MailTracer.startSpan("mime.convert").attribute("messages", messages.size());
     for (Message message : messages) {
 
       try {
-        Mail mail = Mail.from(message);
-        if (downloadAttachments) {
-          mail.downloadAttachments(attachmentPath);
+        Mail mail = lazyContent ? Mail.lazyFrom(message, mailService) : Mail.from(message);
+        if (downloadAttachments && attachmentDownloadExecutor == null) {
+          mail.downloadAttachments(attachmentPath, mailService.getAttachmentStore());
         }
 
         mails.add(mail);
 
+        // the size is loaded together with the envelope
+        bytes += Math.max(message.getSize(), 0);
+
       } catch (Exception e) {
         LOGGER.error("exception while transforming message to dto", e);
+
+        failedUids.add(getUid(message));
+      }
+    }
+
+    conversionSpan.close();
+
+    if (attachmentDownloadExecutor != null) {
+      for (Mail failedMail : attachmentDownloadExecutor.downloadAttachments(mails, attachmentPath)) {
+        failedUids.add(failedMail.getUid());
       }
     }
 
+    mailService.getMetrics().countBytes(PollMailConnector.CONNECTOR_ID, bytes);
+
+    PollState collectedPollState = pollState;
+    if (pollState != null && !failedUids.isEmpty()) {
+      collectedPollState = getPollStateBeforeFailedMails(mails, failedUids);
+    }
+    if (collectedPollState != null && collectedPollState.getHighestModSeq() > 0 && !messages.isEmpty()) {
+      collectedPollState = getPollStateAfterLoadedMails(collectedPollState);
+    }
+
     responseParameters.put(PARAM_MAILS, mails);
+    responseParameters.put(PARAM_CURSOR, cursor);
+
+    if (collectedPollState != null) {
+      responseParameters.put(PARAM_POLL_STATE, collectedPollState);
+
+      responseParameters.put(PARAM_CHANGED_MAILS, toChangedMails());
+      responseParameters.put(PARAM_VANISHED_UIDS, vanishedUids);
+
+      if (pollStateStore != null) {
+        // the mails are polled again if they are not collected or the transaction is rolled back
+        PollState savedPollState = collectedPollState;
+        AfterCommitExecutor.execute(() -> pollStateStore.save(account, savedPollState));
+      }
+    }
 
     mailService.flush();
   }
 
+  /**
+   * Limits the poll state to the mails before the first failed one, so that
+   * the next incremental poll returns the failed mail and the following ones
+   * again. The following mails are removed from the response.
+   */
+  protected PollState getPollStateBeforeFailedMails(List<Mail> mails, List<Long> failedUids) {
+    if (failedUids.contains(-1L)) {
+      throw new MailConnectorException("Failed to transform a polled mail without UID, the poll state is not updated");
+    }
+
+    long lowestFailedUid = Collections.min(failedUids);
+    mails.removeIf(mail -> mail.getUid() >= lowestFailedUid);
+
+    LOGGER.warn("failed to transform mail with UID {}, it is polled again by the next poll", lowestFailedUid);
+
+    return new PollState(pollState.getFolder(), pollState.getUidValidity(), Math.min(pollState.getLastUid(), lowestFailedUid - 1),
+        pollState.getHighestModSeq());
+  }
+
+  /**
+   * Loading the content of the new mails sets their \Seen flag, which
+   * increases the mod-sequence of the folder. Takes over the mod-sequence
+   * after the mails are loaded, so that the next poll doesn't return the
+   * polled mails as changed. The mod-sequence of the poll state is the one of
+   * the folder if new mails are polled (i.e. the changes are not paged).
+   */
+  protected PollState getPollStateAfterLoadedMails(PollState pollState) {
+    Folder folder = messages.get(0).getFolder();
+    if (!(folder instanceof IMAPFolder)) {
+      return pollState;
+    }
+
+    try {
+      // the cached HIGHESTMODSEQ of the open folder is not updated, so it is requested again
+      long highestModSeq = (Long) ((IMAPFolder) folder).doCommand(protocol ->
+          protocol.status(folder.getFullName(), new String[] { "HIGHESTMODSEQ" }).highestmodseq);
+
+      if (highestModSeq > pollState.getHighestModSeq()) {
+        return new PollState(pollState.getFolder(), pollState.getUidValidity(), pollState.getLastUid(), highestModSeq);
+      }
+
+    } catch (MessagingException e) {
+      LOGGER.debug("failed to get HIGHESTMODSEQ of folder '{}'", folder.getFullName(), e);
+    }
+    return pollState;
+  }
+
+  protected long getUid(Message message) {
+    try {
+      Folder folder = message.getFolder();
+      return folder instanceof UIDFolder ? ((UIDFolder) folder).getUID(message) : -1;
+
+    } catch (MessagingException e) {
+      LOGGER.debug("failed to get UID of message", e);
+      return -1;
+    }
+  }
+
+  protected List<Mail> toChangedMails() {
+    // the content of a changed mail is already polled
+    List<Mail> changedMails = new ArrayList<>();
+    for (Message message : changedMessages) {
+      try {
+        changedMails.add(Mail.lazyFrom(message, mailService));
+
+      } catch (Exception e) {
+        LOGGER.error("exception while transforming message to dto", e);
+      }
+    }
+    return changedMails;
+  }
+
   public List<Mail> getMails() {
     return getResponseParameter(PARAM_MAILS);
   }
 
+  /**
+   * @return the state after an incremental poll which can be passed to the
+   *         next poll, or <code>null</code> if the poll was not incremental
+   */
+  public PollState getPollState() {
+    return getResponseParameter(PARAM_POLL_STATE);
+  }
+
+  /**
+   * @return the cursor which can be passed to the next poll to get the next
+   *         page, or <code>null</code> if there are no more mails
+   */
+  public String getCursor() {
+    return getResponseParameter(PARAM_CURSOR);
+  }
+
+  /**
+   * @return the already polled mails whose flags are changed since the last
+   *         poll, if changes are tracked
+   */
+  public List<Mail> getChangedMails() {
+    return getResponseParameter(PARAM_CHANGED_MAILS);
+  }
+
+  /**
+   * @return the UIDs of the already polled mails which are expunged since the
+   *         last poll, if changes are tracked and the server supports QRESYNC
+   */
+  public List<Long> getVanishedUids() {
+    return getResponseParameter(PARAM_VANISHED_UIDS);
+  }
+
   @Override
   public String toString() {
     return "PollMailResponse [messages=" + messages + "]";
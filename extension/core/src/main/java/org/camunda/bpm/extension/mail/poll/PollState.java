@@ -0,0 +1,68 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.poll;
+
+import java.io.Serializable;
+
+/**
+ * High-water mark of an incremental poll: the last seen UID of a folder,
+ * which is only valid as long as the UIDVALIDITY of the folder doesn't
+ * change. If changes are tracked then it contains also the HIGHESTMODSEQ of
+ * the folder (RFC 7162).
+ */
+public class PollState implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String folder;
+  private final long uidValidity;
+  private final long lastUid;
+  private final long highestModSeq;
+
+  public PollState(String folder, long uidValidity, long lastUid) {
+    this(folder, uidValidity, lastUid, -1);
+  }
+
+  public PollState(String folder, long uidValidity, long lastUid, long highestModSeq) {
+    this.folder = folder;
+    this.uidValidity = uidValidity;
+    this.lastUid = lastUid;
+    this.highestModSeq = highestModSeq;
+  }
+
+  public String getFolder() {
+    return folder;
+  }
+
+  public long getUidValidity() {
+    return uidValidity;
+  }
+
+  public long getLastUid() {
+    return lastUid;
+  }
+
+  /**
+   * @return the HIGHESTMODSEQ of the folder, or <code>-1</code> if changes are
+   *         not tracked
+   */
+  public long getHighestModSeq() {
+    return highestModSeq;
+  }
+
+  @Override
+  public String toString() {
+    return "PollState [folder=" + folder + ", uidValidity=" + uidValidity + ", lastUid=" + lastUid + ", highestModSeq=" + highestModSeq + "]";
+  }
+
+}
@@ -0,0 +1,40 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.poll;
+
+/**
+ * Persists the state of incremental polls between two polls of a folder. The
+ * states are kept per account, so that the folders of different accounts
+ * with the same name don't share their state.
+ */
+public interface PollStateStore {
+
+  /**
+   * @param account
+   *          the account which polls the folder (e.g. the user name), can be
+   *          <code>null</code>
+   * @return the state of the last poll of the given folder, or
+   *         <code>null</code> if the folder was not polled yet
+   */
+  PollState load(String account, String folder);
+
+  /**
+   * Stores the state of the last poll of the folder.
+   *
+   * @param account
+   *          the account which polls the folder (e.g. the user name), can be
+   *          <code>null</code>
+   */
+  void save(String account, PollState state);
+
+}
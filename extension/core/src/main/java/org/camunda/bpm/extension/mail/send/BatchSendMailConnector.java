@@ -0,0 +1,120 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.send;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.mail.Message;
+
+import org.camunda.bpm.extension.mail.MailConnectorException;
+import org.camunda.bpm.extension.mail.config.MailConfiguration;
+import org.camunda.bpm.extension.mail.config.MailConfigurationFactory;
+import org.camunda.bpm.extension.mail.dto.SendMailResult;
+import org.camunda.bpm.extension.mail.service.MailService;
+import org.camunda.bpm.extension.mail.service.MailServiceFactory;
+import org.camunda.bpm.extension.mail.trace.MailTracer;
+import org.camunda.bpm.extension.mail.trace.Span;
+import org.camunda.connect.impl.AbstractConnector;
+import org.camunda.connect.spi.ConnectorResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class BatchSendMailConnector extends AbstractConnector<BatchSendMailRequest, BatchSendMailResponse> {
+
+  private final static Logger LOGGER = LoggerFactory.getLogger(BatchSendMailConnector.class);
+
+  public static final String CONNECTOR_ID = "mail-send-batch";
+
+  protected MailConfiguration configuration;
+  protected MessageFactory messageFactory = new MessageFactory();
+
+  public BatchSendMailConnector() {
+    super(CONNECTOR_ID);
+  }
+
+  @Override
+  public BatchSendMailRequest createRequest() {
+    return new BatchSendMailRequest(this, getConfiguration());
+  }
+
+  @Override
+  public ConnectorResponse execute(BatchSendMailRequest request) {
+
+    MailService mailService = MailServiceFactory.getService(getConfiguration());
+
+    long start = System.nanoTime();
+    Span trace = MailTracer.startTrace(CONNECTOR_ID, requestInterceptors);
+    List<SendMailResult> results = new ArrayList<>();
+    Map<Integer, Message> messages = new LinkedHashMap<>();
+
+    List<SendMailRequest> mailRequests = request.getMailRequests();
+    for (int index = 0; index < mailRequests.size(); index++) {
+      SendMailRequest mailRequest = mailRequests.get(index);
+
+      try {
+        Message message = messageFactory.createMessage(mailRequest, mailService.getSession());
+        messages.put(index, message);
+
+      } catch (Exception e) {
+        LOGGER.debug("failed to create mail {} of batch", index, e);
+
+        results.add(SendMailResult.failure(index, mailRequest.getTo(), mailRequest.getSubject(), e.getMessage()));
+      }
+    }
+
+    try {
+      BatchSendMailInvocation invocation = new BatchSendMailInvocation(messages, request, requestInterceptors, mailService);
+
+      @SuppressWarnings("unchecked")
+      List<SendMailResult> sendResults = (List<SendMailResult>) invocation.proceed();
+      results.addAll(sendResults);
+
+    } catch (Exception e) {
+      mailService.getMetrics().recordInvocation(CONNECTOR_ID, System.nanoTime() - start, false);
+      trace.close();
+
+      throw new MailConnectorException("Failed to send mails: " + e.getMessage(), e);
+    }
+
+    long sent = results.stream().filter(SendMailResult::isSuccess).count();
+    mailService.getMetrics().countMessages(CONNECTOR_ID, sent);
+    mailService.getMetrics().recordInvocation(CONNECTOR_ID, System.nanoTime() - start, sent == results.size());
+    trace.attribute("messages", results.size()).close();
+
+    results.sort(Comparator.comparingInt(SendMailResult::getIndex));
+
+    LOGGER.debug("sent batch of {} mails", results.size());
+
+    return new BatchSendMailResponse(results);
+  }
+
+  protected MailConfiguration getConfiguration() {
+    if (configuration == null) {
+      configuration = MailConfigurationFactory.getConfiguration();
+    }
+    return configuration;
+  }
+
+  public void setConfiguration(MailConfiguration configuration) {
+    this.configuration = configuration;
+  }
+
+  public void setMessageFactory(MessageFactory messageFactory) {
+    this.messageFactory = messageFactory;
+  }
+
+}
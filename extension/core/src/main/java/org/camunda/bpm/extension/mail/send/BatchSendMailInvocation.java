@@ -0,0 +1,140 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.send;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.mail.Message;
+import javax.mail.Message.RecipientType;
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import org.camunda.bpm.extension.mail.dto.SendMailResult;
+import org.camunda.bpm.extension.mail.service.MailService;
+import org.camunda.bpm.extension.mail.trace.MailTracer;
+import org.camunda.bpm.extension.mail.trace.Span;
+import org.camunda.connect.impl.AbstractRequestInvocation;
+import org.camunda.connect.spi.ConnectorRequestInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the messages of a batch (by their index) over as few transports as
+ * possible. A transport is only replaced if it is broken or if it reached the
+ * maximum number of messages.
+ */
+public class BatchSendMailInvocation extends AbstractRequestInvocation<Map<Integer, Message>> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BatchSendMailInvocation.class);
+
+  protected final MailService mailService;
+
+  public BatchSendMailInvocation(Map<Integer, Message> messages, BatchSendMailRequest request,
+      List<ConnectorRequestInterceptor> requestInterceptors, MailService mailService) {
+    super(messages, request, requestInterceptors);
+
+    this.mailService = mailService;
+  }
+
+  @Override
+  public Object invokeTarget() throws Exception {
+    List<SendMailResult> results = new ArrayList<>();
+
+    int maxMessages = mailService.getConfiguration().getTransportPoolMaxMessages();
+
+    Transport transport = null;
+    int usages = 0;
+    // don't wait for a transport again for each remaining mail
+    MessagingException borrowFailure = null;
+
+    try {
+      for (Entry<Integer, Message> entry : target.entrySet()) {
+        int index = entry.getKey();
+        Message message = entry.getValue();
+
+        if (borrowFailure != null) {
+          results.add(failure(index, message, borrowFailure));
+          continue;
+        }
+
+        if (transport == null) {
+          try {
+            transport = mailService.borrowTransport();
+            usages = 0;
+
+          } catch (MessagingException e) {
+            LOGGER.warn("failed to get a transport for sending mail {} of batch, fail the remaining mails", index, e);
+
+            borrowFailure = e;
+            results.add(failure(index, message, e));
+            continue;
+          }
+        }
+
+        try (Span span = MailTracer.startSpan("smtp.send").attribute("index", index)) {
+          mailService.sendMessage(transport, message);
+          usages += 1;
+
+          results.add(success(index, message));
+
+        } catch (MessagingException e) {
+          LOGGER.debug("failed to send mail {} of batch", index, e);
+
+          usages += 1;
+          results.add(failure(index, message, e));
+
+          if (!transport.isConnected()) {
+            mailService.invalidateTransport(transport);
+            transport = null;
+            continue;
+          }
+        }
+
+        if (maxMessages > 0 && usages >= maxMessages) {
+          mailService.releaseTransport(transport, usages);
+          transport = null;
+        }
+      }
+
+    } finally {
+      if (transport != null) {
+        mailService.releaseTransport(transport, usages);
+      }
+    }
+
+    return results;
+  }
+
+  protected SendMailResult success(int index, Message message) throws MessagingException {
+    String messageId = null;
+    if (message instanceof MimeMessage) {
+      messageId = ((MimeMessage) message).getMessageID();
+    }
+
+    return SendMailResult.success(index, getTo(message), message.getSubject(), messageId);
+  }
+
+  protected SendMailResult failure(int index, Message message, Exception exception) throws MessagingException {
+    return SendMailResult.failure(index, getTo(message), message.getSubject(), exception.getMessage());
+  }
+
+  protected String getTo(Message message) throws MessagingException {
+    return InternetAddress.toString(message.getRecipients(RecipientType.TO));
+  }
+
+}
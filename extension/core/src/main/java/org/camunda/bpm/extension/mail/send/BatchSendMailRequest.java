@@ -0,0 +1,164 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.send;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.camunda.bpm.extension.mail.config.MailConfiguration;
+import org.camunda.connect.impl.AbstractConnectorRequest;
+import org.camunda.connect.spi.Connector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Request to send multiple mails at once. The parameters of this request are
+ * used as template for all mails. Each mail is either created for one of the
+ * given recipients or from one of the given parameter maps, which can
+ * override any parameter of the template.
+ */
+public class BatchSendMailRequest extends AbstractConnectorRequest<BatchSendMailResponse> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BatchSendMailRequest.class);
+
+  protected static final String PARAM_RECIPIENTS = "recipients";
+  protected static final String PARAM_MAILS = "mails";
+
+  protected final MailConfiguration configuration;
+
+  public BatchSendMailRequest(Connector<?> connector, MailConfiguration configuration) {
+    super(connector);
+    this.configuration = configuration;
+  }
+
+  public List<String> getRecipients() {
+    return getRequestParameter(PARAM_RECIPIENTS);
+  }
+
+  public BatchSendMailRequest recipients(String... recipients) {
+    setRequestParameter(PARAM_RECIPIENTS, Arrays.asList(recipients));
+    return this;
+  }
+
+  public List<Map<String, Object>> getMails() {
+    return getRequestParameter(PARAM_MAILS);
+  }
+
+  public BatchSendMailRequest mails(List<Map<String, Object>> mails) {
+    setRequestParameter(PARAM_MAILS, mails);
+    return this;
+  }
+
+  public BatchSendMailRequest from(String from) {
+    setRequestParameter(SendMailRequest.PARAM_FROM, from);
+    return this;
+  }
+
+  public BatchSendMailRequest fromAlias(String alias) {
+    setRequestParameter(SendMailRequest.PARAM_FROM_ALIAS, alias);
+    return this;
+  }
+
+  public BatchSendMailRequest cc(String cc) {
+    setRequestParameter(SendMailRequest.PARAM_CC, cc);
+    return this;
+  }
+
+  public BatchSendMailRequest bcc(String bcc) {
+    setRequestParameter(SendMailRequest.PARAM_BCC, bcc);
+    return this;
+  }
+
+  public BatchSendMailRequest subject(String subject) {
+    setRequestParameter(SendMailRequest.PARAM_SUBJECT, subject);
+    return this;
+  }
+
+  public BatchSendMailRequest text(String text) {
+    setRequestParameter(SendMailRequest.PARAM_TEXT, text);
+    return this;
+  }
+
+  public BatchSendMailRequest html(String html) {
+    setRequestParameter(SendMailRequest.PARAM_HTML, html);
+    return this;
+  }
+
+  public BatchSendMailRequest fileNames(String... fileNames) {
+    setRequestParameter(SendMailRequest.PARAM_FILE_NAMES, Arrays.asList(fileNames));
+    return this;
+  }
+
+  /**
+   * @return a request for each mail of the batch, in the order of the
+   *         recipients followed by the given mails
+   */
+  public List<SendMailRequest> getMailRequests() {
+    List<SendMailRequest> requests = new ArrayList<>();
+
+    if (getRecipients() != null) {
+      for (String recipient : getRecipients()) {
+        requests.add(createMailRequest().to(recipient));
+      }
+    }
+
+    if (getMails() != null) {
+      for (Map<String, Object> mail : getMails()) {
+        SendMailRequest request = createMailRequest();
+        mail.forEach(request::setRequestParameter);
+
+        requests.add(request);
+      }
+    }
+
+    return requests;
+  }
+
+  protected SendMailRequest createMailRequest() {
+    SendMailRequest request = new SendMailRequest(connector, configuration);
+
+    getRequestParameters().forEach((name, value) -> {
+      if (!PARAM_RECIPIENTS.equals(name) && !PARAM_MAILS.equals(name)) {
+        request.setRequestParameter(name, value);
+      }
+    });
+
+    return request;
+  }
+
+  @Override
+  protected boolean isRequestValid() {
+    List<SendMailRequest> requests = getMailRequests();
+
+    if (requests.isEmpty()) {
+      LOGGER.warn("invalid request: either parameter 'recipients' or 'mails' must be set in {}", this);
+      return false;
+    }
+
+    for (SendMailRequest request : requests) {
+      if (!request.isRequestValid()) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "BatchSendMailRequest [recipients=" + getRecipients() + ", mails=" + getMails() + ", template=" + createMailRequest() + "]";
+  }
+
+}
@@ -0,0 +1,59 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.send;
+
+import java.util.List;
+import java.util.Map;
+
+import org.camunda.bpm.extension.mail.dto.SendMailResult;
+import org.camunda.connect.impl.AbstractConnectorResponse;
+
+public class BatchSendMailResponse extends AbstractConnectorResponse {
+
+  public static final String PARAM_RESULTS = "results";
+  public static final String PARAM_SENT = "sent";
+  public static final String PARAM_FAILED = "failed";
+
+  protected final List<SendMailResult> results;
+
+  public BatchSendMailResponse(List<SendMailResult> results) {
+    this.results = results;
+  }
+
+  @Override
+  protected void collectResponseParameters(Map<String, Object> responseParameters) {
+    long sent = results.stream().filter(SendMailResult::isSuccess).count();
+
+    responseParameters.put(PARAM_RESULTS, results);
+    responseParameters.put(PARAM_SENT, sent);
+    responseParameters.put(PARAM_FAILED, results.size() - sent);
+  }
+
+  public List<SendMailResult> getResults() {
+    return getResponseParameter(PARAM_RESULTS);
+  }
+
+  public long getSent() {
+    return getResponseParameter(PARAM_SENT);
+  }
+
+  public long getFailed() {
+    return getResponseParameter(PARAM_FAILED);
+  }
+
+  @Override
+  public String toString() {
+    return "BatchSendMailResponse [results=" + results + "]";
+  }
+
+}
@@ -12,26 +12,17 @@
  */
 package org.camunda.bpm.extension.mail.send;
 
-import java.io.IOException;
-import java.util.Date;
-
 import javax.mail.Message;
-import javax.mail.Message.RecipientType;
-import javax.mail.MessagingException;
-import javax.mail.Multipart;
 import javax.mail.Session;
-import javax.mail.internet.InternetAddress;
-import javax.mail.internet.MimeBodyPart;
-import javax.mail.internet.MimeMessage;
-import javax.mail.internet.MimeMultipart;
 
 import org.camunda.bpm.extension.mail.EmptyResponse;
 import org.camunda.bpm.extension.mail.MailConnectorException;
-import org.camunda.bpm.extension.mail.MailContentType;
 import org.camunda.bpm.extension.mail.config.MailConfiguration;
 import org.camunda.bpm.extension.mail.config.MailConfigurationFactory;
 import org.camunda.bpm.extension.mail.service.MailService;
 import org.camunda.bpm.extension.mail.service.MailServiceFactory;
+import org.camunda.bpm.extension.mail.trace.MailTracer;
+import org.camunda.bpm.extension.mail.trace.Span;
 import org.camunda.connect.impl.AbstractConnector;
 import org.camunda.connect.spi.ConnectorResponse;
 
@@ -40,6 +31,7 @@ public class SendMailConnector extends AbstractConnector<SendMailRequest, EmptyR
   public static final String CONNECTOR_ID = "mail-send";
 
   protected MailConfiguration configuration;
+  protected MessageFactory messageFactory = new MessageFactory();
 
   public SendMailConnector() {
     super(CONNECTOR_ID);
@@ -55,84 +47,34 @@ public class SendMailConnector extends AbstractConnector<SendMailRequest, EmptyR
 
     MailService mailService = MailServiceFactory.getService(getConfiguration());
 
+    long start = System.nanoTime();
+    boolean success = false;
+    Span trace = MailTracer.startTrace(CONNECTOR_ID, requestInterceptors);
     try {
-      Message message = createMessage(request, mailService.getSession());
+      Message message;
+      try (Span span = MailTracer.startSpan("mime.create")) {
+        message = createMessage(request, mailService.getSession());
+      }
       SendMailInvocation invocation = new SendMailInvocation(message, request, requestInterceptors, mailService);
 
       invocation.proceed();
 
+      success = true;
+      mailService.getMetrics().countMessages(CONNECTOR_ID, 1);
+
     } catch (Exception e) {
       throw new MailConnectorException("Failed to send mail: " + e.getMessage(), e);
+
+    } finally {
+      mailService.getMetrics().recordInvocation(CONNECTOR_ID, System.nanoTime() - start, success);
+      trace.close();
     }
 
     return new EmptyResponse();
   }
 
   protected Message createMessage(SendMailRequest request, Session session) throws Exception {
-
-    Message message = new MimeMessage(session);
-    message.setFrom(new InternetAddress(request.getFrom(), request.getFromAlias()));
-    message.setRecipients(RecipientType.TO, InternetAddress.parse(request.getTo()));
-
-    if (request.getCc() != null) {
-      message.setRecipients(RecipientType.CC, InternetAddress.parse(request.getCc()));
-    }
-    if (request.getBcc() != null) {
-      message.setRecipients(RecipientType.BCC, InternetAddress.parse(request.getBcc()));
-    }
-
-    message.setSentDate(new Date());
-    message.setSubject(request.getSubject());
-
-    if (hasContent(request)) {
-      createMessageContent(message, request);
-    } else {
-      message.setText("");
-    }
-
-    return message;
-  }
-
-  protected boolean hasContent(SendMailRequest request) {
-    return request.getText() != null
-        || request.getHtml() != null
-        || request.getFileNames() != null && !request.getFileNames().isEmpty();
-  }
-
-  protected void createMessageContent(Message message, SendMailRequest request) throws MessagingException, IOException {
-    if (isTextOnlyMessage(request)) {
-      message.setText(request.getText());
-
-    } else {
-      Multipart multiPart = new MimeMultipart();
-
-      if (request.getText() != null) {
-        MimeBodyPart textPart = new MimeBodyPart();
-        textPart.setText(request.getText());
-        multiPart.addBodyPart(textPart);
-      }
-
-      if (request.getHtml() != null) {
-        MimeBodyPart htmlPart = new MimeBodyPart();
-        htmlPart.setContent(request.getHtml(), MailContentType.TEXT_HTML.getType());
-        multiPart.addBodyPart(htmlPart);
-      }
-
-      if (request.getFileNames() != null) {
-        for (String fileName : request.getFileNames()) {
-          MimeBodyPart part = new MimeBodyPart();
-          part.attachFile(fileName);
-          multiPart.addBodyPart(part);
-        }
-      }
-
-      message.setContent(multiPart);
-    }
-  }
-
-  protected boolean isTextOnlyMessage(SendMailRequest request) {
-    return request.getHtml() == null
-        && request.getFileNames() == null;
+    return messageFactory.createMessage(request, session);
   }
 
   protected MailConfiguration getConfiguration() {
@@ -146,4 +88,8 @@ public class SendMailConnector extends AbstractConnector<SendMailRequest, EmptyR
     this.configuration = configuration;
   }
 
+  public void setMessageFactory(MessageFactory messageFactory) {
+    this.messageFactory = messageFactory;
+  }
+
 }
@@ -17,6 +17,8 @@ import javax.mail.Message;
 import javax.mail.Transport;
 import org.camunda.bpm.extension.mail.dto.Mail;
 import org.camunda.bpm.extension.mail.service.MailService;
+import org.camunda.bpm.extension.mail.trace.MailTracer;
+import org.camunda.bpm.extension.mail.trace.Span;
 import org.camunda.connect.impl.AbstractRequestInvocation;
 import org.camunda.connect.spi.ConnectorRequestInterceptor;
 import org.slf4j.Logger;
@@ -41,9 +43,18 @@ public class SendMailInvocation extends AbstractRequestInvocation<Message> {
 
     LOGGER.debug("send '{}'", Mail.from(message));
 
-    Transport transport = mailService.getTransport();
-    transport.sendMessage(message, message.getAllRecipients());
-    mailService.flush();
+    Transport transport = mailService.borrowTransport();
+    try (Span span = MailTracer.startSpan("smtp.send")) {
+      mailService.sendMessage(transport, message);
+
+    } finally {
+      // keep the transport if only the mail is rejected (e.g. invalid recipients)
+      if (transport.isConnected()) {
+        mailService.releaseTransport(transport, 1);
+      } else {
+        mailService.invalidateTransport(transport);
+      }
+    }
 
     return null;
   }
@@ -0,0 +1,48 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.service;
+
+/**
+ * Runs an action after the transaction of the process engine is committed, if
+ * it is called within a command of the process engine (e.g. by a service
+ * task). So the action is not run if the transaction is rolled back, for
+ * example when the job fails and is retried. Otherwise, the action is run at
+ * once.
+ *
+ * <p>
+ * The process engine is an optional dependency, so its classes are only
+ * referenced by {@link CommandContextHolder}.
+ */
+public class AfterCommitExecutor {
+
+  protected static final String ENGINE_CONTEXT_CLASS = "org.camunda.bpm.engine.impl.context.Context";
+
+  private static final boolean ENGINE_AVAILABLE = isEngineAvailable();
+
+  public static void execute(Runnable action) {
+    if (!ENGINE_AVAILABLE || !CommandContextHolder.runAfterCommit(action)) {
+      action.run();
+    }
+  }
+
+  protected static boolean isEngineAvailable() {
+    try {
+      Class.forName(ENGINE_CONTEXT_CLASS, false, AfterCommitExecutor.class.getClassLoader());
+      return true;
+
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+}
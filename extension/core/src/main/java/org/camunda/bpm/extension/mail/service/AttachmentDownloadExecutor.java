@@ -0,0 +1,281 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.UIDFolder;
+
+import org.camunda.bpm.extension.mail.attachment.AttachmentStore;
+import org.camunda.bpm.extension.mail.dto.Attachment;
+import org.camunda.bpm.extension.mail.dto.Mail;
+import org.camunda.bpm.extension.mail.trace.MailTracer;
+import org.camunda.bpm.extension.mail.trace.Span;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downloads the attachments of polled mails in parallel.
+ *
+ * <p>
+ * Each worker thread leases an own store from the pool and fetches the mail
+ * again by its UID, since the messages of one folder can't be transferred in
+ * parallel. If the queue is full then the polling thread downloads the
+ * attachments itself, which slows down the poll instead of piling up mails.
+ */
+public class AttachmentDownloadExecutor {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AttachmentDownloadExecutor.class);
+
+  protected final MailService mailService;
+  protected final Duration timeout;
+  protected final ThreadPoolExecutor executor;
+
+  public AttachmentDownloadExecutor(MailService mailService, int threads, int queueSize, Duration timeout) {
+    this.mailService = mailService;
+    this.timeout = timeout;
+
+    this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+        new DaemonThreadFactory(),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  /**
+   * Downloads the attachments of the given mails and waits until all are
+   * downloaded or the timeout is reached. A failed download is logged and
+   * doesn't affect the other mails.
+   *
+   * <p>
+   * A worker thread downloads into an own copy of the content, which is taken
+   * over only if the download finished in time. The worker of a cancelled
+   * download can't be stopped while it is blocked on I/O, so it deletes its
+   * files when it finishes.
+   *
+   * @return the mails whose attachments are not downloaded because the
+   *         download failed or exceeded the timeout
+   */
+  public List<Mail> downloadAttachments(List<Mail> mails, String attachmentPath) {
+    long deadline = System.nanoTime() + timeout.toNanos();
+    Thread callerThread = Thread.currentThread();
+    Span parentSpan = MailTracer.currentSpan();
+
+    List<DownloadTask> downloads = new ArrayList<>();
+    for (Mail mail : mails) {
+      if (!mail.getAttachments().isEmpty()) {
+        DownloadTask download = new DownloadTask(mail, attachmentPath, callerThread, parentSpan);
+        download.future = executor.submit(download);
+
+        downloads.add(download);
+      }
+    }
+
+    List<Mail> failedMails = new ArrayList<>();
+
+    for (int i = 0; i < downloads.size(); i++) {
+      DownloadTask download = downloads.get(i);
+      try {
+        Mail content;
+        try {
+          content = download.future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+
+        } catch (TimeoutException e) {
+          if (download.cancel()) {
+            LOGGER.warn("cancel download of attachments since it exceeds the timeout of {}", timeout);
+
+            failedMails.add(download.mail);
+            continue;
+          }
+          // finished in the meantime
+          content = download.future.get();
+        }
+
+        download.takeContent(content);
+
+      } catch (ExecutionException e) {
+        LOGGER.error("exception while downloading attachments", e.getCause());
+
+        failedMails.add(download.mail);
+
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+
+        for (DownloadTask remainingDownload : downloads.subList(i, downloads.size())) {
+          remainingDownload.cancel();
+          failedMails.add(remainingDownload.mail);
+        }
+        break;
+      }
+    }
+
+    return failedMails;
+  }
+
+  /**
+   * @return the downloaded content, or <code>null</code> if the attachments
+   *         are downloaded into the given mail by the polling thread
+   */
+  protected Mail download(Mail mail, String attachmentPath, Thread callerThread) throws Exception {
+    AttachmentStore attachmentStore = mailService.getAttachmentStore();
+
+    if (Thread.currentThread() == callerThread || mail.getFolder() == null || mail.getUid() < 0) {
+      // run by the polling thread (e.g. the queue is full) - use its connection
+      mail.downloadAttachments(attachmentPath, attachmentStore);
+      return null;
+    }
+
+    try {
+      Folder folder = mailService.ensureOpenFolder(mail.getFolder());
+
+      long uidValidity = ((UIDFolder) folder).getUIDValidity();
+      if (mail.getUidValidity() >= 0 && mail.getUidValidity() != uidValidity) {
+        throw new MessagingException("UIDVALIDITY of folder '" + mail.getFolder() + "' changed, cannot load mail with UID " + mail.getUid());
+      }
+
+      Message message = ((UIDFolder) folder).getMessageByUID(mail.getUid());
+      if (message == null) {
+        throw new MessagingException("mail with UID " + mail.getUid() + " doesn't exist in folder '" + mail.getFolder() + "'");
+      }
+
+      Mail content = new Mail();
+      try {
+        content.downloadAttachments(message, attachmentPath, attachmentStore);
+
+      } catch (Exception e) {
+        // the content is discarded, so are its files
+        deleteFiles(content);
+        throw e;
+      }
+      return content;
+
+    } finally {
+      mailService.flush();
+    }
+  }
+
+  protected static void deleteFiles(Mail content) {
+    for (Attachment attachment : content.getAttachments()) {
+      if (attachment.getPath() != null) {
+        try {
+          Path file = Paths.get(attachment.getPath());
+          Files.deleteIfExists(file);
+          // the directory of the mail is empty now
+          Files.deleteIfExists(file.getParent());
+
+        } catch (IOException e) {
+          LOGGER.debug("failed to delete attachment file '{}'", attachment.getPath(), e);
+        }
+      }
+    }
+  }
+
+  public int getQueueSize() {
+    return executor.getQueue().size();
+  }
+
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  protected class DownloadTask implements Callable<Mail> {
+
+    protected final Mail mail;
+    protected final String attachmentPath;
+    protected final Thread callerThread;
+    protected final Span parentSpan;
+
+    // set by the worker when it finished, or by the polling thread when it stopped waiting
+    protected final AtomicBoolean completed = new AtomicBoolean();
+
+    protected Future<Mail> future;
+
+    public DownloadTask(Mail mail, String attachmentPath, Thread callerThread, Span parentSpan) {
+      this.mail = mail;
+      this.attachmentPath = attachmentPath;
+      this.callerThread = callerThread;
+      this.parentSpan = parentSpan;
+    }
+
+    @Override
+    public Mail call() throws Exception {
+      // the spans of the worker threads are added to the trace of the poll
+      Span previousSpan = MailTracer.resume(parentSpan);
+      try {
+        Mail content = download(mail, attachmentPath, callerThread);
+
+        if (!completed.compareAndSet(false, true)) {
+          LOGGER.debug("delete attachments of cancelled download: {}", mail);
+
+          if (content != null) {
+            deleteFiles(content);
+          }
+          return null;
+        }
+        return content;
+
+      } finally {
+        MailTracer.restore(previousSpan);
+      }
+    }
+
+    /**
+     * @return <code>true</code> if the download is cancelled before it
+     *         finished
+     */
+    public boolean cancel() {
+      if (completed.compareAndSet(false, true)) {
+        future.cancel(true);
+        return true;
+      }
+      return false;
+    }
+
+    public void takeContent(Mail content) {
+      if (content != null) {
+        mail.takeContentFrom(content);
+      }
+    }
+  }
+
+  protected static class DaemonThreadFactory implements ThreadFactory {
+
+    protected final AtomicInteger threadNumber = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "mail-attachment-download-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+}
@@ -0,0 +1,40 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.service;
+
+import org.camunda.bpm.engine.impl.cfg.TransactionState;
+import org.camunda.bpm.engine.impl.context.Context;
+import org.camunda.bpm.engine.impl.interceptor.CommandContext;
+
+/**
+ * Refers to the command context of the process engine. The class is only
+ * loaded if the process engine is on the classpath (see
+ * {@link AfterCommitExecutor}).
+ */
+class CommandContextHolder {
+
+  /**
+   * @return <code>false</code> if it is not called within a command of the
+   *         process engine
+   */
+  static boolean runAfterCommit(Runnable action) {
+    CommandContext commandContext = Context.getCommandContext();
+    if (commandContext == null) {
+      return false;
+    }
+
+    commandContext.getTransactionContext().addTransactionListener(TransactionState.COMMITTED, context -> action.run());
+    return true;
+  }
+
+}
@@ -0,0 +1,288 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.MessagingException;
+import javax.mail.Service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded pool of connected mail services (i.e. stores or transports).
+ *
+ * <p>
+ * Idle connections are validated before they are handed out and closed when
+ * they were not used for longer than the configured idle time, while at least
+ * the configured number of idle connections is kept. A connection is closed
+ * after it was used for the configured maximum number of usages (e.g. sent
+ * messages).
+ */
+public class ConnectionPool<T extends Service> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionPool.class);
+
+  /**
+   * Creates and validates the connections of a pool.
+   */
+  public interface ConnectionFactory<T extends Service> {
+
+    /**
+     * @return a new connected service
+     */
+    T create() throws MessagingException;
+
+    /**
+     * @return <code>true</code> if the connection can still be used
+     */
+    boolean validate(T connection);
+  }
+
+  protected static class PooledConnection<T> {
+
+    protected final T connection;
+    protected long lastUsed = System.nanoTime();
+    protected int usages = 0;
+
+    protected PooledConnection(T connection) {
+      this.connection = connection;
+    }
+  }
+
+  protected final String name;
+  protected final ConnectionFactory<T> factory;
+
+  protected final int maxSize;
+  protected final int minIdle;
+  protected final Duration idleTime;
+  protected final Duration borrowTimeout;
+  protected final int maxUsages;
+
+  protected final Semaphore permits;
+  protected final Deque<PooledConnection<T>> idleConnections = new ArrayDeque<>();
+  protected final Map<T, PooledConnection<T>> borrowedConnections = new IdentityHashMap<>();
+
+  protected volatile boolean closed = false;
+
+  public ConnectionPool(String name, ConnectionFactory<T> factory, int maxSize, int minIdle, Duration idleTime, Duration borrowTimeout) {
+    this(name, factory, maxSize, minIdle, idleTime, borrowTimeout, 0);
+  }
+
+  /**
+   * @param maxUsages
+   *          maximum number of usages of a connection before it is closed,
+   *          <code>0</code> for unlimited usages
+   */
+  public ConnectionPool(String name, ConnectionFactory<T> factory, int maxSize, int minIdle, Duration idleTime, Duration borrowTimeout, int maxUsages) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("size of pool '" + name + "' must be greater than zero");
+    }
+
+    this.name = name;
+    this.factory = factory;
+    this.maxSize = maxSize;
+    this.minIdle = Math.min(minIdle, maxSize);
+    this.idleTime = idleTime;
+    this.borrowTimeout = borrowTimeout;
+    this.maxUsages = maxUsages;
+
+    this.permits = new Semaphore(maxSize, true);
+  }
+
+  /**
+   * Borrows a connection from the pool. Waits up to the borrow timeout if all
+   * connections are in use.
+   */
+  public T borrow() throws MessagingException {
+    if (closed) {
+      throw new IllegalStateException("pool '" + name + "' is closed");
+    }
+
+    acquirePermit();
+
+    try {
+      evictIdleConnections();
+
+      PooledConnection<T> pooledConnection;
+      while ((pooledConnection = pollIdleConnection()) != null) {
+
+        if (factory.validate(pooledConnection.connection)) {
+          return markBorrowed(pooledConnection);
+        } else {
+          LOGGER.debug("discard broken connection of pool '{}'", name);
+
+          closeQuietly(pooledConnection.connection);
+        }
+      }
+
+      LOGGER.debug("open new connection for pool '{}'", name);
+
+      return markBorrowed(new PooledConnection<>(factory.create()));
+
+    } catch (MessagingException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns a borrowed connection to the pool.
+   */
+  public void release(T connection) {
+    release(connection, 1);
+  }
+
+  /**
+   * Returns a borrowed connection to the pool.
+   *
+   * @param usages
+   *          how often the connection was used while it was borrowed
+   */
+  public void release(T connection, int usages) {
+    PooledConnection<T> pooledConnection = unmarkBorrowed(connection);
+    pooledConnection.usages += usages;
+    pooledConnection.lastUsed = System.nanoTime();
+
+    if (closed) {
+      closeQuietly(connection);
+
+    } else if (maxUsages > 0 && pooledConnection.usages >= maxUsages) {
+      LOGGER.debug("close connection of pool '{}' after {} usages", name, pooledConnection.usages);
+
+      closeQuietly(connection);
+
+    } else {
+      synchronized (idleConnections) {
+        idleConnections.addFirst(pooledConnection);
+      }
+    }
+
+    permits.release();
+  }
+
+  /**
+   * Closes a borrowed connection instead of returning it to the pool, e.g.
+   * because it is broken.
+   */
+  public void invalidate(T connection) {
+    unmarkBorrowed(connection);
+    closeQuietly(connection);
+
+    permits.release();
+  }
+
+  /**
+   * Closes all idle connections which were not used for longer than the idle
+   * time, but keeps at least the minimum number of idle connections.
+   */
+  public void evictIdleConnections() {
+    long now = System.nanoTime();
+
+    synchronized (idleConnections) {
+      // the least recently used connections are at the end of the queue
+      Iterator<PooledConnection<T>> iterator = idleConnections.descendingIterator();
+      while (iterator.hasNext() && idleConnections.size() > minIdle) {
+        PooledConnection<T> pooledConnection = iterator.next();
+
+        if (now - pooledConnection.lastUsed > idleTime.toNanos()) {
+          LOGGER.debug("evict idle connection of pool '{}'", name);
+
+          iterator.remove();
+          closeQuietly(pooledConnection.connection);
+        } else {
+          break;
+        }
+      }
+    }
+  }
+
+  public void close() {
+    closed = true;
+
+    synchronized (idleConnections) {
+      idleConnections.forEach(c -> closeQuietly(c.connection));
+      idleConnections.clear();
+    }
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public int getActiveCount() {
+    return maxSize - permits.availablePermits();
+  }
+
+  public int getIdleCount() {
+    synchronized (idleConnections) {
+      return idleConnections.size();
+    }
+  }
+
+  protected T markBorrowed(PooledConnection<T> pooledConnection) {
+    synchronized (borrowedConnections) {
+      borrowedConnections.put(pooledConnection.connection, pooledConnection);
+    }
+    return pooledConnection.connection;
+  }
+
+  protected PooledConnection<T> unmarkBorrowed(T connection) {
+    synchronized (borrowedConnections) {
+      PooledConnection<T> pooledConnection = borrowedConnections.remove(connection);
+      if (pooledConnection == null) {
+        throw new IllegalArgumentException("connection is not borrowed from pool '" + name + "'");
+      }
+      return pooledConnection;
+    }
+  }
+
+  protected PooledConnection<T> pollIdleConnection() {
+    synchronized (idleConnections) {
+      return idleConnections.pollFirst();
+    }
+  }
+
+  protected void acquirePermit() throws MessagingException {
+    try {
+      if (!permits.tryAcquire(borrowTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+        throw new MessagingException("timeout while waiting for a free connection of pool '" + name + "' (max size: " + maxSize + ")");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MessagingException("interrupted while waiting for a free connection of pool '" + name + "'", e);
+    }
+  }
+
+  protected void closeQuietly(T connection) {
+    try {
+      connection.close();
+    } catch (MessagingException e) {
+      LOGGER.debug("failure while closing connection of pool '{}'", name, e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ConnectionPool [name=" + name + ", maxSize=" + maxSize + ", active=" + getActiveCount() + ", idle=" + getIdleCount() + "]";
+  }
+
+}
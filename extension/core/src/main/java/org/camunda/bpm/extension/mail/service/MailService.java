@@ -13,28 +13,86 @@
 package org.camunda.bpm.extension.mail.service;
 
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.FetchProfile;
 import javax.mail.Folder;
+import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Session;
 import javax.mail.Store;
 import javax.mail.Transport;
+import javax.mail.UIDFolder;
+import javax.mail.event.ConnectionAdapter;
+import javax.mail.event.ConnectionEvent;
+import javax.mail.event.MailEvent;
+
+import org.camunda.bpm.extension.mail.attachment.AttachmentStore;
+import org.camunda.bpm.extension.mail.attachment.ContentAddressedAttachmentStore;
+import org.camunda.bpm.extension.mail.attachment.FileAttachmentStore;
 import org.camunda.bpm.extension.mail.config.MailConfiguration;
+import org.camunda.bpm.extension.mail.metrics.MailMetrics;
+import org.camunda.bpm.extension.mail.metrics.MailMetricsFactory;
+import org.camunda.bpm.extension.mail.service.ConnectionPool.ConnectionFactory;
+import org.camunda.bpm.extension.mail.trace.MailTracer;
+import org.camunda.bpm.extension.mail.trace.Span;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+import com.sun.mail.imap.ResyncData;
+import com.sun.mail.smtp.SMTPTransport;
+
+/**
+ * Provides the connections to the mail server.
+ *
+ * <p>
+ * The stores are taken from a bounded pool. Each thread leases its own store
+ * on the first call of {@link #ensureOpenFolder(String)} and returns it to the
+ * pool by calling {@link #flush()}.
+ *
+ * <p>
+ * The transports are taken from an own pool by
+ * {@link #borrowTransport()} and are kept connected between the sent mails.
+ */
 public class MailService {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(MailService.class);
-  private static Session session = null;
-  private static Store store = null;
+
+  // directory of the deduplicated attachment content, within the attachment path
+  private static final String CONTENT_DIRECTORY = ".content";
+
   private final MailConfiguration configuration;
+  private final ThreadLocal<StoreLease> leases = new ThreadLocal<>();
+
+  private Session session = null;
+  private ConnectionPool<Store> storePool = null;
+  private ConnectionPool<Transport> transportPool = null;
+  private AttachmentDownloadExecutor attachmentDownloadExecutor = null;
+  private AttachmentStore attachmentStore = null;
+  private MessageLookup messageLookup = null;
+  private SendRateLimiter sendRateLimiter = null;
+  private MailMetrics metrics = null;
+
+  private final AtomicInteger openFolders = new AtomicInteger();
 
   public MailService(MailConfiguration configuration) {
     this.configuration = configuration;
   }
 
-  public Session getSession() {
+  public MailConfiguration getConfiguration() {
+    return configuration;
+  }
+
+  public synchronized Session getSession() {
     if (session == null) {
       LOGGER.debug("open session");
 
@@ -45,33 +103,117 @@ public class MailService {
   }
 
   public Folder ensureOpenFolder(String folderName) throws MessagingException {
-    if (store == null) {
-      store = getSession().getStore();
-    }
+    StoreLease lease = getLease();
 
-    ensureConnectedStore(store);
-    Folder folder = store.getFolder(folderName);
+    Folder folder = lease.getFolder(folderName);
     return ensureOpenFolder(folder);
   }
 
   public Folder ensureOpenFolder(Folder folder) throws MessagingException {
-	    ensureConnectedStore(folder.getStore());
+    ensureConnectedStoreOfFolder(folder);
+
+    if (!folder.isOpen()) {
+      openFolder(folder, Folder.READ_WRITE, null);
+    }
+
+    return folder;
+  }
+
+  /**
+   * Opens the folder read-only, so that reading the messages doesn't change
+   * their flags (e.g. to load the content of a mail again). The folder is
+   * opened on the store of the current thread if it holds one, or else on a
+   * store which is borrowed from the pool. It must be closed by
+   * {@link #closeReadOnlyFolder(Folder)}.
+   */
+  public Folder openReadOnlyFolder(String folderName) throws MessagingException {
+    StoreLease lease = leases.get();
+    Store store = lease != null ? lease.getStore() : borrowStore();
+    try {
+      ensureConnectedStore(store);
+
+      // not cached by the lease, since the folder may be open read-write already
+      Folder folder = store.getFolder(folderName);
+      openFolder(folder, Folder.READ_ONLY, null);
+      return folder;
 
-	    if (!folder.isOpen()) {
-	      openFolder(folder);
-	    }
+    } catch (MessagingException | RuntimeException e) {
+      if (lease == null) {
+        getStorePool().release(store);
+      }
+      throw e;
+    }
+  }
 
-	    return folder;
-	  }
+  /**
+   * Closes the folder which is opened by {@link #openReadOnlyFolder(String)}
+   * and returns its store to the pool if it was borrowed.
+   */
+  public void closeReadOnlyFolder(Folder folder) {
+    try {
+      closeFolder(folder);
+    } catch (MessagingException e) {
+      LOGGER.warn("Failure while closing folder", e);
+    }
+
+    StoreLease lease = leases.get();
+    if (lease == null || lease.getStore() != folder.getStore()) {
+      getStorePool().release(folder.getStore());
+    }
+  }
+
+  /**
+   * @return the folder of the leased store, which is not opened yet
+   */
+  public Folder getFolder(String folderName) throws MessagingException {
+    StoreLease lease = getLease();
+
+    Folder folder = lease.getFolder(folderName);
+    ensureConnectedStoreOfFolder(folder);
+
+    return folder;
+  }
+
+  /**
+   * Opens the folder and synchronizes it with the state of a previous session
+   * by QRESYNC (RFC 7162), so that the server reports the messages which are
+   * expunged or changed since then when the folder is selected. QRESYNC must be
+   * enabled before the folder is selected, so an open folder is closed first.
+   *
+   * @return the events of the expunged and changed messages, or
+   *         <code>null</code> if the server doesn't support QRESYNC - then the
+   *         folder is opened without synchronizing it
+   */
+  public List<MailEvent> resyncFolder(Folder folder, ResyncData resyncData) throws MessagingException {
+    ensureConnectedStoreOfFolder(folder);
+
+    Store store = folder.getStore();
+    if (!(folder instanceof IMAPFolder) || !(store instanceof IMAPStore) || !((IMAPStore) store).hasCapability("QRESYNC")) {
+      ensureOpenFolder(folder);
+      return null;
+    }
+
+    closeFolder(folder);
+
+    return openFolder(folder, Folder.READ_WRITE, resyncData);
+  }
+
+  private void ensureConnectedStoreOfFolder(Folder folder) throws MessagingException {
+    if (ensureConnectedStore(folder.getStore())) {
+      // the store was connected when it was leased
+      getMetrics().countReconnect(MailMetrics.SOURCE_STORE);
+    }
+  }
 
   public void closeFolder(String folderName) throws MessagingException {
-	    if (store == null) {
-	      return;
-	    }
+    StoreLease lease = leases.get();
+    if (lease == null) {
+      return;
+    }
 
-	    Folder folder = store.getFolder(folderName);
-	    closeFolder(folder);
-	  }
+    Folder folder = lease.removeFolder(folderName);
+    closeFolder(folder);
+  }
 
   public void closeFolder(Folder folder) throws MessagingException {
     if (folder != null && folder.isOpen()) {
@@ -79,52 +221,495 @@ public class MailService {
     }
   }
 
-  private void ensureConnectedStore(Store store) throws MessagingException {
+  /**
+   * Connects a new store which is not managed by the pool, e.g. for long
+   * running listeners. The caller is responsible for closing it.
+   */
+  public Store connectStore() throws MessagingException {
+    Store store = getSession().getStore();
+    ensureConnectedStore(store);
+    return store;
+  }
+
+  /**
+   * Fetches the configured items (e.g. envelope, flags) of all given messages
+   * at once, so that reading the messages doesn't need a round-trip to the
+   * mail server for each item. The messages are fetched with one command per
+   * folder.
+   *
+   * <p>
+   * A failure is only logged, since the items are loaded on demand anyway.
+   */
+  public void prefetch(List<Message> messages) {
+    if (messages.isEmpty()) {
+      return;
+    }
+
+    FetchProfile fetchProfile = getFetchProfile();
+    if (fetchProfile.getItems().length == 0 && fetchProfile.getHeaderNames().length == 0) {
+      return;
+    }
+
+    Map<Folder, List<Message>> messagesByFolder = new IdentityHashMap<>();
+    for (Message message : messages) {
+      messagesByFolder.computeIfAbsent(message.getFolder(), f -> new ArrayList<>()).add(message);
+    }
+
+    messagesByFolder.forEach((folder, folderMessages) -> {
+      try (Span span = MailTracer.startSpan("imap.fetch").attribute("folder", folder.getFullName()).attribute("messages", folderMessages.size())) {
+        folder.fetch(folderMessages.toArray(new Message[folderMessages.size()]), fetchProfile);
+
+        LOGGER.debug("prefetched {} messages of folder '{}'", folderMessages.size(), folder.getFullName());
+
+      } catch (MessagingException | RuntimeException e) {
+        LOGGER.warn("failed to prefetch messages of folder '{}'", folder.getFullName(), e);
+      }
+    });
+  }
+
+  /**
+   * @return the items which are prefetched for polled mails, as configured
+   */
+  public FetchProfile getFetchProfile() {
+    FetchProfile fetchProfile = new FetchProfile();
+
+    for (String item : configuration.getFetchItems()) {
+      fetchProfile.add(getFetchProfileItem(item));
+    }
+    for (String header : configuration.getFetchHeaders()) {
+      fetchProfile.add(header);
+    }
+    return fetchProfile;
+  }
+
+  protected FetchProfile.Item getFetchProfileItem(String item) {
+    switch (item.toLowerCase()) {
+    case "envelope":
+      return FetchProfile.Item.ENVELOPE;
+    case "flags":
+      return FetchProfile.Item.FLAGS;
+    case "content-info":
+    case "bodystructure":
+      // the content info is fetched as BODYSTRUCTURE from IMAP servers
+      return FetchProfile.Item.CONTENT_INFO;
+    case "size":
+      return FetchProfile.Item.SIZE;
+    case "uid":
+      return UIDFolder.FetchProfileItem.UID;
+    case "internaldate":
+      return IMAPFolder.FetchProfileItem.INTERNALDATE;
+    case "headers":
+      return IMAPFolder.FetchProfileItem.HEADERS;
+    case "message":
+      return IMAPFolder.FetchProfileItem.MESSAGE;
+    default:
+      throw new IllegalArgumentException("unknown fetch item '" + item
+          + "', expected one of: envelope, flags, content-info, bodystructure, size, uid, internaldate, headers, message");
+    }
+  }
+
+  private StoreLease getLease() throws MessagingException {
+    StoreLease lease = leases.get();
+    if (lease == null) {
+      lease = new StoreLease(borrowStore(), getStorePool());
+      leases.set(lease);
+    }
+    return lease;
+  }
+
+  private Store borrowStore() throws MessagingException {
+    try (Span span = MailTracer.startSpan("pool.borrow").attribute("pool", "store")) {
+      return getStorePool().borrow();
+    }
+  }
+
+  private synchronized ConnectionPool<Store> getStorePool() {
+    if (storePool == null) {
+      storePool = new ConnectionPool<>("store", new ConnectionFactory<Store>() {
+
+        @Override
+        public Store create() throws MessagingException {
+          return connectStore();
+        }
+
+        @Override
+        public boolean validate(Store store) {
+          // sends a NOOP command to the server
+          boolean connected = store.isConnected();
+          if (!connected) {
+            getMetrics().countReconnect(MailMetrics.SOURCE_STORE);
+          }
+          return connected;
+        }
+      },
+      configuration.getStorePoolSize(),
+      configuration.getStorePoolMinIdle(),
+      configuration.getStorePoolIdleTime(),
+      configuration.getStorePoolBorrowTimeout());
+
+      LOGGER.debug("created {}", storePool);
+    }
+    return storePool;
+  }
+
+  /**
+   * @return <code>true</code> if the store was not connected
+   */
+  private boolean ensureConnectedStore(Store store) throws MessagingException {
     if (!store.isConnected()) {
       LOGGER.debug("connect to sore");
 
-      store.connect(configuration.getUserName(), configuration.getPassword());
+      try (Span span = MailTracer.startSpan("imap.connect")) {
+        store.connect(configuration.getUserName(), configuration.getPassword());
+      }
+      return true;
     }
+    return false;
   }
 
-  private void openFolder(Folder folder) throws MessagingException {
+  private List<MailEvent> openFolder(Folder folder, int mode, ResyncData resyncData) throws MessagingException {
 
     LOGGER.debug("open folder '{}'", folder.getName());
 
-    folder.open(Folder.READ_WRITE);
+    List<MailEvent> resyncEvents = Collections.emptyList();
+
+    try (Span span = MailTracer.startSpan("imap.open").attribute("folder", folder.getFullName())) {
+      if (resyncData != null) {
+        // also enables QRESYNC before selecting the folder
+        resyncEvents = ((IMAPFolder) folder).open(mode, resyncData);
+      } else {
+        folder.open(mode);
+      }
+    }
 
     if (!folder.isOpen()) {
       throw new IllegalStateException("folder is not open");
     }
+
+    openFolders.incrementAndGet();
+
+    // also notified if the folder is closed by the server or with its store
+    folder.addConnectionListener(new ConnectionAdapter() {
+      @Override
+      public void closed(ConnectionEvent e) {
+        openFolders.decrementAndGet();
+        folder.removeConnectionListener(this);
+      }
+    });
+
+    return resyncEvents != null ? resyncEvents : Collections.emptyList();
   }
 
+  /**
+   * Connects a new transport which is not managed by the pool. The caller is
+   * responsible for closing it.
+   *
+   * @see #borrowTransport()
+   */
   public Transport getTransport() throws IOException, MessagingException {
     Transport transport = getSession().getTransport();
     if (!transport.isConnected()) {
       LOGGER.debug("connect transport");
 
-      transport.connect(configuration.getUserName(), configuration.getPassword());
+      try (Span span = MailTracer.startSpan("smtp.connect")) {
+        transport.connect(configuration.getUserName(), configuration.getPassword());
+      }
     }
     return transport;
   }
 
+  /**
+   * Borrows a connected transport from the pool. It must be returned by
+   * {@link #releaseTransport(Transport, int)} or
+   * {@link #invalidateTransport(Transport)}.
+   */
+  public Transport borrowTransport() throws MessagingException {
+    try (Span span = MailTracer.startSpan("pool.borrow").attribute("pool", "transport")) {
+      return getTransportPool().borrow();
+    }
+  }
+
+  /**
+   * Returns a borrowed transport to the pool.
+   *
+   * @param sentMessages
+   *          number of messages which are sent by the transport
+   */
+  public void releaseTransport(Transport transport, int sentMessages) {
+    getTransportPool().release(transport, sentMessages);
+  }
+
+  /**
+   * Sends the message over the given transport, at the rate of the
+   * {@link SendRateLimiter}. If the mail server rejects the message
+   * temporarily (e.g. with 421 or 451) then the rate is decreased and the
+   * message is sent again after a delay, up to the configured retries. The
+   * transport is reconnected if the server has closed the connection.
+   */
+  public void sendMessage(Transport transport, Message message) throws MessagingException {
+    SendRateLimiter rateLimiter = getSendRateLimiter();
+    int retries = configuration.getSendRetries();
+    long retryDelay = configuration.getSendRetryDelay().toMillis();
+
+    for (int attempt = 0;; attempt++) {
+      try {
+        rateLimiter.acquire();
+
+        transport.sendMessage(message, message.getAllRecipients());
+
+        rateLimiter.onSuccess();
+        return;
+
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new MessagingException("interrupted while waiting to send the mail", e);
+
+      } catch (MessagingException e) {
+        if (!SendRateLimiter.isTransientRejection(e)) {
+          throw e;
+        }
+
+        rateLimiter.onRejection();
+        getMetrics().countRejection(MailMetrics.SOURCE_TRANSPORT);
+
+        if (attempt >= retries) {
+          throw e;
+        }
+
+        long delay = retryDelay << Math.min(attempt, 16);
+        LOGGER.info("mail is rejected temporarily ({}), send again in {} ms", e.getMessage(), delay);
+
+        sleep(delay);
+
+        if (!transport.isConnected()) {
+          LOGGER.debug("reconnect transport");
+
+          try (Span span = MailTracer.startSpan("smtp.connect")) {
+            transport.connect(configuration.getUserName(), configuration.getPassword());
+          }
+        }
+      }
+    }
+  }
+
+  private void sleep(long millis) throws MessagingException {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MessagingException("interrupted while waiting to send the mail again", e);
+    }
+  }
+
+  /**
+   * @return the rate limiter of the sent messages of this account
+   */
+  public synchronized SendRateLimiter getSendRateLimiter() {
+    if (sendRateLimiter == null) {
+      sendRateLimiter = new SendRateLimiter(configuration.getSendRate(), configuration.getSendBurst());
+
+      LOGGER.debug("created {}", sendRateLimiter);
+    }
+    return sendRateLimiter;
+  }
+
+  /**
+   * Closes a borrowed transport instead of returning it to the pool, e.g.
+   * because it is broken.
+   */
+  public void invalidateTransport(Transport transport) {
+    getTransportPool().invalidate(transport);
+  }
+
+  private synchronized ConnectionPool<Transport> getTransportPool() {
+    if (transportPool == null) {
+      transportPool = new ConnectionPool<>("transport", new ConnectionFactory<Transport>() {
+
+        @Override
+        public Transport create() throws MessagingException {
+          Transport transport = getSession().getTransport();
+
+          if (transport instanceof SMTPTransport) {
+            // check the connection with RSET instead of NOOP
+            ((SMTPTransport) transport).setUseRset(true);
+          }
+
+          LOGGER.debug("connect transport");
+
+          try (Span span = MailTracer.startSpan("smtp.connect")) {
+            transport.connect(configuration.getUserName(), configuration.getPassword());
+          }
+          return transport;
+        }
+
+        @Override
+        public boolean validate(Transport transport) {
+          boolean connected = transport.isConnected();
+          if (!connected) {
+            getMetrics().countReconnect(MailMetrics.SOURCE_TRANSPORT);
+          }
+          return connected;
+        }
+      },
+      configuration.getTransportPoolSize(),
+      0,
+      configuration.getTransportPoolIdleTime(),
+      configuration.getTransportPoolBorrowTimeout(),
+      configuration.getTransportPoolMaxMessages());
+
+      LOGGER.debug("created {}", transportPool);
+    }
+    return transportPool;
+  }
+
+  /**
+   * @return the executor which downloads attachments in parallel, or
+   *         <code>null</code> if the attachments should be downloaded by the
+   *         polling thread
+   */
+  public synchronized AttachmentDownloadExecutor getAttachmentDownloadExecutor() {
+    if (attachmentDownloadExecutor == null && configuration.getAttachmentDownloadThreads() > 0) {
+      attachmentDownloadExecutor = new AttachmentDownloadExecutor(this,
+          configuration.getAttachmentDownloadThreads(),
+          configuration.getAttachmentDownloadQueueSize(),
+          configuration.getAttachmentDownloadTimeout());
+    }
+    return attachmentDownloadExecutor;
+  }
+
+  /**
+   * @return the lookup of messages by UID or Message-ID, which caches the UIDs
+   *         of found Message-IDs
+   */
+  public synchronized MessageLookup getMessageLookup() {
+    if (messageLookup == null) {
+      messageLookup = new MessageLookup(configuration.getLookupChunkSize(), configuration.getLookupCacheSize());
+    }
+    return messageLookup;
+  }
+
+  /**
+   * @return the metrics of the connectors and services, as configured
+   */
+  public synchronized MailMetrics getMetrics() {
+    if (metrics == null) {
+      setMetrics(MailMetricsFactory.create(configuration));
+    }
+    return metrics;
+  }
+
+  /**
+   * Replaces the configured metrics, e.g. by metrics which use a custom
+   * Micrometer registry.
+   */
+  public synchronized void setMetrics(MailMetrics metrics) {
+    if (this.metrics != null) {
+      this.metrics.close();
+    }
+    this.metrics = metrics;
+
+    metrics.gauge(MailMetrics.METRIC_OPEN_FOLDERS, MailMetrics.SOURCE_STORE, openFolders::get);
+    metrics.gauge(MailMetrics.METRIC_POOL_ACTIVE, MailMetrics.SOURCE_STORE, () -> getPoolSize(storePool, true));
+    metrics.gauge(MailMetrics.METRIC_POOL_IDLE, MailMetrics.SOURCE_STORE, () -> getPoolSize(storePool, false));
+    metrics.gauge(MailMetrics.METRIC_POOL_ACTIVE, MailMetrics.SOURCE_TRANSPORT, () -> getPoolSize(transportPool, true));
+    metrics.gauge(MailMetrics.METRIC_POOL_IDLE, MailMetrics.SOURCE_TRANSPORT, () -> getPoolSize(transportPool, false));
+    metrics.gauge(MailMetrics.METRIC_SEND_RATE, MailMetrics.SOURCE_TRANSPORT, () -> getSendRateLimiter().getRate());
+  }
+
+  private int getPoolSize(ConnectionPool<?> pool, boolean active) {
+    if (pool == null) {
+      return 0;
+    }
+    return active ? pool.getActiveCount() : pool.getIdleCount();
+  }
+
+  /**
+   * @return number of folders which are opened by this service and not
+   *         closed yet
+   */
+  public int getOpenFolderCount() {
+    return openFolders.get();
+  }
+
+  /**
+   * @return the store for downloaded attachments, as configured
+   */
+  public synchronized AttachmentStore getAttachmentStore() {
+    if (attachmentStore == null) {
+      if (configuration.deduplicateAttachments()) {
+        ContentAddressedAttachmentStore contentAddressedStore = new ContentAddressedAttachmentStore(
+            Paths.get(configuration.getAttachmentPath(), CONTENT_DIRECTORY),
+            configuration.getAttachmentMaxSize(),
+            configuration.getAttachmentBufferSize(),
+            configuration.getAttachmentRetention());
+
+        contentAddressedStore.startCleanup(configuration.getAttachmentCleanupInterval());
+
+        attachmentStore = contentAddressedStore;
+      } else {
+        attachmentStore = new FileAttachmentStore(configuration.getAttachmentMaxSize(), configuration.getAttachmentBufferSize());
+      }
+
+      LOGGER.debug("created attachment store {}", attachmentStore);
+    }
+    return attachmentStore;
+  }
+
   public void close() throws Exception {
-    if (store != null) {
-      LOGGER.debug("close the store");
+    flush();
+
+    synchronized (this) {
+      if (attachmentStore != null) {
+        attachmentStore.close();
+        attachmentStore = null;
+      }
+
+      if (attachmentDownloadExecutor != null) {
+        attachmentDownloadExecutor.shutdown();
+        attachmentDownloadExecutor = null;
+      }
+
+      if (storePool != null) {
+        LOGGER.debug("close the store pool");
+
+        storePool.close();
+        storePool = null;
+      }
+
+      if (transportPool != null) {
+        LOGGER.debug("close the transport pool");
 
-      store.close();
-      store = null;
+        transportPool.close();
+        transportPool = null;
+      }
+
+      if (metrics != null) {
+        metrics.close();
+        metrics = null;
+      }
     }
   }
 
+  /**
+   * Closes the folders of the current thread and returns its store to the
+   * pool.
+   */
   public void flush() {
-    if (store != null) {
-      LOGGER.debug("flush by closing the store");
-      try {
-        store.close();
-      } catch (MessagingException e) {
-        LOGGER.warn("Failure while closing store", e);
+    StoreLease lease = leases.get();
+    if (lease != null) {
+      LOGGER.debug("flush by releasing the store");
+
+      leases.remove();
+
+      for (Folder folder : lease.getFolders()) {
+        try {
+          closeFolder(folder);
+        } catch (MessagingException e) {
+          LOGGER.warn("Failure while closing folder", e);
+        }
       }
+
+      lease.getPool().release(lease.getStore());
     }
   }
 
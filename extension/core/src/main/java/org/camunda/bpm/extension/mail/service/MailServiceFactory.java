@@ -12,17 +12,117 @@
  */
 package org.camunda.bpm.extension.mail.service;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.camunda.bpm.extension.mail.config.MailConfiguration;
+import org.camunda.bpm.extension.mail.config.MailConfigurationFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Provides one service per configuration, so that each account (e.g. of a
+ * tenant or a process application) has its own connection pools and limits.
+ * The configurations are compared by identity, i.e. the same instance must
+ * be passed to get the same service.
+ */
 public class MailServiceFactory {
 
-  private static MailService INSTANCE = null;
+  private static final Logger LOGGER = LoggerFactory.getLogger(MailServiceFactory.class);
+
+  private static final ConcurrentMap<ConfigurationKey, MailService> SERVICES = new ConcurrentHashMap<>();
 
   public static MailService getService(MailConfiguration configuration) {
-    if(INSTANCE == null) {
-      INSTANCE = new MailService(configuration);
+    ConfigurationKey key = new ConfigurationKey(configuration);
+
+    // look up first since computeIfAbsent locks the entry even if it is present
+    MailService service = SERVICES.get(key);
+    if (service == null) {
+      service = SERVICES.computeIfAbsent(key, k -> {
+        LOGGER.debug("create mail service for user '{}'", configuration.getUserName());
+
+        return new MailService(configuration);
+      });
+    }
+    return service;
+  }
+
+  /**
+   * Closes the service of the given configuration, e.g. if the tenant is
+   * removed. The next call of {@link #getService(MailConfiguration)} creates a
+   * new service.
+   */
+  public static void closeService(MailConfiguration configuration) throws Exception {
+    MailService service = SERVICES.remove(new ConfigurationKey(configuration));
+    if (service != null) {
+      service.close();
+    }
+  }
+
+  /**
+   * Closes the services of all configurations.
+   */
+  public static void closeServices() {
+    for (ConfigurationKey key : new ArrayList<>(SERVICES.keySet())) {
+      MailService service = SERVICES.remove(key);
+      if (service != null) {
+        try {
+          service.close();
+        } catch (Exception e) {
+          LOGGER.debug("exception while closing the mail service", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Finds the service of the account with the given user name, e.g. to load
+   * the content of a deserialized mail.
+   *
+   * @param account
+   *          the user name, or <code>null</code> for the default configuration
+   * @return the service, or <code>null</code> if no service of the account
+   *         exists and the account is not the one of the default configuration
+   */
+  public static MailService findService(String account) {
+    if (account != null) {
+      for (MailService service : SERVICES.values()) {
+        if (account.equals(service.getConfiguration().getUserName())) {
+          return service;
+        }
+      }
+    }
+
+    MailConfiguration defaultConfiguration = MailConfigurationFactory.getConfiguration();
+    if (account == null || account.equals(defaultConfiguration.getUserName())) {
+      return getService(defaultConfiguration);
+    }
+    return null;
+  }
+
+  public static List<MailService> getServices() {
+    return new ArrayList<>(SERVICES.values());
+  }
+
+  protected static class ConfigurationKey {
+
+    protected final MailConfiguration configuration;
+
+    public ConfigurationKey(MailConfiguration configuration) {
+      this.configuration = configuration;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(configuration);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof ConfigurationKey && ((ConfigurationKey) obj).configuration == configuration;
     }
-    return INSTANCE;
   }
 
 }
@@ -0,0 +1,258 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.mail.FetchProfile;
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.UIDFolder;
+import javax.mail.internet.MimeMessage;
+import javax.mail.search.MessageIDTerm;
+import javax.mail.search.OrTerm;
+import javax.mail.search.SearchTerm;
+
+import org.camunda.bpm.extension.mail.dto.Mail;
+import org.camunda.bpm.extension.mail.trace.MailTracer;
+import org.camunda.bpm.extension.mail.trace.Span;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the messages of a folder which are addressed by mails, UIDs or
+ * Message-IDs.
+ *
+ * <p>
+ * Messages are looked up by UID with one command, as long as the UIDVALIDITY
+ * of the folder is unchanged. Otherwise, they are searched by Message-ID in
+ * chunks, and the found UIDs are cached for the next lookup.
+ */
+public class MessageLookup {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MessageLookup.class);
+
+  protected final int chunkSize;
+  protected final Map<String, Long> uidCache;
+
+  /**
+   * @param chunkSize
+   *          maximum number of Message-IDs per search
+   * @param cacheSize
+   *          maximum number of cached UIDs of Message-IDs, <code>0</code> to
+   *          disable the cache
+   */
+  public MessageLookup(int chunkSize, final int cacheSize) {
+    this.chunkSize = Math.max(1, chunkSize);
+
+    this.uidCache = Collections.synchronizedMap(new LinkedHashMap<String, Long>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+        return size() > cacheSize;
+      }
+    });
+  }
+
+  /**
+   * Resolves the given mails by their UID if they belong to the folder and the
+   * UIDVALIDITY is unchanged, otherwise by their Message-ID.
+   */
+  public Message[] getMessagesByMails(Folder folder, List<Mail> mails) throws MessagingException {
+    long uidValidity = getUidValidity(folder);
+
+    List<Long> uids = new ArrayList<>();
+    List<String> messageIds = new ArrayList<>();
+
+    for (Mail mail : mails) {
+      if (uidValidity >= 0 && mail.getUid() >= 0 && mail.getUidValidity() == uidValidity
+          && folder.getFullName().equals(mail.getFolder())) {
+        uids.add(mail.getUid());
+
+      } else if (mail.getMessageId() != null && !mail.getMessageId().isEmpty()) {
+        messageIds.add(mail.getMessageId());
+      }
+    }
+
+    List<Message> messages = new ArrayList<>();
+    if (!uids.isEmpty()) {
+      Collections.addAll(messages, getMessagesByUids(folder, uidValidity, uids));
+    }
+    if (!messageIds.isEmpty()) {
+      Collections.addAll(messages, getMessagesByIds(folder, messageIds));
+    }
+    return messages.toArray(new Message[messages.size()]);
+  }
+
+  /**
+   * Resolves the messages by their UIDs with one command.
+   *
+   * @param uidValidity
+   *          the UIDVALIDITY of the UIDs, or <code>-1</code> if unknown
+   * @throws MessagingException
+   *           if the folder doesn't support UIDs or its UIDVALIDITY has changed
+   */
+  public Message[] getMessagesByUids(Folder folder, long uidValidity, List<Long> uids) throws MessagingException {
+    if (!(folder instanceof UIDFolder)) {
+      throw new MessagingException("folder '" + folder.getFullName() + "' doesn't support UIDs");
+    }
+    UIDFolder uidFolder = (UIDFolder) folder;
+
+    if (uidValidity >= 0 && uidValidity != uidFolder.getUIDValidity()) {
+      throw new MessagingException("the UIDs are invalid because the UIDVALIDITY of folder '" + folder.getFullName() + "' has changed");
+    }
+
+    long[] uidArray = toUidArray(uids);
+    Message[] messages = getMessagesByUid(uidFolder, uidArray);
+
+    // the messages of UIDs which don't exist anymore are null
+    List<Message> existingMessages = new ArrayList<>();
+    for (Message message : messages) {
+      if (message != null) {
+        existingMessages.add(message);
+      }
+    }
+    return existingMessages.toArray(new Message[existingMessages.size()]);
+  }
+
+  /**
+   * Converts the UIDs, which can be other numbers or strings if they are
+   * passed as process variables (e.g. from a script).
+   */
+  protected long[] toUidArray(List<?> uids) {
+    long[] uidArray = new long[uids.size()];
+    for (int i = 0; i < uidArray.length; i++) {
+      Object uid = uids.get(i);
+      uidArray[i] = uid instanceof Number ? ((Number) uid).longValue() : Long.valueOf(String.valueOf(uid));
+    }
+    return uidArray;
+  }
+
+  protected Message[] getMessagesByUid(UIDFolder folder, long[] uids) throws MessagingException {
+    try (Span span = MailTracer.startSpan("imap.uid-fetch").attribute("uids", uids.length)) {
+      return folder.getMessagesByUID(uids);
+    }
+  }
+
+  /**
+   * Searches the messages by their Message-IDs, using the cached UIDs of
+   * previous searches.
+   */
+  public Message[] getMessagesByIds(Folder folder, List<String> messageIds) throws MessagingException {
+    long uidValidity = getUidValidity(folder);
+
+    List<Message> messages = new ArrayList<>();
+    List<String> uncachedMessageIds = new ArrayList<>();
+
+    if (uidValidity >= 0) {
+      Map<Long, String> cachedUids = new LinkedHashMap<>();
+      for (String messageId : messageIds) {
+        Long uid = uidCache.get(cacheKey(folder, uidValidity, messageId));
+        if (uid != null) {
+          cachedUids.put(uid, messageId);
+        } else {
+          uncachedMessageIds.add(messageId);
+        }
+      }
+
+      if (!cachedUids.isEmpty()) {
+        long[] uids = cachedUids.keySet().stream().mapToLong(Long::longValue).toArray();
+        Message[] cachedMessages = getMessagesByUid((UIDFolder) folder, uids);
+
+        for (int i = 0; i < uids.length; i++) {
+          if (cachedMessages[i] != null) {
+            messages.add(cachedMessages[i]);
+          } else {
+            // expunged meanwhile
+            String messageId = cachedUids.get(uids[i]);
+            uidCache.remove(cacheKey(folder, uidValidity, messageId));
+            uncachedMessageIds.add(messageId);
+          }
+        }
+      }
+    } else {
+      uncachedMessageIds.addAll(messageIds);
+    }
+
+    for (int i = 0; i < uncachedMessageIds.size(); i += chunkSize) {
+      List<String> chunk = uncachedMessageIds.subList(i, Math.min(i + chunkSize, uncachedMessageIds.size()));
+
+      Message[] foundMessages;
+      try (Span span = MailTracer.startSpan("imap.search").attribute("folder", folder.getFullName()).attribute("messageIds", chunk.size())) {
+        foundMessages = folder.search(toSearchTerm(chunk));
+      }
+      Collections.addAll(messages, foundMessages);
+
+      if (uidValidity >= 0) {
+        cacheUids(folder, uidValidity, foundMessages);
+      }
+    }
+
+    LOGGER.debug("found {} mails of {} message ids ({} searched) in folder '{}'", messages.size(), messageIds.size(),
+        uncachedMessageIds.size(), folder.getFullName());
+
+    return messages.toArray(new Message[messages.size()]);
+  }
+
+  protected SearchTerm toSearchTerm(List<String> messageIds) {
+    if (messageIds.size() == 1) {
+      return new MessageIDTerm(messageIds.get(0));
+    }
+
+    MessageIDTerm[] idTerms = messageIds.stream()
+        .map(MessageIDTerm::new)
+        .toArray(MessageIDTerm[]::new);
+
+    return new OrTerm(idTerms);
+  }
+
+  protected void cacheUids(Folder folder, long uidValidity, Message[] messages) throws MessagingException {
+    if (messages.length == 0) {
+      return;
+    }
+    UIDFolder uidFolder = (UIDFolder) folder;
+
+    // fetch the UIDs and Message-IDs of all messages with one command
+    FetchProfile fetchProfile = new FetchProfile();
+    fetchProfile.add(UIDFolder.FetchProfileItem.UID);
+    fetchProfile.add("Message-ID");
+
+    try (Span span = MailTracer.startSpan("imap.fetch").attribute("folder", folder.getFullName()).attribute("messages", messages.length)) {
+      folder.fetch(messages, fetchProfile);
+    }
+
+    for (Message message : messages) {
+      if (message instanceof MimeMessage) {
+        String messageId = ((MimeMessage) message).getMessageID();
+        if (messageId != null) {
+          uidCache.put(cacheKey(folder, uidValidity, messageId), uidFolder.getUID(message));
+        }
+      }
+    }
+  }
+
+  protected String cacheKey(Folder folder, long uidValidity, String messageId) {
+    return folder.getFullName() + "/" + uidValidity + "/" + messageId;
+  }
+
+  protected long getUidValidity(Folder folder) throws MessagingException {
+    return folder instanceof UIDFolder ? ((UIDFolder) folder).getUIDValidity() : -1;
+  }
+
+}
@@ -0,0 +1,169 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.service;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.MessagingException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+
+/**
+ * Limits the rate of the sent messages of an account by a token bucket.
+ *
+ * <p>
+ * If the mail server rejects a message temporarily (e.g. with 421 or 451
+ * because the client sends too fast) then the rate is halved. With each sent
+ * message, the rate grows again by a twentieth of the maximum rate, until it
+ * reaches the maximum rate or the server rejects the next message. So the
+ * messages are sent at the highest rate which the server accepts.
+ */
+public class SendRateLimiter {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SendRateLimiter.class);
+
+  protected static final double DECREASE_FACTOR = 0.5;
+  protected static final double INCREASE_FACTOR = 0.05;
+  protected static final double MIN_RATE_FACTOR = 0.01;
+
+  protected final double maxRate;
+  protected final double minRate;
+  protected final int burst;
+
+  protected double rate;
+  protected double tokens;
+  protected long lastRefill = System.nanoTime();
+
+  /**
+   * @param maxRate
+   *          maximum number of messages per second, <code>0</code> for an
+   *          unlimited rate
+   * @param burst
+   *          maximum number of messages which are sent at once if the rate
+   *          limit was not reached before
+   */
+  public SendRateLimiter(double maxRate, int burst) {
+    this.maxRate = maxRate;
+    this.minRate = maxRate * MIN_RATE_FACTOR;
+    this.burst = Math.max(1, burst);
+    this.rate = maxRate;
+    this.tokens = this.burst;
+  }
+
+  /**
+   * Waits until the next message can be sent.
+   */
+  public void acquire() throws InterruptedException {
+    long waitTime = reserve();
+    if (waitTime > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitTime);
+    }
+  }
+
+  /**
+   * Takes a token from the bucket. The tokens can be negative, so the waiting
+   * senders are served in order.
+   *
+   * @return the nanoseconds to wait until the token is available
+   */
+  protected synchronized long reserve() {
+    if (!isLimited()) {
+      return 0;
+    }
+
+    refill();
+    tokens -= 1;
+
+    return tokens >= 0 ? 0 : (long) (-tokens / rate * TimeUnit.SECONDS.toNanos(1));
+  }
+
+  protected void refill() {
+    long now = System.nanoTime();
+    tokens = Math.min(burst, tokens + (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+    lastRefill = now;
+  }
+
+  /**
+   * Increases the rate after a message is accepted by the server.
+   */
+  public synchronized void onSuccess() {
+    if (isLimited() && rate < maxRate) {
+      refill();
+      rate = Math.min(maxRate, rate + maxRate * INCREASE_FACTOR);
+    }
+  }
+
+  /**
+   * Decreases the rate after a message is rejected temporarily by the server.
+   */
+  public synchronized void onRejection() {
+    if (isLimited()) {
+      refill();
+      rate = Math.max(minRate, rate * DECREASE_FACTOR);
+      // don't send the remaining burst at once
+      tokens = Math.min(tokens, 0);
+
+      LOGGER.debug("decrease send rate to {} messages per second", rate);
+    }
+  }
+
+  public boolean isLimited() {
+    return maxRate > 0;
+  }
+
+  /**
+   * @return the current rate in messages per second, or <code>0</code> if
+   *         the rate is not limited
+   */
+  public synchronized double getRate() {
+    return isLimited() ? rate : 0;
+  }
+
+  /**
+   * @return <code>true</code> if the exception is caused by a temporary
+   *         rejection of the server, i.e. the message can be sent again
+   *         later
+   */
+  public static boolean isTransientRejection(MessagingException e) {
+    int replyCode = getReplyCode(e);
+    return replyCode == 421 || replyCode == 451;
+  }
+
+  /**
+   * @return the SMTP reply code of the exception or one of its nested
+   *         exceptions, or <code>-1</code> if it has none
+   */
+  public static int getReplyCode(MessagingException e) {
+    Exception exception = e;
+    while (exception != null) {
+      if (exception instanceof SMTPSendFailedException) {
+        return ((SMTPSendFailedException) exception).getReturnCode();
+      }
+      if (exception instanceof SMTPAddressFailedException) {
+        return ((SMTPAddressFailedException) exception).getReturnCode();
+      }
+      exception = exception instanceof MessagingException ? ((MessagingException) exception).getNextException() : null;
+    }
+    return -1;
+  }
+
+  @Override
+  public String toString() {
+    return "SendRateLimiter [maxRate=" + maxRate + ", burst=" + burst + ", rate=" + getRate() + "]";
+  }
+
+}
@@ -0,0 +1,67 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.mail.Folder;
+import javax.mail.MessagingException;
+import javax.mail.Store;
+
+/**
+ * A store which is borrowed from the pool by a single thread, together with
+ * the folders which are opened by this thread.
+ */
+public class StoreLease {
+
+  protected final Store store;
+  protected final ConnectionPool<Store> pool;
+  protected final Map<String, Folder> folders = new HashMap<>();
+
+  public StoreLease(Store store, ConnectionPool<Store> pool) {
+    this.store = store;
+    this.pool = pool;
+  }
+
+  public Store getStore() {
+    return store;
+  }
+
+  public ConnectionPool<Store> getPool() {
+    return pool;
+  }
+
+  public Folder getFolder(String folderName) throws MessagingException {
+    Folder folder = folders.get(folderName);
+    if (folder == null) {
+      folder = store.getFolder(folderName);
+      folders.put(folderName, folder);
+    }
+    return folder;
+  }
+
+  public Folder removeFolder(String folderName) {
+    return folders.remove(folderName);
+  }
+
+  public Iterable<Folder> getFolders() {
+    return folders.values();
+  }
+
+  @Override
+  public String toString() {
+    return "StoreLease [store=" + store + ", folders=" + folders.keySet() + "]";
+  }
+
+}
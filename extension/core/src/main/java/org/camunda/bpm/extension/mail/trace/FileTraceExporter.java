@@ -0,0 +1,127 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.trace;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends each trace as one line of JSON to a file, e.g.
+ *
+ * <pre>
+ * {"name":"mail-poll","start":1500000000000,"offset":0,"duration":5230,"attributes":{},"children":[
+ *   {"name":"imap.search","start":1500000000001,"offset":812,"duration":1570,"attributes":{"folder":"INBOX","messages":3},"children":[]}, ...]}
+ * </pre>
+ *
+ * The offset and the duration are given in microseconds.
+ */
+public class FileTraceExporter implements TraceExporter {
+
+  protected final Path file;
+
+  public FileTraceExporter(Path file) {
+    this.file = file;
+  }
+
+  @Override
+  public synchronized void export(Span trace) {
+    StringBuilder json = new StringBuilder();
+    appendSpan(json, trace);
+    json.append('\n');
+
+    try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+      writer.write(json.toString());
+
+    } catch (IOException e) {
+      throw new UncheckedIOException("failed to write trace to file '" + file + "'", e);
+    }
+  }
+
+  protected void appendSpan(StringBuilder json, Span span) {
+    json.append("{\"name\":");
+    appendValue(json, span.getName());
+    json.append(",\"start\":").append(span.getStartTime());
+    json.append(",\"offset\":").append(TimeUnit.NANOSECONDS.toMicros(span.getOffsetNanos()));
+    json.append(",\"duration\":").append(TimeUnit.NANOSECONDS.toMicros(span.getDurationNanos()));
+
+    json.append(",\"attributes\":{");
+    boolean first = true;
+    for (Map.Entry<String, Object> attribute : span.getAttributes().entrySet()) {
+      if (!first) {
+        json.append(',');
+      }
+      appendValue(json, attribute.getKey());
+      json.append(':');
+      appendValue(json, attribute.getValue());
+      first = false;
+    }
+
+    json.append("},\"children\":[");
+    List<Span> children = span.getChildren();
+    for (int i = 0; i < children.size(); i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      appendSpan(json, children.get(i));
+    }
+    json.append("]}");
+  }
+
+  protected void appendValue(StringBuilder json, Object value) {
+    if (value == null || value instanceof Number || value instanceof Boolean) {
+      json.append(value);
+      return;
+    }
+
+    json.append('"');
+    for (char c : value.toString().toCharArray()) {
+      switch (c) {
+      case '"':
+        json.append("\\\"");
+        break;
+      case '\\':
+        json.append("\\\\");
+        break;
+      case '\n':
+        json.append("\\n");
+        break;
+      case '\r':
+        json.append("\\r");
+        break;
+      case '\t':
+        json.append("\\t");
+        break;
+      default:
+        if (c < 0x20) {
+          json.append(String.format("\\u%04x", (int) c));
+        } else {
+          json.append(c);
+        }
+      }
+    }
+    json.append('"');
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+}
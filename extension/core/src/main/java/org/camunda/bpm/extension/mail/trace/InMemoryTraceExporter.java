@@ -0,0 +1,63 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.trace;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Keeps the last traces in memory, e.g. for tests or to show them in an
+ * admin endpoint.
+ */
+public class InMemoryTraceExporter implements TraceExporter {
+
+  public static final int DEFAULT_MAX_TRACES = 100;
+
+  protected final int maxTraces;
+  protected final Deque<Span> traces = new ArrayDeque<>();
+
+  public InMemoryTraceExporter() {
+    this(DEFAULT_MAX_TRACES);
+  }
+
+  /**
+   * @param maxTraces
+   *          number of traces which are kept, the oldest trace is dropped
+   *          if the limit is reached
+   */
+  public InMemoryTraceExporter(int maxTraces) {
+    this.maxTraces = maxTraces;
+  }
+
+  @Override
+  public synchronized void export(Span trace) {
+    if (traces.size() >= maxTraces) {
+      traces.removeFirst();
+    }
+    traces.addLast(trace);
+  }
+
+  /**
+   * @return the kept traces, the oldest first
+   */
+  public synchronized List<Span> getTraces() {
+    return new ArrayList<>(traces);
+  }
+
+  public synchronized void clear() {
+    traces.clear();
+  }
+
+}
@@ -0,0 +1,153 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.trace;
+
+import java.util.List;
+
+import org.camunda.connect.spi.ConnectorRequestInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the active span of the current thread.
+ *
+ * <p>
+ * A trace is only started if a {@link TracingInterceptor} is registered on
+ * the connector. Otherwise, {@link #startSpan(String)} returns
+ * {@link Span#NOOP}, so the instrumented operations don't record anything.
+ */
+public final class MailTracer {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MailTracer.class);
+
+  private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+
+  private MailTracer() {
+  }
+
+  /**
+   * Starts a trace if one of the interceptors is a {@link TracingInterceptor},
+   * or a span if a trace is already active.
+   */
+  public static Span startTrace(String name, List<ConnectorRequestInterceptor> interceptors) {
+    for (ConnectorRequestInterceptor interceptor : interceptors) {
+      if (interceptor instanceof TracingInterceptor) {
+        return startTrace(name, ((TracingInterceptor) interceptor).getExporter());
+      }
+    }
+    return startSpan(name);
+  }
+
+  /**
+   * Starts a trace which is passed to the given exporter when it is ended, or
+   * a span if a trace is already active.
+   */
+  public static Span startTrace(String name, TraceExporter exporter) {
+    Span current = CURRENT.get();
+    if (current != null) {
+      return startSpan(name);
+    }
+
+    Span trace = new Span(name, null, exporter);
+    CURRENT.set(trace);
+    return trace;
+  }
+
+  /**
+   * Starts a span as child of the active span.
+   *
+   * @return the span, or {@link Span#NOOP} if no trace is active
+   */
+  public static Span startSpan(String name) {
+    Span current = CURRENT.get();
+    if (current == null) {
+      return Span.NOOP;
+    }
+
+    Span span = current.startChild(name);
+    CURRENT.set(span);
+    return span;
+  }
+
+  public static boolean isTracing() {
+    return CURRENT.get() != null;
+  }
+
+  /**
+   * @return the active span, or {@link Span#NOOP} if no trace is active
+   */
+  public static Span currentSpan() {
+    Span current = CURRENT.get();
+    return current != null ? current : Span.NOOP;
+  }
+
+  /**
+   * Continues the given span on the current thread, e.g. on a worker thread
+   * or when a lazy response is collected. The span is not ended by
+   * {@link #restore(Span)}.
+   *
+   * @return the span which was active before, to restore it afterwards
+   */
+  public static Span resume(Span span) {
+    Span previous = currentSpan();
+    set(span);
+    return previous;
+  }
+
+  /**
+   * Activates the given span again, which is returned by
+   * {@link #resume(Span)}.
+   */
+  public static void restore(Span previous) {
+    set(previous);
+  }
+
+  /**
+   * Deactivates the given span without ending it, so it can be resumed later.
+   */
+  public static void suspend(Span span) {
+    if (span.isRecording() && CURRENT.get() == span) {
+      set(span.getParent());
+    }
+  }
+
+  static void end(Span span) {
+    if (!span.isRecording() || span.isEnded()) {
+      return;
+    }
+
+    span.durationNanos = System.nanoTime() - span.startNanos;
+
+    if (CURRENT.get() == span) {
+      set(span.getParent());
+    }
+
+    if (span.getParent() == null && span.exporter != null) {
+      try {
+        span.exporter.export(span);
+
+      } catch (RuntimeException e) {
+        LOGGER.warn("failed to export trace '{}'", span.getName(), e);
+      }
+    }
+  }
+
+  private static void set(Span span) {
+    if (span == null || !span.isRecording()) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(span);
+    }
+  }
+
+}
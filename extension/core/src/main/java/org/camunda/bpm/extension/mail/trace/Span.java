@@ -0,0 +1,158 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.trace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A timed operation of a trace, e.g. an IMAP command or the transformation of
+ * the polled mails. A span is ended by {@link #close()}, so it can be used in
+ * a try-with-resources statement.
+ *
+ * <p>
+ * The spans which are started while a span is active on the same thread
+ * become its children. The root span of a trace is passed to the exporter
+ * when it is ended.
+ */
+public class Span implements AutoCloseable {
+
+  /** is returned if no trace is active, doesn't record anything */
+  public static final Span NOOP = new Span("noop", null, null);
+
+  protected final String name;
+  protected final Span parent;
+  protected final TraceExporter exporter;
+
+  protected final long startTime = System.currentTimeMillis();
+  protected final long startNanos = System.nanoTime();
+  protected volatile long durationNanos = -1;
+
+  protected final Map<String, Object> attributes = new LinkedHashMap<>();
+  protected final List<Span> children = new ArrayList<>();
+
+  protected Span(String name, Span parent, TraceExporter exporter) {
+    this.name = name;
+    this.parent = parent;
+    this.exporter = exporter;
+  }
+
+  protected Span startChild(String name) {
+    Span child = new Span(name, this, null);
+    synchronized (children) {
+      children.add(child);
+    }
+    return child;
+  }
+
+  /**
+   * Adds an attribute to the span, e.g. the name of the folder.
+   */
+  public Span attribute(String key, Object value) {
+    if (isRecording()) {
+      synchronized (attributes) {
+        attributes.put(key, value);
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Ends the span and exports the trace if it is the root span.
+   */
+  @Override
+  public void close() {
+    MailTracer.end(this);
+  }
+
+  public boolean isRecording() {
+    return this != NOOP;
+  }
+
+  public boolean isEnded() {
+    return durationNanos >= 0;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Span getParent() {
+    return parent;
+  }
+
+  /**
+   * @return the time in milliseconds since the epoch when the span is started
+   */
+  public long getStartTime() {
+    return startTime;
+  }
+
+  /**
+   * @return the nanoseconds between the start of the root span and the start
+   *         of this span
+   */
+  public long getOffsetNanos() {
+    Span root = this;
+    while (root.parent != null) {
+      root = root.parent;
+    }
+    return startNanos - root.startNanos;
+  }
+
+  /**
+   * @return the duration in nanoseconds, or <code>-1</code> if the span is
+   *         not ended yet
+   */
+  public long getDurationNanos() {
+    return durationNanos;
+  }
+
+  public Map<String, Object> getAttributes() {
+    synchronized (attributes) {
+      return new LinkedHashMap<>(attributes);
+    }
+  }
+
+  public List<Span> getChildren() {
+    synchronized (children) {
+      return Collections.unmodifiableList(new ArrayList<>(children));
+    }
+  }
+
+  /**
+   * @return the spans of the trace with the given name, in the order they are
+   *         started
+   */
+  public List<Span> find(String name) {
+    List<Span> spans = new ArrayList<>();
+    if (this.name.equals(name)) {
+      spans.add(this);
+    }
+    for (Span child : getChildren()) {
+      spans.addAll(child.find(name));
+    }
+    return spans;
+  }
+
+  @Override
+  public String toString() {
+    return "Span [name=" + name + ", duration=" + TimeUnit.NANOSECONDS.toMicros(durationNanos) + "µs, attributes=" + getAttributes()
+        + ", children=" + getChildren().size() + "]";
+  }
+
+}
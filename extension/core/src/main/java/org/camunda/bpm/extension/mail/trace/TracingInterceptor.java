@@ -0,0 +1,52 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.trace;
+
+import org.camunda.connect.spi.ConnectorInvocation;
+import org.camunda.connect.spi.ConnectorRequestInterceptor;
+
+/**
+ * Traces the requests of a connector, e.g.
+ *
+ * <pre>
+ * MailConnectors.pollMails().addRequestInterceptor(new TracingInterceptor(new FileTraceExporter(path)));
+ * </pre>
+ *
+ * <p>
+ * The mail connectors start the trace when they are executed, so it includes
+ * the operations before and after the invocation (e.g. opening the folder or
+ * transforming the polled mails). The interceptor itself records the span
+ * 'invocation'. On other connectors, it starts the trace.
+ */
+public class TracingInterceptor implements ConnectorRequestInterceptor {
+
+  protected final TraceExporter exporter;
+
+  public TracingInterceptor(TraceExporter exporter) {
+    this.exporter = exporter;
+  }
+
+  @Override
+  public Object handleInvocation(ConnectorInvocation invocation) throws Exception {
+    String name = MailTracer.isTracing() ? "invocation" : invocation.getRequest().getClass().getSimpleName();
+
+    try (Span span = MailTracer.startTrace(name, exporter)) {
+      return invocation.proceed();
+    }
+  }
+
+  public TraceExporter getExporter() {
+    return exporter;
+  }
+
+}
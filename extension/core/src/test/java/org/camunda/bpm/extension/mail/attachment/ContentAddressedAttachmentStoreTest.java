@@ -0,0 +1,101 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.attachment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.stream.Stream;
+
+import javax.mail.internet.MimeBodyPart;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ContentAddressedAttachmentStoreTest {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path contentPath;
+  private ContentAddressedAttachmentStore attachmentStore;
+
+  @Before
+  public void init() throws Exception {
+    contentPath = temporaryFolder.newFolder("content").toPath();
+    attachmentStore = new ContentAddressedAttachmentStore(contentPath, 0, 16, Duration.ZERO);
+  }
+
+  @Test
+  public void storeIdenticalContentOnce() throws Exception {
+    Path file1 = attachmentStore.store(temporaryFolder.newFolder("mail-1").toPath(), "terms.txt", createPart("terms and conditions"));
+    Path file2 = attachmentStore.store(temporaryFolder.newFolder("mail-2").toPath(), "terms.txt", createPart("terms and conditions"));
+
+    assertThat(new String(Files.readAllBytes(file1))).isEqualTo("terms and conditions");
+    assertThat(new String(Files.readAllBytes(file2))).isEqualTo("terms and conditions");
+
+    assertThat(countContent()).isEqualTo(1);
+  }
+
+  @Test
+  public void storeDifferentContentSeparately() throws Exception {
+    Path directory = temporaryFolder.newFolder("mail").toPath();
+
+    attachmentStore.store(directory, "a.txt", createPart("content a"));
+    attachmentStore.store(directory, "b.txt", createPart("content b"));
+
+    assertThat(countContent()).isEqualTo(2);
+  }
+
+  @Test
+  public void removeUnreferencedContent() throws Exception {
+    Path referencedFile = attachmentStore.store(temporaryFolder.newFolder("mail-1").toPath(), "a.txt", createPart("content a"));
+    Path removedFile = attachmentStore.store(temporaryFolder.newFolder("mail-2").toPath(), "b.txt", createPart("content b"));
+
+    Files.delete(removedFile);
+    // wait until the content is expired
+    Thread.sleep(10);
+
+    attachmentStore.cleanup();
+
+    assertThat(countContent()).isEqualTo(1);
+    assertThat(new String(Files.readAllBytes(referencedFile))).isEqualTo("content a");
+  }
+
+  @Test
+  public void skipContentLargerThanMaxSize() throws Exception {
+    attachmentStore = new ContentAddressedAttachmentStore(contentPath, 4, 16, Duration.ZERO);
+
+    Path file = attachmentStore.store(temporaryFolder.newFolder("mail").toPath(), "a.txt", createPart("content a"));
+
+    assertThat(file).isNull();
+    assertThat(countContent()).isEqualTo(0);
+  }
+
+  private MimeBodyPart createPart(String content) throws Exception {
+    MimeBodyPart part = new MimeBodyPart();
+    part.setText(content);
+    return part;
+  }
+
+  private long countContent() throws Exception {
+    try (Stream<Path> files = Files.walk(contentPath)) {
+      return files.filter(Files::isRegularFile).count();
+    }
+  }
+
+}
@@ -0,0 +1,60 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.attachment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Path;
+
+import javax.mail.Part;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileAttachmentStoreTest {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void deletePartialFileIfDownloadFails() throws Exception {
+    // e.g. the connection is closed while the attachment is transferred
+    InputStream failingStream = new InputStream() {
+      @Override
+      public int read() throws IOException {
+        throw new IOException("connection closed");
+      }
+    };
+    Part part = mock(Part.class);
+    when(part.getInputStream()).thenReturn(new SequenceInputStream(new ByteArrayInputStream("partial".getBytes()), failingStream));
+
+    Path directory = temporaryFolder.newFolder("mail").toPath();
+    FileAttachmentStore attachmentStore = new FileAttachmentStore(0, 4);
+
+    try {
+      attachmentStore.store(directory, "attachment.txt", part);
+    } catch (IOException e) {
+      // expected
+    }
+
+    assertThat(directory.resolve("attachment.txt").toFile()).doesNotExist();
+  }
+
+}
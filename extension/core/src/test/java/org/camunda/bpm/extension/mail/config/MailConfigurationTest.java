@@ -0,0 +1,112 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class MailConfigurationTest {
+
+  @Test
+  public void defaultValuesOfCustomConfiguration() throws Exception {
+    MailConfiguration customConfiguration = new CustomMailConfiguration();
+
+    // without any properties, so that the defaults are used
+    MailConfiguration propertiesConfiguration = new PropertiesMailConfiguration() {
+      @Override
+      protected Properties loadProperties() {
+        return new Properties();
+      }
+    };
+
+    for (Method method : MailConfiguration.class.getMethods()) {
+      if (method.isDefault()) {
+        assertThat(method.invoke(customConfiguration)).as(method.getName()).isEqualTo(method.invoke(propertiesConfiguration));
+      }
+    }
+  }
+
+  private static class CustomMailConfiguration implements MailConfiguration {
+
+    @Override
+    public String getUserName() {
+      return "test@camunda.com";
+    }
+
+    @Override
+    public String getPassword() {
+      return "bpmn";
+    }
+
+    @Override
+    public Properties getProperties() {
+      return new Properties();
+    }
+
+    @Override
+    public String getPollFolder() {
+      return "INBOX";
+    }
+
+    @Override
+    public String getSender() {
+      return null;
+    }
+
+    @Override
+    public String getSenderAlias() {
+      return null;
+    }
+
+    @Override
+    public boolean downloadAttachments() {
+      return false;
+    }
+
+    @Override
+    public String getAttachmentPath() {
+      return null;
+    }
+
+    @Override
+    public Duration getNotificationLookupTime() {
+      return Duration.ofSeconds(60);
+    }
+
+    @Override
+    public String getCopyMode() {
+      return null;
+    }
+
+    @Override
+    public String getCopySrcFolder() {
+      return null;
+    }
+
+    @Override
+    public String getCopyDestFolder() {
+      return null;
+    }
+
+    @Override
+    public String getSuppportUid() {
+      return null;
+    }
+  }
+
+}
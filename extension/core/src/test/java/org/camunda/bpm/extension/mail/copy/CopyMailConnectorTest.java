@@ -105,6 +105,24 @@ public class CopyMailConnectorTest {
     assertThat(mails[0].isSet(Flag.DELETED)).isFalse();
   }
 
+  @Test
+  public void copyMailByUid() throws MessagingException {
+
+    MailConnectors.copyMails()
+      .createRequest()
+      .srcFolder(SRC_FOLDER)
+      .destFolder(DEST_FOLDER)
+      .uids(1L, 2L)
+      .execute();
+
+    try {
+      Thread.sleep(1000L);
+    } catch (InterruptedException e) {}
+
+    Message[] copiedMails = destFolder.getMessages();
+    assertThat(copiedMails).hasSize(2);
+  }
+
   @Test
   public void moveMailByNumber() throws MessagingException {
 	  
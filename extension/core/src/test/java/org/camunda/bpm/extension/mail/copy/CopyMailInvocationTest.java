@@ -0,0 +1,166 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.copy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import javax.mail.Flags;
+import javax.mail.Message;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+import org.camunda.bpm.extension.mail.MailTestUtil;
+import org.camunda.bpm.extension.mail.config.MailConfiguration;
+import org.camunda.bpm.extension.mail.dto.Mail;
+import org.camunda.bpm.extension.mail.service.MailService;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.mail.iap.Argument;
+import com.sun.mail.iap.Response;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPFolder.ProtocolCommand;
+import com.sun.mail.imap.IMAPStore;
+import com.sun.mail.imap.protocol.IMAPProtocol;
+import com.sun.mail.imap.protocol.IMAPResponse;
+
+public class CopyMailInvocationTest {
+
+  private IMAPFolder folder;
+  private IMAPStore store;
+  private IMAPProtocol protocol;
+  private MailService mailService;
+  private MailConfiguration configuration;
+
+  private List<Message> messages;
+
+  @Before
+  public void init() throws Exception {
+    folder = mock(IMAPFolder.class);
+    store = mock(IMAPStore.class);
+    protocol = mock(IMAPProtocol.class);
+
+    when(folder.getStore()).thenReturn(store);
+    when(folder.getFullName()).thenReturn("INBOX");
+    when(folder.getUIDValidity()).thenReturn(1L);
+    when(folder.doCommand(any(ProtocolCommand.class)))
+      .thenAnswer(invocation -> ((ProtocolCommand) invocation.getArguments()[0]).doCommand(protocol));
+
+    configuration = mock(MailConfiguration.class);
+    when(configuration.lazyContent()).thenReturn(true);
+
+    mailService = mock(MailService.class);
+    when(mailService.getConfiguration()).thenReturn(configuration);
+    when(mailService.ensureOpenFolder("INBOX")).thenReturn(folder);
+
+    messages = Arrays.asList(message(1, "mail 1"), message(2, "mail 2"), message(5, "mail 5"));
+  }
+
+  @Test
+  public void moveNativelyWithCopyUids() throws Exception {
+    when(store.hasCapability("MOVE")).thenReturn(true);
+    when(store.hasCapability("UIDPLUS")).thenReturn(true);
+
+    when(protocol.command(eq("UID MOVE"), any(Argument.class))).thenReturn(new Response[] {
+        new IMAPResponse("* OK [COPYUID 7 1:2,5 10:12]"),
+        new IMAPResponse("* 1 EXPUNGE"),
+        new IMAPResponse("A1 OK done") });
+
+    List<Mail> mails = invoke("move", 0);
+
+    assertThat(mails)
+      .extracting("subject", "folder", "uid", "uidValidity")
+      .containsExactly(
+          tuple("mail 1", "DONE", 10L, 7L),
+          tuple("mail 2", "DONE", 11L, 7L),
+          tuple("mail 5", "DONE", 12L, 7L));
+
+    verify(protocol, times(1)).command(eq("UID MOVE"), any(Argument.class));
+    verify(folder, never()).setFlags(any(Message[].class), any(Flags.class), eq(true));
+    verify(folder, never()).getMessagesByUID(any(long[].class));
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void createResponseOfMessages() throws Exception {
+    MimeMessage message = MailTestUtil.createMimeMessage(Session.getInstance(new Properties()));
+    message.setText("body");
+
+    CopyMailResponse response = new CopyMailResponse(Collections.singletonList(message), mailService);
+
+    assertThat(response.getMails()).extracting("subject", "text").containsExactly(tuple("subject", "body"));
+  }
+
+  @Test
+  public void copyInBatches() throws Exception {
+    when(store.hasCapability("UIDPLUS")).thenReturn(true);
+
+    when(protocol.command(eq("UID COPY"), any(Argument.class)))
+      .thenReturn(new Response[] { new IMAPResponse("A1 OK [COPYUID 7 1:2 20:21] done") })
+      .thenReturn(new Response[] { new IMAPResponse("A2 OK [COPYUID 7 5 22] done") });
+
+    List<Mail> mails = invoke("copy", 2);
+
+    assertThat(mails).extracting("uid").containsExactly(20L, 21L, 22L);
+
+    verify(protocol, times(2)).command(eq("UID COPY"), any(Argument.class));
+    verify(folder, never()).getMessagesByUID(anyLong(), anyLong());
+  }
+
+  @Test
+  public void copyAndDeleteIfMoveIsNotSupported() throws Exception {
+    when(protocol.command(eq("UID COPY"), any(Argument.class))).thenReturn(new Response[] {
+        new IMAPResponse("A1 OK done") });
+
+    List<Mail> mails = invoke("move", 0);
+
+    assertThat(mails).isEmpty();
+
+    verify(protocol, times(1)).command(eq("UID COPY"), any(Argument.class));
+    verify(folder).setFlags(any(Message[].class), any(Flags.class), eq(true));
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<Mail> invoke(String mode, int batchSize) throws Exception {
+    CopyMailRequest request = new CopyMailRequest(null, configuration)
+        .srcFolder("INBOX")
+        .destFolder("DONE")
+        .mode(mode);
+
+    CopyMailInvocation invocation = new CopyMailInvocation(messages, request, Collections.emptyList(), mailService, batchSize);
+    return (List<Mail>) invocation.invokeTarget();
+  }
+
+  private Message message(long uid, String subject) throws Exception {
+    MimeMessage message = mock(MimeMessage.class);
+    when(message.getSubject()).thenReturn(subject);
+    when(message.getFolder()).thenReturn(folder);
+    when(folder.getUID(message)).thenReturn(uid);
+    return message;
+  }
+
+}
@@ -13,14 +13,28 @@
 package org.camunda.bpm.extension.mail.delete;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.mail.Flags;
 
 import javax.mail.Flags.Flag;
+import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.internet.MimeMessage;
 
 import org.camunda.bpm.extension.mail.MailConnectors;
 import org.camunda.bpm.extension.mail.config.MailConfiguration;
+import org.camunda.bpm.extension.mail.delete.DeleteMailRequest.ExpungePolicy;
 import org.camunda.bpm.extension.mail.dto.Mail;
 import org.junit.Before;
 import org.junit.Rule;
@@ -30,6 +44,8 @@ import org.junit.rules.ExpectedException;
 import com.icegreen.greenmail.junit.GreenMailRule;
 import com.icegreen.greenmail.util.GreenMailUtil;
 import com.icegreen.greenmail.util.ServerSetupTest;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
 
 public class DeleteMailConnectorTest {
 
@@ -103,6 +119,101 @@ public class DeleteMailConnectorTest {
     assertThat(mails[1].isSet(Flag.DELETED)).isFalse();
   }
 
+  @Test
+  public void deleteMailByUid() throws MessagingException {
+
+    MailConnectors.deleteMails()
+      .createRequest()
+        .folder("INBOX")
+        .uids(2L)
+      .execute();
+
+    MimeMessage[] mails = greenMail.getReceivedMessages();
+    assertThat(mails).hasSize(2);
+    assertThat(mails[0].isSet(Flag.DELETED)).isFalse();
+    assertThat(mails[1].isSet(Flag.DELETED)).isTrue();
+  }
+
+  @Test
+  public void deleteMailByUidOfGivenMail() throws MessagingException {
+
+    Mail mail = MailConnectors.pollMails()
+      .createRequest()
+        .folder("INBOX")
+        .downloadAttachments(false)
+      .execute()
+      .getMails()
+      .get(1);
+
+    assertThat(mail.getUid()).isEqualTo(2);
+    assertThat(mail.getUidValidity()).isPositive();
+
+    MailConnectors.deleteMails()
+      .createRequest()
+        .folder("INBOX")
+        .uids(mail.getUid())
+        .uidValidity(mail.getUidValidity())
+      .execute();
+
+    MimeMessage[] mails = greenMail.getReceivedMessages();
+    assertThat(mails[0].isSet(Flag.DELETED)).isFalse();
+    assertThat(mails[1].isSet(Flag.DELETED)).isTrue();
+  }
+
+  @Test
+  public void deleteMultipleMails() throws MessagingException {
+
+    MailConnectors.deleteMails()
+      .createRequest()
+        .folder("INBOX")
+        .messageNumbers(1, 2)
+      .execute();
+
+    MimeMessage[] mails = greenMail.getReceivedMessages();
+    assertThat(mails).hasSize(2);
+    assertThat(mails[0].isSet(Flag.DELETED)).isTrue();
+    assertThat(mails[1].isSet(Flag.DELETED)).isTrue();
+  }
+
+  @Test
+  public void expungeFolder() throws MessagingException {
+
+    MailConnectors.deleteMails()
+      .createRequest()
+        .folder("INBOX")
+        .messageNumbers(1)
+        .expunge(ExpungePolicy.FOLDER)
+      .execute();
+
+    MimeMessage[] mails = greenMail.getReceivedMessages();
+    assertThat(mails).hasSize(1);
+    assertThat(mails[0].getSubject()).isEqualTo("mail-2");
+  }
+
+  @Test
+  public void deleteInBatchesAndExpungeByUid() throws Exception {
+    IMAPStore store = mock(IMAPStore.class);
+    when(store.hasCapability("UIDPLUS")).thenReturn(true);
+
+    IMAPFolder folder = mock(IMAPFolder.class);
+    when(folder.getStore()).thenReturn(store);
+
+    List<Message> messages = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      Message message = mock(Message.class);
+      when(message.getFolder()).thenReturn(folder);
+      messages.add(message);
+    }
+
+    DeleteMailRequest request = MailConnectors.deleteMails().createRequest();
+    new DeleteMailInvocation(messages, request, Collections.emptyList(), null, ExpungePolicy.UID, 2).invokeTarget();
+
+    verify(folder, times(3)).setFlags(any(Message[].class), eq(new Flags(Flag.DELETED)), eq(true));
+    verify(folder).expunge(new Message[] { messages.get(0), messages.get(1) });
+    verify(folder).expunge(new Message[] { messages.get(4) });
+    verify(folder, never()).expunge();
+  }
+
   @Test
   public void folderFromConfiguration() throws MessagingException {
 
@@ -143,4 +254,13 @@ public class DeleteMailConnectorTest {
       .execute();
   }
 
+  @Test
+  public void requestWithoutExpungePolicy() {
+    // e.g. a custom configuration which doesn't set the policy
+    DeleteMailRequest request = new DeleteMailRequest(new DeleteMailConnector(), mock(MailConfiguration.class));
+
+    assertThat(request.getExpungePolicy()).isEqualTo(ExpungePolicy.NONE);
+    assertThat(request.toString()).contains("expunge=null");
+  }
+
 }
@@ -0,0 +1,65 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.dto;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+import org.camunda.bpm.extension.mail.MailTestUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MailTest {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final Session session = Session.getInstance(new Properties());
+
+  @Test
+  public void streamAttachment() throws Exception {
+    File file = new File(getClass().getResource("/attachment.txt").toURI());
+    MimeMessage message = MailTestUtil.createMimeMessageWithAttachment(session, file);
+
+    Mail mail = Mail.from(message);
+    // use a tiny buffer to write the attachment in multiple chunks
+    mail.downloadAttachments(temporaryFolder.getRoot().getPath(), 0, 4);
+
+    Attachment attachment = mail.getAttachments().get(0);
+    assertThat(attachment.getPath()).isNotNull();
+    assertThat(attachment.getSize()).isEqualTo(file.length());
+    assertThat(Files.readAllBytes(Paths.get(attachment.getPath()))).isEqualTo(Files.readAllBytes(file.toPath()));
+  }
+
+  @Test
+  public void skipAttachmentLargerThanMaxSize() throws Exception {
+    File file = new File(getClass().getResource("/attachment.txt").toURI());
+    MimeMessage message = MailTestUtil.createMimeMessageWithAttachment(session, file);
+
+    Mail mail = Mail.from(message);
+    mail.downloadAttachments(temporaryFolder.getRoot().getPath(), file.length() - 1, 4);
+
+    Attachment attachment = mail.getAttachments().get(0);
+    assertThat(attachment.getPath()).isNull();
+    assertThat(attachment.getSize()).isEqualTo(-1);
+  }
+
+}
@@ -0,0 +1,118 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.camunda.bpm.extension.mail.config.PropertiesMailConfiguration;
+import org.junit.Test;
+
+public class MailMetricsFactoryTest {
+
+  @Test
+  public void createMetricsWithoutMicrometer() throws Exception {
+    ClassLoader classLoader = new WithoutMicrometerClassLoader(getClass().getClassLoader());
+
+    assertThat(getMetricsClassName(classLoader, MailMetricsFactory.TYPE_NONE)).isEqualTo(NoopMailMetrics.class.getName());
+    assertThat(getMetricsClassName(classLoader, MailMetricsFactory.TYPE_JMX)).isEqualTo(JmxMailMetrics.class.getName());
+    // fall back to no metrics instead of failing
+    assertThat(getMetricsClassName(classLoader, MailMetricsFactory.TYPE_MICROMETER)).isEqualTo(NoopMailMetrics.class.getName());
+  }
+
+  @Test
+  public void createMicrometerMetrics() {
+    PropertiesMailConfiguration configuration = new PropertiesMailConfiguration();
+    configuration.getProperties().setProperty(PropertiesMailConfiguration.PROPERTY_METRICS, MailMetricsFactory.TYPE_MICROMETER);
+
+    MailMetrics metrics = MailMetricsFactory.create(configuration);
+
+    assertThat(metrics).isInstanceOf(MicrometerMailMetrics.class);
+    metrics.close();
+  }
+
+  /**
+   * Creates the metrics by the mail service, like the connectors do.
+   */
+  private String getMetricsClassName(ClassLoader classLoader, String type) throws Exception {
+    Class<?> configurationClass = classLoader.loadClass(PropertiesMailConfiguration.class.getName());
+    Object configuration = configurationClass.newInstance();
+    Properties properties = (Properties) configurationClass.getMethod("getProperties").invoke(configuration);
+    properties.setProperty(PropertiesMailConfiguration.PROPERTY_METRICS, type);
+
+    Class<?> mailServiceClass = classLoader.loadClass("org.camunda.bpm.extension.mail.service.MailService");
+    Class<?> mailConfigurationClass = classLoader.loadClass("org.camunda.bpm.extension.mail.config.MailConfiguration");
+    Object mailService = mailServiceClass.getConstructor(mailConfigurationClass).newInstance(configuration);
+
+    Object metrics = mailServiceClass.getMethod("getMetrics").invoke(mailService);
+    try {
+      return metrics.getClass().getName();
+    } finally {
+      mailServiceClass.getMethod("close").invoke(mailService);
+    }
+  }
+
+  /**
+   * Loads the classes of the extension itself and hides the classes of
+   * Micrometer, as if it is not on the classpath.
+   */
+  private static class WithoutMicrometerClassLoader extends ClassLoader {
+
+    public WithoutMicrometerClassLoader(ClassLoader parent) {
+      super(parent);
+    }
+
+    @Override
+    protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (name.startsWith("io.micrometer.")) {
+        throw new ClassNotFoundException(name);
+      }
+      if (!name.startsWith("org.camunda.bpm.extension.mail.")) {
+        return super.loadClass(name, resolve);
+      }
+
+      Class<?> loadedClass = findLoadedClass(name);
+      if (loadedClass == null) {
+        byte[] bytes = readClass(name);
+        loadedClass = defineClass(name, bytes, 0, bytes.length);
+      }
+      if (resolve) {
+        resolveClass(loadedClass);
+      }
+      return loadedClass;
+    }
+
+    private byte[] readClass(String name) throws ClassNotFoundException {
+      try (InputStream inputStream = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+        if (inputStream == null) {
+          throw new ClassNotFoundException(name);
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+          outputStream.write(buffer, 0, read);
+        }
+        return outputStream.toByteArray();
+
+      } catch (IOException e) {
+        throw new ClassNotFoundException(name, e);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,169 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+
+import org.camunda.bpm.extension.mail.MailConnectorException;
+import org.camunda.bpm.extension.mail.MailConnectors;
+import org.camunda.bpm.extension.mail.config.MailConfigurationFactory;
+import org.camunda.bpm.extension.mail.poll.PollMailConnector;
+import org.camunda.bpm.extension.mail.poll.PollMailResponse;
+import org.camunda.bpm.extension.mail.send.SendMailConnector;
+import org.camunda.bpm.extension.mail.service.MailService;
+import org.camunda.bpm.extension.mail.service.MailServiceFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.icegreen.greenmail.junit.GreenMailRule;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class MailMetricsTest {
+
+  @Rule
+  public final GreenMailRule greenMail = new GreenMailRule(ServerSetupTest.ALL);
+
+  private MailService mailService;
+
+  @Before
+  public void init() {
+    greenMail.setUser("test@camunda.com", "bpmn");
+
+    mailService = MailServiceFactory.getService(MailConfigurationFactory.getConfiguration());
+  }
+
+  @After
+  public void cleanup() {
+    mailService.setMetrics(new NoopMailMetrics());
+  }
+
+  @Test
+  public void pollMailsWithJmxMetrics() throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    JmxMailMetrics metrics = new JmxMailMetrics(server, "test@camunda.com");
+    mailService.setMetrics(metrics);
+
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "mail-1", "body");
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "mail-2", "body");
+
+    PollMailResponse response = MailConnectors.pollMails()
+      .createRequest()
+        .folder("INBOX")
+      .execute();
+
+    // the mails are fetched when the response is collected
+    assertThat(response.getMails()).hasSize(2);
+
+    Map<String, Number> values = metrics.getValues();
+    assertThat(values.get("mail.connector.invocations.mail-poll.count")).isEqualTo(1L);
+    assertThat(values.get("mail.connector.invocations.mail-poll.errors")).isNull();
+    assertThat(values.get("mail.connector.messages.mail-poll")).isEqualTo(2L);
+    assertThat(values.get("mail.connector.bytes.mail-poll").longValue()).isGreaterThan(0);
+    assertThat(values).containsKeys("mail.folders.open.store", "mail.pool.active.store", "mail.pool.idle.store");
+
+    assertThat(server.isRegistered(metrics.getObjectName())).isTrue();
+    assertThat(server.getAttribute(metrics.getObjectName(), "mail.connector.messages.mail-poll")).isEqualTo(2L);
+  }
+
+  @Test
+  public void countFailedInvocations() {
+    JmxMailMetrics metrics = new JmxMailMetrics(ManagementFactory.getPlatformMBeanServer(), "test@camunda.com");
+    mailService.setMetrics(metrics);
+
+    try {
+      MailConnectors.pollMails()
+        .createRequest()
+          .folder("UNKNOWN")
+        .execute();
+
+    } catch (MailConnectorException e) {
+      // expected
+    }
+
+    Map<String, Number> values = metrics.getValues();
+    assertThat(values.get("mail.connector.invocations.mail-poll.count")).isEqualTo(1L);
+    assertThat(values.get("mail.connector.invocations.mail-poll.errors")).isEqualTo(1L);
+  }
+
+  @Test
+  public void unregisterMBeanOnClose() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    JmxMailMetrics metrics = new JmxMailMetrics(server, "test@camunda.com");
+    mailService.setMetrics(metrics);
+
+    mailService.setMetrics(new NoopMailMetrics());
+
+    assertThat(metrics.getObjectName()).isNull();
+    assertThat(server.queryNames(null, null)).extracting("domain").doesNotContain(JmxMailMetrics.DOMAIN);
+  }
+
+  @Test
+  public void sendMailWithMicrometerMetrics() {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    mailService.setMetrics(new MicrometerMailMetrics(registry, "test@camunda.com"));
+
+    MailConnectors.sendMail()
+      .createRequest()
+        .from("test")
+        .to("test@camunda.com")
+        .subject("subject")
+      .execute();
+
+    assertThat(registry.get(MailMetrics.METRIC_INVOCATIONS)
+        .tag(MailMetrics.TAG_CONNECTOR, SendMailConnector.CONNECTOR_ID)
+        .tag(MailMetrics.TAG_OUTCOME, "success")
+        .tag(MicrometerMailMetrics.TAG_ACCOUNT, "test@camunda.com")
+        .timer().count()).isEqualTo(1);
+
+    assertThat(registry.get(MailMetrics.METRIC_MESSAGES)
+        .tag(MailMetrics.TAG_CONNECTOR, SendMailConnector.CONNECTOR_ID)
+        .counter().count()).isEqualTo(1.0);
+
+    assertThat(registry.get(MailMetrics.METRIC_POOL_IDLE)
+        .tag(MailMetrics.TAG_SOURCE, MailMetrics.SOURCE_TRANSPORT)
+        .gauge().value()).isGreaterThanOrEqualTo(0.0);
+  }
+
+  @Test
+  public void removeMicrometerMetersOnClose() {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    mailService.setMetrics(new MicrometerMailMetrics(registry, "test@camunda.com"));
+
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "mail-1", "body");
+
+    PollMailResponse response = MailConnectors.pollMails()
+      .createRequest()
+        .folder("INBOX")
+      .execute();
+
+    assertThat(response.getMails()).hasSize(1);
+
+    assertThat(registry.find(MailMetrics.METRIC_BYTES).tag(MailMetrics.TAG_CONNECTOR, PollMailConnector.CONNECTOR_ID).counter())
+      .isNotNull();
+
+    mailService.setMetrics(new NoopMailMetrics());
+
+    assertThat(registry.getMeters()).isEmpty();
+  }
+
+}
@@ -0,0 +1,177 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.notification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.Folder;
+import javax.mail.MessagingException;
+
+import org.camunda.bpm.extension.mail.metrics.NoopMailMetrics;
+import org.camunda.bpm.extension.mail.service.MailService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.mail.imap.IMAPFolder;
+
+public class IdleNotificationWorkerTest {
+
+  private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+  private MailService mailService;
+  private IMAPFolder folder;
+
+  private final AtomicBoolean open = new AtomicBoolean();
+  private final Semaphore idleInterrupted = new Semaphore(0);
+
+  @Before
+  public void init() throws Exception {
+    mailService = mock(MailService.class);
+    when(mailService.getMetrics()).thenReturn(new NoopMailMetrics());
+    folder = mock(IMAPFolder.class);
+
+    when(folder.isOpen()).thenAnswer(invocation -> open.get());
+
+    // interrupt IDLE by a NOOP command
+    when(folder.doCommand(any(IMAPFolder.ProtocolCommand.class))).thenAnswer(invocation -> {
+      idleInterrupted.release();
+      return null;
+    });
+  }
+
+  @After
+  public void cleanup() {
+    executorService.shutdownNow();
+  }
+
+  @Test
+  public void reIdleAfterKeepAlive() throws Exception {
+    when(mailService.ensureOpenFolder(any(Folder.class))).thenAnswer(invocation -> open(invocation.getArguments()[0]));
+
+    CountDownLatch idleCommands = new CountDownLatch(3);
+    doAnswer(invocation -> {
+      idleCommands.countDown();
+      idleInterrupted.acquire();
+      return null;
+    }).when(folder).idle();
+
+    IdleNotificationWorker worker = new IdleNotificationWorker(mailService, folder, null,
+        Duration.ofMillis(50), Duration.ofMillis(10), Duration.ofMillis(100));
+    Future<?> future = executorService.submit(worker);
+
+    assertThat(idleCommands.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(worker.getConnectionState()).isEqualTo(ConnectionState.IDLE);
+    assertThat(worker.getReconnectCount()).isEqualTo(0);
+
+    worker.stop();
+    future.get(5, TimeUnit.SECONDS);
+
+    assertThat(worker.getConnectionState()).isEqualTo(ConnectionState.STOPPED);
+  }
+
+  @Test
+  public void reconnectWithBackoff() throws Exception {
+    AtomicInteger connects = new AtomicInteger();
+    when(mailService.ensureOpenFolder(any(Folder.class))).thenAnswer(invocation -> {
+      // the second attempt fails
+      if (connects.incrementAndGet() == 2) {
+        throw new MessagingException("connection refused");
+      }
+      return open(invocation.getArguments()[0]);
+    });
+
+    AtomicInteger idleCommands = new AtomicInteger();
+    CountDownLatch reconnected = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      int idleCommand = idleCommands.incrementAndGet();
+      if (idleCommand == 1) {
+        open.set(false);
+        throw new MessagingException("connection lost");
+
+      } else if (idleCommand == 2) {
+        return null;
+
+      } else {
+        reconnected.countDown();
+        idleInterrupted.acquire();
+        return null;
+      }
+    }).when(folder).idle();
+
+    IdleNotificationWorker worker = new IdleNotificationWorker(mailService, folder, null,
+        Duration.ofHours(1), Duration.ofMillis(10), Duration.ofMillis(100));
+    Future<?> future = executorService.submit(worker);
+
+    assertThat(reconnected.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(connects.get()).isEqualTo(4);
+    assertThat(worker.getReconnectCount()).isEqualTo(1);
+    assertThat(worker.getFailureCount()).isEqualTo(0);
+
+    worker.stop();
+    future.get(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void stopWhileBackoff() throws Exception {
+    when(mailService.ensureOpenFolder(any(Folder.class))).thenThrow(new MessagingException("connection refused"));
+
+    IdleNotificationWorker worker = new IdleNotificationWorker(mailService, folder, null,
+        Duration.ofHours(1), Duration.ofHours(1), Duration.ofHours(1));
+    Future<?> future = executorService.submit(worker);
+
+    while (worker.getConnectionState() != ConnectionState.BACKOFF) {
+      Thread.sleep(10);
+    }
+    assertThat(worker.getFailureCount()).isEqualTo(1);
+
+    worker.stop();
+    future.get(5, TimeUnit.SECONDS);
+
+    assertThat(worker.getConnectionState()).isEqualTo(ConnectionState.STOPPED);
+  }
+
+  @Test
+  public void increaseReconnectDelayExponentially() {
+    IdleNotificationWorker worker = new IdleNotificationWorker(mailService, folder, null,
+        Duration.ofHours(1), Duration.ofSeconds(1), Duration.ofSeconds(30));
+
+    for (int failures = 1; failures <= 10; failures++) {
+      long expectedDelay = Math.min(1000L << (failures - 1), 30_000L);
+
+      assertThat(worker.getReconnectDelay(failures).toMillis()).isBetween(expectedDelay / 2, expectedDelay);
+    }
+
+    assertThat(worker.getReconnectDelay(100).toMillis()).isBetween(15_000L, 30_000L);
+  }
+
+  private Object open(Object folder) {
+    open.set(true);
+    return folder;
+  }
+
+}
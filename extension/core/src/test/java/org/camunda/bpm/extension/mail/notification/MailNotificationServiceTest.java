@@ -18,14 +18,17 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 
+import javax.mail.Folder;
 import javax.mail.Message;
 import javax.mail.Session;
 import javax.mail.internet.MimeMessage;
 
 import org.camunda.bpm.extension.mail.MailTestUtil;
 import org.camunda.bpm.extension.mail.config.MailConfigurationFactory;
+import org.camunda.bpm.extension.mail.config.PropertiesMailConfiguration;
 import org.camunda.bpm.extension.mail.dto.Attachment;
 import org.camunda.bpm.extension.mail.dto.Mail;
 import org.junit.After;
@@ -112,4 +115,138 @@ public class MailNotificationServiceTest {
 		assertThat(mailAttachment.getPath()).isNotNull();
 	}
 
+	@Test
+	public void subscribeMultipleFolders() throws Exception {
+		Folder otherFolder = MailTestUtil.createFolder("other", greenMail);
+
+		notificationService.subscribe("INBOX");
+		notificationService.subscribe("other");
+
+		assertThat(notificationService.getSubscriptions()).hasSize(2);
+
+		final List<Message> receivedMessages = new ArrayList<>();
+		final CountDownLatch countDownLatch = new CountDownLatch(2);
+
+		notificationService.registerMessageHandler(messages -> {
+			receivedMessages.addAll(messages);
+			messages.forEach(m -> countDownLatch.countDown());
+		});
+
+		GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "inbox mail", "body");
+
+		Session session = greenMail.getSmtp().createSession();
+		MimeMessage otherMessage = MailTestUtil.createMimeMessage(session);
+		otherMessage.setText("body");
+		otherFolder.appendMessages(new Message[] { otherMessage });
+
+		countDownLatch.await(10, TimeUnit.SECONDS);
+
+		assertThat(receivedMessages).hasSize(2);
+	}
+
+	@Test
+	public void subscribeMultipleAccounts() throws Exception {
+		greenMail.setUser("other@camunda.com", "bpmn");
+
+		PropertiesMailConfiguration otherAccount = new PropertiesMailConfiguration();
+		otherAccount.getProperties().setProperty(PropertiesMailConfiguration.PROPERTY_USER, "other@camunda.com");
+
+		notificationService.subscribe("INBOX");
+		notificationService.subscribe(otherAccount, "INBOX");
+
+		final List<Message> receivedMessages = new ArrayList<>();
+		final CountDownLatch countDownLatch = new CountDownLatch(2);
+
+		notificationService.registerMessageHandler(messages -> {
+			receivedMessages.addAll(messages);
+			messages.forEach(m -> countDownLatch.countDown());
+		});
+
+		GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "mail 1", "body");
+		GreenMailUtil.sendTextEmailTest("other@camunda.com", "from@camunda.com", "mail 2", "body");
+
+		countDownLatch.await(10, TimeUnit.SECONDS);
+
+		assertThat(receivedMessages).hasSize(2);
+	}
+
+	@Test
+	public void mailHandlerOfMultipleAccounts() throws Exception {
+		greenMail.setUser("other@camunda.com", "bpmn");
+
+		PropertiesMailConfiguration otherAccount = new PropertiesMailConfiguration();
+		otherAccount.getProperties().setProperty(PropertiesMailConfiguration.PROPERTY_USER, "other@camunda.com");
+		otherAccount.getProperties().setProperty(PropertiesMailConfiguration.PROPERTY_LAZY_CONTENT, "true");
+
+		PropertiesMailConfiguration configuration = new PropertiesMailConfiguration();
+		configuration.getProperties().setProperty(PropertiesMailConfiguration.PROPERTY_ATTACHMENT_DOWNLOAD, "false");
+		notificationService = new MailNotificationService(configuration);
+
+		// the mail with the same UID in the inbox of the default account must not be loaded
+		GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "mail 1", "test body");
+
+		notificationService.subscribe(otherAccount, "INBOX");
+
+		final List<Mail> receivedMails = new CopyOnWriteArrayList<>();
+		final CountDownLatch countDownLatch = new CountDownLatch(1);
+
+		notificationService.registerMailHandler(mail -> {
+			receivedMails.add(mail);
+			countDownLatch.countDown();
+		});
+
+		GreenMailUtil.sendTextEmailTest("other@camunda.com", "from@camunda.com", "mail 2", "other body");
+
+		countDownLatch.await(10, TimeUnit.SECONDS);
+
+		assertThat(receivedMails).hasSize(1);
+
+		Mail mail = receivedMails.get(0);
+		assertThat(mail.getAccount()).isEqualTo("other@camunda.com");
+
+		notificationService.stop();
+		// loaded by UID from the account of the subscription
+		assertThat(mail.getText()).isEqualTo("other body");
+	}
+
+	@Test
+	public void pollIfNoThreadIsFreeForIdle() throws Exception {
+		PropertiesMailConfiguration configuration = new PropertiesMailConfiguration();
+		configuration.getProperties().setProperty(PropertiesMailConfiguration.PROPERTY_NOTIFICATION_THREADS, "1");
+
+		notificationService = new MailNotificationService(configuration);
+
+		NotificationSubscription subscription = notificationService.subscribe("INBOX");
+
+		assertThat(subscription.isIdle()).isFalse();
+		assertThat(subscription.getWorker()).isInstanceOf(PollNotificationWorker.class);
+	}
+
+	@Test
+	public void catchUpMailsAfterReconnect() throws Exception {
+		NotificationSubscription subscription = notificationService.subscribe("INBOX");
+
+		final List<String> receivedSubjects = new ArrayList<>();
+		final CountDownLatch countDownLatch = new CountDownLatch(2);
+
+		notificationService.registerMailHandler(mail -> {
+			receivedSubjects.add(mail.getSubject());
+			countDownLatch.countDown();
+		});
+
+		GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "mail 1", "body");
+
+		// lose the connection
+		synchronized (subscription.folder) {
+			subscription.folder.close(false);
+		}
+
+		GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "mail 2", "body");
+
+		countDownLatch.await(10, TimeUnit.SECONDS);
+
+		assertThat(receivedSubjects).containsExactly("mail 1", "mail 2");
+		assertThat(subscription.getDeliveredState().getLastUid()).isEqualTo(2);
+	}
+
 }
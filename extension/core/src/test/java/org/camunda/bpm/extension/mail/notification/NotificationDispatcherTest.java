@@ -0,0 +1,136 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.notification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.Folder;
+import javax.mail.Message;
+
+import org.camunda.bpm.extension.mail.notification.NotificationDispatcher.DispatchPolicy;
+import org.junit.After;
+import org.junit.Test;
+
+public class NotificationDispatcherTest {
+
+  private NotificationDispatcher dispatcher;
+
+  @After
+  public void cleanup() {
+    if (dispatcher != null) {
+      dispatcher.shutdown();
+    }
+  }
+
+  @Test
+  public void dispatchAsynchronously() throws Exception {
+    dispatcher = new NotificationDispatcher(1, 10, DispatchPolicy.BLOCK);
+
+    CountDownLatch handlerBlocked = new CountDownLatch(1);
+    CountDownLatch dispatched = new CountDownLatch(1);
+
+    MessageHandler slowHandler = messages -> {
+      await(handlerBlocked);
+      dispatched.countDown();
+    };
+
+    dispatcher.dispatch(messagesOf(mock(Folder.class)), Collections.singletonList(slowHandler));
+
+    // not blocked by the handler
+    assertThat(dispatched.getCount()).isEqualTo(1);
+
+    handlerBlocked.countDown();
+    assertThat(dispatched.await(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  public void keepOrderOfFolder() throws Exception {
+    dispatcher = new NotificationDispatcher(4, 100, DispatchPolicy.BLOCK);
+
+    Folder folder = mock(Folder.class);
+    List<Message> received = new CopyOnWriteArrayList<>();
+    CountDownLatch dispatched = new CountDownLatch(50);
+
+    MessageHandler handler = messages -> {
+      received.addAll(messages);
+      dispatched.countDown();
+    };
+
+    List<Message> sent = new CopyOnWriteArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      List<Message> messages = messagesOf(folder);
+      sent.addAll(messages);
+
+      dispatcher.dispatch(messages, Collections.singletonList(handler));
+    }
+
+    assertThat(dispatched.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(received).containsExactlyElementsOf(sent);
+    assertThat(dispatcher.getDispatchedCount()).isEqualTo(50);
+  }
+
+  @Test
+  public void dropOldestIfQueueIsFull() throws Exception {
+    dispatcher = new NotificationDispatcher(1, 1, DispatchPolicy.DROP_OLDEST);
+
+    Folder folder = mock(Folder.class);
+    CountDownLatch handlerStarted = new CountDownLatch(1);
+    CountDownLatch handlerBlocked = new CountDownLatch(1);
+
+    MessageHandler blockingHandler = messages -> {
+      handlerStarted.countDown();
+      await(handlerBlocked);
+    };
+
+    dispatcher.dispatch(messagesOf(folder), Collections.singletonList(blockingHandler));
+    await(handlerStarted);
+
+    dispatcher.dispatch(messagesOf(folder), Collections.singletonList(blockingHandler));
+    dispatcher.dispatch(messagesOf(folder), Collections.singletonList(blockingHandler));
+
+    assertThat(dispatcher.getQueueDepth()).isEqualTo(1);
+    assertThat(dispatcher.getDroppedCount()).isEqualTo(1);
+
+    handlerBlocked.countDown();
+  }
+
+  @Test
+  public void parsePolicy() {
+    assertThat(DispatchPolicy.parse("block")).isEqualTo(DispatchPolicy.BLOCK);
+    assertThat(DispatchPolicy.parse("drop-oldest")).isEqualTo(DispatchPolicy.DROP_OLDEST);
+    assertThat(DispatchPolicy.parse("caller-runs")).isEqualTo(DispatchPolicy.CALLER_RUNS);
+  }
+
+  private List<Message> messagesOf(Folder folder) {
+    Message message = mock(Message.class);
+    when(message.getFolder()).thenReturn(folder);
+    return Collections.singletonList(message);
+  }
+
+  private void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
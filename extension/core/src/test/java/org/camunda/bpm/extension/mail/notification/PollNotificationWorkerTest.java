@@ -0,0 +1,100 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.notification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import javax.mail.Folder;
+
+import org.camunda.bpm.extension.mail.metrics.NoopMailMetrics;
+import org.camunda.bpm.extension.mail.service.MailService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PollNotificationWorkerTest {
+
+  private final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+
+  private MailService mailService;
+  private Folder folder;
+
+  @Before
+  public void init() throws Exception {
+    mailService = mock(MailService.class);
+    when(mailService.getMetrics()).thenReturn(new NoopMailMetrics());
+    folder = mock(Folder.class);
+
+    when(folder.isOpen()).thenReturn(true);
+  }
+
+  @After
+  public void cleanup() {
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  public void increaseIntervalIfFolderIsIdle() throws Exception {
+    when(folder.getMessageCount()).thenReturn(1);
+
+    PollNotificationWorker worker = new PollNotificationWorker(mailService, folder, Duration.ofSeconds(1), Duration.ofSeconds(5));
+
+    worker.run();
+    assertThat(worker.getInterval()).isEqualTo(Duration.ofSeconds(2));
+
+    worker.run();
+    assertThat(worker.getInterval()).isEqualTo(Duration.ofSeconds(4));
+
+    worker.run();
+    assertThat(worker.getInterval()).isEqualTo(Duration.ofSeconds(5));
+  }
+
+  @Test
+  public void resetIntervalIfMailsAreReceived() throws Exception {
+    when(folder.getMessageCount()).thenReturn(1, 1, 1, 2);
+
+    PollNotificationWorker worker = new PollNotificationWorker(mailService, folder, Duration.ofSeconds(1), Duration.ofSeconds(5));
+
+    worker.run();
+    worker.run();
+    worker.run();
+    assertThat(worker.getInterval()).isEqualTo(Duration.ofSeconds(5));
+
+    worker.run();
+    assertThat(worker.getInterval()).isEqualTo(Duration.ofSeconds(1));
+  }
+
+  @Test
+  public void cancelScheduledPollOnStop() throws Exception {
+    scheduler.setRemoveOnCancelPolicy(true);
+
+    PollNotificationWorker worker = new PollNotificationWorker(mailService, folder, Duration.ofHours(1), Duration.ofHours(1));
+    worker.schedule(scheduler);
+
+    // wait for the first poll, which schedules the next one
+    while (scheduler.getCompletedTaskCount() == 0) {
+      Thread.sleep(10);
+    }
+    assertThat(scheduler.getQueue()).hasSize(1);
+
+    worker.stop();
+
+    assertThat(scheduler.getQueue()).isEmpty();
+  }
+
+}
@@ -13,14 +13,18 @@
 package org.camunda.bpm.extension.mail.poll;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 
 import java.util.List;
 
 import javax.mail.MessagingException;
 
+import org.camunda.bpm.engine.ProcessEngineException;
 import org.camunda.bpm.engine.runtime.ProcessInstance;
 import org.camunda.bpm.engine.test.Deployment;
 import org.camunda.bpm.engine.test.ProcessEngineRule;
+import org.camunda.bpm.engine.variable.Variables;
+import org.camunda.bpm.extension.mail.MailConnectors;
 import org.camunda.bpm.extension.mail.dto.Mail;
 import org.junit.Rule;
 import org.junit.Test;
@@ -59,4 +63,33 @@ public class PollMailConnectorProcessTest {
     assertThat(mail.getText()).isEqualTo("text body");
   }
 
+  @Test
+  @Deployment(resources = "processes/mail-poll-incremental.bpmn")
+  public void pollMailsAgainIfTransactionIsRolledBack() throws MessagingException {
+    greenMail.setUser("test@camunda.com", "bpmn");
+
+    PollMailConnector connector = MailConnectors.pollMails();
+    connector.setPollStateStore(new InMemoryPollStateStore());
+
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "subject", "text body");
+
+    try {
+      engineRule.getRuntimeService().startProcessInstanceByKey("poll-mails-incremental", Variables.createVariables().putValue("fail", true));
+      fail("expected exception");
+
+    } catch (ProcessEngineException e) {
+      // the poll state is not saved
+    }
+
+    ProcessInstance processInstance = engineRule.getRuntimeService()
+        .startProcessInstanceByKey("poll-mails-incremental", Variables.createVariables().putValue("fail", false));
+
+    @SuppressWarnings("unchecked")
+    List<Mail> mails = (List<Mail>) engineRule.getRuntimeService().getVariable(processInstance.getId(), "mails");
+    assertThat(mails).extracting("subject").containsExactly("subject");
+
+    // the poll state is saved after the transaction is committed
+    assertThat(connector.createRequest().folder("INBOX").incremental(true).execute().getMails()).isEmpty();
+  }
+
 }
@@ -15,25 +15,45 @@ package org.camunda.bpm.extension.mail.poll;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Path;
+import java.util.Date;
 import java.util.List;
 
+import javax.mail.Flags.Flag;
+import javax.mail.Folder;
 import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Part;
 import javax.mail.Session;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
-
+import javax.mail.search.AndTerm;
+import javax.mail.search.FlagTerm;
+import javax.mail.search.FromStringTerm;
+import javax.mail.search.HeaderTerm;
+import javax.mail.search.ReceivedDateTerm;
+import javax.mail.search.RecipientStringTerm;
+import javax.mail.search.SearchTerm;
+import javax.mail.search.SizeTerm;
+import javax.mail.search.SubjectTerm;
+
+import org.camunda.bpm.extension.mail.MailConnectorException;
 import org.camunda.bpm.extension.mail.MailConnectors;
 import org.camunda.bpm.extension.mail.MailContentType;
 import org.camunda.bpm.extension.mail.MailTestUtil;
 import org.camunda.bpm.extension.mail.config.MailConfiguration;
+import org.camunda.bpm.extension.mail.config.PropertiesMailConfiguration;
 import org.camunda.bpm.extension.mail.dto.Attachment;
 import org.camunda.bpm.extension.mail.dto.Mail;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 
 import com.icegreen.greenmail.junit.GreenMailRule;
 import com.icegreen.greenmail.util.GreenMailUtil;
@@ -47,6 +67,9 @@ public class PollMailConnectorTest {
   @Rule
   public final ExpectedException thrown = ExpectedException.none();
 
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   @Test
   public void messageHeaders() throws Exception {
     greenMail.setUser("test@camunda.com", "bpmn");
@@ -147,6 +170,24 @@ public class PollMailConnectorTest {
       .execute();
   }
 
+  @Test
+  public void malformedDate() throws MessagingException {
+    greenMail.setUser("test@camunda.com", "bpmn");
+
+    PollMailRequest request = MailConnectors.pollMails()
+      .createRequest()
+        .folder("INBOX");
+    // e.g. an input parameter of a service task
+    request.setRequestParameter("since", "yesterday");
+
+    assertThat(request.toString()).contains("since=yesterday");
+
+    thrown.expect(RuntimeException.class);
+    thrown.expectMessage("The request is invalid");
+
+    request.execute();
+  }
+
   @Test
   public void htmlMessage() throws MessagingException {
     greenMail.setUser("test@camunda.com", "bpmn");
@@ -275,4 +316,393 @@ public class PollMailConnectorTest {
     assertThat(mails).hasSize(1);
   }
 
+  @Test
+  public void searchMails() throws MessagingException {
+    greenMail.setUser("test@camunda.com", "bpmn");
+
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "invoice 1", "body");
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "other@camunda.com", "invoice 2", "body");
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "reminder", "body");
+
+    PollMailResponse response = MailConnectors.pollMails()
+      .createRequest()
+        .folder("INBOX")
+        .from("from@camunda.com")
+        .header("Subject", "invoice")
+        .unseen(true)
+      .execute();
+
+    assertThat(response.getMails()).extracting("subject").containsExactly("invoice 1");
+  }
+
+  @Test
+  public void compileSearchCriteriaToOneTerm() {
+    PollMailRequest request = MailConnectors.pollMails()
+      .createRequest()
+        .from("from@camunda.com")
+        .to("to@camunda.com")
+        .subject("invoice")
+        .since(new Date())
+        .unseen(true)
+        .header("X-Priority", "1")
+        .minSize(10)
+        .maxSize(1000);
+    // e.g. set by an input parameter of a service task
+    request.setRequestParameter(PollMailRequest.PARAM_BEFORE, "2030-12-31");
+
+    SearchTerm searchTerm = request.getSearchTerm();
+
+    assertThat(searchTerm).isInstanceOf(AndTerm.class);
+    assertThat(((AndTerm) searchTerm).getTerms())
+      .extracting("class")
+      .containsExactly(FromStringTerm.class, RecipientStringTerm.class, SubjectTerm.class, ReceivedDateTerm.class,
+          ReceivedDateTerm.class, FlagTerm.class, HeaderTerm.class, SizeTerm.class, SizeTerm.class);
+
+    assertThat(MailConnectors.pollMails().createRequest().getSearchTerm()).isNull();
+  }
+
+  @Test
+  public void pollPages() throws MessagingException {
+    greenMail.setUser("test@camunda.com", "bpmn");
+
+    for (int i = 1; i <= 5; i++) {
+      GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "mail-" + i, "body");
+    }
+
+    PollMailResponse response = MailConnectors.pollMails().createRequest().folder("INBOX").maxResults(2).execute();
+    assertThat(response.getMails()).extracting("subject").containsExactly("mail-1", "mail-2");
+    assertThat(response.getCursor()).isNotNull();
+
+    response = MailConnectors.pollMails().createRequest().folder("INBOX").maxResults(2).cursor(response.getCursor()).execute();
+    assertThat(response.getMails()).extracting("subject").containsExactly("mail-3", "mail-4");
+
+    response = MailConnectors.pollMails().createRequest().folder("INBOX").maxResults(2).cursor(response.getCursor()).execute();
+    assertThat(response.getMails()).extracting("subject").containsExactly("mail-5");
+    assertThat(response.getCursor()).isNull();
+  }
+
+  @Test
+  public void pollPagesInDescendingOrder() throws MessagingException {
+    greenMail.setUser("test@camunda.com", "bpmn");
+
+    for (int i = 1; i <= 3; i++) {
+      GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "mail-" + i, "body");
+    }
+
+    PollMailResponse response = MailConnectors.pollMails().createRequest()
+        .folder("INBOX")
+        .maxResults(2)
+        .sortOrder(PollMailRequest.SortOrder.DESC)
+        .execute();
+    assertThat(response.getMails()).extracting("subject").containsExactly("mail-3", "mail-2");
+
+    response = MailConnectors.pollMails().createRequest()
+        .folder("INBOX")
+        .maxResults(2)
+        .sortOrder(PollMailRequest.SortOrder.DESC)
+        .cursor(response.getCursor())
+        .execute();
+    assertThat(response.getMails()).extracting("subject").containsExactly("mail-1");
+    assertThat(response.getCursor()).isNull();
+  }
+
+  @Test
+  public void pollIncrementalWithMaxResults() throws MessagingException {
+    greenMail.setUser("test@camunda.com", "bpmn");
+
+    PollMailConnector connector = new PollMailConnector();
+    connector.setPollStateStore(new InMemoryPollStateStore());
+
+    for (int i = 1; i <= 3; i++) {
+      GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "mail-" + i, "body");
+    }
+
+    List<Mail> mails = connector.createRequest().folder("INBOX").incremental(true).maxResults(2).execute().getMails();
+    assertThat(mails).extracting("subject").containsExactly("mail-1", "mail-2");
+
+    mails = connector.createRequest().folder("INBOX").incremental(true).maxResults(2).execute().getMails();
+    assertThat(mails).extracting("subject").containsExactly("mail-3");
+  }
+
+  @Test
+  public void pollIncremental() throws MessagingException {
+    greenMail.setUser("test@camunda.com", "bpmn");
+
+    PollMailConnector connector = new PollMailConnector();
+    connector.setPollStateStore(new InMemoryPollStateStore());
+
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "mail-1", "body");
+
+    List<Mail> mails = connector.createRequest().folder("INBOX").incremental(true).execute().getMails();
+    assertThat(mails).extracting("subject").containsExactly("mail-1");
+
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "mail-2", "body");
+
+    mails = connector.createRequest().folder("INBOX").incremental(true).execute().getMails();
+    assertThat(mails).extracting("subject").containsExactly("mail-2");
+
+    mails = connector.createRequest().folder("INBOX").incremental(true).execute().getMails();
+    assertThat(mails).isEmpty();
+  }
+
+  @Test
+  public void pollIncrementalFromPollState() throws MessagingException {
+    greenMail.setUser("test@camunda.com", "bpmn");
+
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "mail-1", "body");
+
+    PollMailResponse response = MailConnectors.pollMails()
+      .createRequest()
+        .folder("INBOX")
+        .incremental(true)
+        .pollState(new PollState("INBOX", 0, 0))
+      .execute();
+
+    assertThat(response.getMails()).hasSize(1);
+
+    PollState pollState = response.getPollState();
+    assertThat(pollState).isNotNull();
+    assertThat(pollState.getLastUid()).isGreaterThan(0);
+
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "mail-2", "body");
+
+    response = MailConnectors.pollMails()
+      .createRequest()
+        .folder("INBOX")
+        .incremental(true)
+        .pollState(pollState)
+      .execute();
+
+    assertThat(response.getMails()).extracting("subject").containsExactly("mail-2");
+  }
+
+  @Test
+  public void storePollStateInFile() throws Exception {
+    greenMail.setUser("test@camunda.com", "bpmn");
+
+    Path path = temporaryFolder.getRoot().toPath().resolve("poll-state.properties");
+
+    PollMailConnector connector = new PollMailConnector();
+    connector.setPollStateStore(new FilePollStateStore(path));
+
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "mail-1", "body");
+
+    assertThat(connector.createRequest().folder("INBOX").incremental(true).execute().getMails()).hasSize(1);
+
+    // e.g. after a restart
+    connector = new PollMailConnector();
+    connector.setPollStateStore(new FilePollStateStore(path));
+
+    assertThat(connector.createRequest().folder("INBOX").incremental(true).execute().getMails()).isEmpty();
+  }
+
+  @Test
+  public void pollAgainIfResponseIsNotCollected() throws MessagingException {
+    greenMail.setUser("test@camunda.com", "bpmn");
+
+    PollMailConnector connector = new PollMailConnector();
+    connector.setPollStateStore(new InMemoryPollStateStore());
+
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "mail-1", "body");
+
+    // e.g. the service task fails before the mails are collected
+    connector.createRequest().folder("INBOX").incremental(true).execute();
+
+    List<Mail> mails = connector.createRequest().folder("INBOX").incremental(true).execute().getMails();
+    assertThat(mails).extracting("subject").containsExactly("mail-1");
+  }
+
+  @Test
+  public void pollFailedMailAgain() throws Exception {
+    greenMail.setUser("test@camunda.com", "bpmn");
+
+    // the attachments can't be stored while the path is a file
+    File attachmentPath = temporaryFolder.newFile("attachments");
+
+    PropertiesMailConfiguration configuration = new PropertiesMailConfiguration();
+    configuration.getProperties().setProperty(PropertiesMailConfiguration.PROPERTY_ATTACHMENT_PATH, attachmentPath.getPath());
+
+    PollMailConnector connector = new PollMailConnector();
+    connector.setConfiguration(configuration);
+    connector.setPollStateStore(new InMemoryPollStateStore());
+
+    Session session = greenMail.getSmtp().createSession();
+    File attachment = new File(getClass().getResource("/attachment.txt").toURI());
+
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "mail-1", "body");
+    MimeMessage messageWithAttachment = MailTestUtil.createMimeMessageWithAttachment(session, attachment);
+    messageWithAttachment.setSubject("mail-2");
+    GreenMailUtil.sendMimeMessage(messageWithAttachment);
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "mail-3", "body");
+
+    PollMailResponse response = connector.createRequest().folder("INBOX").incremental(true).downloadAttachments(true).execute();
+    assertThat(response.getMails()).extracting("subject").containsExactly("mail-1");
+    assertThat(response.getPollState().getLastUid()).isEqualTo(1);
+
+    // e.g. the file system is available again
+    assertThat(attachmentPath.delete()).isTrue();
+
+    List<Mail> mails = connector.createRequest().folder("INBOX").incremental(true).downloadAttachments(true).execute().getMails();
+    assertThat(mails).extracting("subject").containsExactly("mail-2", "mail-3");
+  }
+
+  @Test
+  public void keepPollStateOfEachAccount() throws Exception {
+    Path path = temporaryFolder.getRoot().toPath().resolve("poll-state.properties");
+
+    for (PollStateStore store : new PollStateStore[] { new InMemoryPollStateStore(), new FilePollStateStore(path) }) {
+      store.save("test@camunda.com", new PollState("INBOX", 1, 5));
+      store.save("other@camunda.com", new PollState("INBOX", 1, 7));
+
+      assertThat(store.load("test@camunda.com", "INBOX").getLastUid()).isEqualTo(5);
+      assertThat(store.load("other@camunda.com", "INBOX").getLastUid()).isEqualTo(7);
+      assertThat(store.load("unknown@camunda.com", "INBOX")).isNull();
+    }
+  }
+
+  @Test
+  public void pollLazyContent() throws Exception {
+    greenMail.setUser("test@camunda.com", "bpmn");
+
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "subject", "text body");
+
+    PollMailResponse response = MailConnectors.pollMails()
+      .createRequest()
+        .folder("INBOX")
+        .lazyContent(true)
+      .execute();
+
+    List<Mail> mails = response.getMails();
+    assertThat(mails).hasSize(1);
+
+    Mail mail = mails.get(0);
+    assertThat(mail.getSubject()).isEqualTo("subject");
+    assertThat(mail.getFolder()).isEqualTo("INBOX");
+    assertThat(mail.getUid()).isGreaterThan(0);
+    // loaded by UID since the folder is closed after polling
+    assertThat(mail.getText()).isEqualTo("text body");
+  }
+
+  @Test
+  public void loadLazyContentOfSerializedMail() throws Exception {
+    greenMail.setUser("test@camunda.com", "bpmn");
+
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "subject", "text body");
+
+    Mail mail = MailConnectors.pollMails()
+      .createRequest()
+        .folder("INBOX")
+        .lazyContent(true)
+      .execute()
+      .getMails()
+      .get(0);
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream)) {
+      objectOutputStream.writeObject(mail);
+    }
+
+    try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+      Mail deserializedMail = (Mail) objectInputStream.readObject();
+
+      assertThat(deserializedMail.getText()).isEqualTo("text body");
+    }
+  }
+
+  @Test
+  public void loadLazyContentWithoutMarkingMailAsSeen() throws Exception {
+    greenMail.setUser("test@camunda.com", "bpmn");
+
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "subject", "text body");
+
+    Mail mail = MailConnectors.pollMails()
+      .createRequest()
+        .folder("INBOX")
+        .lazyContent(true)
+        .downloadAttachments(false)
+      .execute()
+      .getMails()
+      .get(0);
+
+    assertThat(serializeAndDeserialize(mail).getText()).isEqualTo("text body");
+
+    // the mail is loaded from a read-only folder
+    assertThat(greenMail.getReceivedMessages()[0].isSet(Flag.SEEN)).isFalse();
+  }
+
+  @Test
+  public void loadLazyContentOfSerializedMailOfOtherAccount() throws Exception {
+    greenMail.setUser("test@camunda.com", "bpmn");
+    greenMail.setUser("other@camunda.com", "bpmn");
+
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "subject", "test body");
+    GreenMailUtil.sendTextEmailTest("other@camunda.com", "from@camunda.com", "subject", "other body");
+
+    PropertiesMailConfiguration otherAccount = new PropertiesMailConfiguration();
+    otherAccount.getProperties().setProperty(PropertiesMailConfiguration.PROPERTY_USER, "other@camunda.com");
+
+    PollMailConnector connector = new PollMailConnector();
+    connector.setConfiguration(otherAccount);
+
+    Mail mail = connector.createRequest()
+        .folder("INBOX")
+        .lazyContent(true)
+        .downloadAttachments(false)
+      .execute()
+      .getMails()
+      .get(0);
+
+    assertThat(mail.getAccount()).isEqualTo("other@camunda.com");
+
+    // the mail with the same UID in the inbox of the default account must not be loaded
+    assertThat(serializeAndDeserialize(mail).getText()).isEqualTo("other body");
+  }
+
+  @Test
+  public void failToLoadLazyContentIfUidValidityChanged() throws Exception {
+    greenMail.setUser("test@camunda.com", "bpmn");
+
+    Session session = greenMail.getSmtp().createSession();
+    Folder folder = MailTestUtil.createFolder("other", greenMail);
+    MimeMessage message = MailTestUtil.createMimeMessage(session);
+    message.setText("old body");
+    folder.appendMessages(new Message[] { message });
+
+    Mail mail = MailConnectors.pollMails()
+      .createRequest()
+        .folder("other")
+        .lazyContent(true)
+        .downloadAttachments(false)
+      .execute()
+      .getMails()
+      .get(0);
+
+    // recreate the folder, so that the UID refers to another mail
+    folder.close(false);
+    folder.delete(false);
+    folder = MailTestUtil.createFolder("other", greenMail);
+    message = MailTestUtil.createMimeMessage(session);
+    message.setText("new body");
+    folder.appendMessages(new Message[] { message });
+
+    // e.g. the mail is loaded by a later task
+    Mail deserializedMail = serializeAndDeserialize(mail);
+
+    thrown.expect(MailConnectorException.class);
+    thrown.expectMessage("UIDVALIDITY");
+
+    deserializedMail.getText();
+  }
+
+  private Mail serializeAndDeserialize(Mail mail) throws Exception {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream)) {
+      objectOutputStream.writeObject(mail);
+    }
+
+    try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+      return (Mail) objectInputStream.readObject();
+    }
+  }
+
 }
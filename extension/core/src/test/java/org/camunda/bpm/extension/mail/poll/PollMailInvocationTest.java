@@ -0,0 +1,323 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.poll;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.mail.Message;
+import javax.mail.event.MailEvent;
+import javax.mail.search.FromStringTerm;
+import javax.mail.search.SearchTerm;
+
+import org.camunda.bpm.extension.mail.config.MailConfiguration;
+import org.camunda.bpm.extension.mail.metrics.MailMetrics;
+import org.camunda.bpm.extension.mail.service.MailService;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.mail.iap.Argument;
+import com.sun.mail.iap.Response;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPFolder.ProtocolCommand;
+import com.sun.mail.imap.IMAPMessage;
+import com.sun.mail.imap.IMAPStore;
+import com.sun.mail.imap.MessageVanishedEvent;
+import com.sun.mail.imap.protocol.IMAPProtocol;
+import com.sun.mail.imap.protocol.IMAPResponse;
+import com.sun.mail.imap.protocol.Status;
+
+public class PollMailInvocationTest {
+
+  private IMAPFolder folder;
+  private IMAPStore store;
+  private IMAPProtocol protocol;
+
+  @Before
+  public void init() throws Exception {
+    folder = mock(IMAPFolder.class);
+    store = mock(IMAPStore.class);
+
+    when(folder.getStore()).thenReturn(store);
+    when(folder.getFullName()).thenReturn("INBOX");
+    when(folder.getUIDValidity()).thenReturn(1L);
+    when(folder.getMessagesByUID(anyLong(), anyLong())).thenReturn(new Message[0]);
+
+    when(store.hasCapability("CONDSTORE")).thenReturn(true);
+
+    protocol = mock(IMAPProtocol.class);
+    when(protocol.command(eq("UID SEARCH"), any(Argument.class))).thenAnswer(invocation -> searchResponses(""));
+
+    when(folder.doCommand(any(ProtocolCommand.class)))
+      .thenAnswer(invocation -> ((ProtocolCommand) invocation.getArguments()[0]).doCommand(protocol));
+  }
+
+  @Test
+  public void skipPollIfFolderIsNotChanged() throws Exception {
+    when(folder.getHighestModSeq()).thenReturn(10L);
+
+    PollMailInvocation invocation = invocation(new PollState("INBOX", 1, 5, 10));
+
+    assertThat(invocation.invokeTarget()).isEqualTo(Collections.emptyList());
+    assertThat(invocation.getPollState().getHighestModSeq()).isEqualTo(10);
+
+    verify(folder, never()).getMessagesByUIDChangedSince(anyLong(), anyLong(), anyLong());
+    verify(folder, never()).getMessagesByUID(anyLong(), anyLong());
+  }
+
+  @Test
+  public void pollChangedMails() throws Exception {
+    Message changedMessage = message(3);
+    Message newMessage = message(6);
+
+    when(folder.getHighestModSeq()).thenReturn(12L);
+    when(folder.getMessagesByUIDChangedSince(1, 5, 10)).thenReturn(new Message[] { changedMessage });
+    when(protocol.command(eq("UID SEARCH"), any(Argument.class))).thenAnswer(invocation -> searchResponses("6"));
+    when(folder.getMessagesByUID(new long[] { 6 })).thenReturn(new Message[] { newMessage });
+
+    PollMailInvocation invocation = invocation(new PollState("INBOX", 1, 5, 10));
+
+    assertThat(invocation.invokeTarget()).isEqualTo(Collections.singletonList(newMessage));
+    assertThat(invocation.getChangedMessages()).containsExactly(changedMessage);
+    assertThat(invocation.getVanishedUids()).isEmpty();
+
+    PollState pollState = invocation.getPollState();
+    assertThat(pollState.getLastUid()).isEqualTo(6);
+    assertThat(pollState.getHighestModSeq()).isEqualTo(12);
+  }
+
+  @Test
+  public void pollNoChangedMailsAfterPolledMailsAreSeen() throws Exception {
+    Message newMessage = message(6);
+    when(newMessage.getFolder()).thenReturn(folder);
+
+    when(folder.getHighestModSeq()).thenReturn(12L);
+    when(folder.getUIDNext()).thenReturn(7L);
+    when(folder.getMessagesByUIDChangedSince(1, 5, 10)).thenReturn(new Message[0]);
+    when(protocol.command(eq("UID SEARCH"), any(Argument.class))).thenAnswer(invocation -> searchResponses("6"));
+    when(folder.getMessagesByUID(new long[] { 6 })).thenReturn(new Message[] { newMessage });
+
+    // loading the content of the new mail sets the \Seen flag
+    when(protocol.status("INBOX", new String[] { "HIGHESTMODSEQ" }))
+      .thenReturn(new Status(new IMAPResponse("* STATUS INBOX (HIGHESTMODSEQ 13)")));
+
+    PollMailInvocation invocation = invocation(new PollState("INBOX", 1, 5, 10));
+    assertThat(invocation.invokeTarget()).isEqualTo(Collections.singletonList(newMessage));
+
+    MailService mailService = mock(MailService.class);
+    when(mailService.getMetrics()).thenReturn(mock(MailMetrics.class));
+    when(mailService.getConfiguration()).thenReturn(mock(MailConfiguration.class));
+
+    PollMailResponse response = new PollMailResponse(Collections.singletonList(newMessage), mailService,
+        new PollMailResponse.Parameters().pollState(invocation.getPollState()).lazyContent(true));
+    assertThat(response.getMails()).hasSize(1);
+
+    PollState pollState = response.getPollState();
+    assertThat(pollState.getLastUid()).isEqualTo(6);
+    assertThat(pollState.getHighestModSeq()).isEqualTo(13);
+
+    // the folder is not changed since the last poll
+    when(folder.getHighestModSeq()).thenReturn(13L);
+
+    invocation = invocation(pollState);
+
+    assertThat(invocation.invokeTarget()).isEqualTo(Collections.emptyList());
+    assertThat(invocation.getChangedMessages()).isEmpty();
+
+    verify(folder, never()).getMessagesByUIDChangedSince(anyLong(), anyLong(), eq(12L));
+  }
+
+  @Test
+  public void pollVanishedMails() throws Exception {
+    when(folder.getHighestModSeq()).thenReturn(12L);
+    when(folder.getMessagesByUIDChangedSince(1, 5, 10)).thenReturn(new Message[0]);
+
+    // reported by the server when the folder is opened by QRESYNC
+    List<MailEvent> resyncEvents = Collections.singletonList(new MessageVanishedEvent(folder, new long[] { 2, 3, 5 }));
+
+    PollMailInvocation invocation = new PollMailInvocation(folder, null, Collections.emptyList(), null, true,
+        new PollState("INBOX", 1, 5, 10), true, resyncEvents);
+    invocation.invokeTarget();
+
+    assertThat(invocation.getVanishedUids()).containsExactly(2L, 3L, 5L);
+  }
+
+  @Test
+  public void pollChangedMailsInPages() throws Exception {
+    Message changedMessage = changedMessage(3, 13);
+    Message otherChangedMessage = changedMessage(4, 11);
+    Message lastChangedMessage = changedMessage(2, 12);
+
+    when(folder.getHighestModSeq()).thenReturn(13L);
+    when(folder.getMessagesByUIDChangedSince(1, 5, 10))
+      .thenReturn(new Message[] { lastChangedMessage, changedMessage, otherChangedMessage });
+
+    PollMailRequest request = new PollMailConnector().createRequest().maxResults(2);
+    PollMailInvocation invocation = new PollMailInvocation(folder, request, Collections.emptyList(), null, true,
+        new PollState("INBOX", 1, 5, 10), true);
+
+    assertThat(invocation.invokeTarget()).isEqualTo(Collections.emptyList());
+    // ordered by the mod-sequence
+    assertThat(invocation.getChangedMessages()).containsExactly(otherChangedMessage, lastChangedMessage);
+
+    PollState pollState = invocation.getPollState();
+    assertThat(pollState.getLastUid()).isEqualTo(5);
+    assertThat(pollState.getHighestModSeq()).isEqualTo(12);
+
+    // the new messages are polled after the changes
+    verify(folder, never()).getMessagesByUID(anyLong(), anyLong());
+  }
+
+  @Test
+  public void pollNewMailsInPages() throws Exception {
+    Message newMessage = message(6);
+    Message otherNewMessage = message(7);
+    Message lastNewMessage = message(8);
+
+    when(folder.getHighestModSeq()).thenReturn(12L);
+    when(folder.getUIDNext()).thenReturn(9L);
+    when(folder.getMessagesByUIDChangedSince(1, 5, 10)).thenReturn(new Message[0]);
+    when(protocol.command(eq("UID SEARCH"), any(Argument.class)))
+      .thenAnswer(invocation -> searchResponses("6 7 8"))
+      .thenAnswer(invocation -> searchResponses("8"));
+    when(folder.getMessagesByUID(new long[] { 6, 7 })).thenReturn(new Message[] { newMessage, otherNewMessage });
+    when(folder.getMessagesByUID(new long[] { 8 })).thenReturn(new Message[] { lastNewMessage });
+
+    PollMailRequest request = new PollMailConnector().createRequest().maxResults(2);
+    PollMailInvocation invocation = new PollMailInvocation(folder, request, Collections.emptyList(), null, true,
+        new PollState("INBOX", 1, 5, 10), true);
+
+    assertThat(invocation.invokeTarget()).isEqualTo(Arrays.asList(newMessage, otherNewMessage));
+
+    PollState pollState = invocation.getPollState();
+    assertThat(pollState.getLastUid()).isEqualTo(7);
+    assertThat(pollState.getHighestModSeq()).isEqualTo(12);
+
+    // the next poll continues with the remaining new message, although the mod-sequence is not changed
+    invocation = new PollMailInvocation(folder, request, Collections.emptyList(), null, true, pollState, true);
+
+    assertThat(invocation.invokeTarget()).isEqualTo(Collections.singletonList(lastNewMessage));
+    assertThat(invocation.getPollState().getLastUid()).isEqualTo(8);
+
+    // only the messages of the page are loaded
+    verify(folder, never()).getMessagesByUID(anyLong(), anyLong());
+  }
+
+  @Test
+  public void pollAllMailsIfChangesAreNotTracked() throws Exception {
+    when(store.hasCapability("CONDSTORE")).thenReturn(false);
+
+    PollMailInvocation invocation = invocation(new PollState("INBOX", 1, 5, 10));
+    invocation.invokeTarget();
+
+    assertThat(invocation.getPollState().getHighestModSeq()).isEqualTo(-1);
+
+    verify(protocol).command(eq("UID SEARCH"), any(Argument.class));
+    verify(folder, never()).getMessagesByUIDChangedSince(anyLong(), anyLong(), anyLong());
+  }
+
+  @Test
+  public void searchNewMailsOnServer() throws Exception {
+    Message newMessage = message(7);
+
+    when(folder.getUIDNext()).thenReturn(9L);
+    when(protocol.command(eq("UID SEARCH"), any(Argument.class))).thenAnswer(invocation -> searchResponses("7"));
+    when(folder.getMessagesByUID(new long[] { 7 })).thenReturn(new Message[] { newMessage });
+
+    PollMailRequest request = new PollMailConnector().createRequest().from("other@camunda.com");
+    PollMailInvocation invocation = new PollMailInvocation(folder, request, Collections.emptyList(), null, true,
+        new PollState("INBOX", 1, 5), false);
+
+    assertThat(invocation.invokeTarget()).isEqualTo(Collections.singletonList(newMessage));
+    // the new messages which don't match are skipped on the next poll
+    assertThat(invocation.getPollState().getLastUid()).isEqualTo(8);
+
+    // only the matching messages are loaded
+    verify(folder, never()).getMessagesByUID(anyLong(), anyLong());
+  }
+
+  @Test
+  public void searchNewMailsIfServerCannotSearch() throws Exception {
+    Message oldMessage = message(5);
+    Message newMessage = message(6);
+    Message otherNewMessage = message(7);
+
+    doReturn(null).when(folder).doCommand(any(ProtocolCommand.class));
+    when(folder.getMessagesByUID(6, IMAPFolder.LASTUID)).thenReturn(new Message[] { oldMessage, newMessage, otherNewMessage });
+    when(folder.search(any(SearchTerm.class), any(Message[].class))).thenReturn(new Message[] { oldMessage, otherNewMessage });
+    when(folder.getMessagesByUID(new long[] { 7 })).thenReturn(new Message[] { otherNewMessage });
+
+    PollMailRequest request = new PollMailConnector().createRequest().from("other@camunda.com");
+    PollMailInvocation invocation = new PollMailInvocation(folder, request, Collections.emptyList(), null, true,
+        new PollState("INBOX", 1, 5), false);
+
+    assertThat(invocation.invokeTarget()).isEqualTo(Collections.singletonList(otherNewMessage));
+    assertThat(invocation.getPollState().getLastUid()).isEqualTo(7);
+
+    // only the new messages are searched
+    verify(folder).search(any(SearchTerm.class), eq(new Message[] { oldMessage, newMessage, otherNewMessage }));
+    verify(folder, never()).search(any(SearchTerm.class));
+  }
+
+  @Test
+  public void searchPageAfterCursorOnServer() throws Exception {
+    when(protocol.command(eq("UID SEARCH"), any(Argument.class))).thenAnswer(invocation -> searchResponses("7 8 9"));
+
+    Message message = message(7);
+    Message otherMessage = message(8);
+    when(folder.getMessagesByUID(new long[] { 7, 8 })).thenReturn(new Message[] { message, otherMessage });
+
+    PollMailRequest request = new PollMailConnector().createRequest().maxResults(2).cursor(new PollCursor(1, 6).encode());
+    PollMailInvocation invocation = new PollMailInvocation(folder, request, Collections.emptyList(), null);
+
+    assertThat(invocation.invokeTarget()).isEqualTo(Arrays.asList(message, otherMessage));
+    assertThat(PollCursor.decode(invocation.getNextCursor()).getLastUid()).isEqualTo(8);
+
+    // only the messages of the page are loaded
+    verify(folder, never()).getMessagesByUID(anyLong(), anyLong());
+    verify(folder, never()).search(any(SearchTerm.class));
+  }
+
+  private PollMailInvocation invocation(PollState pollState) {
+    return new PollMailInvocation(folder, null, Collections.emptyList(), null, true, pollState, true);
+  }
+
+  private Response[] searchResponses(String uids) throws Exception {
+    return new Response[] { new IMAPResponse("* SEARCH " + uids), new IMAPResponse("A1 OK done") };
+  }
+
+  private Message message(long uid) throws Exception {
+    Message message = mock(Message.class);
+    when(folder.getUID(message)).thenReturn(uid);
+    return message;
+  }
+
+  private Message changedMessage(long uid, long modSeq) throws Exception {
+    IMAPMessage message = mock(IMAPMessage.class);
+    when(folder.getUID(message)).thenReturn(uid);
+    when(message.getModSeq()).thenReturn(modSeq);
+    return message;
+  }
+
+}
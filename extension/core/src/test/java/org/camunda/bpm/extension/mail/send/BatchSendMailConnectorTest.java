@@ -0,0 +1,125 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.send;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+
+import org.camunda.bpm.extension.mail.MailConnectors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.icegreen.greenmail.junit.GreenMailRule;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+
+public class BatchSendMailConnectorTest {
+
+  @Rule
+  public final GreenMailRule greenMail = new GreenMailRule(ServerSetupTest.ALL);
+
+  @Rule
+  public final ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void sendToRecipients() throws MessagingException {
+
+    BatchSendMailResponse response = MailConnectors.sendMails()
+      .createRequest()
+        .recipients("a@camunda.com", "b@camunda.com", "c@camunda.com")
+        .subject("subject")
+        .text("body")
+      .execute();
+
+    assertThat(response.getSent()).isEqualTo(3);
+    assertThat(response.getFailed()).isEqualTo(0);
+    assertThat(response.getResults())
+      .extracting("index", "to", "success")
+      .containsExactly(
+          tuple(0, "a@camunda.com", true),
+          tuple(1, "b@camunda.com", true),
+          tuple(2, "c@camunda.com", true));
+
+    MimeMessage[] mails = greenMail.getReceivedMessages();
+    assertThat(mails).hasSize(3);
+    assertThat(GreenMailUtil.getBody(mails[0])).isEqualTo("body");
+  }
+
+  @Test
+  public void overrideTemplate() throws MessagingException {
+    List<Map<String, Object>> mails = new ArrayList<>();
+    mails.add(mail("a@camunda.com", "subject-a"));
+    mails.add(mail("b@camunda.com", "subject-b"));
+
+    BatchSendMailResponse response = MailConnectors.sendMails()
+      .createRequest()
+        .subject("subject")
+        .text("body")
+        .mails(mails)
+      .execute();
+
+    assertThat(response.getSent()).isEqualTo(2);
+
+    assertThat(greenMail.getReceivedMessages())
+      .extracting("subject")
+      .containsOnly("subject-a", "subject-b");
+  }
+
+  @Test
+  public void reportFailedMails() throws MessagingException {
+
+    BatchSendMailResponse response = MailConnectors.sendMails()
+      .createRequest()
+        .recipients("a@camunda.com", "invalid@@camunda.com", "c@camunda.com")
+        .subject("subject")
+      .execute();
+
+    assertThat(response.getSent()).isEqualTo(2);
+    assertThat(response.getFailed()).isEqualTo(1);
+    assertThat(response.getResults())
+      .extracting("index", "success")
+      .containsExactly(tuple(0, true), tuple(1, false), tuple(2, true));
+    assertThat(response.getResults().get(1).getError()).isNotNull();
+
+    assertThat(greenMail.getReceivedMessages()).hasSize(2);
+  }
+
+  @Test
+  public void missingRecipients() throws MessagingException {
+
+    thrown.expect(RuntimeException.class);
+    thrown.expectMessage("The request is invalid");
+
+    MailConnectors.sendMails()
+      .createRequest()
+        .subject("subject")
+      .execute();
+  }
+
+  private Map<String, Object> mail(String to, String subject) {
+    Map<String, Object> mail = new HashMap<>();
+    mail.put("to", to);
+    mail.put("subject", subject);
+    return mail;
+  }
+
+}
@@ -0,0 +1,80 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.send;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import org.camunda.bpm.extension.mail.MailTestUtil;
+import org.camunda.bpm.extension.mail.config.MailConfiguration;
+import org.camunda.bpm.extension.mail.dto.SendMailResult;
+import org.camunda.bpm.extension.mail.service.MailService;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchSendMailInvocationTest {
+
+  private MailService mailService;
+
+  @Before
+  public void init() {
+    MailConfiguration configuration = mock(MailConfiguration.class);
+
+    mailService = mock(MailService.class);
+    when(mailService.getConfiguration()).thenReturn(configuration);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void failRemainingMailsIfNoTransportIsAvailable() throws Exception {
+    MessagingException exception = new MessagingException("no transport available");
+    when(mailService.borrowTransport()).thenThrow(exception);
+
+    Session session = Session.getInstance(new Properties());
+    Map<Integer, Message> messages = new LinkedHashMap<>();
+    for (int i = 0; i < 3; i++) {
+      messages.put(i, MailTestUtil.createMimeMessage(session));
+    }
+
+    BatchSendMailInvocation invocation = new BatchSendMailInvocation(messages, mock(BatchSendMailRequest.class),
+        Collections.emptyList(), mailService);
+    List<SendMailResult> results = (List<SendMailResult>) invocation.invokeTarget();
+
+    assertThat(results).extracting("index", "success", "error").containsExactly(
+        tuple(0, false, "no transport available"),
+        tuple(1, false, "no transport available"),
+        tuple(2, false, "no transport available"));
+
+    // wait only once for a transport
+    verify(mailService, times(1)).borrowTransport();
+    verify(mailService, never()).sendMessage(any(Transport.class), any(Message.class));
+  }
+
+}
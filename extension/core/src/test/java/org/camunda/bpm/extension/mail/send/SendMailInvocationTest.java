@@ -0,0 +1,85 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.send;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.Properties;
+
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+
+import org.camunda.bpm.extension.mail.MailTestUtil;
+import org.camunda.bpm.extension.mail.service.MailService;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SendMailInvocationTest {
+
+  private MailService mailService;
+  private Transport transport;
+  private MimeMessage message;
+
+  @Before
+  public void init() throws Exception {
+    transport = mock(Transport.class);
+
+    mailService = mock(MailService.class);
+    when(mailService.borrowTransport()).thenReturn(transport);
+
+    message = MailTestUtil.createMimeMessage(Session.getInstance(new Properties()));
+    message.setText("body");
+  }
+
+  @Test
+  public void keepTransportIfMailIsRejected() throws Exception {
+    when(transport.isConnected()).thenReturn(true);
+    doThrow(new SendFailedException("invalid recipient")).when(mailService).sendMessage(transport, message);
+
+    try {
+      invoke();
+    } catch (SendFailedException e) {
+      // expected
+    }
+
+    verify(mailService).releaseTransport(transport, 1);
+    verify(mailService, never()).invalidateTransport(transport);
+  }
+
+  @Test
+  public void invalidateTransportIfDisconnected() throws Exception {
+    when(transport.isConnected()).thenReturn(false);
+    doThrow(new IllegalStateException("connection lost")).when(mailService).sendMessage(transport, message);
+
+    try {
+      invoke();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    verify(mailService).invalidateTransport(transport);
+    verify(mailService, never()).releaseTransport(transport, 1);
+  }
+
+  private void invoke() throws Exception {
+    new SendMailInvocation(message, mock(SendMailRequest.class), Collections.emptyList(), mailService).invokeTarget();
+  }
+
+}
@@ -0,0 +1,163 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Part;
+import javax.mail.Session;
+
+import org.camunda.bpm.extension.mail.MailTestUtil;
+import org.camunda.bpm.extension.mail.attachment.AttachmentStore;
+import org.camunda.bpm.extension.mail.attachment.FileAttachmentStore;
+import org.camunda.bpm.extension.mail.config.PropertiesMailConfiguration;
+import org.camunda.bpm.extension.mail.dto.Attachment;
+import org.camunda.bpm.extension.mail.dto.Mail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.icegreen.greenmail.junit.GreenMailRule;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+
+public class AttachmentDownloadExecutorTest {
+
+  @Rule
+  public final GreenMailRule greenMail = new GreenMailRule(ServerSetupTest.ALL);
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private MailService mailService;
+  private AttachmentDownloadExecutor executor;
+
+  @Before
+  public void init() throws Exception {
+    greenMail.setUser("test@camunda.com", "bpmn");
+
+    File attachment = new File(getClass().getResource("/attachment.txt").toURI());
+    Session session = greenMail.getSmtp().createSession();
+    for (int i = 0; i < 5; i++) {
+      GreenMailUtil.sendMimeMessage(MailTestUtil.createMimeMessageWithAttachment(session, attachment));
+    }
+
+    mailService = new MailService(new PropertiesMailConfiguration());
+    executor = new AttachmentDownloadExecutor(mailService, 2, 1, Duration.ofSeconds(30));
+  }
+
+  @After
+  public void cleanup() throws Exception {
+    executor.shutdown();
+    mailService.close();
+  }
+
+  @Test
+  public void downloadAttachmentsInParallel() throws Exception {
+    Folder folder = mailService.ensureOpenFolder("INBOX");
+
+    List<Mail> mails = new ArrayList<>();
+    for (Message message : folder.getMessages()) {
+      mails.add(Mail.from(message));
+    }
+
+    List<Mail> failedMails = executor.downloadAttachments(mails, temporaryFolder.getRoot().getPath());
+
+    assertThat(failedMails).isEmpty();
+    assertThat(mails).hasSize(5);
+    for (Mail mail : mails) {
+      Attachment attachment = mail.getAttachments().get(0);
+
+      assertThat(attachment.getPath()).isNotNull();
+      assertThat(new File(attachment.getPath())).exists();
+    }
+  }
+
+  @Test
+  public void keepFolderOfPollingThreadOpen() throws Exception {
+    Folder folder = mailService.ensureOpenFolder("INBOX");
+
+    List<Mail> mails = new ArrayList<>();
+    for (Message message : folder.getMessages()) {
+      mails.add(Mail.from(message));
+    }
+
+    executor.downloadAttachments(mails, temporaryFolder.getRoot().getPath());
+
+    assertThat(folder.isOpen()).isTrue();
+    assertThat(mailService.ensureOpenFolder("INBOX")).isSameAs(folder);
+  }
+
+  @Test
+  public void deleteAttachmentsOfCancelledDownload() throws Exception {
+    FileAttachmentStore slowStore = new FileAttachmentStore() {
+      @Override
+      public Path store(Path directory, String fileName, Part part) throws IOException, MessagingException {
+        // e.g. blocked on I/O, which is not stopped by the interrupt
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        while (System.nanoTime() < end) {
+          try {
+            Thread.sleep(10);
+          } catch (InterruptedException e) {
+            // ignore
+          }
+        }
+        return super.store(directory, fileName, part);
+      }
+    };
+
+    MailService slowMailService = new MailService(new PropertiesMailConfiguration()) {
+      @Override
+      public synchronized AttachmentStore getAttachmentStore() {
+        return slowStore;
+      }
+    };
+    AttachmentDownloadExecutor slowExecutor = new AttachmentDownloadExecutor(slowMailService, 1, 1, Duration.ofMillis(100));
+
+    try {
+      Folder folder = slowMailService.ensureOpenFolder("INBOX");
+      Mail mail = Mail.from(folder.getMessages()[0]);
+
+      List<Mail> failedMails = slowExecutor.downloadAttachments(Collections.singletonList(mail), temporaryFolder.getRoot().getPath());
+      assertThat(failedMails).containsExactly(mail);
+
+      // not changed by the cancelled download
+      assertThat(mail.getAttachments().get(0).getPath()).isNull();
+
+      // wait until the worker is done
+      slowExecutor.executor.shutdown();
+      assertThat(slowExecutor.executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+      assertThat(temporaryFolder.getRoot().list()).isEmpty();
+
+    } finally {
+      slowExecutor.shutdown();
+      slowMailService.close();
+    }
+  }
+
+}
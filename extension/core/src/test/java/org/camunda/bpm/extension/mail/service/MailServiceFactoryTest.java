@@ -0,0 +1,96 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.camunda.bpm.extension.mail.config.PropertiesMailConfiguration;
+import org.junit.After;
+import org.junit.Test;
+
+public class MailServiceFactoryTest {
+
+  private final PropertiesMailConfiguration configuration = new PropertiesMailConfiguration();
+  private final PropertiesMailConfiguration otherConfiguration = new PropertiesMailConfiguration();
+
+  @After
+  public void cleanup() throws Exception {
+    MailServiceFactory.closeService(configuration);
+    MailServiceFactory.closeService(otherConfiguration);
+  }
+
+  @Test
+  public void sameServiceForSameConfiguration() {
+    MailService service = MailServiceFactory.getService(configuration);
+
+    assertThat(MailServiceFactory.getService(configuration)).isSameAs(service);
+    assertThat(service.getConfiguration()).isSameAs(configuration);
+  }
+
+  @Test
+  public void ownServiceForEachConfiguration() {
+    otherConfiguration.getProperties().setProperty(PropertiesMailConfiguration.PROPERTY_USER, "other@camunda.com");
+
+    MailService service = MailServiceFactory.getService(configuration);
+    MailService otherService = MailServiceFactory.getService(otherConfiguration);
+
+    assertThat(otherService).isNotSameAs(service);
+    assertThat(otherService.getConfiguration().getUserName()).isEqualTo("other@camunda.com");
+    assertThat(MailServiceFactory.getServices()).contains(service, otherService);
+  }
+
+  @Test
+  public void createServiceOnceIfCalledConcurrently() throws Exception {
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+
+    try {
+      List<Future<MailService>> futures = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        futures.add(executor.submit((Callable<MailService>) () -> {
+          start.await();
+          return MailServiceFactory.getService(configuration);
+        }));
+      }
+      start.countDown();
+
+      MailService service = futures.get(0).get();
+      for (Future<MailService> future : futures) {
+        assertThat(future.get()).isSameAs(service);
+      }
+
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void createNewServiceAfterClose() throws Exception {
+    MailService service = MailServiceFactory.getService(configuration);
+
+    MailServiceFactory.closeService(configuration);
+
+    assertThat(MailServiceFactory.getServices()).doesNotContain(service);
+    assertThat(MailServiceFactory.getService(configuration)).isNotSameAs(service);
+  }
+
+}
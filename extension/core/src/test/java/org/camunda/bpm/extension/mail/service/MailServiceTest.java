@@ -0,0 +1,305 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.CoreMatchers.isA;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.Address;
+import javax.mail.FetchProfile;
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+import javax.mail.UIDFolder;
+
+import org.camunda.bpm.extension.mail.MailConnectors;
+import org.camunda.bpm.extension.mail.config.PropertiesMailConfiguration;
+import org.camunda.bpm.extension.mail.dto.Mail;
+import org.camunda.bpm.extension.mail.metrics.JmxMailMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
+
+import com.icegreen.greenmail.junit.GreenMailRule;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.sun.mail.smtp.SMTPSendFailedException;
+
+public class MailServiceTest {
+
+  @Rule
+  public final GreenMailRule greenMail = new GreenMailRule(ServerSetupTest.ALL);
+
+  @Rule
+  public final ExpectedException thrown = ExpectedException.none();
+
+  private PropertiesMailConfiguration configuration;
+  private MailService mailService;
+
+  private ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+  @Before
+  public void init() {
+    greenMail.setUser("test@camunda.com", "bpmn");
+
+    configuration = new PropertiesMailConfiguration();
+    configuration.getProperties().setProperty(PropertiesMailConfiguration.PROPERTY_STORE_POOL_SIZE, "2");
+    configuration.getProperties().setProperty(PropertiesMailConfiguration.PROPERTY_STORE_POOL_BORROW_TIMEOUT, "PT1S");
+
+    mailService = new MailService(configuration);
+  }
+
+  @After
+  public void cleanup() throws Exception {
+    executorService.shutdownNow();
+    mailService.close();
+  }
+
+  @Test
+  public void reuseFolderWithinThread() throws Exception {
+    Folder folder = mailService.ensureOpenFolder("INBOX");
+
+    assertThat(mailService.ensureOpenFolder("INBOX")).isSameAs(folder);
+    assertThat(folder.isOpen()).isTrue();
+  }
+
+  @Test
+  public void leaseStorePerThread() throws Exception {
+    Folder folder = mailService.ensureOpenFolder("INBOX");
+
+    Folder otherFolder = executorService.submit(() -> mailService.ensureOpenFolder("INBOX")).get();
+
+    assertThat(otherFolder.getStore()).isNotSameAs(folder.getStore());
+  }
+
+  @Test
+  public void releaseStoreOnFlush() throws Exception {
+    Folder folder = mailService.ensureOpenFolder("INBOX");
+
+    mailService.flush();
+
+    assertThat(folder.isOpen()).isFalse();
+
+    Folder newFolder = mailService.ensureOpenFolder("INBOX");
+    assertThat(newFolder.getStore()).isSameAs(folder.getStore());
+    assertThat(newFolder.isOpen()).isTrue();
+  }
+
+  @Test
+  public void timeoutIfPoolIsExhausted() throws Exception {
+    mailService.ensureOpenFolder("INBOX");
+    executorService.submit(() -> mailService.ensureOpenFolder("INBOX")).get();
+
+    ExecutorService thirdThread = Executors.newSingleThreadExecutor();
+    Future<Folder> result = thirdThread.submit(() -> mailService.ensureOpenFolder("INBOX"));
+
+    thrown.expect(ExecutionException.class);
+    thrown.expectCause(isA(MessagingException.class));
+
+    try {
+      result.get();
+    } finally {
+      thirdThread.shutdown();
+    }
+  }
+
+  @Test
+  public void reuseTransport() throws Exception {
+    Transport transport = mailService.borrowTransport();
+    mailService.releaseTransport(transport, 1);
+
+    Transport reusedTransport = mailService.borrowTransport();
+
+    assertThat(reusedTransport).isSameAs(transport);
+    assertThat(reusedTransport.isConnected()).isTrue();
+  }
+
+  @Test
+  public void closeTransportAfterMaxMessages() throws Exception {
+    configuration.getProperties().setProperty(PropertiesMailConfiguration.PROPERTY_TRANSPORT_POOL_MAX_MESSAGES, "2");
+
+    Transport transport = mailService.borrowTransport();
+    mailService.releaseTransport(transport, 2);
+
+    assertThat(transport.isConnected()).isFalse();
+    assertThat(mailService.borrowTransport()).isNotSameAs(transport);
+  }
+
+  @Test
+  public void pollInParallel() throws Exception {
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "mail-1", "body");
+
+    ExecutorService pollExecutor = Executors.newFixedThreadPool(4);
+
+    Callable<List<Mail>> poll = () -> MailConnectors.pollMails()
+        .createRequest()
+          .folder("INBOX")
+          .downloadAttachments(false)
+        .execute()
+        .getMails();
+
+    List<Future<List<Mail>>> results = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      results.add(pollExecutor.submit(poll));
+    }
+
+    for (Future<List<Mail>> result : results) {
+      assertThat(result.get(10, TimeUnit.SECONDS)).hasSize(1);
+    }
+
+    pollExecutor.shutdown();
+  }
+
+  @Test
+  public void prefetchMessagesOfFolderAtOnce() throws Exception {
+    Folder folder = mock(Folder.class);
+
+    Message message1 = mock(Message.class);
+    Message message2 = mock(Message.class);
+    when(message1.getFolder()).thenReturn(folder);
+    when(message2.getFolder()).thenReturn(folder);
+
+    mailService.prefetch(Arrays.asList(message1, message2));
+
+    ArgumentCaptor<Message[]> messages = ArgumentCaptor.forClass(Message[].class);
+    ArgumentCaptor<FetchProfile> fetchProfile = ArgumentCaptor.forClass(FetchProfile.class);
+    verify(folder, times(1)).fetch(messages.capture(), fetchProfile.capture());
+
+    assertThat(messages.getValue()).containsExactly(message1, message2);
+    assertThat(fetchProfile.getValue().getItems())
+      .containsOnly(FetchProfile.Item.ENVELOPE, FetchProfile.Item.FLAGS, FetchProfile.Item.CONTENT_INFO, UIDFolder.FetchProfileItem.UID);
+  }
+
+  @Test
+  public void configureFetchProfile() throws Exception {
+    configuration.getProperties().setProperty(PropertiesMailConfiguration.PROPERTY_FETCH_ITEMS, "envelope, uid");
+    configuration.getProperties().setProperty(PropertiesMailConfiguration.PROPERTY_FETCH_HEADERS, "X-Priority");
+
+    FetchProfile fetchProfile = mailService.getFetchProfile();
+
+    assertThat(fetchProfile.getItems()).containsOnly(FetchProfile.Item.ENVELOPE, UIDFolder.FetchProfileItem.UID);
+    assertThat(fetchProfile.getHeaderNames()).containsOnly("X-Priority");
+  }
+
+  @Test
+  public void disablePrefetch() throws Exception {
+    configuration.getProperties().setProperty(PropertiesMailConfiguration.PROPERTY_FETCH_ITEMS, "");
+
+    Folder folder = mock(Folder.class);
+    Message message = mock(Message.class);
+    when(message.getFolder()).thenReturn(folder);
+
+    mailService.prefetch(Arrays.asList(message));
+
+    verify(folder, times(0)).fetch(any(Message[].class), any(FetchProfile.class));
+  }
+
+  @Test
+  public void sendAgainIfRejectedTemporarily() throws Exception {
+    configuration.getProperties().setProperty(PropertiesMailConfiguration.PROPERTY_SEND_RATE, "10");
+    configuration.getProperties().setProperty(PropertiesMailConfiguration.PROPERTY_SEND_RETRY_DELAY, "PT0.01S");
+
+    JmxMailMetrics metrics = new JmxMailMetrics(ManagementFactory.getPlatformMBeanServer(), "test@camunda.com");
+    mailService.setMetrics(metrics);
+
+    Transport transport = mock(Transport.class);
+    when(transport.isConnected()).thenReturn(true);
+    doThrow(new SMTPSendFailedException("MAIL", 421, "421 too many messages, slow down", null, null, null, null))
+      .doNothing()
+      .when(transport).sendMessage(any(Message.class), any(Address[].class));
+
+    Message message = mock(Message.class);
+
+    mailService.sendMessage(transport, message);
+
+    verify(transport, times(2)).sendMessage(any(Message.class), any(Address[].class));
+    assertThat(mailService.getSendRateLimiter().getRate()).isLessThan(10);
+    assertThat(metrics.getValues().get("mail.rejections.transport")).isEqualTo(1L);
+  }
+
+  @Test
+  public void reconnectIfClosedAfterRejection() throws Exception {
+    configuration.getProperties().setProperty(PropertiesMailConfiguration.PROPERTY_SEND_RETRY_DELAY, "PT0.01S");
+
+    Transport transport = mock(Transport.class);
+    when(transport.isConnected()).thenReturn(false);
+    doThrow(new SMTPSendFailedException("MAIL", 421, "421 service not available", null, null, null, null))
+      .doNothing()
+      .when(transport).sendMessage(any(Message.class), any(Address[].class));
+
+    mailService.sendMessage(transport, mock(Message.class));
+
+    verify(transport).connect("test@camunda.com", "bpmn");
+  }
+
+  @Test
+  public void failIfRejectedPermanently() throws Exception {
+    Transport transport = mock(Transport.class);
+    doThrow(new SMTPSendFailedException("MAIL", 550, "550 mailbox unavailable", null, null, null, null))
+      .when(transport).sendMessage(any(Message.class), any(Address[].class));
+
+    try {
+      mailService.sendMessage(transport, mock(Message.class));
+      fail("expected exception");
+
+    } catch (SMTPSendFailedException e) {
+      assertThat(e.getReturnCode()).isEqualTo(550);
+    }
+
+    verify(transport, times(1)).sendMessage(any(Message.class), any(Address[].class));
+  }
+
+  @Test
+  public void failIfRetriesAreExhausted() throws Exception {
+    configuration.getProperties().setProperty(PropertiesMailConfiguration.PROPERTY_SEND_RETRIES, "2");
+    configuration.getProperties().setProperty(PropertiesMailConfiguration.PROPERTY_SEND_RETRY_DELAY, "PT0.01S");
+
+    Transport transport = mock(Transport.class);
+    when(transport.isConnected()).thenReturn(true);
+    doThrow(new SMTPSendFailedException("MAIL", 451, "451 try again later", null, null, null, null))
+      .when(transport).sendMessage(any(Message.class), any(Address[].class));
+
+    try {
+      mailService.sendMessage(transport, mock(Message.class));
+      fail("expected exception");
+
+    } catch (SMTPSendFailedException e) {
+      assertThat(e.getReturnCode()).isEqualTo(451);
+    }
+
+    verify(transport, times(3)).sendMessage(any(Message.class), any(Address[].class));
+  }
+
+}
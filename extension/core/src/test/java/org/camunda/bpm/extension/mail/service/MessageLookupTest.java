@@ -0,0 +1,162 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.mail.FetchProfile;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.UIDFolder;
+import javax.mail.internet.MimeMessage;
+import javax.mail.search.SearchTerm;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
+
+import com.sun.mail.imap.IMAPFolder;
+
+public class MessageLookupTest {
+
+  @Rule
+  public final ExpectedException thrown = ExpectedException.none();
+
+  private IMAPFolder folder;
+  private MimeMessage message1;
+  private MimeMessage message2;
+  private MimeMessage message3;
+
+  @Before
+  public void init() throws Exception {
+    folder = mock(IMAPFolder.class);
+    when(folder.getFullName()).thenReturn("INBOX");
+    when(folder.getUIDValidity()).thenReturn(42L);
+
+    message1 = mockMessage("<id-1>", 1);
+    message2 = mockMessage("<id-2>", 2);
+    message3 = mockMessage("<id-3>", 3);
+  }
+
+  private MimeMessage mockMessage(String messageId, long uid) throws MessagingException {
+    MimeMessage message = mock(MimeMessage.class);
+    when(message.getMessageID()).thenReturn(messageId);
+    when(folder.getUID(message)).thenReturn(uid);
+    return message;
+  }
+
+  @Test
+  public void getMessagesByUidsWithOneCommand() throws Exception {
+    when(folder.getMessagesByUID(aryEq(new long[] { 1, 3, 4 }))).thenReturn(new Message[] { message1, message3, null });
+
+    MessageLookup lookup = new MessageLookup(100, 100);
+    Message[] messages = lookup.getMessagesByUids(folder, 42, Arrays.asList(1L, 3L, 4L));
+
+    assertThat(messages).containsExactly(message1, message3);
+    verify(folder, never()).search(any(SearchTerm.class));
+  }
+
+  @Test
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  public void getMessagesByUidsOfOtherTypes() throws Exception {
+    when(folder.getMessagesByUID(aryEq(new long[] { 1, 3 }))).thenReturn(new Message[] { message1, message3 });
+
+    // e.g. passed as process variable by a script
+    List uids = Arrays.asList(1, "3");
+
+    MessageLookup lookup = new MessageLookup(100, 100);
+    Message[] messages = lookup.getMessagesByUids(folder, 42, uids);
+
+    assertThat(messages).containsExactly(message1, message3);
+  }
+
+  @Test
+  public void rejectUidsOfOtherUidValidity() throws Exception {
+    MessageLookup lookup = new MessageLookup(100, 100);
+
+    thrown.expect(MessagingException.class);
+    thrown.expectMessage("UIDVALIDITY");
+
+    lookup.getMessagesByUids(folder, 41, Arrays.asList(1L));
+  }
+
+  @Test
+  public void searchMessageIdsInChunks() throws Exception {
+    when(folder.search(any(SearchTerm.class)))
+      .thenReturn(new Message[] { message1, message2 })
+      .thenReturn(new Message[] { message3 });
+
+    MessageLookup lookup = new MessageLookup(2, 100);
+    Message[] messages = lookup.getMessagesByIds(folder, Arrays.asList("<id-1>", "<id-2>", "<id-3>"));
+
+    assertThat(messages).containsExactly(message1, message2, message3);
+    verify(folder, times(2)).search(any(SearchTerm.class));
+  }
+
+  @Test
+  public void fetchUidsAndMessageIdsOfFoundMessagesAtOnce() throws Exception {
+    when(folder.search(any(SearchTerm.class))).thenReturn(new Message[] { message1, message2 });
+
+    MessageLookup lookup = new MessageLookup(100, 100);
+    lookup.getMessagesByIds(folder, Arrays.asList("<id-1>", "<id-2>"));
+
+    ArgumentCaptor<FetchProfile> fetchProfile = ArgumentCaptor.forClass(FetchProfile.class);
+    verify(folder, times(1)).fetch(aryEq(new Message[] { message1, message2 }), fetchProfile.capture());
+
+    assertThat(fetchProfile.getValue().contains(UIDFolder.FetchProfileItem.UID)).isTrue();
+    assertThat(fetchProfile.getValue().contains("Message-ID")).isTrue();
+  }
+
+  @Test
+  public void getCachedMessageIdsByUid() throws Exception {
+    when(folder.search(any(SearchTerm.class))).thenReturn(new Message[] { message1, message2 });
+    when(folder.getMessagesByUID(aryEq(new long[] { 1, 2 }))).thenReturn(new Message[] { message1, message2 });
+
+    MessageLookup lookup = new MessageLookup(100, 100);
+    lookup.getMessagesByIds(folder, Arrays.asList("<id-1>", "<id-2>"));
+
+    Message[] messages = lookup.getMessagesByIds(folder, Arrays.asList("<id-1>", "<id-2>"));
+
+    assertThat(messages).containsExactly(message1, message2);
+    verify(folder, times(1)).search(any(SearchTerm.class));
+    verify(folder, times(1)).getMessagesByUID(aryEq(new long[] { 1, 2 }));
+  }
+
+  @Test
+  public void searchAgainIfCachedMessageIsExpunged() throws Exception {
+    when(folder.search(any(SearchTerm.class))).thenReturn(new Message[] { message1 }, new Message[0]);
+    when(folder.getMessagesByUID(aryEq(new long[] { 1 }))).thenReturn(new Message[] { null });
+
+    MessageLookup lookup = new MessageLookup(100, 100);
+    lookup.getMessagesByIds(folder, Collections.singletonList("<id-1>"));
+
+    Message[] messages = lookup.getMessagesByIds(folder, Collections.singletonList("<id-1>"));
+
+    assertThat(messages).isEmpty();
+    verify(folder, times(2)).search(any(SearchTerm.class));
+  }
+
+}
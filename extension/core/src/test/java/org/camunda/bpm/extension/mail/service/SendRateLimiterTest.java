@@ -0,0 +1,129 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.internet.InternetAddress;
+
+import org.junit.Test;
+
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+
+public class SendRateLimiterTest {
+
+  @Test
+  public void sendBurstAtOnce() throws Exception {
+    SendRateLimiter rateLimiter = new SendRateLimiter(1, 5);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < 5; i++) {
+      rateLimiter.acquire();
+    }
+
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(500);
+  }
+
+  @Test
+  public void limitRate() throws Exception {
+    SendRateLimiter rateLimiter = new SendRateLimiter(50, 1);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < 11; i++) {
+      rateLimiter.acquire();
+    }
+
+    // the first message is sent at once, the others every 20 ms
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(180);
+  }
+
+  @Test
+  public void unlimitedRate() {
+    SendRateLimiter rateLimiter = new SendRateLimiter(0, 1);
+
+    for (int i = 0; i < 100; i++) {
+      assertThat(rateLimiter.reserve()).isEqualTo(0);
+    }
+
+    rateLimiter.onRejection();
+
+    assertThat(rateLimiter.isLimited()).isFalse();
+    assertThat(rateLimiter.getRate()).isEqualTo(0);
+  }
+
+  @Test
+  public void slowDownOnRejectionAndRampUpAgain() {
+    SendRateLimiter rateLimiter = new SendRateLimiter(10, 1);
+
+    rateLimiter.onRejection();
+    assertThat(rateLimiter.getRate()).isEqualTo(5);
+
+    rateLimiter.onRejection();
+    assertThat(rateLimiter.getRate()).isEqualTo(2.5);
+
+    rateLimiter.onSuccess();
+    assertThat(rateLimiter.getRate()).isEqualTo(3.0);
+
+    for (int i = 0; i < 100; i++) {
+      rateLimiter.onSuccess();
+    }
+    assertThat(rateLimiter.getRate()).isEqualTo(10);
+  }
+
+  @Test
+  public void keepMinimumRate() {
+    SendRateLimiter rateLimiter = new SendRateLimiter(10, 1);
+
+    for (int i = 0; i < 100; i++) {
+      rateLimiter.onRejection();
+    }
+
+    assertThat(rateLimiter.getRate()).isEqualTo(0.1);
+  }
+
+  @Test
+  public void waitAfterRejection() {
+    SendRateLimiter rateLimiter = new SendRateLimiter(10, 10);
+
+    assertThat(rateLimiter.reserve()).isEqualTo(0);
+
+    rateLimiter.onRejection();
+
+    // the remaining burst is dropped, the next message is sent at the decreased rate
+    assertThat(TimeUnit.NANOSECONDS.toMillis(rateLimiter.reserve())).isBetween(100L, 200L);
+  }
+
+  @Test
+  public void detectTransientRejection() throws Exception {
+    assertThat(SendRateLimiter.isTransientRejection(sendFailed(421))).isTrue();
+    assertThat(SendRateLimiter.isTransientRejection(sendFailed(451))).isTrue();
+    assertThat(SendRateLimiter.isTransientRejection(sendFailed(550))).isFalse();
+    assertThat(SendRateLimiter.isTransientRejection(new MessagingException("connection refused"))).isFalse();
+
+    SendFailedException nested = new SendFailedException("invalid addresses",
+        new SMTPAddressFailedException(new InternetAddress("test@camunda.com"), "RCPT TO", 451, "451 try again later"));
+
+    assertThat(SendRateLimiter.getReplyCode(nested)).isEqualTo(451);
+    assertThat(SendRateLimiter.isTransientRejection(nested)).isTrue();
+  }
+
+  private SMTPSendFailedException sendFailed(int replyCode) {
+    return new SMTPSendFailedException("MAIL", replyCode, replyCode + " rejected", null, null, null, null);
+  }
+
+}
@@ -0,0 +1,175 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.extension.mail.trace;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.camunda.bpm.extension.mail.poll.PollMailConnector;
+import org.camunda.bpm.extension.mail.poll.PollMailResponse;
+import org.camunda.bpm.extension.mail.send.SendMailConnector;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.icegreen.greenmail.junit.GreenMailRule;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+
+public class TracingInterceptorTest {
+
+  @Rule
+  public final GreenMailRule greenMail = new GreenMailRule(ServerSetupTest.ALL);
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final InMemoryTraceExporter exporter = new InMemoryTraceExporter();
+
+  @After
+  public void checkNoActiveTrace() {
+    assertThat(MailTracer.isTracing()).isFalse();
+  }
+
+  @Test
+  public void tracePoll() throws Exception {
+    greenMail.setUser("test@camunda.com", "bpmn");
+
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "mail-1", "body");
+    GreenMailUtil.sendTextEmailTest("test@camunda.com", "from@camunda.com", "mail-2", "body");
+
+    PollMailConnector connector = new PollMailConnector();
+    connector.addRequestInterceptor(new TracingInterceptor(exporter));
+
+    PollMailResponse response = connector.createRequest()
+        .folder("INBOX")
+        .execute();
+
+    // the trace is ended after the response is collected
+    assertThat(exporter.getTraces()).isEmpty();
+
+    assertThat(response.getMails()).hasSize(2);
+
+    List<Span> traces = exporter.getTraces();
+    assertThat(traces).hasSize(1);
+
+    Span trace = traces.get(0);
+    assertThat(trace.getName()).isEqualTo(PollMailConnector.CONNECTOR_ID);
+    assertThat(trace.getDurationNanos()).isGreaterThan(0);
+
+    assertThat(trace.find("invocation")).hasSize(1);
+
+    List<Span> searches = trace.find("imap.search");
+    assertThat(searches).hasSize(1);
+    assertThat(searches.get(0).getParent().getName()).isEqualTo("invocation");
+    assertThat(searches.get(0).getAttributes()).containsEntry("folder", "INBOX").containsEntry("messages", 2);
+
+    List<Span> conversions = trace.find("mime.convert");
+    assertThat(conversions).hasSize(1);
+    assertThat(conversions.get(0).getAttributes()).containsEntry("messages", 2);
+    assertThat(conversions.get(0).getOffsetNanos()).isGreaterThan(searches.get(0).getOffsetNanos());
+  }
+
+  @Test
+  public void traceSend() {
+    greenMail.setUser("test@camunda.com", "bpmn");
+
+    SendMailConnector connector = new SendMailConnector();
+    connector.addRequestInterceptor(new TracingInterceptor(exporter));
+
+    connector.createRequest()
+      .from("test")
+      .to("test@camunda.com")
+      .subject("subject")
+      .execute();
+
+    List<Span> traces = exporter.getTraces();
+    assertThat(traces).hasSize(1);
+
+    Span trace = traces.get(0);
+    assertThat(trace.getName()).isEqualTo(SendMailConnector.CONNECTOR_ID);
+    assertThat(trace.find("mime.create")).hasSize(1);
+    assertThat(trace.find("smtp.send")).hasSize(1);
+    assertThat(trace.find("smtp.send").get(0).getDurationNanos()).isGreaterThan(0);
+  }
+
+  @Test
+  public void noTraceWithoutInterceptor() {
+    greenMail.setUser("test@camunda.com", "bpmn");
+
+    new SendMailConnector().createRequest()
+      .from("test")
+      .to("test@camunda.com")
+      .subject("subject")
+      .execute();
+
+    assertThat(exporter.getTraces()).isEmpty();
+
+    Span span = MailTracer.startSpan("imap.search").attribute("folder", "INBOX");
+    assertThat(span).isSameAs(Span.NOOP);
+    assertThat(span.getAttributes()).isEmpty();
+  }
+
+  @Test
+  public void nestSpans() {
+    try (Span trace = MailTracer.startTrace("trace", exporter)) {
+      try (Span span = MailTracer.startSpan("outer")) {
+        MailTracer.startSpan("inner").close();
+      }
+      MailTracer.startSpan("next").close();
+
+      assertThat(MailTracer.currentSpan()).isSameAs(trace);
+    }
+
+    Span trace = exporter.getTraces().get(0);
+    assertThat(trace.getChildren()).extracting("name").containsExactly("outer", "next");
+    assertThat(trace.getChildren().get(0).getChildren()).extracting("name").containsExactly("inner");
+  }
+
+  @Test
+  public void exportTraceToFile() throws Exception {
+    Path file = temporaryFolder.getRoot().toPath().resolve("traces.json");
+    FileTraceExporter fileExporter = new FileTraceExporter(file);
+
+    for (int i = 0; i < 2; i++) {
+      try (Span trace = MailTracer.startTrace("mail-poll", fileExporter)) {
+        MailTracer.startSpan("imap.search").attribute("folder", "IN\"BOX").attribute("messages", 3).close();
+      }
+    }
+
+    List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+    assertThat(lines).hasSize(2);
+    assertThat(lines.get(0))
+      .startsWith("{\"name\":\"mail-poll\",\"start\":")
+      .contains("\"children\":[{\"name\":\"imap.search\"")
+      .contains("\"attributes\":{\"folder\":\"IN\\\"BOX\",\"messages\":3}")
+      .endsWith("\"children\":[]}]}");
+  }
+
+  @Test
+  public void keepLastTraces() {
+    InMemoryTraceExporter limitedExporter = new InMemoryTraceExporter(2);
+
+    for (int i = 0; i < 3; i++) {
+      MailTracer.startTrace("trace-" + i, limitedExporter).close();
+    }
+
+    assertThat(limitedExporter.getTraces()).extracting("name").containsExactly("trace-1", "trace-2");
+  }
+
+}